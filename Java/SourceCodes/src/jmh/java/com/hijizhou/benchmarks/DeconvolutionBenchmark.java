@@ -0,0 +1,103 @@
+package com.hijizhou.benchmarks;
+/**
+ * DECONVOLUTIONBENCHMARK: whole PURE-LET deconvolutions of synthetic 2D
+ * images and 3D stacks, for a range of sizes and numbers of threads
+ *
+ * The 4096 x 4096 images need a heap of several GB, e.g.
+ * -Djmh.args="-jvmArgsAppend -Xmx16g".
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.cern.colt.matrix.tdouble.DoubleMatrix3D;
+import com.hijizhou.cores.deconvolution.LETSpectra2D;
+import com.hijizhou.cores.deconvolution.MW_PURE_LET2D;
+import com.hijizhou.cores.deconvolution.MW_PURE_LET3D;
+import com.hijizhou.utilities.ProgressListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class DeconvolutionBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Image {
+
+        @Param({"256", "512", "1024", "2048", "4096"})
+        public int size;
+
+        @Param({"1", "4"})
+        public int threads;
+
+        DoubleMatrix2D input;
+        LETSpectra2D spectra;
+
+        @Setup
+        public void setup() {
+            Inputs.setThreads(threads);
+            input = Inputs.getInput(size, size);
+            spectra = new LETSpectra2D(Inputs.getPSF(size, size), 4);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Stack {
+
+        @Param({"64", "128", "256"})
+        public int size;
+
+        @Param({"16", "32"})
+        public int slices;
+
+        @Param({"1", "4"})
+        public int threads;
+
+        DoubleMatrix3D input;
+        DoubleMatrix3D psf;
+
+        @Setup
+        public void setup() {
+            Inputs.setThreads(threads);
+            input = Inputs.getInput(slices, size, size);
+            psf = Inputs.getPSF(slices, size, size);
+        }
+    }
+
+    /**
+     * MW_PURE_LET2D.doDeconvolution, the filter spectra being computed once
+     * per trial as when a series of frames is deconvolved.
+     */
+    @Benchmark
+    public DoubleMatrix2D deconvolve2D(Image image) {
+        MW_PURE_LET2D mw = new MW_PURE_LET2D(image.input, image.spectra, Inputs.NOISE, ProgressListener.SILENT,
+                false, false);
+        mw.setNumberOfThreads(image.threads);
+        mw.doDeconvolution();
+        return mw.getOutputMatrix();
+    }
+
+    @Benchmark
+    public DoubleMatrix3D deconvolve3D(Stack stack) {
+        MW_PURE_LET3D mw = new MW_PURE_LET3D(stack.input, stack.psf, Inputs.NOISE);
+        mw.setNumberOfThreads(stack.threads);
+        mw.doDeconvolution();
+        return mw.getOutputMatrix();
+    }
+}
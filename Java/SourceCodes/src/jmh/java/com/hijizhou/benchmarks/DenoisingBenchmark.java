@@ -0,0 +1,118 @@
+package com.hijizhou.benchmarks;
+/**
+ * DENOISINGBENCHMARK: the post-filtering (DDIDstep, and the three steps of
+ * DDIDPipeline) and the noise estimation (Operations.estimateNoiseParams) run
+ * around the deconvolution, and the computation of the Gibson-Lanni PSF of
+ * the 3D plugins
+ *
+ * The DDID steps use the Vector API when the classes of the vector profile
+ * are compiled and the forked JVM gets --add-modules jdk.incubator.vector
+ * -Dpureletdeconv.vector=true (JMH option -jvmArgsAppend).
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.hijizhou.cores.denoising.DDIDPipeline;
+import com.hijizhou.cores.denoising.DDIDstep;
+import com.hijizhou.imageware.Builder;
+import com.hijizhou.imageware.ImageWare;
+import com.hijizhou.imageware.Operations;
+import com.hijizhou.utilities.GibsonLanni;
+import ij.ImageStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class DenoisingBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Image {
+
+        @Param({"256", "512", "1024", "2048", "4096"})
+        public int size;
+
+        @Param({"1", "4"})
+        public int threads;
+
+        DoubleMatrix2D input;
+        ImageWare ware;
+        DDIDPipeline pipeline;
+
+        @Setup
+        public void setup() {
+            Inputs.setThreads(threads);
+            input = Inputs.getInput(size, size);
+            pipeline = DDIDPipeline.standard(9, Inputs.NOISE[1] * Inputs.NOISE[1]);
+            ware = Builder.create(size, size, 1, ImageWare.DOUBLE);
+            for (int r = 0; r < size; r++) {
+                for (int c = 0; c < size; c++) {
+                    ware.putPixel(c, r, 0, input.getQuick(r, c));
+                }
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class PSF {
+
+        @Param({"128", "256", "512"})
+        public int size;
+
+        @Param({"32", "64"})
+        public int slices;
+    }
+
+    /**
+     * DDIDstep.run with the settings of ImageUtil.postfiltering.
+     */
+    @Benchmark
+    public DoubleMatrix2D ddid(Image image) {
+        DDIDstep ddid = new DDIDstep();
+        ddid.setR(9);
+        ddid.setSigma2(Inputs.NOISE[1] * Inputs.NOISE[1]);
+        return ddid.run(image.input, image.input);
+    }
+
+    /**
+     * DDIDPipeline.standard with the settings of ImageUtil.postfiltering, its
+     * buffers being reused from one invocation to the next as on a stream.
+     */
+    @Benchmark
+    public DoubleMatrix2D ddidPipeline(Image image) {
+        return image.pipeline.run(image.input);
+    }
+
+    /**
+     * Operations.estimateNoiseParams with the block size of the plugins.
+     */
+    @Benchmark
+    public double[] estimateNoise(Image image) {
+        return Operations.estimateNoiseParams(image.ware, 100);
+    }
+
+    @Benchmark
+    public ImageStack gibsonLanni(PSF psf) {
+        GibsonLanni gl = new GibsonLanni();
+        gl.setNx(psf.size);
+        gl.setNy(psf.size);
+        gl.setNz(psf.slices);
+        return gl.compute();
+    }
+}
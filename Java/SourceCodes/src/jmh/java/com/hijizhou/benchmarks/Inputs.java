@@ -0,0 +1,79 @@
+package com.hijizhou.benchmarks;
+/**
+ * INPUTS: synthetic images and volumes shared by the benchmarks, blurred by
+ * a Gaussian PSF and corrupted by Poisson-Gaussian noise (Simulation)
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.cern.colt.matrix.tdouble.DoubleMatrix3D;
+import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix3D;
+import com.hijizhou.utilities.PSFUtil;
+import com.hijizhou.utilities.Simulation;
+
+final class Inputs {
+
+    // Poisson scaling and Gaussian standard deviation of the noise
+    static final double[] NOISE = new double[]{1.0, 2.0};
+    static final double PSF_SIGMA = Math.sqrt(3.0);
+
+    private Inputs() {
+    }
+
+    /**
+     * Smooth background plus a checkerboard, with edges at all scales.
+     */
+    static DoubleMatrix2D getOriginal(int rows, int columns) {
+        DoubleMatrix2D original = new DenseDoubleMatrix2D(rows, columns);
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                original.setQuick(r, c, 50 + 40 * Math.sin(r / 7.0) * Math.cos(c / 5.0)
+                        + ((r / 16 + c / 16) % 2 == 0 ? 60 : 0));
+            }
+        }
+        return original;
+    }
+
+    static DoubleMatrix3D getOriginal(int slices, int rows, int columns) {
+        DoubleMatrix3D original = new DenseDoubleMatrix3D(slices, rows, columns);
+        for (int s = 0; s < slices; s++) {
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < columns; c++) {
+                    original.setQuick(s, r, c, 50 + 40 * Math.sin(r / 7.0) * Math.cos(c / 5.0) * Math.cos(s / 3.0)
+                            + ((r / 8 + c / 8 + s / 4) % 2 == 0 ? 60 : 0));
+                }
+            }
+        }
+        return original;
+    }
+
+    static DoubleMatrix2D getPSF(int rows, int columns) {
+        return PSFUtil.getGaussPSF(rows, columns, PSF_SIGMA);
+    }
+
+    static DoubleMatrix3D getPSF(int slices, int rows, int columns) {
+        return PSFUtil.getGaussPSF(rows, columns, slices, PSF_SIGMA);
+    }
+
+    /**
+     * Blurred and noisy rows x columns image.
+     */
+    static DoubleMatrix2D getInput(int rows, int columns) {
+        return Simulation.getInput(getOriginal(rows, columns), getPSF(rows, columns), NOISE);
+    }
+
+    static DoubleMatrix3D getInput(int slices, int rows, int columns) {
+        return Simulation.getInput(getOriginal(slices, rows, columns), getPSF(slices, rows, columns), NOISE);
+    }
+
+    /**
+     * Sets the global number of threads of the colt routines and FFTs.
+     */
+    static void setThreads(int nthreads) {
+        com.edu.emory.mathcs.utils.ConcurrencyUtils.setNumberOfThreads(nthreads);
+        com.edu.emory.mathcs.utils.pc.ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+}
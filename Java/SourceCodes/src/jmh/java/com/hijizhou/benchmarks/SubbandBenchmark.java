@@ -0,0 +1,148 @@
+package com.hijizhou.benchmarks;
+/**
+ * SUBBANDBENCHMARK: the steps of the 2D sub-band processing, i.e. one whole
+ * sub-band process (LETProcess2D), its thresholding kernel (aux_hard4) and
+ * the evaluation of the wavelet filters (FFT_WFilter)
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+import com.cern.colt.matrix.tdcomplex.DComplexMatrix2D;
+import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.cern.jet.math.tdcomplex.DComplexFunctions;
+import com.hijizhou.cores.deconvolution.LETProcess2D;
+import com.hijizhou.cores.deconvolution.LETSpectra2D;
+import com.hijizhou.utilities.BufferArena;
+import com.hijizhou.utilities.FFT_WFilter;
+import com.hijizhou.utilities.HalfSpectrum;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SubbandBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Subband {
+
+        @Param({"256", "512", "1024", "2048", "4096"})
+        public int size;
+
+        @Param({"1", "4"})
+        public int threads;
+
+        // scale of the sub-band, 0 being the finest one
+        @Param({"0", "3"})
+        public int scale;
+
+        LETSpectra2D spectra;
+        DComplexMatrix2D fftInput;
+        DComplexMatrix2D Yi;
+        DComplexMatrix2D Hli;
+        DComplexMatrix2D Hbit;
+        BufferArena arena = new BufferArena();
+        double alpha = Inputs.NOISE[0];
+
+        @Setup
+        public void setup() {
+            Inputs.setThreads(threads);
+            DoubleMatrix2D input = Inputs.getInput(size, size);
+            spectra = new LETSpectra2D(Inputs.getPSF(size, size), 4);
+            fftInput = HalfSpectrum.fft2(input);
+            // Wiener filters of MW_PURE_LET2D, for the mean intensity of the input
+            double Ey = input.zSum() / ((double) size * size);
+            Hli = spectra.getWienerFilter(1e-3 * alpha * Ey);
+            Yi = Hli.copy();
+            Yi.assign(fftInput, DComplexFunctions.mult);
+            Hbit = spectra.getWienerFilter(1e-5 * alpha * Ey).copy();
+            Hbit.assign(DComplexFunctions.conj);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Threshold {
+
+        @Param({"65536", "1048576", "16777216"})
+        public int pixels;
+
+        @Param({"1", "4"})
+        public int threads;
+
+        double[] y;
+        double[] w1;
+        double[] w2;
+        double[] t;
+        double[] tp;
+        double[] theta4;
+        double[] theta9;
+
+        @Setup
+        public void setup() {
+            Inputs.setThreads(threads);
+            Random random = new Random(1);
+            y = new double[pixels];
+            w1 = new double[pixels];
+            w2 = new double[pixels];
+            t = new double[pixels];
+            tp = new double[pixels];
+            theta4 = new double[pixels];
+            theta9 = new double[pixels];
+            for (int i = 0; i < pixels; i++) {
+                y[i] = 10 * random.nextGaussian();
+                w1[i] = random.nextGaussian();
+                w2[i] = random.nextGaussian();
+                t[i] = 1 + random.nextDouble();
+                tp[i] = random.nextDouble();
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Filter {
+
+        @Param({"256", "1024", "4096"})
+        public int size;
+
+        @Param({"0", "3"})
+        public int orientation;
+
+        @Param({"1", "4"})
+        public int scale;
+    }
+
+    @Benchmark
+    public LETProcess2D.ReValue process(Subband s) throws Exception {
+        LETProcess2D process = new LETProcess2D(s.alpha, s.scale, 0, s.spectra, s.fftInput, s.Yi, s.Hli, s.Hbit);
+        process.setNumberOfThreads(s.threads);
+        process.setBufferArena(s.arena);
+        return process.call().getRV();
+    }
+
+    @Benchmark
+    public double[] threshold(Threshold s) {
+        return LETProcess2D.aux_hard4(s.y, s.w1, s.w2, s.t, s.tp, s.theta4, s.theta9);
+    }
+
+    @Benchmark
+    public FFT_WFilter filters(Filter s) {
+        FFT_WFilter wf = new FFT_WFilter();
+        wf.fft_wfilters2D(s.size, s.size, s.orientation, s.scale);
+        return wf;
+    }
+}
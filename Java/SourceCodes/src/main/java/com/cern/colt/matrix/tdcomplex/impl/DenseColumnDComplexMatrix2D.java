@@ -14,6 +14,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
 import com.org.jtransforms.fft.DoubleFFT_2D;
+import com.org.jtransforms.fft.FFTPlanCache;
 
 import com.cern.colt.list.tint.IntArrayList;
 import com.cern.colt.matrix.tdcomplex.DComplexMatrix1D;
@@ -1180,14 +1181,11 @@ public class DenseColumnDComplexMatrix2D extends DComplexMatrix2D {
      */
     public void fft2() {
         DComplexMatrix2D transpose = viewDice().copy();
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new DoubleFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getDoubleFFT_2D(rows, columns);
         }
         fft2.complexForward((double[]) transpose.elements());
         this.assign(transpose.viewDice().copy());
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1483,14 +1481,11 @@ public class DenseColumnDComplexMatrix2D extends DComplexMatrix2D {
      */
     public void ifft2(boolean scale) {
         DComplexMatrix2D transpose = viewDice().copy();
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new DoubleFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getDoubleFFT_2D(rows, columns);
         }
         fft2.complexInverse((double[]) transpose.elements(), scale);
         this.assign(transpose.viewDice().copy());
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -22,6 +22,7 @@ import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
 import com.cern.jet.math.tdcomplex.DComplex;
 import com.cern.jet.math.tdcomplex.DComplexFunctions;
 import com.org.jtransforms.fft.DoubleFFT_1D;
+import com.org.jtransforms.fft.FFTPlanCache;
 import com.edu.emory.mathcs.utils.pc.ConcurrencyUtils;
 
 /**
@@ -839,10 +840,8 @@ public class DenseDComplexMatrix1D extends DComplexMatrix1D {
      * number.
      */
     public void fft() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft == null) {
-            fft = new DoubleFFT_1D(size);
+            fft = FFTPlanCache.getDoubleFFT_1D(size);
         }
         if (isNoView) {
             fft.complexForward(elements);
@@ -851,7 +850,6 @@ public class DenseDComplexMatrix1D extends DComplexMatrix1D {
             fft.complexForward((double[]) copy.elements());
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public double[] elements() {
@@ -966,10 +964,8 @@ public class DenseDComplexMatrix1D extends DComplexMatrix1D {
      *            if true, then scaling is performed.
      */
     public void ifft(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft == null) {
-            fft = new DoubleFFT_1D(size);
+            fft = FFTPlanCache.getDoubleFFT_1D(size);
         }
         if (isNoView) {
             fft.complexInverse(elements, scale);
@@ -978,7 +974,6 @@ public class DenseDComplexMatrix1D extends DComplexMatrix1D {
             fft.complexInverse((double[]) copy.elements(), scale);
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public DComplexMatrix1D like(int size) {
@@ -19,6 +19,7 @@ import com.cern.colt.matrix.tdcomplex.DComplexMatrix2D;
 import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
 import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
 import com.org.jtransforms.fft.DoubleFFT_2D;
+import com.org.jtransforms.fft.FFTPlanCache;
 import com.edu.emory.mathcs.utils.pc.ConcurrencyUtils;
 
 /**
@@ -1179,10 +1180,8 @@ public class DenseDComplexMatrix2D extends DComplexMatrix2D {
      * Computes the 2D discrete Fourier transform (DFT) of this matrix.
      */
     public void fft2() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new DoubleFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getDoubleFFT_2D(rows, columns);
         }
         if (isNoView == true) {
             fft2.complexForward(elements);
@@ -1191,7 +1190,6 @@ public class DenseDComplexMatrix2D extends DComplexMatrix2D {
             fft2.complexForward((double[]) copy.elements());
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1487,10 +1485,8 @@ public class DenseDComplexMatrix2D extends DComplexMatrix2D {
      * 
      */
     public void ifft2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new DoubleFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getDoubleFFT_2D(rows, columns);
         }
         if (isNoView == true) {
             fft2.complexInverse(elements, scale);
@@ -1499,7 +1495,6 @@ public class DenseDComplexMatrix2D extends DComplexMatrix2D {
             fft2.complexInverse((double[]) copy.elements(), scale);
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -20,6 +20,7 @@ import com.cern.colt.matrix.tdcomplex.DComplexMatrix3D;
 import com.cern.colt.matrix.tdouble.DoubleMatrix3D;
 import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix3D;
 import com.org.jtransforms.fft.DoubleFFT_3D;
+import com.org.jtransforms.fft.FFTPlanCache;
 import com.edu.emory.mathcs.utils.pc.ConcurrencyUtils;
 
 /**
@@ -1262,10 +1263,8 @@ public class DenseDComplexMatrix3D extends DComplexMatrix3D {
      * Computes the 3D discrete Fourier transform (DFT) of this matrix.
      */
     public void fft3() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft3 == null) {
-            fft3 = new DoubleFFT_3D(slices, rows, columns);
+            fft3 = FFTPlanCache.getDoubleFFT_3D(slices, rows, columns);
         }
         if (isNoView == true) {
             fft3.complexForward(elements);
@@ -1274,7 +1273,6 @@ public class DenseDComplexMatrix3D extends DComplexMatrix3D {
             fft3.complexForward((double[]) copy.elements());
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public double[] elements() {
@@ -1466,10 +1464,8 @@ public class DenseDComplexMatrix3D extends DComplexMatrix3D {
      *            if true then scaling is performed
      */
     public void ifft3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft3 == null) {
-            fft3 = new DoubleFFT_3D(slices, rows, columns);
+            fft3 = FFTPlanCache.getDoubleFFT_3D(slices, rows, columns);
         }
         if (isNoView == true) {
             fft3.complexInverse(elements, scale);
@@ -1478,7 +1474,6 @@ public class DenseDComplexMatrix3D extends DComplexMatrix3D {
             fft3.complexInverse((double[]) copy.elements(), scale);
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public DComplexMatrix3D like(int slices, int rows, int columns) {
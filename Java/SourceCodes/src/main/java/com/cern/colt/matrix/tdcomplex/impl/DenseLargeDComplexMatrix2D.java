@@ -14,6 +14,7 @@ import com.cern.colt.matrix.tdcomplex.DComplexMatrix1D;
 import com.cern.colt.matrix.tdcomplex.DComplexMatrix2D;
 import com.org.jtransforms.fft.DoubleFFT_1D;
 import com.org.jtransforms.fft.DoubleFFT_2D;
+import com.org.jtransforms.fft.FFTPlanCache;
 import com.edu.emory.mathcs.utils.pc.ConcurrencyUtils;
 
 /**
@@ -58,13 +59,10 @@ public class DenseLargeDComplexMatrix2D extends WrapperDComplexMatrix2D {
      */
 
     public void fft2() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new DoubleFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getDoubleFFT_2D(rows, columns);
         }
         fft2.complexForward(elements);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -74,7 +72,7 @@ public class DenseLargeDComplexMatrix2D extends WrapperDComplexMatrix2D {
 
     public void fftColumns() {
         if (fftColumns == null) {
-            fftColumns = new DoubleFFT_1D(rows);
+            fftColumns = FFTPlanCache.getDoubleFFT_1D(rows);
         }
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -115,7 +113,7 @@ public class DenseLargeDComplexMatrix2D extends WrapperDComplexMatrix2D {
 
     public void fftRows() {
         if (fftRows == null) {
-            fftRows = new DoubleFFT_1D(columns);
+            fftRows = FFTPlanCache.getDoubleFFT_1D(columns);
         }
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -155,13 +153,10 @@ public class DenseLargeDComplexMatrix2D extends WrapperDComplexMatrix2D {
      */
 
     public void ifft2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new DoubleFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getDoubleFFT_2D(rows, columns);
         }
         fft2.complexInverse(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -174,7 +169,7 @@ public class DenseLargeDComplexMatrix2D extends WrapperDComplexMatrix2D {
 
     public void ifftColumns(final boolean scale) {
         if (fftColumns == null) {
-            fftColumns = new DoubleFFT_1D(rows);
+            fftColumns = FFTPlanCache.getDoubleFFT_1D(rows);
         }
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -219,7 +214,7 @@ public class DenseLargeDComplexMatrix2D extends WrapperDComplexMatrix2D {
 
     public void ifftRows(final boolean scale) {
         if (fftRows == null) {
-            fftRows = new DoubleFFT_1D(columns);
+            fftRows = FFTPlanCache.getDoubleFFT_1D(columns);
         }
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
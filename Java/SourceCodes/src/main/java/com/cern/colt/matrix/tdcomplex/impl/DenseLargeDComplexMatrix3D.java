@@ -13,6 +13,7 @@ import java.util.concurrent.Future;
 import com.cern.colt.matrix.tdcomplex.DComplexMatrix3D;
 import com.org.jtransforms.fft.DoubleFFT_2D;
 import com.org.jtransforms.fft.DoubleFFT_3D;
+import com.org.jtransforms.fft.FFTPlanCache;
 import com.edu.emory.mathcs.utils.pc.ConcurrencyUtils;
 
 /**
@@ -71,7 +72,7 @@ public class DenseLargeDComplexMatrix3D extends WrapperDComplexMatrix3D {
 
     public void fft2Slices() {
         if (fft2Slices == null) {
-            fft2Slices = new DoubleFFT_2D(rows, columns);
+            fft2Slices = FFTPlanCache.getDoubleFFT_2D(rows, columns);
         }
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_3D())) {
@@ -109,13 +110,10 @@ public class DenseLargeDComplexMatrix3D extends WrapperDComplexMatrix3D {
      */
 
     public void fft3() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft3 == null) {
-            fft3 = new DoubleFFT_3D(slices, rows, columns);
+            fft3 = FFTPlanCache.getDoubleFFT_3D(slices, rows, columns);
         }
         fft3.complexForward(elements);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -128,7 +126,7 @@ public class DenseLargeDComplexMatrix3D extends WrapperDComplexMatrix3D {
 
     public void ifft2Slices(final boolean scale) {
         if (fft2Slices == null) {
-            fft2Slices = new DoubleFFT_2D(rows, columns);
+            fft2Slices = FFTPlanCache.getDoubleFFT_2D(rows, columns);
         }
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_3D())) {
@@ -170,13 +168,10 @@ public class DenseLargeDComplexMatrix3D extends WrapperDComplexMatrix3D {
      */
 
     public void ifft3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft3 == null) {
-            fft3 = new DoubleFFT_3D(slices, rows, columns);
+            fft3 = FFTPlanCache.getDoubleFFT_3D(slices, rows, columns);
         }
         fft3.complexInverse(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public double[][][] elements() {
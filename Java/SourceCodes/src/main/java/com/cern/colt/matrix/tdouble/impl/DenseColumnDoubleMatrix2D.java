@@ -17,6 +17,7 @@ import com.org.jtransforms.dct.DoubleDCT_2D;
 import com.org.jtransforms.dht.DoubleDHT_2D;
 import com.org.jtransforms.dst.DoubleDST_2D;
 import com.org.jtransforms.fft.DoubleFFT_2D;
+import com.org.jtransforms.fft.FFTPlanCache;
 import org.netlib.blas.BLAS;
 
 import com.cern.colt.function.tdouble.DoubleDoubleFunction;
@@ -1188,14 +1189,11 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
      */
     public void dct2(boolean scale) {
         DoubleMatrix2D transpose = viewDice().copy();
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dct2 == null) {
             dct2 = new DoubleDCT_2D(rows, columns);
         }
         dct2.forward((double[]) transpose.elements(), scale);
         this.assign(transpose.viewDice().copy());
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1244,8 +1242,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void dctRows(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -1272,7 +1268,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
                 ((DenseDoubleMatrix1D) viewRow(r)).dct(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1281,14 +1276,11 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
      */
     public void dht2() {
         DoubleMatrix2D transpose = viewDice().copy();
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dht2 == null) {
             dht2 = new DoubleDHT_2D(rows, columns);
         }
         dht2.forward((double[]) transpose.elements());
         this.assign(transpose.viewDice().copy());
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1297,8 +1289,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void dhtColumns() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -1325,7 +1315,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
                 ((DenseDoubleMatrix1D) viewColumn(c)).dht();
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1333,8 +1322,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void dhtRows() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -1361,7 +1348,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
                 ((DenseDoubleMatrix1D) viewRow(r)).dht();
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1373,14 +1359,11 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
      */
     public void dst2(boolean scale) {
         DoubleMatrix2D transpose = viewDice().copy();
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dst2 == null) {
             dst2 = new DoubleDST_2D(rows, columns);
         }
         dst2.forward((double[]) transpose.elements(), scale);
         this.assign(transpose.viewDice().copy());
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1428,8 +1411,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void dstRows(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -1456,7 +1437,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
                 ((DenseDoubleMatrix1D) viewRow(r)).dst(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public double[] elements() {
@@ -1497,14 +1477,11 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
      */
     public void fft2() {
         DoubleMatrix2D transpose = viewDice().copy();
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new DoubleFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getDoubleFFT_2D(rows, columns);
         }
         fft2.realForward((double[]) transpose.elements());
         this.assign(transpose.viewDice().copy());
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public DoubleMatrix2D forEachNonZero(final com.cern.colt.function.tdouble.IntIntDoubleFunction function) {
@@ -1615,10 +1592,8 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public DenseDComplexMatrix2D getFft2() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new DoubleFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getDoubleFFT_2D(rows, columns);
         }
         DenseDComplexMatrix2D C = new DenseDComplexMatrix2D(rows, columns);
         final double[] elementsC = (C).elements();
@@ -1666,7 +1641,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
             }
         }
         fft2.realForwardFull(elementsC);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1678,8 +1652,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
      *         matrix.
      */
     public DenseDComplexMatrix2D getFftColumns() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseDComplexMatrix2D C = new DenseDComplexMatrix2D(rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -1707,7 +1679,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
                 C.viewColumn(c).assign(((DenseDoubleMatrix1D) viewColumn(c)).getFft());
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1718,8 +1689,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
      * @return the discrete Fourier transform (DFT) of each row of this matrix.
      */
     public DenseDComplexMatrix2D getFftRows() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseDComplexMatrix2D C = new DenseDComplexMatrix2D(rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -1747,7 +1716,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
                 C.viewRow(r).assign(((DenseDoubleMatrix1D) viewRow(r)).getFft());
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1759,10 +1727,8 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
      *         matrix.
      */
     public DComplexMatrix2D getIfft2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new DoubleFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getDoubleFFT_2D(rows, columns);
         }
         DenseDComplexMatrix2D C = new DenseDComplexMatrix2D(rows, columns);
         final double[] elementsC = (C).elements();
@@ -1810,7 +1776,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
             }
         }
         fft2.realInverseFull(elementsC, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1822,8 +1787,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
      *         column of this matrix.
      */
     public DComplexMatrix2D getIfftColumns(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseDComplexMatrix2D C = new DenseDComplexMatrix2D(rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -1851,7 +1814,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
                 C.viewColumn(c).assign(((DenseDoubleMatrix1D) viewColumn(c)).getIfft(scale));
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1863,8 +1825,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
      *         of this matrix.
      */
     public DComplexMatrix2D getIfftRows(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseDComplexMatrix2D C = new DenseDComplexMatrix2D(rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -1891,7 +1851,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
                 C.viewRow(r).assign(((DenseDoubleMatrix1D) viewRow(r)).getIfft(scale));
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1968,14 +1927,11 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
      */
     public void idct2(boolean scale) {
         DoubleMatrix2D transpose = viewDice().copy();
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dct2 == null) {
             dct2 = new DoubleDCT_2D(rows, columns);
         }
         dct2.inverse((double[]) transpose.elements(), scale);
         this.assign(transpose.viewDice().copy());
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2024,8 +1980,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void idctRows(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -2052,7 +2006,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
                 ((DenseDoubleMatrix1D) viewRow(r)).idct(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2065,14 +2018,11 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
      */
     public void idht2(boolean scale) {
         DoubleMatrix2D transpose = viewDice().copy();
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dht2 == null) {
             dht2 = new DoubleDHT_2D(rows, columns);
         }
         dht2.inverse((double[]) transpose.elements(), scale);
         this.assign(transpose.viewDice().copy());
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2084,8 +2034,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void idhtColumns(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -2112,7 +2060,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
                 ((DenseDoubleMatrix1D) viewColumn(c)).idht(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2124,8 +2071,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void idhtRows(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -2152,7 +2097,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
                 ((DenseDoubleMatrix1D) viewRow(r)).idht(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2165,14 +2109,11 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
      */
     public void idst2(boolean scale) {
         DoubleMatrix2D transpose = viewDice().copy();
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dst2 == null) {
             dst2 = new DoubleDST_2D(rows, columns);
         }
         dst2.inverse((double[]) transpose.elements(), scale);
         this.assign(transpose.viewDice().copy());
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2221,8 +2162,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void idstRows(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -2249,7 +2188,6 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
                 ((DenseDoubleMatrix1D) viewRow(r)).idst(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2288,14 +2226,11 @@ public class DenseColumnDoubleMatrix2D extends DoubleMatrix2D {
      */
     public void ifft2(boolean scale) {
         DoubleMatrix2D transpose = viewDice().copy();
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new DoubleFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getDoubleFFT_2D(rows, columns);
         }
         fft2.realInverse((double[]) transpose.elements(), scale);
         this.assign(transpose.viewDice().copy());
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public long index(int row, int column) {
@@ -23,6 +23,7 @@ import com.org.jtransforms.dct.DoubleDCT_1D;
 import com.org.jtransforms.dht.DoubleDHT_1D;
 import com.org.jtransforms.dst.DoubleDST_1D;
 import com.org.jtransforms.fft.DoubleFFT_1D;
+import com.org.jtransforms.fft.FFTPlanCache;
 
 import com.edu.emory.mathcs.utils.pc.ConcurrencyUtils;
 
@@ -724,8 +725,6 @@ public class DenseDoubleMatrix1D extends DoubleMatrix1D {
      *            if true then scaling is performed
      */
     public void dct(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dct == null) {
             dct = new DoubleDCT_1D(size);
         }
@@ -736,7 +735,6 @@ public class DenseDoubleMatrix1D extends DoubleMatrix1D {
             dct.forward((double[]) copy.elements(), scale);
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -744,8 +742,6 @@ public class DenseDoubleMatrix1D extends DoubleMatrix1D {
      * 
      */
     public void dht() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dht == null) {
             dht = new DoubleDHT_1D(size);
         }
@@ -756,7 +752,6 @@ public class DenseDoubleMatrix1D extends DoubleMatrix1D {
             dht.forward((double[]) copy.elements());
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -766,8 +761,6 @@ public class DenseDoubleMatrix1D extends DoubleMatrix1D {
      *            if true then scaling is performed
      */
     public void dst(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dst == null) {
             dst = new DoubleDST_1D(size);
         }
@@ -778,7 +771,6 @@ public class DenseDoubleMatrix1D extends DoubleMatrix1D {
             dst.forward((double[]) copy.elements(), scale);
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public double[] elements() {
@@ -802,10 +794,8 @@ public class DenseDoubleMatrix1D extends DoubleMatrix1D {
      * 
      */
     public void fft() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft == null) {
-            fft = new DoubleFFT_1D(size);
+            fft = FFTPlanCache.getDoubleFFT_1D(size);
         }
         if (isNoView) {
             fft.realForward(elements);
@@ -814,7 +804,6 @@ public class DenseDoubleMatrix1D extends DoubleMatrix1D {
             fft.realForward((double[]) copy.elements());
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -824,8 +813,6 @@ public class DenseDoubleMatrix1D extends DoubleMatrix1D {
      * @return the discrete Fourier transform (DFT) of this matrix.
      */
     public DenseDComplexMatrix1D getFft() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final double[] elems;
         if (isNoView == true) {
             elems = elements;
@@ -836,10 +823,9 @@ public class DenseDoubleMatrix1D extends DoubleMatrix1D {
         final double[] elementsC = (c).elements();
         System.arraycopy(elems, 0, elementsC, 0, size);
         if (fft == null) {
-            fft = new DoubleFFT_1D(size);
+            fft = FFTPlanCache.getDoubleFFT_1D(size);
         }
         fft.realForwardFull(elementsC);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return c;
     }
 
@@ -851,8 +837,6 @@ public class DenseDoubleMatrix1D extends DoubleMatrix1D {
      *         matrix.
      */
     public DenseDComplexMatrix1D getIfft(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final double[] elems;
         if (isNoView == true) {
             elems = elements;
@@ -863,10 +847,9 @@ public class DenseDoubleMatrix1D extends DoubleMatrix1D {
         final double[] elementsC = (c).elements();
         System.arraycopy(elems, 0, elementsC, 0, size);
         if (fft == null) {
-            fft = new DoubleFFT_1D(size);
+            fft = FFTPlanCache.getDoubleFFT_1D(size);
         }
         fft.realInverseFull(elementsC, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return c;
     }
 
@@ -1140,8 +1123,6 @@ public class DenseDoubleMatrix1D extends DoubleMatrix1D {
      *            if true then scaling is performed
      */
     public void idct(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dct == null) {
             dct = new DoubleDCT_1D(size);
         }
@@ -1152,7 +1133,6 @@ public class DenseDoubleMatrix1D extends DoubleMatrix1D {
             dct.inverse((double[]) copy.elements(), scale);
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1163,8 +1143,6 @@ public class DenseDoubleMatrix1D extends DoubleMatrix1D {
      *            if true then scaling is performed
      */
     public void idht(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dht == null) {
             dht = new DoubleDHT_1D(size);
         }
@@ -1175,7 +1153,6 @@ public class DenseDoubleMatrix1D extends DoubleMatrix1D {
             dht.inverse((double[]) copy.elements(), scale);
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1185,8 +1162,6 @@ public class DenseDoubleMatrix1D extends DoubleMatrix1D {
      *            if true then scaling is performed
      */
     public void idst(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dst == null) {
             dst = new DoubleDST_1D(size);
         }
@@ -1197,7 +1172,6 @@ public class DenseDoubleMatrix1D extends DoubleMatrix1D {
             dst.inverse((double[]) copy.elements(), scale);
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1216,10 +1190,8 @@ public class DenseDoubleMatrix1D extends DoubleMatrix1D {
      * 
      */
     public void ifft(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft == null) {
-            fft = new DoubleFFT_1D(size);
+            fft = FFTPlanCache.getDoubleFFT_1D(size);
         }
         if (isNoView) {
             fft.realInverse(elements, scale);
@@ -1228,7 +1200,6 @@ public class DenseDoubleMatrix1D extends DoubleMatrix1D {
             fft.realInverse((double[]) copy.elements(), scale);
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public DoubleMatrix1D like(int size) {
@@ -17,6 +17,7 @@ import com.org.jtransforms.dct.DoubleDCT_2D;
 import com.org.jtransforms.dht.DoubleDHT_2D;
 import com.org.jtransforms.dst.DoubleDST_2D;
 import com.org.jtransforms.fft.DoubleFFT_2D;
+import com.org.jtransforms.fft.FFTPlanCache;
 
 import com.cern.colt.list.tdouble.DoubleArrayList;
 import com.cern.colt.list.tint.IntArrayList;
@@ -1186,8 +1187,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void dct2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dct2 == null) {
             dct2 = new DoubleDCT_2D(rows, columns);
         }
@@ -1198,7 +1197,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
             dct2.forward((double[]) copy.elements(), scale);
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1247,8 +1245,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void dctRows(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -1275,7 +1271,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
                 ((DenseDoubleMatrix1D) viewRow(r)).dct(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1283,8 +1278,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void dht2() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dht2 == null) {
             dht2 = new DoubleDHT_2D(rows, columns);
         }
@@ -1295,7 +1288,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
             dht2.forward((double[]) copy.elements());
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1304,8 +1296,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void dhtColumns() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -1332,7 +1322,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
                 ((DenseDoubleMatrix1D) viewColumn(c)).dht();
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1340,8 +1329,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void dhtRows() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -1368,7 +1355,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
                 ((DenseDoubleMatrix1D) viewRow(r)).dht();
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1379,8 +1365,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void dst2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dst2 == null) {
             dst2 = new DoubleDST_2D(rows, columns);
         }
@@ -1391,7 +1375,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
             dst2.forward((double[]) copy.elements(), scale);
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1403,8 +1386,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void dstColumns(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -1431,7 +1412,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
                 ((DenseDoubleMatrix1D) viewColumn(c)).dst(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1442,8 +1422,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void dstRows(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -1470,7 +1448,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
                 ((DenseDoubleMatrix1D) viewRow(r)).dst(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public double[] elements() {
@@ -1510,10 +1487,8 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void fft2() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new DoubleFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getDoubleFFT_2D(rows, columns);
         }
         if (isNoView == true) {
             fft2.realForward(elements);
@@ -1522,7 +1497,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
             fft2.realForward((double[]) copy.elements());
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public DoubleMatrix2D forEachNonZero(final com.cern.colt.function.tdouble.IntIntDoubleFunction function) {
@@ -1633,10 +1607,8 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public DenseDComplexMatrix2D getFft2() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new DoubleFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getDoubleFFT_2D(rows, columns);
         }
         final double[] elementsA;
         if (isNoView == true) {
@@ -1670,7 +1642,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
             }
         }
         fft2.realForwardFull(elementsC);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1682,8 +1653,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      *         matrix.
      */
     public DenseDComplexMatrix2D getFftColumns() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseDComplexMatrix2D C = new DenseDComplexMatrix2D(rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -1711,7 +1680,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
                 C.viewColumn(c).assign(((DenseDoubleMatrix1D) viewColumn(c)).getFft());
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1722,8 +1690,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      * @return the discrete Fourier transform (DFT) of each row of this matrix.
      */
     public DenseDComplexMatrix2D getFftRows() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseDComplexMatrix2D C = new DenseDComplexMatrix2D(rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -1751,7 +1717,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
                 C.viewRow(r).assign(((DenseDoubleMatrix1D) viewRow(r)).getFft());
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1763,8 +1728,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      *         matrix.
      */
     public DenseDComplexMatrix2D getIfft2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         DenseDComplexMatrix2D C = new DenseDComplexMatrix2D(rows, columns);
         final double[] elementsC = (C).elements();
         final double[] elementsA;
@@ -1802,10 +1765,9 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
             }
         }
         if (fft2 == null) {
-            fft2 = new DoubleFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getDoubleFFT_2D(rows, columns);
         }
         fft2.realInverseFull(elementsC, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1817,8 +1779,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      *         column of this matrix.
      */
     public DenseDComplexMatrix2D getIfftColumns(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseDComplexMatrix2D C = new DenseDComplexMatrix2D(rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -1846,7 +1806,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
                 C.viewColumn(c).assign(((DenseDoubleMatrix1D) viewColumn(c)).getIfft(scale));
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1858,8 +1817,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      *         of this matrix.
      */
     public DenseDComplexMatrix2D getIfftRows(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseDComplexMatrix2D C = new DenseDComplexMatrix2D(rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -1886,7 +1843,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
                 C.viewRow(r).assign(((DenseDoubleMatrix1D) viewRow(r)).getIfft(scale));
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -2110,8 +2066,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void idct2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dct2 == null) {
             dct2 = new DoubleDCT_2D(rows, columns);
         }
@@ -2122,7 +2076,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
             dct2.inverse((double[]) copy.elements(), scale);
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2134,8 +2087,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void idctColumns(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -2162,7 +2113,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
                 ((DenseDoubleMatrix1D) viewColumn(c)).idct(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2174,8 +2124,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void idctRows(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -2201,7 +2149,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
                 ((DenseDoubleMatrix1D) viewRow(r)).idct(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2213,8 +2160,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void idht2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dht2 == null) {
             dht2 = new DoubleDHT_2D(rows, columns);
         }
@@ -2225,7 +2170,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
             dht2.inverse((double[]) copy.elements(), scale);
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2237,8 +2181,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void idhtColumns(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -2265,7 +2207,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
                 ((DenseDoubleMatrix1D) viewColumn(c)).idht(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2277,8 +2218,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void idhtRows(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -2304,7 +2243,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
                 ((DenseDoubleMatrix1D) viewRow(r)).idht(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2316,8 +2254,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void idst2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dst2 == null) {
             dst2 = new DoubleDST_2D(rows, columns);
         }
@@ -2328,7 +2264,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
             dst2.inverse((double[]) copy.elements(), scale);
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2340,8 +2275,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void idstColumns(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -2368,7 +2301,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
                 ((DenseDoubleMatrix1D) viewColumn(c)).idst(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2380,8 +2312,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void idstRows(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -2407,7 +2337,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
                 ((DenseDoubleMatrix1D) viewRow(r)).idst(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2445,10 +2374,8 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
      * 
      */
     public void ifft2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new DoubleFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getDoubleFFT_2D(rows, columns);
         }
         if (isNoView == true) {
             fft2.realInverse(elements, scale);
@@ -2457,7 +2384,6 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
             fft2.realInverse((double[]) copy.elements(), scale);
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public long index(int row, int column) {
@@ -16,6 +16,7 @@ import com.org.jtransforms.dct.DoubleDCT_3D;
 import com.org.jtransforms.dht.DoubleDHT_3D;
 import com.org.jtransforms.dst.DoubleDST_3D;
 import com.org.jtransforms.fft.DoubleFFT_3D;
+import com.org.jtransforms.fft.FFTPlanCache;
 
 import com.cern.colt.list.tdouble.DoubleArrayList;
 import com.cern.colt.list.tint.IntArrayList;
@@ -1033,8 +1034,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
      * 
      */
     public void dct2Slices(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_3D())) {
             nthreads = Math.min(nthreads, slices);
@@ -1058,7 +1057,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
                 ((DenseDoubleMatrix2D) viewSlice(s)).dct2(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1069,8 +1067,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
      * 
      */
     public void dct3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dct3 == null) {
             dct3 = new DoubleDCT_3D(slices, rows, columns);
         }
@@ -1081,7 +1077,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
             dct3.forward((double[]) copy.elements(), scale);
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1090,8 +1085,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
      * 
      */
     public void dht2Slices() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_3D())) {
             nthreads = Math.min(nthreads, slices);
@@ -1115,7 +1108,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
                 ((DenseDoubleMatrix2D) viewSlice(s)).dht2();
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1123,8 +1115,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
      * 
      */
     public void dht3() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dht3 == null) {
             dht3 = new DoubleDHT_3D(slices, rows, columns);
         }
@@ -1135,7 +1125,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
             dht3.forward((double[]) copy.elements());
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1147,8 +1136,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
      * 
      */
     public void dst2Slices(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_3D())) {
             nthreads = Math.min(nthreads, slices);
@@ -1172,7 +1159,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
                 ((DenseDoubleMatrix2D) viewSlice(s)).dst2(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1183,8 +1169,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
      * 
      */
     public void dst3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dst3 == null) {
             dst3 = new DoubleDST_3D(slices, rows, columns);
         }
@@ -1195,7 +1179,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
             dst3.forward((double[]) copy.elements(), scale);
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public double[] elements() {
@@ -1259,10 +1242,8 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
      *             matrix is not a power of 2 number.
      */
     public void fft3() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft3 == null) {
-            fft3 = new DoubleFFT_3D(slices, rows, columns);
+            fft3 = FFTPlanCache.getDoubleFFT_3D(slices, rows, columns);
         }
         if (isNoView == true) {
             fft3.realForward(elements);
@@ -1271,7 +1252,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
             fft3.realForward((double[]) copy.elements());
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1283,8 +1263,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
      * 
      */
     public DenseDComplexMatrix3D getFft2Slices() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseDComplexMatrix3D C = new DenseDComplexMatrix3D(slices, rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_3D())) {
@@ -1309,7 +1287,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
                 C.viewSlice(s).assign(((DenseDoubleMatrix2D) viewSlice(s)).getFft2());
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1320,8 +1297,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
      * @return the 3D discrete Fourier transform (DFT) of this matrix.
      */
     public DenseDComplexMatrix3D getFft3() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         DenseDComplexMatrix3D C = new DenseDComplexMatrix3D(slices, rows, columns);
         final int sliceStride = rows * columns;
         final int rowStride = columns;
@@ -1364,10 +1339,9 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
             }
         }
         if (fft3 == null) {
-            fft3 = new DoubleFFT_3D(slices, rows, columns);
+            fft3 = FFTPlanCache.getDoubleFFT_3D(slices, rows, columns);
         }
         fft3.realForwardFull(cElems);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1382,8 +1356,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
      *         slice of this matrix.
      */
     public DenseDComplexMatrix3D getIfft2Slices(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseDComplexMatrix3D C = new DenseDComplexMatrix3D(slices, rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_3D())) {
@@ -1408,7 +1380,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
                 C.viewSlice(s).assign(((DenseDoubleMatrix2D) viewSlice(s)).getIfft2(scale));
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1424,8 +1395,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
      * 
      */
     public DenseDComplexMatrix3D getIfft3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         DenseDComplexMatrix3D C = new DenseDComplexMatrix3D(slices, rows, columns);
         final int sliceStride = rows * columns;
         final int rowStride = columns;
@@ -1468,10 +1437,9 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
             }
         }
         if (fft3 == null) {
-            fft3 = new DoubleFFT_3D(slices, rows, columns);
+            fft3 = FFTPlanCache.getDoubleFFT_3D(slices, rows, columns);
         }
         fft3.realInverseFull(cElems, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1737,8 +1705,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
      *            if true then scaling is performed
      */
     public void idct2Slices(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_3D())) {
             nthreads = Math.min(nthreads, slices);
@@ -1762,7 +1728,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
                 ((DenseDoubleMatrix2D) viewSlice(s)).idct2(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1773,8 +1738,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
      *            if true then scaling is performed
      */
     public void idct3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dct3 == null) {
             dct3 = new DoubleDCT_3D(slices, rows, columns);
         }
@@ -1785,7 +1748,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
             dct3.inverse((double[]) copy.elements(), scale);
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1797,8 +1759,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
      * 
      */
     public void idht2Slices(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_3D())) {
             nthreads = Math.min(nthreads, slices);
@@ -1822,7 +1782,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
                 ((DenseDoubleMatrix2D) viewSlice(s)).idht2(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1833,8 +1792,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
      *            if true then scaling is performed
      */
     public void idht3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dht3 == null) {
             dht3 = new DoubleDHT_3D(slices, rows, columns);
         }
@@ -1845,7 +1802,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
             dht3.inverse((double[]) copy.elements(), scale);
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1856,8 +1812,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
      *            if true then scaling is performed
      */
     public void idst2Slices(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_3D())) {
             nthreads = Math.min(nthreads, slices);
@@ -1881,7 +1835,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
                 ((DenseDoubleMatrix2D) viewSlice(s)).idst2(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1893,8 +1846,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
      * 
      */
     public void idst3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dst3 == null) {
             dst3 = new DoubleDST_3D(slices, rows, columns);
         }
@@ -1905,7 +1856,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
             dst3.inverse((double[]) copy.elements(), scale);
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1966,10 +1916,8 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
      *             matrix is not a power of 2 number.
      */
     public void ifft3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft3 == null) {
-            fft3 = new DoubleFFT_3D(slices, rows, columns);
+            fft3 = FFTPlanCache.getDoubleFFT_3D(slices, rows, columns);
         }
         if (isNoView == true) {
             fft3.realInverse(elements, scale);
@@ -1978,7 +1926,6 @@ public class DenseDoubleMatrix3D extends DoubleMatrix3D {
             fft3.realInverse((double[]) copy.elements(), scale);
             this.assign((double[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public long index(int slice, int row, int column) {
@@ -18,6 +18,7 @@ import com.org.jtransforms.dst.DoubleDST_1D;
 import com.org.jtransforms.dst.DoubleDST_2D;
 import com.org.jtransforms.fft.DoubleFFT_1D;
 import com.org.jtransforms.fft.DoubleFFT_2D;
+import com.org.jtransforms.fft.FFTPlanCache;
 
 import com.cern.colt.matrix.tdcomplex.impl.DenseLargeDComplexMatrix2D;
 import com.cern.colt.matrix.tdouble.DoubleMatrix1D;
@@ -94,13 +95,10 @@ public class DenseLargeDoubleMatrix2D extends WrapperDoubleMatrix2D {
      */
 
     public void dct2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dct2 == null) {
             dct2 = new DoubleDCT_2D(rows, columns);
         }
         dct2.forward(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -197,13 +195,10 @@ public class DenseLargeDoubleMatrix2D extends WrapperDoubleMatrix2D {
      */
 
     public void dht2() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dht2 == null) {
             dht2 = new DoubleDHT_2D(rows, columns);
         }
         dht2.forward(elements);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -296,13 +291,10 @@ public class DenseLargeDoubleMatrix2D extends WrapperDoubleMatrix2D {
      */
 
     public void dst2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dst2 == null) {
             dst2 = new DoubleDST_2D(rows, columns);
         }
         dst2.forward(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -426,13 +418,10 @@ public class DenseLargeDoubleMatrix2D extends WrapperDoubleMatrix2D {
      */
 
     public void fft2() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new DoubleFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getDoubleFFT_2D(rows, columns);
         }
         fft2.realForward(elements);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -444,10 +433,8 @@ public class DenseLargeDoubleMatrix2D extends WrapperDoubleMatrix2D {
      */
 
     public DenseLargeDComplexMatrix2D getFft2() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new DoubleFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getDoubleFFT_2D(rows, columns);
         }
         DenseLargeDComplexMatrix2D C = new DenseLargeDComplexMatrix2D(rows, columns);
         final double[][] elementsC = (C).elements();
@@ -474,7 +461,6 @@ public class DenseLargeDoubleMatrix2D extends WrapperDoubleMatrix2D {
             }
         }
         fft2.realForwardFull(elementsC);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -488,10 +474,8 @@ public class DenseLargeDoubleMatrix2D extends WrapperDoubleMatrix2D {
 
     public DenseLargeDComplexMatrix2D getFftColumns() {
         if (fftColumns == null) {
-            fftColumns = new DoubleFFT_1D(rows);
+            fftColumns = FFTPlanCache.getDoubleFFT_1D(rows);
         }
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseLargeDComplexMatrix2D C = new DenseLargeDComplexMatrix2D(rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -526,7 +510,6 @@ public class DenseLargeDoubleMatrix2D extends WrapperDoubleMatrix2D {
 
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -539,10 +522,8 @@ public class DenseLargeDoubleMatrix2D extends WrapperDoubleMatrix2D {
 
     public DenseLargeDComplexMatrix2D getFftRows() {
         if (fftRows == null) {
-            fftRows = new DoubleFFT_1D(columns);
+            fftRows = FFTPlanCache.getDoubleFFT_1D(columns);
         }
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseLargeDComplexMatrix2D C = new DenseLargeDComplexMatrix2D(rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -575,7 +556,6 @@ public class DenseLargeDoubleMatrix2D extends WrapperDoubleMatrix2D {
                 C.viewRow(r).assign(row);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -588,8 +568,6 @@ public class DenseLargeDoubleMatrix2D extends WrapperDoubleMatrix2D {
      */
 
     public DenseLargeDComplexMatrix2D getIfft2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         DenseLargeDComplexMatrix2D C = new DenseLargeDComplexMatrix2D(rows, columns);
         final double[][] elementsC = (C).elements();
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
@@ -615,10 +593,9 @@ public class DenseLargeDoubleMatrix2D extends WrapperDoubleMatrix2D {
             }
         }
         if (fft2 == null) {
-            fft2 = new DoubleFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getDoubleFFT_2D(rows, columns);
         }
         fft2.realInverseFull(elementsC, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -632,10 +609,8 @@ public class DenseLargeDoubleMatrix2D extends WrapperDoubleMatrix2D {
 
     public DenseLargeDComplexMatrix2D getIfftColumns(final boolean scale) {
         if (fftColumns == null) {
-            fftColumns = new DoubleFFT_1D(rows);
+            fftColumns = FFTPlanCache.getDoubleFFT_1D(rows);
         }
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseLargeDComplexMatrix2D C = new DenseLargeDComplexMatrix2D(rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -669,7 +644,6 @@ public class DenseLargeDoubleMatrix2D extends WrapperDoubleMatrix2D {
                 C.viewColumn(c).assign(column);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -683,10 +657,8 @@ public class DenseLargeDoubleMatrix2D extends WrapperDoubleMatrix2D {
 
     public DenseLargeDComplexMatrix2D getIfftRows(final boolean scale) {
         if (fftRows == null) {
-            fftRows = new DoubleFFT_1D(columns);
+            fftRows = FFTPlanCache.getDoubleFFT_1D(columns);
         }
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseLargeDComplexMatrix2D C = new DenseLargeDComplexMatrix2D(rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -719,7 +691,6 @@ public class DenseLargeDoubleMatrix2D extends WrapperDoubleMatrix2D {
                 C.viewRow(r).assign(row);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -737,13 +708,10 @@ public class DenseLargeDoubleMatrix2D extends WrapperDoubleMatrix2D {
      */
 
     public void idct2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dct2 == null) {
             dct2 = new DoubleDCT_2D(rows, columns);
         }
         dct2.inverse(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -844,13 +812,10 @@ public class DenseLargeDoubleMatrix2D extends WrapperDoubleMatrix2D {
      */
 
     public void idht2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dht2 == null) {
             dht2 = new DoubleDHT_2D(rows, columns);
         }
         dht2.inverse(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -951,13 +916,10 @@ public class DenseLargeDoubleMatrix2D extends WrapperDoubleMatrix2D {
      */
 
     public void idst2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dst2 == null) {
             dst2 = new DoubleDST_2D(rows, columns);
         }
         dst2.inverse(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1084,13 +1046,10 @@ public class DenseLargeDoubleMatrix2D extends WrapperDoubleMatrix2D {
      */
 
     public void ifft2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new DoubleFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getDoubleFFT_2D(rows, columns);
         }
         fft2.realInverse(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public void setQuick(int row, int column, double value) {
@@ -18,6 +18,7 @@ import com.org.jtransforms.dst.DoubleDST_2D;
 import com.org.jtransforms.dst.DoubleDST_3D;
 import com.org.jtransforms.fft.DoubleFFT_2D;
 import com.org.jtransforms.fft.DoubleFFT_3D;
+import com.org.jtransforms.fft.FFTPlanCache;
 
 import com.cern.colt.matrix.tdcomplex.impl.DenseLargeDComplexMatrix3D;
 import com.cern.colt.matrix.tdouble.DoubleMatrix3D;
@@ -84,13 +85,10 @@ public class DenseLargeDoubleMatrix3D extends WrapperDoubleMatrix3D {
      */
 
     public void dct3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dct3 == null) {
             dct3 = new DoubleDCT_3D(slices, rows, columns);
         }
         dct3.forward(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -142,13 +140,10 @@ public class DenseLargeDoubleMatrix3D extends WrapperDoubleMatrix3D {
      */
 
     public void dht3() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dht3 == null) {
             dht3 = new DoubleDHT_3D(slices, rows, columns);
         }
         dht3.forward(elements);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -200,13 +195,10 @@ public class DenseLargeDoubleMatrix3D extends WrapperDoubleMatrix3D {
      */
 
     public void dst3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dst3 == null) {
             dst3 = new DoubleDST_3D(slices, rows, columns);
         }
         dst3.forward(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -310,13 +302,10 @@ public class DenseLargeDoubleMatrix3D extends WrapperDoubleMatrix3D {
      */
 
     public void fft3() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft3 == null) {
-            fft3 = new DoubleFFT_3D(slices, rows, columns);
+            fft3 = FFTPlanCache.getDoubleFFT_3D(slices, rows, columns);
         }
         fft3.realForward(elements);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -330,7 +319,7 @@ public class DenseLargeDoubleMatrix3D extends WrapperDoubleMatrix3D {
 
     public DenseLargeDComplexMatrix3D getFft2Slices() {
         if (fft2Slices == null) {
-            fft2Slices = new DoubleFFT_2D(rows, columns);
+            fft2Slices = FFTPlanCache.getDoubleFFT_2D(rows, columns);
         }
         final DenseLargeDComplexMatrix3D C = new DenseLargeDComplexMatrix3D(slices, rows, columns);
         final double[][][] cElems = C.elements();
@@ -379,8 +368,6 @@ public class DenseLargeDoubleMatrix3D extends WrapperDoubleMatrix3D {
      */
 
     public DenseLargeDComplexMatrix3D getFft3() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         DenseLargeDComplexMatrix3D C = new DenseLargeDComplexMatrix3D(slices, rows, columns);
         final double[][][] cElems = (C).elements();
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
@@ -416,10 +403,9 @@ public class DenseLargeDoubleMatrix3D extends WrapperDoubleMatrix3D {
             }
         }
         if (fft3 == null) {
-            fft3 = new DoubleFFT_3D(slices, rows, columns);
+            fft3 = FFTPlanCache.getDoubleFFT_3D(slices, rows, columns);
         }
         fft3.realForwardFull(cElems);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -437,7 +423,7 @@ public class DenseLargeDoubleMatrix3D extends WrapperDoubleMatrix3D {
 
     public DenseLargeDComplexMatrix3D getIfft2Slices(final boolean scale) {
         if (fft2Slices == null) {
-            fft2Slices = new DoubleFFT_2D(rows, columns);
+            fft2Slices = FFTPlanCache.getDoubleFFT_2D(rows, columns);
         }
         final DenseLargeDComplexMatrix3D C = new DenseLargeDComplexMatrix3D(slices, rows, columns);
         final double[][][] cElems = C.elements();
@@ -491,8 +477,6 @@ public class DenseLargeDoubleMatrix3D extends WrapperDoubleMatrix3D {
      */
 
     public DenseLargeDComplexMatrix3D getIfft3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         DenseLargeDComplexMatrix3D C = new DenseLargeDComplexMatrix3D(slices, rows, columns);
         final double[][][] cElems = (C).elements();
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
@@ -528,10 +512,9 @@ public class DenseLargeDoubleMatrix3D extends WrapperDoubleMatrix3D {
             }
         }
         if (fft3 == null) {
-            fft3 = new DoubleFFT_3D(slices, rows, columns);
+            fft3 = FFTPlanCache.getDoubleFFT_3D(slices, rows, columns);
         }
         fft3.realInverseFull(cElems, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -597,13 +580,10 @@ public class DenseLargeDoubleMatrix3D extends WrapperDoubleMatrix3D {
      */
 
     public void idht3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dht3 == null) {
             dht3 = new DoubleDHT_3D(slices, rows, columns);
         }
         dht3.inverse(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -664,13 +644,10 @@ public class DenseLargeDoubleMatrix3D extends WrapperDoubleMatrix3D {
      */
 
     public void idct3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dct3 == null) {
             dct3 = new DoubleDCT_3D(slices, rows, columns);
         }
         dct3.inverse(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -727,13 +704,10 @@ public class DenseLargeDoubleMatrix3D extends WrapperDoubleMatrix3D {
      */
 
     public void idst3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dst3 == null) {
             dst3 = new DoubleDST_3D(slices, rows, columns);
         }
         dst3.inverse(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -795,13 +769,10 @@ public class DenseLargeDoubleMatrix3D extends WrapperDoubleMatrix3D {
      */
 
     public void ifft3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft3 == null) {
-            fft3 = new DoubleFFT_3D(slices, rows, columns);
+            fft3 = FFTPlanCache.getDoubleFFT_3D(slices, rows, columns);
         }
         fft3.realInverse(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public void setQuick(int slice, int row, int column, double value) {
@@ -13,6 +13,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
+import com.org.jtransforms.fft.FFTPlanCache;
 import com.org.jtransforms.fft.FloatFFT_2D;
 
 import com.cern.colt.list.tint.IntArrayList;
@@ -1135,14 +1136,11 @@ public class DenseColumnFComplexMatrix2D extends FComplexMatrix2D {
      */
     public void fft2() {
         FComplexMatrix2D transpose = viewDice().copy();
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new FloatFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getFloatFFT_2D(rows, columns);
         }
         fft2.complexForward((float[]) transpose.elements());
         this.assign(transpose.viewDice().copy());
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1439,14 +1437,11 @@ public class DenseColumnFComplexMatrix2D extends FComplexMatrix2D {
      */
     public void ifft2(boolean scale) {
         FComplexMatrix2D transpose = viewDice().copy();
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new FloatFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getFloatFFT_2D(rows, columns);
         }
         fft2.complexInverse((float[]) transpose.elements(), scale);
         this.assign(transpose.viewDice().copy());
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -13,6 +13,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
+import com.org.jtransforms.fft.FFTPlanCache;
 import com.org.jtransforms.fft.FloatFFT_1D;
 
 import com.cern.colt.list.tint.IntArrayList;
@@ -840,10 +841,8 @@ public class DenseFComplexMatrix1D extends FComplexMatrix1D {
      * number.
      */
     public void fft() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft == null) {
-            fft = new FloatFFT_1D(size);
+            fft = FFTPlanCache.getFloatFFT_1D(size);
         }
         if (isNoView) {
             fft.complexForward(elements);
@@ -852,7 +851,6 @@ public class DenseFComplexMatrix1D extends FComplexMatrix1D {
             fft.complexForward((float[]) copy.elements());
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public float[] elements() {
@@ -967,10 +965,8 @@ public class DenseFComplexMatrix1D extends FComplexMatrix1D {
      *            if true, then scaling is performed.
      */
     public void ifft(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft == null) {
-            fft = new FloatFFT_1D(size);
+            fft = FFTPlanCache.getFloatFFT_1D(size);
         }
         if (isNoView) {
             fft.complexInverse(elements, scale);
@@ -979,7 +975,6 @@ public class DenseFComplexMatrix1D extends FComplexMatrix1D {
             fft.complexInverse((float[]) copy.elements(), scale);
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public FComplexMatrix1D like(int size) {
@@ -13,6 +13,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
+import com.org.jtransforms.fft.FFTPlanCache;
 import com.org.jtransforms.fft.FloatFFT_2D;
 
 import com.cern.colt.list.tint.IntArrayList;
@@ -1133,10 +1134,8 @@ public class DenseFComplexMatrix2D extends FComplexMatrix2D {
      * Computes the 2D discrete Fourier transform (DFT) of this matrix.
      */
     public void fft2() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new FloatFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getFloatFFT_2D(rows, columns);
         }
         if (isNoView == true) {
             fft2.complexForward(elements);
@@ -1145,7 +1144,6 @@ public class DenseFComplexMatrix2D extends FComplexMatrix2D {
             fft2.complexForward((float[]) copy.elements());
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1441,10 +1439,8 @@ public class DenseFComplexMatrix2D extends FComplexMatrix2D {
      * 
      */
     public void ifft2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new FloatFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getFloatFFT_2D(rows, columns);
         }
         if (isNoView == true) {
             fft2.complexInverse(elements, scale);
@@ -1453,7 +1449,6 @@ public class DenseFComplexMatrix2D extends FComplexMatrix2D {
             fft2.complexInverse((float[]) copy.elements(), scale);
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -13,6 +13,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
+import com.org.jtransforms.fft.FFTPlanCache;
 import com.org.jtransforms.fft.FloatFFT_3D;
 
 import com.cern.colt.list.tint.IntArrayList;
@@ -1262,10 +1263,8 @@ public class DenseFComplexMatrix3D extends FComplexMatrix3D {
      * Computes the 3D discrete Fourier transform (DFT) of this matrix.
      */
     public void fft3() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft3 == null) {
-            fft3 = new FloatFFT_3D(slices, rows, columns);
+            fft3 = FFTPlanCache.getFloatFFT_3D(slices, rows, columns);
         }
         if (isNoView == true) {
             fft3.complexForward(elements);
@@ -1274,7 +1273,6 @@ public class DenseFComplexMatrix3D extends FComplexMatrix3D {
             fft3.complexForward((float[]) copy.elements());
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public float[] elements() {
@@ -1466,10 +1464,8 @@ public class DenseFComplexMatrix3D extends FComplexMatrix3D {
      *            if true then scaling is performed
      */
     public void ifft3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft3 == null) {
-            fft3 = new FloatFFT_3D(slices, rows, columns);
+            fft3 = FFTPlanCache.getFloatFFT_3D(slices, rows, columns);
         }
         if (isNoView == true) {
             fft3.complexInverse(elements, scale);
@@ -1478,7 +1474,6 @@ public class DenseFComplexMatrix3D extends FComplexMatrix3D {
             fft3.complexInverse((float[]) copy.elements(), scale);
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public FComplexMatrix3D like(int slices, int rows, int columns) {
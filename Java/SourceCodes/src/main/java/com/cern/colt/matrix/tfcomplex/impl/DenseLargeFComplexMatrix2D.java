@@ -10,6 +10,7 @@ package com.cern.colt.matrix.tfcomplex.impl;
 
 import java.util.concurrent.Future;
 
+import com.org.jtransforms.fft.FFTPlanCache;
 import com.org.jtransforms.fft.FloatFFT_1D;
 import com.org.jtransforms.fft.FloatFFT_2D;
 
@@ -59,13 +60,10 @@ public class DenseLargeFComplexMatrix2D extends WrapperFComplexMatrix2D {
      */
 
     public void fft2() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new FloatFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getFloatFFT_2D(rows, columns);
         }
         fft2.complexForward(elements);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -75,7 +73,7 @@ public class DenseLargeFComplexMatrix2D extends WrapperFComplexMatrix2D {
 
     public void fftColumns() {
         if (fftColumns == null) {
-            fftColumns = new FloatFFT_1D(rows);
+            fftColumns = FFTPlanCache.getFloatFFT_1D(rows);
         }
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -116,7 +114,7 @@ public class DenseLargeFComplexMatrix2D extends WrapperFComplexMatrix2D {
 
     public void fftRows() {
         if (fftRows == null) {
-            fftRows = new FloatFFT_1D(columns);
+            fftRows = FFTPlanCache.getFloatFFT_1D(columns);
         }
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -156,13 +154,10 @@ public class DenseLargeFComplexMatrix2D extends WrapperFComplexMatrix2D {
      */
 
     public void ifft2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new FloatFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getFloatFFT_2D(rows, columns);
         }
         fft2.complexInverse(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -175,7 +170,7 @@ public class DenseLargeFComplexMatrix2D extends WrapperFComplexMatrix2D {
 
     public void ifftColumns(final boolean scale) {
         if (fftColumns == null) {
-            fftColumns = new FloatFFT_1D(rows);
+            fftColumns = FFTPlanCache.getFloatFFT_1D(rows);
         }
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -220,7 +215,7 @@ public class DenseLargeFComplexMatrix2D extends WrapperFComplexMatrix2D {
 
     public void ifftRows(final boolean scale) {
         if (fftRows == null) {
-            fftRows = new FloatFFT_1D(columns);
+            fftRows = FFTPlanCache.getFloatFFT_1D(columns);
         }
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -10,6 +10,7 @@ package com.cern.colt.matrix.tfcomplex.impl;
 
 import java.util.concurrent.Future;
 
+import com.org.jtransforms.fft.FFTPlanCache;
 import com.org.jtransforms.fft.FloatFFT_2D;
 import com.org.jtransforms.fft.FloatFFT_3D;
 
@@ -72,7 +73,7 @@ public class DenseLargeFComplexMatrix3D extends WrapperFComplexMatrix3D {
 
     public void fft2Slices() {
         if (fft2Slices == null) {
-            fft2Slices = new FloatFFT_2D(rows, columns);
+            fft2Slices = FFTPlanCache.getFloatFFT_2D(rows, columns);
         }
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_3D())) {
@@ -110,13 +111,10 @@ public class DenseLargeFComplexMatrix3D extends WrapperFComplexMatrix3D {
      */
 
     public void fft3() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft3 == null) {
-            fft3 = new FloatFFT_3D(slices, rows, columns);
+            fft3 = FFTPlanCache.getFloatFFT_3D(slices, rows, columns);
         }
         fft3.complexForward(elements);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -129,7 +127,7 @@ public class DenseLargeFComplexMatrix3D extends WrapperFComplexMatrix3D {
 
     public void ifft2Slices(final boolean scale) {
         if (fft2Slices == null) {
-            fft2Slices = new FloatFFT_2D(rows, columns);
+            fft2Slices = FFTPlanCache.getFloatFFT_2D(rows, columns);
         }
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_3D())) {
@@ -171,13 +169,10 @@ public class DenseLargeFComplexMatrix3D extends WrapperFComplexMatrix3D {
      */
 
     public void ifft3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft3 == null) {
-            fft3 = new FloatFFT_3D(slices, rows, columns);
+            fft3 = FFTPlanCache.getFloatFFT_3D(slices, rows, columns);
         }
         fft3.complexInverse(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public float[][][] elements() {
@@ -31,6 +31,7 @@ import com.cern.colt.matrix.tfloat.FloatMatrix2D;
 import com.org.jtransforms.dct.FloatDCT_2D;
 import com.org.jtransforms.dht.FloatDHT_2D;
 import com.org.jtransforms.dst.FloatDST_2D;
+import com.org.jtransforms.fft.FFTPlanCache;
 import com.org.jtransforms.fft.FloatFFT_2D;
 import com.edu.emory.mathcs.utils.pc.ConcurrencyUtils;
 
@@ -1145,14 +1146,11 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
      */
     public void dct2(boolean scale) {
         FloatMatrix2D transpose = viewDice().copy();
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dct2 == null) {
             dct2 = new FloatDCT_2D(rows, columns);
         }
         dct2.forward((float[]) transpose.elements(), scale);
         this.assign(transpose.viewDice().copy());
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1201,8 +1199,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void dctRows(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -1229,7 +1225,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
                 ((DenseFloatMatrix1D) viewRow(r)).dct(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1238,14 +1233,11 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
      */
     public void dht2() {
         FloatMatrix2D transpose = viewDice().copy();
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dht2 == null) {
             dht2 = new FloatDHT_2D(rows, columns);
         }
         dht2.forward((float[]) transpose.elements());
         this.assign(transpose.viewDice().copy());
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1254,8 +1246,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void dhtColumns() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -1282,7 +1272,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
                 ((DenseFloatMatrix1D) viewColumn(c)).dht();
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1290,8 +1279,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void dhtRows() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -1318,7 +1305,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
                 ((DenseFloatMatrix1D) viewRow(r)).dht();
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1330,14 +1316,11 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
      */
     public void dst2(boolean scale) {
         FloatMatrix2D transpose = viewDice().copy();
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dst2 == null) {
             dst2 = new FloatDST_2D(rows, columns);
         }
         dst2.forward((float[]) transpose.elements(), scale);
         this.assign(transpose.viewDice().copy());
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1385,8 +1368,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void dstRows(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -1413,7 +1394,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
                 ((DenseFloatMatrix1D) viewRow(r)).dst(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public float[] elements() {
@@ -1454,14 +1434,11 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
      */
     public void fft2() {
         FloatMatrix2D transpose = viewDice().copy();
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new FloatFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getFloatFFT_2D(rows, columns);
         }
         fft2.realForward((float[]) transpose.elements());
         this.assign(transpose.viewDice().copy());
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public FloatMatrix2D forEachNonZero(final com.cern.colt.function.tfloat.IntIntFloatFunction function) {
@@ -1572,10 +1549,8 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public DenseFComplexMatrix2D getFft2() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new FloatFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getFloatFFT_2D(rows, columns);
         }
         DenseFComplexMatrix2D C = new DenseFComplexMatrix2D(rows, columns);
         final float[] elementsC = (C).elements();
@@ -1623,7 +1598,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
             }
         }
         fft2.realForwardFull(elementsC);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1635,8 +1609,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
      *         matrix.
      */
     public DenseFComplexMatrix2D getFftColumns() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseFComplexMatrix2D C = new DenseFComplexMatrix2D(rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -1664,7 +1636,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
                 C.viewColumn(c).assign(((DenseFloatMatrix1D) viewColumn(c)).getFft());
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1675,8 +1646,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
      * @return the discrete Fourier transform (DFT) of each row of this matrix.
      */
     public DenseFComplexMatrix2D getFftRows() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseFComplexMatrix2D C = new DenseFComplexMatrix2D(rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -1704,7 +1673,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
                 C.viewRow(r).assign(((DenseFloatMatrix1D) viewRow(r)).getFft());
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1716,10 +1684,8 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
      *         matrix.
      */
     public FComplexMatrix2D getIfft2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new FloatFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getFloatFFT_2D(rows, columns);
         }
         DenseFComplexMatrix2D C = new DenseFComplexMatrix2D(rows, columns);
         final float[] elementsC = (C).elements();
@@ -1767,7 +1733,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
             }
         }
         fft2.realInverseFull(elementsC, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1779,8 +1744,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
      *         column of this matrix.
      */
     public FComplexMatrix2D getIfftColumns(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseFComplexMatrix2D C = new DenseFComplexMatrix2D(rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -1808,7 +1771,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
                 C.viewColumn(c).assign(((DenseFloatMatrix1D) viewColumn(c)).getIfft(scale));
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1820,8 +1782,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
      *         of this matrix.
      */
     public FComplexMatrix2D getIfftRows(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseFComplexMatrix2D C = new DenseFComplexMatrix2D(rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -1848,7 +1808,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
                 C.viewRow(r).assign(((DenseFloatMatrix1D) viewRow(r)).getIfft(scale));
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1925,14 +1884,11 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
      */
     public void idct2(boolean scale) {
         FloatMatrix2D transpose = viewDice().copy();
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dct2 == null) {
             dct2 = new FloatDCT_2D(rows, columns);
         }
         dct2.inverse((float[]) transpose.elements(), scale);
         this.assign(transpose.viewDice().copy());
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1981,8 +1937,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void idctRows(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -2009,7 +1963,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
                 ((DenseFloatMatrix1D) viewRow(r)).idct(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2022,14 +1975,11 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
      */
     public void idht2(boolean scale) {
         FloatMatrix2D transpose = viewDice().copy();
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dht2 == null) {
             dht2 = new FloatDHT_2D(rows, columns);
         }
         dht2.inverse((float[]) transpose.elements(), scale);
         this.assign(transpose.viewDice().copy());
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2041,8 +1991,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void idhtColumns(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -2069,7 +2017,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
                 ((DenseFloatMatrix1D) viewColumn(c)).idht(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2081,8 +2028,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void idhtRows(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -2109,7 +2054,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
                 ((DenseFloatMatrix1D) viewRow(r)).idht(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2122,14 +2066,11 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
      */
     public void idst2(boolean scale) {
         FloatMatrix2D transpose = viewDice().copy();
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dst2 == null) {
             dst2 = new FloatDST_2D(rows, columns);
         }
         dst2.inverse((float[]) transpose.elements(), scale);
         this.assign(transpose.viewDice().copy());
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2178,8 +2119,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void idstRows(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -2206,7 +2145,6 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
                 ((DenseFloatMatrix1D) viewRow(r)).idst(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2245,14 +2183,11 @@ public class DenseColumnFloatMatrix2D extends FloatMatrix2D {
      */
     public void ifft2(boolean scale) {
         FloatMatrix2D transpose = viewDice().copy();
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new FloatFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getFloatFFT_2D(rows, columns);
         }
         fft2.realInverse((float[]) transpose.elements(), scale);
         this.assign(transpose.viewDice().copy());
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public long index(int row, int column) {
@@ -21,6 +21,7 @@ import com.cern.colt.matrix.tfloat.FloatMatrix3D;
 import com.org.jtransforms.dct.FloatDCT_1D;
 import com.org.jtransforms.dht.FloatDHT_1D;
 import com.org.jtransforms.dst.FloatDST_1D;
+import com.org.jtransforms.fft.FFTPlanCache;
 import com.org.jtransforms.fft.FloatFFT_1D;
 import com.edu.emory.mathcs.utils.pc.ConcurrencyUtils;
 
@@ -722,8 +723,6 @@ public class DenseFloatMatrix1D extends FloatMatrix1D {
      *            if true then scaling is performed
      */
     public void dct(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dct == null) {
             dct = new FloatDCT_1D(size);
         }
@@ -734,7 +733,6 @@ public class DenseFloatMatrix1D extends FloatMatrix1D {
             dct.forward((float[]) copy.elements(), scale);
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -742,8 +740,6 @@ public class DenseFloatMatrix1D extends FloatMatrix1D {
      * 
      */
     public void dht() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dht == null) {
             dht = new FloatDHT_1D(size);
         }
@@ -754,7 +750,6 @@ public class DenseFloatMatrix1D extends FloatMatrix1D {
             dht.forward((float[]) copy.elements());
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -764,8 +759,6 @@ public class DenseFloatMatrix1D extends FloatMatrix1D {
      *            if true then scaling is performed
      */
     public void dst(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dst == null) {
             dst = new FloatDST_1D(size);
         }
@@ -776,7 +769,6 @@ public class DenseFloatMatrix1D extends FloatMatrix1D {
             dst.forward((float[]) copy.elements(), scale);
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public float[] elements() {
@@ -800,10 +792,8 @@ public class DenseFloatMatrix1D extends FloatMatrix1D {
      * 
      */
     public void fft() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft == null) {
-            fft = new FloatFFT_1D(size);
+            fft = FFTPlanCache.getFloatFFT_1D(size);
         }
         if (isNoView) {
             fft.realForward(elements);
@@ -812,7 +802,6 @@ public class DenseFloatMatrix1D extends FloatMatrix1D {
             fft.realForward((float[]) copy.elements());
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -822,8 +811,6 @@ public class DenseFloatMatrix1D extends FloatMatrix1D {
      * @return the discrete Fourier transform (DFT) of this matrix.
      */
     public DenseFComplexMatrix1D getFft() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final float[] elems;
         if (isNoView == true) {
             elems = elements;
@@ -834,10 +821,9 @@ public class DenseFloatMatrix1D extends FloatMatrix1D {
         final float[] elementsC = (c).elements();
         System.arraycopy(elems, 0, elementsC, 0, size);
         if (fft == null) {
-            fft = new FloatFFT_1D(size);
+            fft = FFTPlanCache.getFloatFFT_1D(size);
         }
         fft.realForwardFull(elementsC);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return c;
     }
 
@@ -849,8 +835,6 @@ public class DenseFloatMatrix1D extends FloatMatrix1D {
      *         matrix.
      */
     public DenseFComplexMatrix1D getIfft(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final float[] elems;
         if (isNoView == true) {
             elems = elements;
@@ -861,10 +845,9 @@ public class DenseFloatMatrix1D extends FloatMatrix1D {
         final float[] elementsC = (c).elements();
         System.arraycopy(elems, 0, elementsC, 0, size);
         if (fft == null) {
-            fft = new FloatFFT_1D(size);
+            fft = FFTPlanCache.getFloatFFT_1D(size);
         }
         fft.realInverseFull(elementsC, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return c;
     }
 
@@ -1138,8 +1121,6 @@ public class DenseFloatMatrix1D extends FloatMatrix1D {
      *            if true then scaling is performed
      */
     public void idct(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dct == null) {
             dct = new FloatDCT_1D(size);
         }
@@ -1150,7 +1131,6 @@ public class DenseFloatMatrix1D extends FloatMatrix1D {
             dct.inverse((float[]) copy.elements(), scale);
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1161,8 +1141,6 @@ public class DenseFloatMatrix1D extends FloatMatrix1D {
      *            if true then scaling is performed
      */
     public void idht(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dht == null) {
             dht = new FloatDHT_1D(size);
         }
@@ -1173,7 +1151,6 @@ public class DenseFloatMatrix1D extends FloatMatrix1D {
             dht.inverse((float[]) copy.elements(), scale);
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1183,8 +1160,6 @@ public class DenseFloatMatrix1D extends FloatMatrix1D {
      *            if true then scaling is performed
      */
     public void idst(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dst == null) {
             dst = new FloatDST_1D(size);
         }
@@ -1195,7 +1170,6 @@ public class DenseFloatMatrix1D extends FloatMatrix1D {
             dst.inverse((float[]) copy.elements(), scale);
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1214,10 +1188,8 @@ public class DenseFloatMatrix1D extends FloatMatrix1D {
      * 
      */
     public void ifft(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft == null) {
-            fft = new FloatFFT_1D(size);
+            fft = FFTPlanCache.getFloatFFT_1D(size);
         }
         if (isNoView) {
             fft.realInverse(elements, scale);
@@ -1226,7 +1198,6 @@ public class DenseFloatMatrix1D extends FloatMatrix1D {
             fft.realInverse((float[]) copy.elements(), scale);
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public FloatMatrix1D like(int size) {
@@ -24,6 +24,7 @@ import com.cern.colt.matrix.tfloat.FloatMatrix2D;
 import com.org.jtransforms.dct.FloatDCT_2D;
 import com.org.jtransforms.dht.FloatDHT_2D;
 import com.org.jtransforms.dst.FloatDST_2D;
+import com.org.jtransforms.fft.FFTPlanCache;
 import com.org.jtransforms.fft.FloatFFT_2D;
 import com.edu.emory.mathcs.utils.pc.ConcurrencyUtils;
 
@@ -1141,8 +1142,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void dct2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dct2 == null) {
             dct2 = new FloatDCT_2D(rows, columns);
         }
@@ -1153,7 +1152,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
             dct2.forward((float[]) copy.elements(), scale);
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1202,8 +1200,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void dctRows(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -1230,7 +1226,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
                 ((DenseFloatMatrix1D) viewRow(r)).dct(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1238,8 +1233,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void dht2() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dht2 == null) {
             dht2 = new FloatDHT_2D(rows, columns);
         }
@@ -1250,7 +1243,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
             dht2.forward((float[]) copy.elements());
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1259,8 +1251,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void dhtColumns() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -1287,7 +1277,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
                 ((DenseFloatMatrix1D) viewColumn(c)).dht();
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1295,8 +1284,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void dhtRows() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -1323,7 +1310,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
                 ((DenseFloatMatrix1D) viewRow(r)).dht();
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1334,8 +1320,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void dst2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dst2 == null) {
             dst2 = new FloatDST_2D(rows, columns);
         }
@@ -1346,7 +1330,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
             dst2.forward((float[]) copy.elements(), scale);
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1358,8 +1341,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void dstColumns(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -1386,7 +1367,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
                 ((DenseFloatMatrix1D) viewColumn(c)).dst(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1397,8 +1377,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void dstRows(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -1425,7 +1403,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
                 ((DenseFloatMatrix1D) viewRow(r)).dst(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public float[] elements() {
@@ -1465,10 +1442,8 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void fft2() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new FloatFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getFloatFFT_2D(rows, columns);
         }
         if (isNoView == true) {
             fft2.realForward(elements);
@@ -1477,7 +1452,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
             fft2.realForward((float[]) copy.elements());
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public FloatMatrix2D forEachNonZero(final com.cern.colt.function.tfloat.IntIntFloatFunction function) {
@@ -1588,10 +1562,8 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public DenseFComplexMatrix2D getFft2() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new FloatFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getFloatFFT_2D(rows, columns);
         }
         final float[] elementsA;
         if (isNoView == true) {
@@ -1625,7 +1597,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
             }
         }
         fft2.realForwardFull(elementsC);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1637,8 +1608,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      *         matrix.
      */
     public DenseFComplexMatrix2D getFftColumns() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseFComplexMatrix2D C = new DenseFComplexMatrix2D(rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -1666,7 +1635,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
                 C.viewColumn(c).assign(((DenseFloatMatrix1D) viewColumn(c)).getFft());
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1677,8 +1645,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      * @return the discrete Fourier transform (DFT) of each row of this matrix.
      */
     public DenseFComplexMatrix2D getFftRows() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseFComplexMatrix2D C = new DenseFComplexMatrix2D(rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -1706,7 +1672,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
                 C.viewRow(r).assign(((DenseFloatMatrix1D) viewRow(r)).getFft());
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1718,8 +1683,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      *         matrix.
      */
     public DenseFComplexMatrix2D getIfft2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         DenseFComplexMatrix2D C = new DenseFComplexMatrix2D(rows, columns);
         final float[] elementsC = (C).elements();
         final float[] elementsA;
@@ -1757,10 +1720,9 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
             }
         }
         if (fft2 == null) {
-            fft2 = new FloatFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getFloatFFT_2D(rows, columns);
         }
         fft2.realInverseFull(elementsC, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1772,8 +1734,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      *         column of this matrix.
      */
     public DenseFComplexMatrix2D getIfftColumns(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseFComplexMatrix2D C = new DenseFComplexMatrix2D(rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -1801,7 +1761,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
                 C.viewColumn(c).assign(((DenseFloatMatrix1D) viewColumn(c)).getIfft(scale));
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1813,8 +1772,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      *         of this matrix.
      */
     public DenseFComplexMatrix2D getIfftRows(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseFComplexMatrix2D C = new DenseFComplexMatrix2D(rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -1841,7 +1798,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
                 C.viewRow(r).assign(((DenseFloatMatrix1D) viewRow(r)).getIfft(scale));
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -2065,8 +2021,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void idct2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dct2 == null) {
             dct2 = new FloatDCT_2D(rows, columns);
         }
@@ -2077,7 +2031,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
             dct2.inverse((float[]) copy.elements(), scale);
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2089,8 +2042,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void idctColumns(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -2117,7 +2068,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
                 ((DenseFloatMatrix1D) viewColumn(c)).idct(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2129,8 +2079,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void idctRows(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -2156,7 +2104,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
                 ((DenseFloatMatrix1D) viewRow(r)).idct(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2168,8 +2115,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void idht2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dht2 == null) {
             dht2 = new FloatDHT_2D(rows, columns);
         }
@@ -2180,7 +2125,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
             dht2.inverse((float[]) copy.elements(), scale);
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2192,8 +2136,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void idhtColumns(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -2220,7 +2162,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
                 ((DenseFloatMatrix1D) viewColumn(c)).idht(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2232,8 +2173,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void idhtRows(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -2259,7 +2198,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
                 ((DenseFloatMatrix1D) viewRow(r)).idht(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2271,8 +2209,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void idst2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dst2 == null) {
             dst2 = new FloatDST_2D(rows, columns);
         }
@@ -2283,7 +2219,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
             dst2.inverse((float[]) copy.elements(), scale);
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2295,8 +2230,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void idstColumns(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -2323,7 +2256,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
                 ((DenseFloatMatrix1D) viewColumn(c)).idst(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2335,8 +2267,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void idstRows(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
             ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
@@ -2362,7 +2292,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
                 ((DenseFloatMatrix1D) viewRow(r)).idst(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -2400,10 +2329,8 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
      * 
      */
     public void ifft2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new FloatFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getFloatFFT_2D(rows, columns);
         }
         if (isNoView == true) {
             fft2.realInverse(elements, scale);
@@ -2412,7 +2339,6 @@ public class DenseFloatMatrix2D extends FloatMatrix2D {
             fft2.realInverse((float[]) copy.elements(), scale);
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public long index(int row, int column) {
@@ -21,6 +21,7 @@ import com.cern.colt.matrix.tfloat.FloatMatrix3D;
 import com.org.jtransforms.dct.FloatDCT_3D;
 import com.org.jtransforms.dht.FloatDHT_3D;
 import com.org.jtransforms.dst.FloatDST_3D;
+import com.org.jtransforms.fft.FFTPlanCache;
 import com.org.jtransforms.fft.FloatFFT_3D;
 import com.edu.emory.mathcs.utils.pc.ConcurrencyUtils;
 
@@ -1031,8 +1032,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
      * 
      */
     public void dct2Slices(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_3D())) {
             nthreads = Math.min(nthreads, slices);
@@ -1056,7 +1055,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
                 ((DenseFloatMatrix2D) viewSlice(s)).dct2(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1067,8 +1065,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
      * 
      */
     public void dct3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dct3 == null) {
             dct3 = new FloatDCT_3D(slices, rows, columns);
         }
@@ -1079,7 +1075,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
             dct3.forward((float[]) copy.elements(), scale);
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1088,8 +1083,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
      * 
      */
     public void dht2Slices() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_3D())) {
             nthreads = Math.min(nthreads, slices);
@@ -1113,7 +1106,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
                 ((DenseFloatMatrix2D) viewSlice(s)).dht2();
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1121,8 +1113,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
      * 
      */
     public void dht3() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dht3 == null) {
             dht3 = new FloatDHT_3D(slices, rows, columns);
         }
@@ -1133,7 +1123,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
             dht3.forward((float[]) copy.elements());
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1145,8 +1134,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
      * 
      */
     public void dst2Slices(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_3D())) {
             nthreads = Math.min(nthreads, slices);
@@ -1170,7 +1157,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
                 ((DenseFloatMatrix2D) viewSlice(s)).dst2(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1181,8 +1167,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
      * 
      */
     public void dst3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dst3 == null) {
             dst3 = new FloatDST_3D(slices, rows, columns);
         }
@@ -1193,7 +1177,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
             dst3.forward((float[]) copy.elements(), scale);
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public float[] elements() {
@@ -1257,10 +1240,8 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
      *             matrix is not a power of 2 number.
      */
     public void fft3() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft3 == null) {
-            fft3 = new FloatFFT_3D(slices, rows, columns);
+            fft3 = FFTPlanCache.getFloatFFT_3D(slices, rows, columns);
         }
         if (isNoView == true) {
             fft3.realForward(elements);
@@ -1269,7 +1250,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
             fft3.realForward((float[]) copy.elements());
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1281,8 +1261,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
      * 
      */
     public DenseFComplexMatrix3D getFft2Slices() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseFComplexMatrix3D C = new DenseFComplexMatrix3D(slices, rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_3D())) {
@@ -1307,7 +1285,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
                 C.viewSlice(s).assign(((DenseFloatMatrix2D) viewSlice(s)).getFft2());
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1318,8 +1295,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
      * @return the 3D discrete Fourier transform (DFT) of this matrix.
      */
     public DenseFComplexMatrix3D getFft3() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         DenseFComplexMatrix3D C = new DenseFComplexMatrix3D(slices, rows, columns);
         final int sliceStride = rows * columns;
         final int rowStride = columns;
@@ -1362,10 +1337,9 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
             }
         }
         if (fft3 == null) {
-            fft3 = new FloatFFT_3D(slices, rows, columns);
+            fft3 = FFTPlanCache.getFloatFFT_3D(slices, rows, columns);
         }
         fft3.realForwardFull(cElems);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1380,8 +1354,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
      *         slice of this matrix.
      */
     public DenseFComplexMatrix3D getIfft2Slices(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseFComplexMatrix3D C = new DenseFComplexMatrix3D(slices, rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_3D())) {
@@ -1406,7 +1378,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
                 C.viewSlice(s).assign(((DenseFloatMatrix2D) viewSlice(s)).getIfft2(scale));
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1422,8 +1393,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
      * 
      */
     public DenseFComplexMatrix3D getIfft3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         DenseFComplexMatrix3D C = new DenseFComplexMatrix3D(slices, rows, columns);
         final int sliceStride = rows * columns;
         final int rowStride = columns;
@@ -1466,10 +1435,9 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
             }
         }
         if (fft3 == null) {
-            fft3 = new FloatFFT_3D(slices, rows, columns);
+            fft3 = FFTPlanCache.getFloatFFT_3D(slices, rows, columns);
         }
         fft3.realInverseFull(cElems, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -1735,8 +1703,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
      *            if true then scaling is performed
      */
     public void idct2Slices(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_3D())) {
             nthreads = Math.min(nthreads, slices);
@@ -1760,7 +1726,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
                 ((DenseFloatMatrix2D) viewSlice(s)).idct2(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1771,8 +1736,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
      *            if true then scaling is performed
      */
     public void idct3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dct3 == null) {
             dct3 = new FloatDCT_3D(slices, rows, columns);
         }
@@ -1783,7 +1746,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
             dct3.inverse((float[]) copy.elements(), scale);
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1795,8 +1757,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
      * 
      */
     public void idht2Slices(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_3D())) {
             nthreads = Math.min(nthreads, slices);
@@ -1820,7 +1780,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
                 ((DenseFloatMatrix2D) viewSlice(s)).idht2(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1831,8 +1790,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
      *            if true then scaling is performed
      */
     public void idht3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dht3 == null) {
             dht3 = new FloatDHT_3D(slices, rows, columns);
         }
@@ -1843,7 +1800,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
             dht3.inverse((float[]) copy.elements(), scale);
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1854,8 +1810,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
      *            if true then scaling is performed
      */
     public void idst2Slices(final boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_3D())) {
             nthreads = Math.min(nthreads, slices);
@@ -1879,7 +1833,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
                 ((DenseFloatMatrix2D) viewSlice(s)).idst2(scale);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1891,8 +1844,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
      * 
      */
     public void idst3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dst3 == null) {
             dst3 = new FloatDST_3D(slices, rows, columns);
         }
@@ -1903,7 +1854,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
             dst3.inverse((float[]) copy.elements(), scale);
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1964,10 +1914,8 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
      *             matrix is not a power of 2 number.
      */
     public void ifft3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft3 == null) {
-            fft3 = new FloatFFT_3D(slices, rows, columns);
+            fft3 = FFTPlanCache.getFloatFFT_3D(slices, rows, columns);
         }
         if (isNoView == true) {
             fft3.realInverse(elements, scale);
@@ -1976,7 +1924,6 @@ public class DenseFloatMatrix3D extends FloatMatrix3D {
             fft3.realInverse((float[]) copy.elements(), scale);
             this.assign((float[]) copy.elements());
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public long index(int slice, int row, int column) {
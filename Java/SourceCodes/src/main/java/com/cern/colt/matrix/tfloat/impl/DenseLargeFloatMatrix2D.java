@@ -19,6 +19,7 @@ import com.org.jtransforms.dht.FloatDHT_1D;
 import com.org.jtransforms.dht.FloatDHT_2D;
 import com.org.jtransforms.dst.FloatDST_1D;
 import com.org.jtransforms.dst.FloatDST_2D;
+import com.org.jtransforms.fft.FFTPlanCache;
 import com.org.jtransforms.fft.FloatFFT_1D;
 import com.org.jtransforms.fft.FloatFFT_2D;
 import com.edu.emory.mathcs.utils.pc.ConcurrencyUtils;
@@ -93,13 +94,10 @@ public class DenseLargeFloatMatrix2D extends WrapperFloatMatrix2D {
      */
 
     public void dct2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dct2 == null) {
             dct2 = new FloatDCT_2D(rows, columns);
         }
         dct2.forward(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -196,13 +194,10 @@ public class DenseLargeFloatMatrix2D extends WrapperFloatMatrix2D {
      */
 
     public void dht2() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dht2 == null) {
             dht2 = new FloatDHT_2D(rows, columns);
         }
         dht2.forward(elements);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -295,13 +290,10 @@ public class DenseLargeFloatMatrix2D extends WrapperFloatMatrix2D {
      */
 
     public void dst2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dst2 == null) {
             dst2 = new FloatDST_2D(rows, columns);
         }
         dst2.forward(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -425,13 +417,10 @@ public class DenseLargeFloatMatrix2D extends WrapperFloatMatrix2D {
      */
 
     public void fft2() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new FloatFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getFloatFFT_2D(rows, columns);
         }
         fft2.realForward(elements);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -443,10 +432,8 @@ public class DenseLargeFloatMatrix2D extends WrapperFloatMatrix2D {
      */
 
     public DenseLargeFComplexMatrix2D getFft2() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new FloatFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getFloatFFT_2D(rows, columns);
         }
         DenseLargeFComplexMatrix2D C = new DenseLargeFComplexMatrix2D(rows, columns);
         final float[][] elementsC = (C).elements();
@@ -473,7 +460,6 @@ public class DenseLargeFloatMatrix2D extends WrapperFloatMatrix2D {
             }
         }
         fft2.realForwardFull(elementsC);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -487,10 +473,8 @@ public class DenseLargeFloatMatrix2D extends WrapperFloatMatrix2D {
 
     public DenseLargeFComplexMatrix2D getFftColumns() {
         if (fftColumns == null) {
-            fftColumns = new FloatFFT_1D(rows);
+            fftColumns = FFTPlanCache.getFloatFFT_1D(rows);
         }
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseLargeFComplexMatrix2D C = new DenseLargeFComplexMatrix2D(rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -525,7 +509,6 @@ public class DenseLargeFloatMatrix2D extends WrapperFloatMatrix2D {
 
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -538,10 +521,8 @@ public class DenseLargeFloatMatrix2D extends WrapperFloatMatrix2D {
 
     public DenseLargeFComplexMatrix2D getFftRows() {
         if (fftRows == null) {
-            fftRows = new FloatFFT_1D(columns);
+            fftRows = FFTPlanCache.getFloatFFT_1D(columns);
         }
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseLargeFComplexMatrix2D C = new DenseLargeFComplexMatrix2D(rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -574,7 +555,6 @@ public class DenseLargeFloatMatrix2D extends WrapperFloatMatrix2D {
                 C.viewRow(r).assign(row);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -587,8 +567,6 @@ public class DenseLargeFloatMatrix2D extends WrapperFloatMatrix2D {
      */
 
     public DenseLargeFComplexMatrix2D getIfft2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         DenseLargeFComplexMatrix2D C = new DenseLargeFComplexMatrix2D(rows, columns);
         final float[][] elementsC = (C).elements();
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
@@ -614,10 +592,9 @@ public class DenseLargeFloatMatrix2D extends WrapperFloatMatrix2D {
             }
         }
         if (fft2 == null) {
-            fft2 = new FloatFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getFloatFFT_2D(rows, columns);
         }
         fft2.realInverseFull(elementsC, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -631,10 +608,8 @@ public class DenseLargeFloatMatrix2D extends WrapperFloatMatrix2D {
 
     public DenseLargeFComplexMatrix2D getIfftColumns(final boolean scale) {
         if (fftColumns == null) {
-            fftColumns = new FloatFFT_1D(rows);
+            fftColumns = FFTPlanCache.getFloatFFT_1D(rows);
         }
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseLargeFComplexMatrix2D C = new DenseLargeFComplexMatrix2D(rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -668,7 +643,6 @@ public class DenseLargeFloatMatrix2D extends WrapperFloatMatrix2D {
                 C.viewColumn(c).assign(column);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -682,10 +656,8 @@ public class DenseLargeFloatMatrix2D extends WrapperFloatMatrix2D {
 
     public DenseLargeFComplexMatrix2D getIfftRows(final boolean scale) {
         if (fftRows == null) {
-            fftRows = new FloatFFT_1D(columns);
+            fftRows = FFTPlanCache.getFloatFFT_1D(columns);
         }
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         final DenseLargeFComplexMatrix2D C = new DenseLargeFComplexMatrix2D(rows, columns);
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -718,7 +690,6 @@ public class DenseLargeFloatMatrix2D extends WrapperFloatMatrix2D {
                 C.viewRow(r).assign(row);
             }
         }
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -736,13 +707,10 @@ public class DenseLargeFloatMatrix2D extends WrapperFloatMatrix2D {
      */
 
     public void idct2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dct2 == null) {
             dct2 = new FloatDCT_2D(rows, columns);
         }
         dct2.inverse(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -843,13 +811,10 @@ public class DenseLargeFloatMatrix2D extends WrapperFloatMatrix2D {
      */
 
     public void idht2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dht2 == null) {
             dht2 = new FloatDHT_2D(rows, columns);
         }
         dht2.inverse(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -950,13 +915,10 @@ public class DenseLargeFloatMatrix2D extends WrapperFloatMatrix2D {
      */
 
     public void idst2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dst2 == null) {
             dst2 = new FloatDST_2D(rows, columns);
         }
         dst2.inverse(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -1083,13 +1045,10 @@ public class DenseLargeFloatMatrix2D extends WrapperFloatMatrix2D {
      */
 
     public void ifft2(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new FloatFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getFloatFFT_2D(rows, columns);
         }
         fft2.realInverse(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public void setQuick(int row, int column, float value) {
@@ -18,6 +18,7 @@ import com.org.jtransforms.dht.FloatDHT_2D;
 import com.org.jtransforms.dht.FloatDHT_3D;
 import com.org.jtransforms.dst.FloatDST_2D;
 import com.org.jtransforms.dst.FloatDST_3D;
+import com.org.jtransforms.fft.FFTPlanCache;
 import com.org.jtransforms.fft.FloatFFT_2D;
 import com.org.jtransforms.fft.FloatFFT_3D;
 import com.edu.emory.mathcs.utils.pc.ConcurrencyUtils;
@@ -83,13 +84,10 @@ public class DenseLargeFloatMatrix3D extends WrapperFloatMatrix3D {
      */
 
     public void dct3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dct3 == null) {
             dct3 = new FloatDCT_3D(slices, rows, columns);
         }
         dct3.forward(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -141,13 +139,10 @@ public class DenseLargeFloatMatrix3D extends WrapperFloatMatrix3D {
      */
 
     public void dht3() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dht3 == null) {
             dht3 = new FloatDHT_3D(slices, rows, columns);
         }
         dht3.forward(elements);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -199,13 +194,10 @@ public class DenseLargeFloatMatrix3D extends WrapperFloatMatrix3D {
      */
 
     public void dst3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dst3 == null) {
             dst3 = new FloatDST_3D(slices, rows, columns);
         }
         dst3.forward(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -309,13 +301,10 @@ public class DenseLargeFloatMatrix3D extends WrapperFloatMatrix3D {
      */
 
     public void fft3() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft3 == null) {
-            fft3 = new FloatFFT_3D(slices, rows, columns);
+            fft3 = FFTPlanCache.getFloatFFT_3D(slices, rows, columns);
         }
         fft3.realForward(elements);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -329,7 +318,7 @@ public class DenseLargeFloatMatrix3D extends WrapperFloatMatrix3D {
 
     public DenseLargeFComplexMatrix3D getFft2Slices() {
         if (fft2Slices == null) {
-            fft2Slices = new FloatFFT_2D(rows, columns);
+            fft2Slices = FFTPlanCache.getFloatFFT_2D(rows, columns);
         }
         final DenseLargeFComplexMatrix3D C = new DenseLargeFComplexMatrix3D(slices, rows, columns);
         final float[][][] cElems = C.elements();
@@ -378,8 +367,6 @@ public class DenseLargeFloatMatrix3D extends WrapperFloatMatrix3D {
      */
 
     public DenseLargeFComplexMatrix3D getFft3() {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         DenseLargeFComplexMatrix3D C = new DenseLargeFComplexMatrix3D(slices, rows, columns);
         final float[][][] cElems = (C).elements();
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
@@ -415,10 +402,9 @@ public class DenseLargeFloatMatrix3D extends WrapperFloatMatrix3D {
             }
         }
         if (fft3 == null) {
-            fft3 = new FloatFFT_3D(slices, rows, columns);
+            fft3 = FFTPlanCache.getFloatFFT_3D(slices, rows, columns);
         }
         fft3.realForwardFull(cElems);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -436,7 +422,7 @@ public class DenseLargeFloatMatrix3D extends WrapperFloatMatrix3D {
 
     public DenseLargeFComplexMatrix3D getIfft2Slices(final boolean scale) {
         if (fft2Slices == null) {
-            fft2Slices = new FloatFFT_2D(rows, columns);
+            fft2Slices = FFTPlanCache.getFloatFFT_2D(rows, columns);
         }
         final DenseLargeFComplexMatrix3D C = new DenseLargeFComplexMatrix3D(slices, rows, columns);
         final float[][][] cElems = C.elements();
@@ -490,8 +476,6 @@ public class DenseLargeFloatMatrix3D extends WrapperFloatMatrix3D {
      */
 
     public DenseLargeFComplexMatrix3D getIfft3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         DenseLargeFComplexMatrix3D C = new DenseLargeFComplexMatrix3D(slices, rows, columns);
         final float[][][] cElems = (C).elements();
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
@@ -527,10 +511,9 @@ public class DenseLargeFloatMatrix3D extends WrapperFloatMatrix3D {
             }
         }
         if (fft3 == null) {
-            fft3 = new FloatFFT_3D(slices, rows, columns);
+            fft3 = FFTPlanCache.getFloatFFT_3D(slices, rows, columns);
         }
         fft3.realInverseFull(cElems, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
         return C;
     }
 
@@ -596,13 +579,10 @@ public class DenseLargeFloatMatrix3D extends WrapperFloatMatrix3D {
      */
 
     public void idht3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dht3 == null) {
             dht3 = new FloatDHT_3D(slices, rows, columns);
         }
         dht3.inverse(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -663,13 +643,10 @@ public class DenseLargeFloatMatrix3D extends WrapperFloatMatrix3D {
      */
 
     public void idct3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dct3 == null) {
             dct3 = new FloatDCT_3D(slices, rows, columns);
         }
         dct3.inverse(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -726,13 +703,10 @@ public class DenseLargeFloatMatrix3D extends WrapperFloatMatrix3D {
      */
 
     public void idst3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (dst3 == null) {
             dst3 = new FloatDST_3D(slices, rows, columns);
         }
         dst3.inverse(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     /**
@@ -794,13 +768,10 @@ public class DenseLargeFloatMatrix3D extends WrapperFloatMatrix3D {
      */
 
     public void ifft3(boolean scale) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft3 == null) {
-            fft3 = new FloatFFT_3D(slices, rows, columns);
+            fft3 = FFTPlanCache.getFloatFFT_3D(slices, rows, columns);
         }
         fft3.realInverse(elements, scale);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
     }
 
     public void setQuick(int slice, int row, int column, float value) {
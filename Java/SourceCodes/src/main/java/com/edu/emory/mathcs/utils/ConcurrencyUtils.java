@@ -126,6 +126,9 @@ public class ConcurrencyUtils {
         if (THREAD_POOL.isShutdown() || THREAD_POOL.isTerminated()) {
             THREAD_POOL = Executors.newCachedThreadPool(new CustomThreadFactory(new CustomExceptionHandler()));
         }
+        if (com.edu.emory.mathcs.utils.pc.ConcurrencyUtils.getLocalNumberOfThreads() > 0) {
+            return THREAD_POOL.submit(serial(task));
+        }
         return THREAD_POOL.submit(task);
     }
 
@@ -141,6 +144,9 @@ public class ConcurrencyUtils {
         if (THREAD_POOL.isShutdown() || THREAD_POOL.isTerminated()) {
             THREAD_POOL = Executors.newCachedThreadPool(new CustomThreadFactory(new CustomExceptionHandler()));
         }
+        if (com.edu.emory.mathcs.utils.pc.ConcurrencyUtils.getLocalNumberOfThreads() > 0) {
+            return THREAD_POOL.submit(serial(task));
+        }
         return THREAD_POOL.submit(task);
     }
 
@@ -154,12 +160,65 @@ public class ConcurrencyUtils {
     }
 
     /**
-     * Returns the current number of threads.
+     * Returns the current number of threads. A value set with
+     * {@link #setLocalNumberOfThreads(int)} on the calling thread takes
+     * precedence over the global one.
      * 
      * @return the current number of threads.
      */
     public static int getNumberOfThreads() {
-        return NTHREADS;
+        int n = com.edu.emory.mathcs.utils.pc.ConcurrencyUtils.getLocalNumberOfThreads();
+        return n > 0 ? n : NTHREADS;
+    }
+
+    /**
+     * Sets the number of threads used by computations started from the
+     * calling thread only. The global number of threads is left unchanged.
+     * The value is kept by com.edu.emory.mathcs.utils.pc.ConcurrencyUtils,
+     * so that both libraries see it.
+     * 
+     * @param n
+     */
+    public static void setLocalNumberOfThreads(int n) {
+        com.edu.emory.mathcs.utils.pc.ConcurrencyUtils.setLocalNumberOfThreads(n);
+    }
+
+    /**
+     * Removes the number of threads set with
+     * {@link #setLocalNumberOfThreads(int)} from the calling thread.
+     */
+    public static void clearLocalNumberOfThreads() {
+        com.edu.emory.mathcs.utils.pc.ConcurrencyUtils.clearLocalNumberOfThreads();
+    }
+
+    /*
+     * Tasks submitted under a local number of threads are already a share of
+     * that budget, so anything they start themselves runs sequentially.
+     */
+    private static <T> Callable<T> serial(final Callable<T> task) {
+        return new Callable<T>() {
+            public T call() throws Exception {
+                com.edu.emory.mathcs.utils.pc.ConcurrencyUtils.setLocalNumberOfThreads(1);
+                try {
+                    return task.call();
+                } finally {
+                    com.edu.emory.mathcs.utils.pc.ConcurrencyUtils.clearLocalNumberOfThreads();
+                }
+            }
+        };
+    }
+
+    private static Runnable serial(final Runnable task) {
+        return new Runnable() {
+            public void run() {
+                com.edu.emory.mathcs.utils.pc.ConcurrencyUtils.setLocalNumberOfThreads(1);
+                try {
+                    task.run();
+                } finally {
+                    com.edu.emory.mathcs.utils.pc.ConcurrencyUtils.clearLocalNumberOfThreads();
+                }
+            }
+        };
     }
 
     /**
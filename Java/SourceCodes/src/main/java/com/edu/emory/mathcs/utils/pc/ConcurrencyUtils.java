@@ -60,6 +60,8 @@ public class ConcurrencyUtils {
 
     private static int NTHREADS = getNumberOfProcessors();
 
+    private static final ThreadLocal<Integer> LOCAL_NTHREADS = new ThreadLocal<Integer>();
+
     private static int THREADS_BEGIN_N_1D_FFT_2THREADS = 8192;
 
     private static int THREADS_BEGIN_N_1D_FFT_4THREADS = 65536;
@@ -127,6 +129,9 @@ public class ConcurrencyUtils {
         if (THREAD_POOL.isShutdown() || THREAD_POOL.isTerminated()) {
             THREAD_POOL = Executors.newCachedThreadPool(new CustomThreadFactory(new CustomExceptionHandler()));
         }
+        if (LOCAL_NTHREADS.get() != null) {
+            return THREAD_POOL.submit(serial(task));
+        }
         return THREAD_POOL.submit(task);
     }
 
@@ -142,9 +147,42 @@ public class ConcurrencyUtils {
         if (THREAD_POOL.isShutdown() || THREAD_POOL.isTerminated()) {
             THREAD_POOL = Executors.newCachedThreadPool(new CustomThreadFactory(new CustomExceptionHandler()));
         }
+        if (LOCAL_NTHREADS.get() != null) {
+            return THREAD_POOL.submit(serial(task));
+        }
         return THREAD_POOL.submit(task);
     }
 
+    /*
+     * Tasks submitted under a local number of threads are already a share of
+     * that budget, so anything they start themselves runs sequentially.
+     */
+    private static <T> Callable<T> serial(final Callable<T> task) {
+        return new Callable<T>() {
+            public T call() throws Exception {
+                LOCAL_NTHREADS.set(1);
+                try {
+                    return task.call();
+                } finally {
+                    LOCAL_NTHREADS.remove();
+                }
+            }
+        };
+    }
+
+    private static Runnable serial(final Runnable task) {
+        return new Runnable() {
+            public void run() {
+                LOCAL_NTHREADS.set(1);
+                try {
+                    task.run();
+                } finally {
+                    LOCAL_NTHREADS.remove();
+                }
+            }
+        };
+    }
+
     /**
      * Returns the number of available processors
      * 
@@ -155,12 +193,49 @@ public class ConcurrencyUtils {
     }
 
     /**
-     * Returns the current number of threads.
+     * Returns the current number of threads. A value set with
+     * {@link #setLocalNumberOfThreads(int)} on the calling thread takes
+     * precedence over the global one.
      * 
      * @return the current number of threads.
      */
     public static int getNumberOfThreads() {
-        return NTHREADS;
+        Integer n = LOCAL_NTHREADS.get();
+        return n != null ? n : NTHREADS;
+    }
+
+    /**
+     * Sets the number of threads used by computations started from the
+     * calling thread only. The global number of threads is left unchanged.
+     * 
+     * @param n
+     */
+    public static void setLocalNumberOfThreads(int n) {
+        if (n < 1)
+            throw new IllegalArgumentException("n must be greater or equal 1");
+        LOCAL_NTHREADS.set(n);
+    }
+
+    /**
+     * Removes the number of threads set with
+     * {@link #setLocalNumberOfThreads(int)} from the calling thread.
+     */
+    public static void clearLocalNumberOfThreads() {
+        LOCAL_NTHREADS.remove();
+    }
+
+    /**
+     * Returns the number of threads set with
+     * {@link #setLocalNumberOfThreads(int)} on the calling thread, or 0 if
+     * none is set. This is the one per-thread value shared with
+     * com.edu.emory.mathcs.utils.ConcurrencyUtils and
+     * com.pl.edu.icm.jlargearrays.ConcurrencyUtils.
+     * 
+     * @return the local number of threads, or 0
+     */
+    public static int getLocalNumberOfThreads() {
+        Integer n = LOCAL_NTHREADS.get();
+        return n != null ? n : 0;
     }
 
     /**
@@ -0,0 +1,368 @@
+package com.hijizhou.cores.deconvolution;
+/**
+ * DECONVOLUTIONENGINE: headless PURE-LET deconvolution of a queue of 2D
+ * frames (matrices or image files), without the ImageJ user interface
+ *
+ * Up to <code>concurrentFrames</code> frames are deconvolved at the same
+ * time, each with its share of the global number of threads, and at most
+ * <code>queueCapacity</code> more wait for a free worker: beyond that,
+ * submit blocks until a frame completes, so a producer reading files
+ * faster than they are processed holds a bounded number of frames in
+ * memory.
+ *
+ * The frames are padded, deconvolved (whole or by tiles) and cropped as in
+ * the PureLetDeconv2D dialog, with the settings of a DeconvolutionParameters
+ * object, which must not be changed while frames are running.
+ *
+ * @reference
+ *       [1] J. Li, F. Luisier and T. Blu, PURE-LET image deconvolution,
+ *             IEEE Trans. Image Process., vol. 27, no. 1, pp. 92-105, 2018.
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import com.edu.emory.mathcs.restoretools.spectral.DoubleCommon2D;
+import com.hijizhou.utilities.BufferArena;
+import com.hijizhou.utilities.ImageUtil;
+import com.hijizhou.utilities.Metrics;
+import com.hijizhou.utilities.PSFUtil;
+import com.hijizhou.utilities.Padding;
+import com.hijizhou.utilities.ProgressListener;
+import com.hijizhou.utilities.ThreadUtil;
+import ij.IJ;
+import ij.ImagePlus;
+import ij.io.FileSaver;
+import ij.process.ImageProcessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class DeconvolutionEngine {
+
+    private final DeconvolutionParameters params;
+    private final ThreadPoolExecutor executor;
+    private final Semaphore slots;  // frames running or queued
+    private final int threadsPerFrame;
+    private volatile ProgressListener listener = ProgressListener.SILENT;
+    private volatile Metrics metrics = new Metrics();
+    // temporaries of the deconvolutions, reused by each thread from one frame to
+    // the next within its share of the heap
+    private final ThreadLocal<BufferArena> arenas = new ThreadLocal<BufferArena>() {
+        protected BufferArena initialValue() {
+            return BufferArena.forWorker(executor.getCorePoolSize());
+        }
+    };
+
+    /**
+     * @param concurrentFrames number of frames deconvolved at the same time
+     * @param queueCapacity    number of frames that may wait for a worker
+     *                         before submit blocks
+     */
+    public DeconvolutionEngine(DeconvolutionParameters params, int concurrentFrames, int queueCapacity) {
+        if (concurrentFrames < 1 || queueCapacity < 0) {
+            throw new IllegalArgumentException("invalid number of frames: " + concurrentFrames + ", " + queueCapacity);
+        }
+        this.params = params;
+        this.executor = new ThreadPoolExecutor(concurrentFrames, concurrentFrames, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        this.slots = new Semaphore(concurrentFrames + queueCapacity);
+        this.threadsPerFrame = ThreadUtil.getThreadsPerTask(concurrentFrames);
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Metrics the deconvolutions of all the frames add up in (by default one
+     * of the engine's own).
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Queues the deconvolution of <code>frame</code>, waiting while the
+     * queue is full.
+     */
+    public Future<DoubleMatrix2D> submit(final DoubleMatrix2D frame) throws InterruptedException {
+        return submit(new Callable<DoubleMatrix2D>() {
+            public DoubleMatrix2D call() {
+                return deconvolve(frame);
+            }
+        });
+    }
+
+    /**
+     * Queues the deconvolution of the image in <code>input</code> (any
+     * format ImageJ opens; the current slice of a stack), saved as a 32-bit
+     * TIFF to <code>output</code>. The file is read by the worker, so queued
+     * frames do not hold their pixels.
+     */
+    public Future<File> submit(final File input, final File output) throws InterruptedException {
+        return submit(new Callable<File>() {
+            public File call() throws IOException {
+                ImagePlus imp = IJ.openImage(input.getPath());
+                if (imp == null) {
+                    throw new IOException("cannot open " + input);
+                }
+                ImageProcessor ip = imp.getProcessor();
+                DoubleMatrix2D result = deconvolve(toMatrix(ip));
+                ImagePlus impOutput = ImageUtil.matrix2Plus(result, ip.getColorModel(), output.getName());
+                if (!new FileSaver(impOutput).saveAsTiff(output.getPath())) {
+                    throw new IOException("cannot save " + output);
+                }
+                return output;
+            }
+        });
+    }
+
+    /**
+     * Queues all the <code>inputs</code>, each saved under the same name in
+     * <code>outputDirectory</code>; returns once the last one is queued.
+     */
+    public List<Future<File>> submitAll(List<File> inputs, File outputDirectory) throws InterruptedException {
+        List<Future<File>> futures = new ArrayList<Future<File>>(inputs.size());
+        for (File input : inputs) {
+            futures.add(submit(input, new File(outputDirectory, input.getName())));
+        }
+        return futures;
+    }
+
+    /**
+     * Deconvolves <code>frame</code> in the calling thread.
+     */
+    public DoubleMatrix2D deconvolve(DoubleMatrix2D frame) {
+        DoubleMatrix2D input = Padding.pad(frame, params.getPadding(), getBorder());
+
+        DoubleMatrix2D output;
+        if (params.getTileSize() > 0) {
+            // the tiles take the PSF at their own size: none of the frame's
+            MW_PURE_LET2DTiled tiled = new MW_PURE_LET2DTiled(input, getTilePSF(), params.getNoiseParameters(),
+                    listener, params.isLog());
+            tiled.setTileSize(params.getTileSize());
+            tiled.setSharedCoefficients(params.isSharedCoefficients(), params.getSampleTiles());
+            tiled.setSinglePrecision(params.isSinglePrecision());
+            tiled.setSolver(params.getSolver());
+            tiled.setWienerParameters(params.getWienerParameters());
+            tiled.setNumberOfThreads(threadsPerFrame);
+            tiled.setMetrics(metrics);
+            tiled.doDeconvolution();
+            output = tiled.getOutputMatrix();
+        } else {
+            DoubleMatrix2D psf = getPSF(input.rows(), input.columns());
+            if (psf.rows() != input.rows() || psf.columns() != input.columns()) {
+                psf = PSFUtil.getCenteredPSF(psf, input.rows(), input.columns());
+            }
+            output = deconvolve(input, new LETSpectra2D(psf, MW_PURE_LET2D.LEVEL), threadsPerFrame);
+        }
+        return finish(output, frame.rows(), frame.columns());
+    }
+
+    /**
+     * Deconvolves the channels of a multi-channel image in the calling
+     * thread's share of the threads. The channels have the same size and
+     * PSF, so the PSF and filter spectra are computed once for all of them;
+     * as many channels run concurrently as the threads and the free memory
+     * allow. Tiled frames are deconvolved one channel after the other.
+     */
+    public DoubleMatrix2D[] deconvolveChannels(final DoubleMatrix2D[] channels) {
+        final DoubleMatrix2D[] outputs = new DoubleMatrix2D[channels.length];
+        if (params.getTileSize() > 0 || channels.length == 1) {
+            for (int c = 0; c < channels.length; c++) {
+                outputs[c] = deconvolve(channels[c]);
+            }
+            return outputs;
+        }
+        final int height = channels[0].rows();
+        final int width = channels[0].columns();
+        for (int c = 1; c < channels.length; c++) {
+            if (channels[c].rows() != height || channels[c].columns() != width) {
+                throw new IllegalArgumentException("channels of different sizes");
+            }
+        }
+
+        final int border = getBorder();
+        int[] size = Padding.getPaddedSize(height, width, params.getPadding(), border);
+        DoubleMatrix2D psf = PSFUtil.getCenteredPSF(getPSF(size[0], size[1]), size[0], size[1]);
+        final LETSpectra2D spectra = new LETSpectra2D(psf, MW_PURE_LET2D.LEVEL);
+
+        int concurrent = getConcurrentChannels(channels.length, size[0], size[1]);
+        final int threads = Math.max(1, threadsPerFrame / concurrent);
+        if (params.isLog()) {
+            listener.log(channels.length + " channels, " + concurrent + " at a time with " + threads + " threads each");
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(concurrent);
+        List<Future<?>> futures = new ArrayList<Future<?>>(channels.length);
+        for (int c = 0; c < channels.length; c++) {
+            final int channel = c;
+            futures.add(pool.submit(new Runnable() {
+                public void run() {
+                    ThreadUtil.setLocalNumberOfThreads(threads);
+                    try {
+                        DoubleMatrix2D input = Padding.pad(channels[channel], params.getPadding(), border);
+                        outputs[channel] = finish(deconvolve(input, spectra, threads), height, width);
+                        listener.setMessage("Channel " + channel + " finished");
+                    } finally {
+                        ThreadUtil.clearLocalNumberOfThreads();
+                    }
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            throw ThreadUtil.unchecked(e);
+        } catch (ExecutionException e) {
+            throw ThreadUtil.unchecked(e);
+        } finally {
+            // after a failure, the channels still to come are not run
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            pool.shutdown();
+        }
+        return outputs;
+    }
+
+    /**
+     * Number of channels of rows x columns run at the same time: at most
+     * one per thread, and as many as fit in the free heap.
+     */
+    private int getConcurrentChannels(int numChannels, int rows, int columns) {
+        int concurrent = Math.max(1, Math.min(numChannels, threadsPerFrame));
+        long perChannel = MW_PURE_LET2D.getMemoryEstimate(rows, columns, params.getWienerParameters().length,
+                params.isSinglePrecision(), Math.max(1, threadsPerFrame / concurrent));
+        Runtime runtime = Runtime.getRuntime();
+        long free = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        return (int) Math.max(1, Math.min(concurrent, free / perChannel));
+    }
+
+    private DoubleMatrix2D deconvolve(DoubleMatrix2D input, LETSpectra2D spectra, int threads) {
+        MW_PURE_LET2D mw = new MW_PURE_LET2D(input, spectra, params.getNoiseParameters(), listener,
+                params.isLog(), params.isSinglePrecision());
+        mw.setWienerParameters(params.getWienerParameters());
+        mw.setNumberOfThreads(threads);
+        mw.setSolver(params.getSolver());
+        mw.setBufferArena(arenas.get());
+        mw.setMetrics(metrics);
+        mw.doDeconvolution();
+        return mw.getOutputMatrix();
+    }
+
+    /**
+     * Padding border: the border of the parameters plus the PSF support, so
+     * that the wrap-around stays outside the image.
+     */
+    private int getBorder() {
+        DoubleMatrix2D psf = params.getPSF();
+        if (psf == null) {
+            return params.getBorder() + (int) Math.ceil(3 * params.getPSFSigma());
+        }
+        return params.getBorder() + Math.max(psf.rows(), psf.columns()) / 2;
+    }
+
+    /**
+     * PSF for a padded frame of rows x columns: the Gaussian one, built at
+     * that size, or the user-supplied one.
+     */
+    private DoubleMatrix2D getPSF(int rows, int columns) {
+        DoubleMatrix2D psf = params.getPSF();
+        if (psf == null) {
+            return PSFUtil.getGaussPSF(rows, columns, params.getPSFSigma());
+        }
+        return psf;
+    }
+
+    /**
+     * PSF for the tiles of a frame: the Gaussian one, built over its support
+     * only (6 standard deviations around its centre), or the user-supplied
+     * one.
+     */
+    private DoubleMatrix2D getTilePSF() {
+        DoubleMatrix2D psf = params.getPSF();
+        if (psf == null) {
+            int size = 2 * ((int) Math.ceil(6 * params.getPSFSigma()) + 1);
+            return PSFUtil.getGaussPSF(size, size, params.getPSFSigma());
+        }
+        return psf;
+    }
+
+    /**
+     * Crops the padding and post-filters if requested.
+     */
+    private DoubleMatrix2D finish(DoubleMatrix2D output, int height, int width) {
+        output = Padding.crop(output, height, width);
+        if (params.isPostFiltering()) {
+            listener.setMessage("Starting post-filtering...");
+            output = ImageUtil.postfiltering(output, 30 / params.getAlpha());
+        }
+        return output;
+    }
+
+    /**
+     * Stops accepting frames; the queued ones are still processed.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    private <T> Future<T> submit(final Callable<T> task) throws InterruptedException {
+        slots.acquire();
+        FutureTask<T> future = new FutureTask<T>(new Callable<T>() {
+            public T call() throws Exception {
+                ThreadUtil.setLocalNumberOfThreads(threadsPerFrame);
+                try {
+                    return task.call();
+                } finally {
+                    ThreadUtil.clearLocalNumberOfThreads();
+                }
+            }
+        }) {
+            // also called when a queued frame is cancelled
+            protected void done() {
+                slots.release();
+            }
+        };
+        try {
+            executor.execute(future);
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            throw e;
+        }
+        return future;
+    }
+
+    private static DoubleMatrix2D toMatrix(ImageProcessor ip) {
+        DoubleMatrix2D matrix = new DenseDoubleMatrix2D(ip.getHeight(), ip.getWidth());
+        DoubleCommon2D.assignPixelsToMatrix(matrix, ip);
+        return matrix;
+    }
+}
@@ -0,0 +1,175 @@
+package com.hijizhou.cores.deconvolution;
+/**
+ * DECONVOLUTIONPARAMETERS: settings of a PURE-LET deconvolution run by
+ * DeconvolutionEngine, the same as in the PureLetDeconv2D dialog
+ *
+ * The PSF is either a Gaussian of given FWHM, built at the (padded) size of
+ * each frame (over its support only for tiled frames), or a user-supplied
+ * PSF centred on its maximum.
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.hijizhou.utilities.Padding;
+
+public class DeconvolutionParameters {
+
+    private double alpha = 1.0;      // Poisson noise scaling
+    private double sigma = 0.0;      // standard deviation of the Gaussian noise
+    private double psfFWHM = 3.0;    // FWHM of the Gaussian PSF, in pixels
+    private DoubleMatrix2D psf = null;
+    private Padding.Mode padding = Padding.Mode.MIRROR;
+    private int border = 16;
+    private boolean singlePrecision = false;
+    private int tileSize = 0;        // 0: the whole frame at once
+    private boolean sharedCoefficients = false;
+    private int sampleTiles = 4;
+    private boolean postFiltering = false;
+    private boolean log = false;
+    private LETSolver solver = LETSolver.CHOLESKY;
+    private double[] wiener = {1e-4};  // Wiener regularization parameters
+
+    public double[] getNoiseParameters() {
+        return new double[]{alpha, sigma};
+    }
+
+    public void setNoiseParameters(double alpha, double sigma) {
+        this.alpha = alpha;
+        this.sigma = sigma;
+    }
+
+    public double getAlpha() {
+        return alpha;
+    }
+
+    public double getSigma() {
+        return sigma;
+    }
+
+    public double getPSFFWHM() {
+        return psfFWHM;
+    }
+
+    /**
+     * Uses a Gaussian PSF of the given FWHM (in pixels).
+     */
+    public void setPSFFWHM(double psfFWHM) {
+        this.psfFWHM = psfFWHM;
+        this.psf = null;
+    }
+
+    public double getPSFSigma() {
+        return psfFWHM / 2.355;
+    }
+
+    /**
+     * User-supplied PSF, or null for the Gaussian one.
+     */
+    public DoubleMatrix2D getPSF() {
+        return psf;
+    }
+
+    /**
+     * Uses <code>psf</code>, centred on its maximum, for all the frames; it
+     * is copied.
+     */
+    public void setPSF(DoubleMatrix2D psf) {
+        this.psf = psf.copy();
+    }
+
+    public Padding.Mode getPadding() {
+        return padding;
+    }
+
+    public int getBorder() {
+        return border;
+    }
+
+    /**
+     * @param border minimum number of pixels added on each side, on top of
+     *               the PSF support
+     */
+    public void setPadding(Padding.Mode padding, int border) {
+        this.padding = padding;
+        this.border = border;
+    }
+
+    public boolean isSinglePrecision() {
+        return singlePrecision;
+    }
+
+    public void setSinglePrecision(boolean singlePrecision) {
+        this.singlePrecision = singlePrecision;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Frames are processed by tiles of <code>tileSize</code> pixels (see
+     * MW_PURE_LET2DTiled), or at once if 0.
+     */
+    public void setTileSize(int tileSize) {
+        this.tileSize = tileSize;
+    }
+
+    public boolean isSharedCoefficients() {
+        return sharedCoefficients;
+    }
+
+    public int getSampleTiles() {
+        return sampleTiles;
+    }
+
+    public void setSharedCoefficients(boolean sharedCoefficients, int sampleTiles) {
+        this.sharedCoefficients = sharedCoefficients;
+        this.sampleTiles = sampleTiles;
+    }
+
+    public boolean isPostFiltering() {
+        return postFiltering;
+    }
+
+    public void setPostFiltering(boolean postFiltering) {
+        this.postFiltering = postFiltering;
+    }
+
+    public LETSolver getSolver() {
+        return solver;
+    }
+
+    /**
+     * Solver of the LET linear system (Cholesky by default).
+     */
+    public void setSolver(LETSolver solver) {
+        this.solver = solver;
+    }
+
+    public double[] getWienerParameters() {
+        return wiener.clone();
+    }
+
+    /**
+     * Wiener regularization parameters, relative to alpha times the mean
+     * intensity (see MW_PURE_LET2D.setWienerParameters). By default only
+     * 1e-4, as the dialog has always used; each one more adds a set of basis
+     * functions and as much again to the cost.
+     */
+    public void setWienerParameters(double... wiener) {
+        if (wiener.length == 0) {
+            throw new IllegalArgumentException("no Wiener regularization parameter");
+        }
+        this.wiener = wiener.clone();
+    }
+
+    public boolean isLog() {
+        return log;
+    }
+
+    public void setLog(boolean log) {
+        this.log = log;
+    }
+}
@@ -0,0 +1,520 @@
+package com.hijizhou.cores.deconvolution;
+/**
+ * GRAMACCUMULATOR: normal equations of the LET coefficients, built as the
+ * sub-band processes complete
+ *
+ * Each basis function (the weighted half spectrum of one thresholded
+ * sub-band) is multiplied with the ones already received and with the
+ * right-hand side as soon as it arrives, so that the (pixels x subbands)
+ * matrix of basis functions and its conjugate transpose never need to be
+ * formed. Results are stored by basis index, which makes the system
+ * independent of the order in which the processes complete.
+ *
+ * In single precision the basis functions are stored in float, which halves
+ * the memory they take; the products are still summed in double. Past a
+ * memory budget, the basis functions are spilled to a memory-mapped file
+ * (see MappedVectorFile) and read back block by block.
+ *
+ * @reference
+ *       [1] J. Li, F. Luisier and T. Blu, PURE-LET image deconvolution,
+ *             IEEE Trans. Image Process., vol. 27, no. 1, pp. 92-105, 2018.
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+import com.cern.colt.matrix.tdcomplex.DComplexMatrix1D;
+import com.cern.colt.matrix.tdcomplex.impl.DenseDComplexMatrix1D;
+import com.cern.colt.matrix.tdouble.DoubleMatrix1D;
+import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import com.cern.colt.matrix.tfcomplex.FComplexMatrix1D;
+import com.cern.colt.matrix.tfcomplex.impl.DenseFComplexMatrix1D;
+import com.edu.emory.mathcs.utils.pc.ConcurrencyUtils;
+import com.hijizhou.utilities.MappedVectorFile;
+import com.hijizhou.utilities.ThreadUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+public class GramAccumulator {
+
+    // complex elements per block of the dot products
+    private static final int BLOCK = 2048;
+
+    private final double[][] basis;
+    private final float[][] basisF;
+    private final boolean[] received;
+    private final double[][] gram;
+    private final double[] rhs;
+    private final double[] div;
+    private final double[] y;
+    private final float[] yF;
+    private final int length;
+    private final int[] spilled;  // index of each spilled basis function in the file, or -1
+    private MappedVectorFile spill = null;
+    private boolean spilling = false;
+    private File spillDirectory;
+    private long memoryBudget;
+    private long kept = 0;        // bytes of basis functions kept in memory
+
+    /**
+     * @param size number of basis functions
+     * @param y    right-hand side vector (weighted like the basis functions)
+     */
+    public GramAccumulator(int size, DComplexMatrix1D y) {
+        this(size, y, false);
+    }
+
+    /**
+     * @param size            number of basis functions
+     * @param y               right-hand side vector (weighted like the basis
+     *                        functions)
+     * @param singlePrecision whether the basis functions are given (and
+     *                        stored) in float
+     */
+    public GramAccumulator(int size, DComplexMatrix1D y, boolean singlePrecision) {
+        this.received = new boolean[size];
+        this.gram = new double[size][size];
+        this.rhs = new double[size];
+        this.div = new double[size];
+        this.length = (int) y.size();
+        this.spilled = new int[size];
+        Arrays.fill(this.spilled, -1);
+        if (singlePrecision) {
+            this.basis = null;
+            this.basisF = new float[size][];
+            this.y = null;
+            this.yF = toFloat(elementsOf(y));
+        } else {
+            this.basis = new double[size][];
+            this.basisF = null;
+            this.y = elementsOf(y);
+            this.yF = null;
+        }
+    }
+
+    /**
+     * Spills the basis functions to a file in <code>directory</code> (null
+     * for the default temporary directory) once those kept in memory take
+     * <code>memoryBudget</code> bytes. The file, created on the first spill,
+     * is deleted by close.
+     */
+    public void setSpill(File directory, long memoryBudget) {
+        this.spilling = true;
+        this.spillDirectory = directory;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Number of basis functions spilled to the file.
+     */
+    public int getSpilledCount() {
+        int count = 0;
+        for (int j = 0; j < spilled.length; j++) {
+            if (spilled[j] >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Deletes the spill file, if any; combine can no longer be called.
+     */
+    public void close() {
+        if (spill != null) {
+            spill.close();
+            spill = null;
+        }
+    }
+
+    /**
+     * Adds the basis function <code>index</code> and its divergence term.
+     * The vector is kept (not copied) for the final combination.
+     */
+    public void add(int index, DComplexMatrix1D f, double divergence) {
+        if (basis == null) {
+            throw new IllegalStateException("single precision accumulator, basis functions must be in float");
+        }
+        checkLength(f.size());
+        double[] e = elementsOf(f);
+        int[] others = getIndices();
+        int m = others.length;
+        double[][] vectors = new double[m + 2][];
+        for (int j = 0; j < m; j++) {
+            vectors[j] = basis[others[j]];
+        }
+        int[] mapped = getSpilled(others, m + 2);
+        vectors[m] = e;
+        vectors[m + 1] = y;
+
+        store(index, others, dots(e, vectors, mapped), divergence);
+        if (toSpill(8L * e.length)) {
+            try {
+                spilled[index] = getSpill().add(e);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        } else {
+            basis[index] = e;
+        }
+    }
+
+    /**
+     * Single precision version of add(int, DComplexMatrix1D, double).
+     */
+    public void add(int index, FComplexMatrix1D f, double divergence) {
+        if (basisF == null) {
+            throw new IllegalStateException("double precision accumulator, basis functions must be in double");
+        }
+        checkLength(f.size());
+        float[] e = elementsOf(f);
+        int[] others = getIndices();
+        int m = others.length;
+        float[][] vectors = new float[m + 2][];
+        for (int j = 0; j < m; j++) {
+            vectors[j] = basisF[others[j]];
+        }
+        int[] mapped = getSpilled(others, m + 2);
+        vectors[m] = e;
+        vectors[m + 1] = yF;
+
+        store(index, others, dots(e, vectors, mapped), divergence);
+        if (toSpill(4L * e.length)) {
+            try {
+                spilled[index] = getSpill().add(e);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        } else {
+            basisF[index] = e;
+        }
+    }
+
+    /**
+     * Position in the spill file of each of the basis functions
+     * <code>others</code>, or -1, padded with -1 to <code>count</code>.
+     */
+    private int[] getSpilled(int[] others, int count) {
+        int[] mapped = new int[count];
+        Arrays.fill(mapped, -1);
+        for (int j = 0; j < others.length; j++) {
+            mapped[j] = spilled[others[j]];
+        }
+        return mapped;
+    }
+
+    private MappedVectorFile getSpill() throws IOException {
+        if (spill == null) {
+            spill = new MappedVectorFile(spillDirectory);
+        }
+        return spill;
+    }
+
+    private boolean toSpill(long bytes) {
+        if (spilling && kept + bytes > memoryBudget) {
+            return true;
+        }
+        kept += bytes;
+        return false;
+    }
+
+    private void checkLength(long size) {
+        if (size != length) {
+            throw new IllegalArgumentException("basis function of length " + size + ", expected " + length);
+        }
+    }
+
+    private void store(int index, int[] others, double[] dots, double divergence) {
+        int m = others.length;
+        for (int j = 0; j < m; j++) {
+            gram[index][others[j]] = dots[j];
+            gram[others[j]][index] = dots[j];
+        }
+        gram[index][index] = dots[m];
+        rhs[index] = dots[m + 1];
+        div[index] = divergence;
+        received[index] = true;
+    }
+
+    /**
+     * Indices of the basis functions received so far, in increasing order.
+     */
+    public int[] getIndices() {
+        int m = 0;
+        for (int j = 0; j < received.length; j++) {
+            if (received[j]) {
+                m++;
+            }
+        }
+        int[] indices = new int[m];
+        m = 0;
+        for (int j = 0; j < received.length; j++) {
+            if (received[j]) {
+                indices[m++] = j;
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Real part of the Gram matrix F'*F of the received basis functions.
+     */
+    public DoubleMatrix2D getGram() {
+        int[] indices = getIndices();
+        DoubleMatrix2D A = new DenseDoubleMatrix2D(indices.length, indices.length);
+        for (int i = 0; i < indices.length; i++) {
+            for (int j = 0; j < indices.length; j++) {
+                A.setQuick(i, j, gram[indices[i]][indices[j]]);
+            }
+        }
+        return A;
+    }
+
+    /**
+     * Real part of F'*y.
+     */
+    public DoubleMatrix1D getRhs() {
+        return select(rhs);
+    }
+
+    public DoubleMatrix1D getDiv() {
+        return select(div);
+    }
+
+    /**
+     * Sum of the received basis functions weighted by <code>coeff</code>
+     * (one coefficient per index returned by getIndices).
+     */
+    public DComplexMatrix1D combine(DoubleMatrix1D coeff) {
+        final int[] indices = getIndices();
+        final double[] c = coeff.toArray();
+        final DenseDComplexMatrix1D result = new DenseDComplexMatrix1D(length);
+        final double[] r = result.elements();
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        int size = 2 * length;
+        if ((nthreads > 1) && (length >= ConcurrencyUtils.getThreadsBeginN_1D())) {
+            Future<?>[] futures = new Future[nthreads];
+            int k = (length / nthreads) * 2;
+            for (int j = 0; j < nthreads; j++) {
+                final int firstIdx = j * k;
+                final int lastIdx = (j == nthreads - 1) ? size : firstIdx + k;
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        combine(indices, c, r, firstIdx, lastIdx);
+                    }
+                });
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+        } else {
+            combine(indices, c, r, 0, size);
+        }
+        return result;
+    }
+
+    private void combine(int[] indices, double[] c, double[] r, int firstIdx, int lastIdx) {
+        for (int i = 0; i < indices.length; i++) {
+            double ci = c[i];
+            if (spilled[indices[i]] >= 0) {
+                combineSpilled(spilled[indices[i]], ci, r, firstIdx, lastIdx);
+            } else if (basis != null) {
+                double[] e = basis[indices[i]];
+                for (int idx = firstIdx; idx < lastIdx; idx++) {
+                    r[idx] += ci * e[idx];
+                }
+            } else {
+                float[] e = basisF[indices[i]];
+                for (int idx = firstIdx; idx < lastIdx; idx++) {
+                    r[idx] += ci * e[idx];
+                }
+            }
+        }
+    }
+
+    private void combineSpilled(int vector, double ci, double[] r, int firstIdx, int lastIdx) {
+        if (basis != null) {
+            double[] buffer = new double[2 * BLOCK];
+            for (int first = firstIdx; first < lastIdx; first += 2 * BLOCK) {
+                int n = Math.min(2 * BLOCK, lastIdx - first);
+                spill.get(vector, first, buffer, 0, n);
+                for (int idx = 0; idx < n; idx++) {
+                    r[first + idx] += ci * buffer[idx];
+                }
+            }
+        } else {
+            float[] buffer = new float[2 * BLOCK];
+            for (int first = firstIdx; first < lastIdx; first += 2 * BLOCK) {
+                int n = Math.min(2 * BLOCK, lastIdx - first);
+                spill.get(vector, first, buffer, 0, n);
+                for (int idx = 0; idx < n; idx++) {
+                    r[first + idx] += ci * buffer[idx];
+                }
+            }
+        }
+    }
+
+    private DoubleMatrix1D select(double[] values) {
+        int[] indices = getIndices();
+        DoubleMatrix1D v = new DenseDoubleMatrix1D(indices.length);
+        for (int i = 0; i < indices.length; i++) {
+            v.setQuick(i, values[indices[i]]);
+        }
+        return v;
+    }
+
+    /**
+     * Real parts of the inner products of <code>e</code> with each of
+     * <code>vectors</code>. The vectors are swept block by block so that each
+     * block of <code>e</code> is read from memory once; the partial sums of
+     * the threads are added in a fixed order.
+     */
+    private double[] dots(final double[] e, final double[][] vectors, final int[] mapped) {
+        return dots(new Block() {
+            public double[] dots(int firstIdx, int lastIdx) {
+                return GramAccumulator.dots(e, vectors, mapped, spill, firstIdx, lastIdx);
+            }
+        }, vectors.length);
+    }
+
+    private double[] dots(final float[] e, final float[][] vectors, final int[] mapped) {
+        return dots(new Block() {
+            public double[] dots(int firstIdx, int lastIdx) {
+                return GramAccumulator.dots(e, vectors, mapped, spill, firstIdx, lastIdx);
+            }
+        }, vectors.length);
+    }
+
+    private interface Block {
+        double[] dots(int firstIdx, int lastIdx);
+    }
+
+    private double[] dots(final Block block, int count) {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        final int size = 2 * length;
+        if ((nthreads > 1) && (length >= ConcurrencyUtils.getThreadsBeginN_1D())) {
+            Future<?>[] futures = new Future[nthreads];
+            int k = (length / nthreads) * 2;
+            for (int j = 0; j < nthreads; j++) {
+                final int firstIdx = j * k;
+                final int lastIdx = (j == nthreads - 1) ? size : firstIdx + k;
+                futures[j] = ConcurrencyUtils.submit(new Callable<double[]>() {
+                    public double[] call() throws Exception {
+                        return block.dots(firstIdx, lastIdx);
+                    }
+                });
+            }
+            double[] sums = new double[count];
+            boolean completed = false;
+            try {
+                for (int j = 0; j < nthreads; j++) {
+                    double[] aux = (double[]) futures[j].get();
+                    for (int i = 0; i < sums.length; i++) {
+                        sums[i] += aux[i];
+                    }
+                }
+                completed = true;
+            } catch (ExecutionException ex) {
+                throw ThreadUtil.unchecked(ex);
+            } catch (InterruptedException ex) {
+                throw ThreadUtil.unchecked(ex);
+            } finally {
+                // partial sums would make a wrong Gram matrix: a failed block
+                // fails the row, and the other blocks are not waited for
+                if (!completed) {
+                    for (Future<?> future : futures) {
+                        future.cancel(true);
+                    }
+                }
+            }
+            return sums;
+        }
+        return block.dots(0, size);
+    }
+
+    /**
+     * The spilled vectors (mapped[i] >= 0) are read block by block into a
+     * buffer, whose element 0 is then element <code>first</code>.
+     */
+    private static double[] dots(double[] e, double[][] vectors, int[] mapped, MappedVectorFile spill,
+                                 int firstIdx, int lastIdx) {
+        double[] sums = new double[vectors.length];
+        double[] buffer = null;
+        for (int first = firstIdx; first < lastIdx; first += 2 * BLOCK) {
+            int last = Math.min(first + 2 * BLOCK, lastIdx);
+            for (int i = 0; i < vectors.length; i++) {
+                double[] v = vectors[i];
+                int offset = 0;
+                if (mapped[i] >= 0) {
+                    if (buffer == null) {
+                        buffer = new double[2 * BLOCK];
+                    }
+                    spill.get(mapped[i], first, buffer, 0, last - first);
+                    v = buffer;
+                    offset = first;
+                }
+                double sum = 0;
+                for (int idx = first; idx < last; idx++) {
+                    sum += e[idx] * v[idx - offset];
+                }
+                sums[i] += sum;
+            }
+        }
+        return sums;
+    }
+
+    private static double[] dots(float[] e, float[][] vectors, int[] mapped, MappedVectorFile spill,
+                                 int firstIdx, int lastIdx) {
+        double[] sums = new double[vectors.length];
+        float[] buffer = null;
+        for (int first = firstIdx; first < lastIdx; first += 2 * BLOCK) {
+            int last = Math.min(first + 2 * BLOCK, lastIdx);
+            for (int i = 0; i < vectors.length; i++) {
+                float[] v = vectors[i];
+                int offset = 0;
+                if (mapped[i] >= 0) {
+                    if (buffer == null) {
+                        buffer = new float[2 * BLOCK];
+                    }
+                    spill.get(mapped[i], first, buffer, 0, last - first);
+                    v = buffer;
+                    offset = first;
+                }
+                double sum = 0;
+                for (int idx = first; idx < last; idx++) {
+                    sum += (double) e[idx] * v[idx - offset];
+                }
+                sums[i] += sum;
+            }
+        }
+        return sums;
+    }
+
+    private static double[] elementsOf(DComplexMatrix1D v) {
+        if (v.isView() || !(v instanceof DenseDComplexMatrix1D)) {
+            v = new DenseDComplexMatrix1D((int) v.size()).assign(v);
+        }
+        return ((DenseDComplexMatrix1D) v).elements();
+    }
+
+    private static float[] elementsOf(FComplexMatrix1D v) {
+        if (v.isView() || !(v instanceof DenseFComplexMatrix1D)) {
+            v = new DenseFComplexMatrix1D((int) v.size()).assign(v);
+        }
+        return ((DenseFComplexMatrix1D) v).elements();
+    }
+
+    private static float[] toFloat(double[] a) {
+        float[] b = new float[a.length];
+        for (int i = 0; i < a.length; i++) {
+            b[i] = (float) a[i];
+        }
+        return b;
+    }
+}
@@ -0,0 +1,227 @@
+package com.hijizhou.cores.deconvolution;
+/**
+ * GRAMKERNEL: real part of the Gram matrix F'*F of a set of complex basis
+ * functions, and of F'*y; and the combination F*a of the basis functions
+ *
+ * Only the upper triangle of the Hermitian product is computed, straight
+ * from the basis functions: with interleaved complex elements,
+ * Re(conj(f_i).f_j) is the plain dot product of the two arrays, so no
+ * transposed or conjugated copy of F is formed. The columns are grouped in
+ * tiles, each pair of tiles of the upper triangle being one fork/join task,
+ * and the pixels are swept by blocks so that the block of every column of a
+ * pair of tiles stays in cache while it is reused. Each task writes its own
+ * entries, so the result does not depend on the number of threads.
+ *
+ * Only MW_PURE_LET2Dnew uses it: MW_PURE_LET2D accumulates the same
+ * products as its sub-band processes complete (see GramAccumulator).
+ *
+ * @reference
+ *       [1] J. Li, F. Luisier and T. Blu, PURE-LET image deconvolution,
+ *             IEEE Trans. Image Process., vol. 27, no. 1, pp. 92-105, 2018.
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+import com.cern.colt.matrix.tdcomplex.DComplexMatrix1D;
+import com.cern.colt.matrix.tdcomplex.impl.DenseDComplexMatrix1D;
+import com.cern.colt.matrix.tdouble.DoubleMatrix1D;
+import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import com.edu.emory.mathcs.utils.pc.ConcurrencyUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class GramKernel {
+
+    // columns per tile
+    private static final int TILE = 8;
+    // doubles (half as many complex elements) per block of pixels
+    private static final int BLOCK = 2048;
+    // shared by all the calls, instead of a pool started for each
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private GramKernel() {
+    }
+
+    /**
+     * Real part of F'*F, times <code>scale</code>, for the basis functions
+     * <code>columns</code> of F.
+     */
+    public static DoubleMatrix2D getGram(DComplexMatrix1D[] columns, double scale) {
+        final double[][] f = elementsOf(columns);
+        final int k = f.length;
+        final double[][] gram = new double[k][k];
+        int tiles = (k + TILE - 1) / TILE;
+        List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+        for (int ti = 0; ti < tiles; ti++) {
+            for (int tj = ti; tj < tiles; tj++) {
+                final int firstI = ti * TILE;
+                final int lastI = Math.min(firstI + TILE, k);
+                final int firstJ = tj * TILE;
+                final int lastJ = Math.min(firstJ + TILE, k);
+                tasks.add(new RecursiveAction() {
+                    protected void compute() {
+                        tile(f, gram, firstI, lastI, firstJ, lastJ);
+                    }
+                });
+            }
+        }
+        run(tasks);
+
+        DoubleMatrix2D A = new DenseDoubleMatrix2D(k, k);
+        for (int i = 0; i < k; i++) {
+            A.setQuick(i, i, gram[i][i] * scale);
+            for (int j = i + 1; j < k; j++) {
+                double value = gram[i][j] * scale;
+                A.setQuick(i, j, value);
+                A.setQuick(j, i, value);
+            }
+        }
+        return A;
+    }
+
+    /**
+     * Real part of F'*y, times <code>scale</code>.
+     */
+    public static DoubleMatrix1D getProducts(DComplexMatrix1D[] columns, DComplexMatrix1D y, double scale) {
+        final double[][] f = elementsOf(columns);
+        final double[] e = elementsOf(y);
+        final double[] products = new double[f.length];
+        List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+        for (int first = 0; first < f.length; first += TILE) {
+            final int firstI = first;
+            final int lastI = Math.min(first + TILE, f.length);
+            tasks.add(new RecursiveAction() {
+                protected void compute() {
+                    for (int i = firstI; i < lastI; i++) {
+                        products[i] = dot(f[i], e, 0, e.length);
+                    }
+                }
+            });
+        }
+        run(tasks);
+
+        DoubleMatrix1D c = new DenseDoubleMatrix1D(f.length);
+        for (int i = 0; i < f.length; i++) {
+            c.setQuick(i, products[i] * scale);
+        }
+        return c;
+    }
+
+    /**
+     * Adds F*a, the basis functions <code>columns</code> weighted by the
+     * coefficients <code>coeff</code>, to <code>result</code>. Each task
+     * sums all the basis functions over its own block of pixels.
+     */
+    public static void addCombination(DComplexMatrix1D[] columns, DoubleMatrix1D coeff, DComplexMatrix1D result) {
+        if (columns.length != coeff.size()) {
+            throw new IllegalArgumentException(columns.length + " basis functions, " + coeff.size() + " coefficients");
+        }
+        final double[][] f = elementsOf(columns);
+        final double[] c = coeff.toArray();
+        final double[] r = elementsOf(result);
+        if (f.length > 0 && f[0].length != r.length) {
+            throw new IllegalArgumentException("basis functions of length " + columns[0].size()
+                    + ", result of length " + result.size());
+        }
+        List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+        for (int first = 0; first < r.length; first += TILE * BLOCK) {
+            final int firstIdx = first;
+            final int lastIdx = Math.min(first + TILE * BLOCK, r.length);
+            tasks.add(new RecursiveAction() {
+                protected void compute() {
+                    for (int i = 0; i < f.length; i++) {
+                        double ci = c[i];
+                        double[] e = f[i];
+                        for (int idx = firstIdx; idx < lastIdx; idx++) {
+                            r[idx] += ci * e[idx];
+                        }
+                    }
+                }
+            });
+        }
+        run(tasks);
+        if (result.isView() || !(result instanceof DenseDComplexMatrix1D)) {
+            result.assign(new DenseDComplexMatrix1D((int) result.size(), r, 0, 2, true));
+        }
+    }
+
+    /**
+     * Entries (i, j), j >= i, of the columns firstI..lastI-1 against the
+     * columns firstJ..lastJ-1, accumulated block by block of pixels.
+     */
+    private static void tile(double[][] f, double[][] gram, int firstI, int lastI, int firstJ, int lastJ) {
+        int size = f[firstI].length;
+        for (int first = 0; first < size; first += BLOCK) {
+            int last = Math.min(first + BLOCK, size);
+            for (int i = firstI; i < lastI; i++) {
+                double[] a = f[i];
+                for (int j = Math.max(i, firstJ); j < lastJ; j++) {
+                    gram[i][j] += dot(a, f[j], first, last);
+                }
+            }
+        }
+    }
+
+    private static double dot(double[] a, double[] b, int first, int last) {
+        double sum = 0;
+        for (int idx = first; idx < last; idx++) {
+            sum += a[idx] * b[idx];
+        }
+        return sum;
+    }
+
+    /**
+     * Runs the tasks on the shared pool, at most the number of threads of
+     * the calling thread at a time.
+     */
+    private static void run(final List<RecursiveAction> tasks) {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if (nthreads <= 1 || tasks.size() == 1) {
+            for (RecursiveAction task : tasks) {
+                task.invoke();
+            }
+            return;
+        }
+        final AtomicInteger next = new AtomicInteger();
+        List<ForkJoinTask<?>> workers = new ArrayList<ForkJoinTask<?>>();
+        for (int w = Math.min(nthreads, tasks.size()); w > 0; w--) {
+            workers.add(POOL.submit(new RecursiveAction() {
+                protected void compute() {
+                    for (int t = next.getAndIncrement(); t < tasks.size(); t = next.getAndIncrement()) {
+                        tasks.get(t).invoke();
+                    }
+                }
+            }));
+        }
+        for (ForkJoinTask<?> worker : workers) {
+            worker.join();
+        }
+    }
+
+    private static double[][] elementsOf(DComplexMatrix1D[] columns) {
+        double[][] f = new double[columns.length][];
+        for (int i = 0; i < columns.length; i++) {
+            f[i] = elementsOf(columns[i]);
+            if (f[i].length != 2 * columns[0].size()) {
+                throw new IllegalArgumentException("basis function " + i + " of length " + columns[i].size()
+                        + ", expected " + columns[0].size());
+            }
+        }
+        return f;
+    }
+
+    private static double[] elementsOf(DComplexMatrix1D v) {
+        if (v.isView() || !(v instanceof DenseDComplexMatrix1D)) {
+            v = new DenseDComplexMatrix1D((int) v.size()).assign(v);
+        }
+        return ((DenseDComplexMatrix1D) v).elements();
+    }
+}
@@ -13,16 +13,20 @@ package com.hijizhou.cores.deconvolution;
 import com.cern.colt.matrix.AbstractMatrix2D;
 import com.cern.colt.matrix.tdcomplex.DComplexMatrix1D;
 import com.cern.colt.matrix.tdcomplex.DComplexMatrix2D;
-import com.cern.colt.matrix.tdcomplex.impl.DenseDComplexMatrix1D;
 import com.cern.colt.matrix.tdcomplex.impl.DenseDComplexMatrix2D;
 import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
 import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
 import com.cern.jet.math.tdcomplex.DComplexFunctions;
 import com.cern.jet.math.tdouble.DoubleFunctions;
-import com.hijizhou.utilities.FFT_WFilter;
-import com.hijizhou.utilities.PSFUtil;
+import com.edu.emory.mathcs.utils.pc.ConcurrencyUtils;
+import com.hijizhou.utilities.BufferArena;
+import com.hijizhou.utilities.HalfSpectrum;
+import com.hijizhou.utilities.Metrics;
+import com.hijizhou.utilities.ThreadUtil;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class LETProcess2D implements Callable<LETProcess2D> {
 
@@ -30,12 +34,16 @@ public class LETProcess2D implements Callable<LETProcess2D> {
 	private int height;
 	private final int jIndex;
 	private final int oIndex;
-	private FFT_WFilter wf;
+	private final LETSpectra2D spectra;
 	private DComplexMatrix2D Yi;
 	private double alpha;
 	private DComplexMatrix2D Hli;
 	private DComplexMatrix2D Hbit;
 	private AbstractMatrix2D auxInput;
+	private final int half;
+	private int nthreads = 1;
+	private Metrics metrics = null;
+	private BufferArena arena = new BufferArena();
 	private ReValue returnvalue = new ReValue();
 
 	public static class ReValue {
@@ -79,341 +87,320 @@ public class LETProcess2D implements Callable<LETProcess2D> {
 		}
 	}
 
-	public LETProcess2D(double alpha, int jIndex, int oIndex, FFT_WFilter wf,
+	public LETProcess2D(double alpha, int jIndex, int oIndex, LETSpectra2D spectra,
                         AbstractMatrix2D auxInput, DComplexMatrix2D Yi,
                         DComplexMatrix2D Hli, DComplexMatrix2D Hbit) {
 		this.alpha = alpha;
 		this.jIndex = jIndex;
 		this.oIndex = oIndex;
-		this.wf = wf;
+		this.spectra = spectra;
 		this.Yi = Yi;
 		this.Hli = Hli;
 		this.Hbit = Hbit;
 		this.auxInput = auxInput;
-		this.width = wf.getDx().length / 2;
-		this.height = wf.getDy().length / 2;
+		this.height = spectra.getHeight();
+		this.width = spectra.getWidth();
+		this.half = HalfSpectrum.halfColumns(width);
+	}
+
+	/**
+	 * Rough estimate, in bytes, of the memory taken by the temporaries of a
+	 * process on a height x width image, its two basis functions included.
+	 */
+	public static long getMemoryEstimate(int height, int width) {
+		return 24L * 16 * height * HalfSpectrum.halfColumns(width);
 	}
 
 	public ReValue getRV() {
 		return this.returnvalue;
 	}
 
-	@Override
-	public LETProcess2D call() throws Exception {
+	/**
+	 * Number of threads the FFTs and matrix operations of this process may use.
+	 */
+	public void setNumberOfThreads(int nthreads) {
+		this.nthreads = nthreads;
+	}
 
+	/**
+	 * Metrics the process is timed in, as a "subband.job", and which counts
+	 * its Fourier transforms (none by default).
+	 */
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
 
-		DoubleMatrix2D tp = new DenseDoubleMatrix2D(width, height);
+	/**
+	 * Arena the temporaries are taken from (by default one of the process'
+	 * own), e.g. shared by all the processes of a deconvolution.
+	 */
+	public void setBufferArena(BufferArena arena) {
+		this.arena = arena;
+	}
 
-		wf.fft_wfilters2D(width, height, oIndex, jIndex + 1);
+	@Override
+	public LETProcess2D call() throws Exception {
+		ThreadUtil.setLocalNumberOfThreads(nthreads);
+		Metrics previous = Metrics.setCurrent(metrics);
+		Metrics.Span span = metrics == null ? null : metrics.beginJob("subband.job");
+		try {
+			return process();
+		} finally {
+			if (span != null) {
+				span.end();
+			}
+			Metrics.setCurrent(previous);
+			ThreadUtil.clearLocalNumberOfThreads();
+		}
+	}
 
-		DComplexMatrix2D decEle = PSFUtil.getDecMatrix2D(wf);
+	private LETProcess2D process() {
 
+		// all spectra are Hermitian, only their nonredundant half is kept;
+		// the temporaries are buffers of the arena, given back once used
+		DComplexMatrix2D decEle = spectra.getDecomposition(jIndex, oIndex);
+		DenseDComplexMatrix2D auxInputC = (DenseDComplexMatrix2D) auxInput;
 
 		// Di = D.*Hli;
-		DComplexMatrix2D decEleH = decEle.copy();
+		DenseDComplexMatrix2D decEleH = arena.complexCopy(decEle);
 		decEleH.assign(Hli, DComplexFunctions.mult);
-		DComplexMatrix2D decEleConj = decEle.copy();
-		decEleConj.assign(DComplexFunctions.conj);
-		DComplexMatrix2D recEle = decEleConj.copy();
-		recEle.assign(DComplexFunctions.div(Math.pow(4, jIndex + 1)));
 
-		DComplexMatrix2D di = decEleH.copy();
-		((DenseDComplexMatrix2D) di).ifft2(true);
-		 DoubleMatrix2D diReal = (di).getRealPart();
-		 DoubleMatrix2D di2 = diReal.copy();
-		(di2).assign(DoubleFunctions.square);
-		DComplexMatrix2D Di2 = ((DenseDoubleMatrix2D) di2).getFft2();
+		DenseDoubleMatrix2D diReal = arena.real(height, width);
+		HalfSpectrum.ifft2InPlace(decEleH, diReal);
+		arena.release(decEleH);
+		DenseDoubleMatrix2D di2 = arena.realCopy(diReal);
+		di2.assign(DoubleFunctions.square);
+		DenseDComplexMatrix2D Di2 = arena.complex(height, half);
+		HalfSpectrum.fft2(di2, Di2);
 
-		DComplexMatrix2D aux_w = decEle.copy();
+		DenseDComplexMatrix2D aux_w = arena.complexCopy(decEle);
 		aux_w.assign(Yi, DComplexFunctions.mult);
-		((DenseDComplexMatrix2D) aux_w).ifft2(true);
-		DoubleMatrix2D w = aux_w.getRealPart();
+		DenseDoubleMatrix2D w = arena.real(height, width);
+		HalfSpectrum.ifft2InPlace(aux_w, w);
+		arena.release(aux_w);
 
-		DComplexMatrix2D aux_v = Di2.copy();
-		aux_v.assign((DComplexMatrix2D) auxInput, DComplexFunctions.mult);
-		((DenseDComplexMatrix2D) aux_v).ifft2(true);
-		DoubleMatrix2D v = aux_v.getRealPart();
-		 v.assign(DoubleFunctions.mult(this.alpha));
+		Di2.assign(auxInputC, DComplexFunctions.mult);
+		DenseDoubleMatrix2D v = arena.real(height, width);
+		HalfSpectrum.ifft2InPlace(Di2, v);
+		arena.release(Di2);
+		v.assign(DoubleFunctions.mult(this.alpha));
 
 		double eps = 1e-9;
 		double beta = 1e2;
-		DoubleMatrix2D betav = v.copy();
-		betav.assign(DoubleFunctions.mult(beta));
+		DenseDoubleMatrix2D s = arena.realCopy(v);
+		s.assign(DoubleFunctions.mult(beta));
 
 		for (int hhi = 0; hhi < height; hhi++) {
 			for (int wwi = 0; wwi < width; wwi++) {
-				double aux = betav.getQuick(hhi, wwi);
+				double aux = s.getQuick(hhi, wwi);
 				aux = Math.tanh(aux);
-				betav.setQuick(hhi, wwi, aux);
+				s.setQuick(hhi, wwi, aux);
 			}
 		}
 
-		DoubleMatrix2D s = betav.copy();
+		DenseDoubleMatrix2D t = arena.realCopy(s);
+		t.assign(v, DoubleFunctions.mult);
+		t.assign(DoubleFunctions.plus(eps));
+		t.assign(DoubleFunctions.sqrt);
 
-		betav.assign(v, DoubleFunctions.mult);
-		betav.assign(DoubleFunctions.plus(eps));
-		betav.assign(DoubleFunctions.sqrt);
-		DoubleMatrix2D t = betav.copy();
+		// whether to threshold: decided from w and t alone, so that the
+		// sub-bands rejected skip the transforms of the divergence term
+		DenseDoubleMatrix2D ww = arena.realCopy(w);
+		ww.assign(DoubleFunctions.square);
+		double mean1 = ww.zSum()
+				/ (width * height);
+		ww.assign(t);
+		ww.assign(DoubleFunctions.square);
+		double mean2 = 2 * ww.zSum()
+				/ (width * height);
+		arena.release(ww);
 
-		betav = s.copy();
+		if (mean1 <= mean2) {
+			arena.release(s);
+			arena.release(v);
+			arena.release(t);
+			arena.release(w);
+			arena.release(di2);
+			arena.release(diReal);
+			return this;
+		}
+
+		DenseDoubleMatrix2D betav = arena.realCopy(s);
 		betav.assign(DoubleFunctions.square);
 		betav.assign(DoubleFunctions.mult(-1));
 		betav.assign(DoubleFunctions.plus(1));
 		betav.assign(DoubleFunctions.mult(beta));
 		betav.assign(v, DoubleFunctions.mult);
 		betav.assign(s, DoubleFunctions.plus);
+		arena.release(s);
+		arena.release(v);
 
+		DenseDoubleMatrix2D tp = arena.real(height, width);
 		tp.assign(0.5);
 		tp.assign(t, DoubleFunctions.div);
 		tp.assign(betav, DoubleFunctions.mult);
+		arena.release(betav);
 
 		// divergence term
-		DComplexMatrix2D auxrt = recEle.copy();
+		DenseDComplexMatrix2D recEle = arena.complexCopy(decEle);
+		recEle.assign(DComplexFunctions.conj);
+		recEle.assign(DComplexFunctions.div(Math.pow(4, jIndex + 1)));
+		DenseDComplexMatrix2D auxrt = arena.complexCopy(recEle);
 		auxrt.assign(Hbit, DComplexFunctions.mult);
 		auxrt.assign(DComplexFunctions.conj);
-		((DenseDComplexMatrix2D) auxrt).ifft2(true);
-		DoubleMatrix2D rt = auxrt.getRealPart();
+		DenseDoubleMatrix2D rt = arena.real(height, width);
+		HalfSpectrum.ifft2InPlace(auxrt, rt);
+		arena.release(auxrt);
 
-		DoubleMatrix2D auxDiRt = rt.copy();
+		DenseDoubleMatrix2D auxDiRt = arena.realCopy(rt);
 		auxDiRt.assign(diReal, DoubleFunctions.mult);
-		DComplexMatrix2D DiRt = ((DenseDoubleMatrix2D) auxDiRt).getFft2();
-		 auxDiRt = rt.copy();
+		DenseDComplexMatrix2D DiRt = arena.complex(height, half);
+		HalfSpectrum.fft2(auxDiRt, DiRt);
+		auxDiRt.assign(rt);
 		auxDiRt.assign(di2, DoubleFunctions.mult);
-		DComplexMatrix2D Di2Rt = ((DenseDoubleMatrix2D) auxDiRt).getFft2();
-
-		DComplexMatrix2D auxW = DiRt.copy();
-		auxW.assign((DenseDComplexMatrix2D) auxInput, DComplexFunctions.mult);
-		((DenseDComplexMatrix2D) auxW).ifft2(true);
-		DoubleMatrix2D w1 = auxW.getRealPart();
-		auxW = Di2Rt.copy();
-		auxW.assign((DenseDComplexMatrix2D) auxInput, DComplexFunctions.mult);
-		((DenseDComplexMatrix2D) auxW).ifft2(true);
-		DoubleMatrix2D w2 = auxW.getRealPart();
-
-		// whether to threshold
-		DoubleMatrix2D ww = w.copy();
-		ww.assign(DoubleFunctions.square);
-		double mean1 = ww.zSum()
-				/ (width * height);
-		ww = t.copy();
-		ww.assign(DoubleFunctions.square);
-		double mean2 = 2 * ww.zSum()
-				/ (width * height);
-
-		if (mean1 <= mean2) {
-			return this;
-		}
-
-//		double startTime = System.nanoTime();
+		DenseDComplexMatrix2D Di2Rt = arena.complex(height, half);
+		HalfSpectrum.fft2(auxDiRt, Di2Rt);
+		arena.release(auxDiRt);
+		arena.release(rt);
+		arena.release(di2);
+		arena.release(diReal);
+
+		DiRt.assign(auxInputC, DComplexFunctions.mult);
+		DenseDoubleMatrix2D w1 = arena.real(height, width);
+		HalfSpectrum.ifft2InPlace(DiRt, w1);
+		arena.release(DiRt);
+		Di2Rt.assign(auxInputC, DComplexFunctions.mult);
+		DenseDoubleMatrix2D w2 = arena.real(height, width);
+		HalfSpectrum.ifft2InPlace(Di2Rt, w2);
+		arena.release(Di2Rt);
 
 		// begin thresholding
-		ReValue rv = itemThreshold(w1, w2, w, t, tp, recEle, width, height,
-				alpha);
-		this.returnvalue = rv;
-
-//		double endTime = System.nanoTime();
-//		System.out.println("inner time: " + (endTime - startTime) / 1.0E9D);
-
+		this.returnvalue = itemThreshold(w1, w2, w, t, tp, recEle, width, height,
+				alpha, arena);
+
+		arena.release(w1);
+		arena.release(w2);
+		arena.release(w);
+		arena.release(t);
+		arena.release(tp);
+		arena.release(recEle);
 		return this;
 	}
 
-	public static class Theta {
-		private DoubleMatrix2D F_theta;
-		private DoubleMatrix2D F_theta1;
-		private DoubleMatrix2D F_theta2;
-
-		private DComplexMatrix1D matrixCFele;
-		private double div;
-
-		public Theta(int width, int height) {
-			this.F_theta = new DenseDoubleMatrix2D(width, height);
-			this.F_theta1 = new DenseDoubleMatrix2D(width, height);
-			this.F_theta2 = new DenseDoubleMatrix2D(width, height);
-			this.matrixCFele = new DenseDComplexMatrix1D(width * height);
-		}
-
-		public DoubleMatrix2D getF_theta() {
-			return F_theta;
-		}
-
-		public void setF_theta(DoubleMatrix2D f_theta) {
-			F_theta = f_theta;
-		}
-
-		public DoubleMatrix2D getF_theta1() {
-			return F_theta1;
-		}
-
-		public void setF_theta1(DoubleMatrix2D f_theta1) {
-			F_theta1 = f_theta1;
-		}
-
-		public DoubleMatrix2D getF_theta2() {
-			return F_theta2;
-		}
-
-		public void setF_theta2(DoubleMatrix2D f_theta2) {
-			F_theta2 = f_theta2;
-		}
-
-		public DComplexMatrix1D getMatrixCFele() {
-			return matrixCFele;
-		}
-
-		public void setMatrixCFele(DComplexMatrix1D matrixCFele) {
-			this.matrixCFele = matrixCFele;
-		}
-
-		public double getDiv() {
-			return div;
-		}
-
-		public void setDiv(double div) {
-			this.div = div;
-		}
-		
-		
-	}
-
 	public static ReValue itemThreshold(DoubleMatrix2D w1, DoubleMatrix2D w2,
                                         DoubleMatrix2D w, DoubleMatrix2D t, DoubleMatrix2D tp,
                                         DComplexMatrix2D recEle, int width, int height, double alpha) {
+		return itemThreshold(w1, w2, w, t, tp, recEle, width, height, alpha, new BufferArena(0));
+	}
 
-		ReValue rv = new ReValue();
-
-		DoubleMatrix2D w1_tmp = w1.copy();
-		DoubleMatrix2D w2_tmp = w2.copy();
-		DoubleMatrix2D w_tmp = w.copy();
-		DoubleMatrix2D t_tmp = t.copy();
-		DoubleMatrix2D tp_tmp = tp.copy();
-
-		Theta theta = new Theta(width, height);
+	private static ReValue itemThreshold(DoubleMatrix2D w1, DoubleMatrix2D w2,
+                                         DoubleMatrix2D w, DoubleMatrix2D t, DoubleMatrix2D tp,
+                                         DComplexMatrix2D recEle, int width, int height, double alpha,
+                                         BufferArena arena) {
 
-		// factor=4;
-		theta = aux_threshold(alpha, 4.0D, recEle, w_tmp, w1_tmp, w2_tmp,
-				t_tmp, tp_tmp, width, height, theta);
+		ReValue rv = new ReValue();
 
-		rv.setDiv1(theta.getDiv());
-		rv.setF1(theta.getMatrixCFele());
+		// both thresholds (factor=4 and factor=9)
+		DenseDoubleMatrix2D F_theta4 = arena.real(height, width);
+		DenseDoubleMatrix2D F_theta9 = arena.real(height, width);
 
-		w1_tmp = w1.copy();
-		w2_tmp = w2.copy();
-		w_tmp = w.copy();
-		t_tmp = t.copy();
-		tp_tmp = tp.copy();
-		
-		// factor=9;
-		theta = aux_threshold(alpha, 9.0D, recEle, w_tmp, w1_tmp, w2_tmp,
-				t_tmp, tp_tmp, width, height, theta);
+		double[] div = aux_hard4(elementsOf(w), elementsOf(w1), elementsOf(w2),
+				elementsOf(t), elementsOf(tp), F_theta4.elements(), F_theta9.elements());
 
-		rv.setDiv2(theta.getDiv());
-		rv.setF2(theta.getMatrixCFele());
+		// the basis functions are kept by the caller, not taken from the arena
+		rv.setValues(aux_rec(F_theta4, recEle), aux_rec(F_theta9, recEle),
+				alpha * div[0], alpha * div[1]);
+		arena.release(F_theta4);
+		arena.release(F_theta9);
 
 		return rv;
 	}
 
-	public static Theta aux_threshold(double alpha, double factor,
-                                      DComplexMatrix2D recEle, DoubleMatrix2D w, DoubleMatrix2D w1_tmp,
-                                      DoubleMatrix2D w2_tmp, DoubleMatrix2D t, DoubleMatrix2D tp,
-                                      int width, int height, Theta theta) {
-
-//		double startTime = System.nanoTime(); // start timing
-
-//		double startFor = System.nanoTime();
-
-		DoubleMatrix2D y3 = w.copy();
-		y3.assign(DoubleFunctions.pow(3));
-		DoubleMatrix2D y4 = y3.copy();
-		y4.assign(w, DoubleFunctions.mult);
-
-		DComplexMatrix1D matrixCF = new DenseDComplexMatrix1D(width * height);
-		theta = aux_hard4(w, y3, y4, factor, t, tp, theta);
-
-//		double runningTime = (System.nanoTime() - startTime) / 1.0E9D;
-//		System.out.println("aux_threshold  = " + runningTime + " s");
-
-		DComplexMatrix2D F_thetaFFT = new DenseDComplexMatrix2D(width, height);
-		F_thetaFFT.assignReal(theta.getF_theta());
-		((DenseDComplexMatrix2D) F_thetaFFT).fft2();
-		F_thetaFFT.assign(recEle, DComplexFunctions.mult);
-
-		DComplexMatrix1D aux_1Dmat = F_thetaFFT.vectorize();
-
-		matrixCF.assign(aux_1Dmat);
-
-		w1_tmp.assign(theta.getF_theta1(), DoubleFunctions.mult);
-		w2_tmp.assign(theta.getF_theta2(), DoubleFunctions.mult);
-		w1_tmp.assign(w2_tmp, DoubleFunctions.plus);
-		w1_tmp.assign(DoubleFunctions.mult(alpha));
-
-		double auxDiv = w1_tmp.zSum();
-
-		theta.setDiv(auxDiv);;
-		theta.setMatrixCFele(matrixCF);
+	private static DComplexMatrix1D aux_rec(DoubleMatrix2D F_theta, DComplexMatrix2D recEle) {
+		DComplexMatrix2D F = HalfSpectrum.fft2(F_theta);
+		F.assign(recEle, DComplexFunctions.mult);
+		return F.vectorize();
+	}
 
-		return theta;
+	private static double[] elementsOf(DoubleMatrix2D m) {
+		if (m.isView()) {
+			m = m.copy();
+		}
+		return ((DenseDoubleMatrix2D) m).elements();
 	}
 
-	public static Theta aux_hard4(DoubleMatrix2D F_y, DoubleMatrix2D y3, DoubleMatrix2D y4, double F_factor,
-                                  DoubleMatrix2D F_T, DoubleMatrix2D F_Tp, Theta theta) {
-//		double startFor = System.nanoTime();
-
-		F_T.assign(DoubleFunctions.mult(F_factor));
-
-		DoubleMatrix2D T4 = F_T.copy();
-		T4.assign(DoubleFunctions.pow(4));
-		DoubleMatrix2D T5 = T4.copy();
-		T5.assign(F_T, DoubleFunctions.mult);
-
-		DoubleMatrix2D g = y4.copy();
-		g.assign(T4, DoubleFunctions.div);
-		g.assign(DoubleFunctions.mult(-1));
-		g.assign(DoubleFunctions.exp);
-
-
-//		double endFor = System.nanoTime();
-//		System.out.println("------ aux_hard4 time: "
-//				+ (endFor - startFor) / 1.0E9D);
-
-		F_Tp.assign(DoubleFunctions.mult(F_factor));
-		DoubleMatrix2D g1 = g.copy();
-		g1.assign(y3, DoubleFunctions.mult);
-		g1.assign(DoubleFunctions.mult(-4));
-		g1.assign(T4, DoubleFunctions.div);
-
-		DoubleMatrix2D g2 = g.copy();
-		g2.assign(y4, DoubleFunctions.mult);
-		g2.assign(F_Tp, DoubleFunctions.mult);
-		g2.assign(DoubleFunctions.mult(4));
-		g2.assign(T5, DoubleFunctions.div);
-
-//		DoubleMatrix2D g12 = g.copy();
-//		g12.assign(DoubleFunctions.mult(4));
-//		DoubleMatrix2D yg1 = g1.copy();
-//		yg1.assign(F_y, DoubleFunctions.mult);
-
-		DoubleMatrix2D F_theta = g.copy();
-		F_theta.assign(DoubleFunctions.mult(-1));
-		F_theta.assign(DoubleFunctions.plus(1));
-		F_theta.assign(F_y, DoubleFunctions.mult);
-
-		DoubleMatrix2D F_theta1 = g1.copy();
-		F_theta1.assign(F_y, DoubleFunctions.mult);
-		F_theta1.assign(g, DoubleFunctions.plus);
-		F_theta1.assign(DoubleFunctions.mult(-1));
-		F_theta1.assign(DoubleFunctions.plus(1));
-
-		DoubleMatrix2D F_theta2 = g2.copy();
-		F_theta2.assign(F_y, DoubleFunctions.mult);
-		F_theta2.assign(DoubleFunctions.mult(-1));
-		
-		theta.setF_theta(F_theta);
-		theta.setF_theta1(F_theta1);
-		theta.setF_theta2(F_theta2);
-
-		
-		return theta;
+	/**
+	 * Derivative-based hard threshold of the sub-band <code>y</code> for the
+	 * thresholds 4*t and 9*t, computed in a single sweep.
+	 *
+	 * The thresholded values are written to <code>theta4</code> and
+	 * <code>theta9</code>. The returned
+	 * array holds, for both factors, the divergence term
+	 * sum(w1.*F_theta1 + w2.*F_theta2) without the alpha scaling.
+	 */
+	public static double[] aux_hard4(final double[] y, final double[] w1, final double[] w2,
+                                     final double[] t, final double[] tp,
+                                     final double[] theta4, final double[] theta9) {
+		final int size = y.length;
+		int nthreads = ConcurrencyUtils.getNumberOfThreads();
+		if ((nthreads > 1) && (size >= ConcurrencyUtils.getThreadsBeginN_2D())) {
+			Future<?>[] futures = new Future[nthreads];
+			int k = size / nthreads;
+			for (int j = 0; j < nthreads; j++) {
+				final int firstIdx = j * k;
+				final int lastIdx = (j == nthreads - 1) ? size : firstIdx + k;
+				futures[j] = ConcurrencyUtils.submit(new Callable<double[]>() {
+					public double[] call() throws Exception {
+						return aux_hard4(y, w1, w2, t, tp, theta4, theta9, firstIdx, lastIdx);
+					}
+				});
+			}
+			// partial sums are added in a fixed order
+			double[] div = new double[2];
+			try {
+				for (int j = 0; j < nthreads; j++) {
+					double[] aux = (double[]) futures[j].get();
+					div[0] += aux[0];
+					div[1] += aux[1];
+				}
+			} catch (ExecutionException ex) {
+				throw ThreadUtil.unchecked(ex);
+			} catch (InterruptedException e) {
+				throw ThreadUtil.unchecked(e);
+			}
+			return div;
+		}
+		return aux_hard4(y, w1, w2, t, tp, theta4, theta9, 0, size);
+	}
 
+	private static double[] aux_hard4(double[] y, double[] w1, double[] w2, double[] t, double[] tp,
+                                      double[] theta4, double[] theta9, int firstIdx, int lastIdx) {
+		double div4 = 0;
+		double div9 = 0;
+		for (int i = firstIdx; i < lastIdx; i++) {
+			double yi = y[i];
+			double y2 = yi * yi;
+			double y4 = y2 * y2;
+
+			// T = factor*t, g = exp(-y^4/T^4)
+			// F_theta  = (1-g)*y
+			// F_theta1 = 1 - g + 4*g*y^4/T^4
+			// F_theta2 = -4*g*y^5*factor*tp/T^5
+			double T = 4.0 * t[i];
+			double T2 = T * T;
+			double r = y4 / (T2 * T2);
+			double g = Math.exp(-r);
+			theta4[i] = (1 - g) * yi;
+			div4 += w1[i] * (1 - g + 4 * g * r) - w2[i] * 4 * g * r * yi * 4.0 * tp[i] / T;
+
+			T = 9.0 * t[i];
+			T2 = T * T;
+			r = y4 / (T2 * T2);
+			g = Math.exp(-r);
+			theta9[i] = (1 - g) * yi;
+			div9 += w1[i] * (1 - g + 4 * g * r) - w2[i] * 4 * g * r * yi * 9.0 * tp[i] / T;
+		}
+		return new double[]{div4, div9};
 	}
 
 }
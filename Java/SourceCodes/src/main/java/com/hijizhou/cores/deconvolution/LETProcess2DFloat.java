@@ -0,0 +1,320 @@
+package com.hijizhou.cores.deconvolution;
+/**
+ * Single precision version of LETProcess2D: the spectra, the sub-band images
+ * and the FFTs are in float; the divergence terms are summed in double.
+ *
+ * @reference
+ *       [1] J. Li, F. Luisier and T. Blu, PURE-LET image deconvolution,
+ *             IEEE Trans. Image Process., vol. 27, no. 1, pp. 92-105, 2018.
+ *       [2] J. Li, F. Luisier and T. Blu, Deconvolution of Poissonian images with the PURE-LET approach, 2016 23rd Proc. IEEE Int. Conf. on Image Processing (ICIP 2016), Phoenix, Arizona, USA, 2016, pp.2708-2712.
+ *       [3] J. Li, F. Luisier and T. Blu, PURE-LET deconvolution of 3D fluorescence microscopy images, 2017 14th Proc. IEEE Int. Symp. Biomed. Imaging (ISBI 2017), Melbourne, Australia, 2017, pp. 723-727.
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+import com.cern.colt.matrix.tfcomplex.FComplexMatrix1D;
+import com.cern.colt.matrix.tfcomplex.FComplexMatrix2D;
+import com.cern.colt.matrix.tfloat.FloatMatrix2D;
+import com.cern.colt.matrix.tfloat.impl.DenseFloatMatrix2D;
+import com.cern.jet.math.tfcomplex.FComplexFunctions;
+import com.cern.jet.math.tfloat.FloatFunctions;
+import com.edu.emory.mathcs.utils.pc.ConcurrencyUtils;
+import com.hijizhou.utilities.HalfSpectrum;
+import com.hijizhou.utilities.Metrics;
+import com.hijizhou.utilities.ThreadUtil;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+public class LETProcess2DFloat implements Callable<LETProcess2DFloat> {
+
+	private int width;
+	private int height;
+	private final int jIndex;
+	private final int oIndex;
+	private final LETSpectra2D spectra;
+	private FComplexMatrix2D Yi;
+	private float alpha;
+	private FComplexMatrix2D Hli;
+	private FComplexMatrix2D Hbit;
+	private FComplexMatrix2D auxInput;
+	private int nthreads = 1;
+	private Metrics metrics = null;
+	private ReValue returnvalue = new ReValue();
+
+	public static class ReValue {
+		private FComplexMatrix1D[] matrixCFele = new FComplexMatrix1D[2];
+		private double[] div = new double[2];
+
+		public ReValue() {
+
+		}
+
+		public void setValues(FComplexMatrix1D matrixCFele1,
+                              FComplexMatrix1D matrixCFele2, double div1, double div2) {
+			this.matrixCFele[0] = matrixCFele1;
+			this.matrixCFele[1] = matrixCFele2;
+			this.div[0] = div1;
+			this.div[1] = div2;
+		}
+
+		public FComplexMatrix1D[] getF() {
+			return this.matrixCFele;
+		}
+
+		public double[] getDiv() {
+			return this.div;
+		}
+	}
+
+	public LETProcess2DFloat(double alpha, int jIndex, int oIndex, LETSpectra2D spectra,
+                             FComplexMatrix2D auxInput, FComplexMatrix2D Yi,
+                             FComplexMatrix2D Hli, FComplexMatrix2D Hbit) {
+		this.alpha = (float) alpha;
+		this.jIndex = jIndex;
+		this.oIndex = oIndex;
+		this.spectra = spectra;
+		this.Yi = Yi;
+		this.Hli = Hli;
+		this.Hbit = Hbit;
+		this.auxInput = auxInput;
+		this.height = spectra.getHeight();
+		this.width = spectra.getWidth();
+	}
+
+	public ReValue getRV() {
+		return this.returnvalue;
+	}
+
+	/**
+	 * Number of threads the FFTs and matrix operations of this process may use.
+	 */
+	public void setNumberOfThreads(int nthreads) {
+		this.nthreads = nthreads;
+	}
+
+	/**
+	 * Metrics the process is timed in, as a "subband.job", and which counts
+	 * its Fourier transforms (none by default).
+	 */
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public LETProcess2DFloat call() throws Exception {
+		ThreadUtil.setLocalNumberOfThreads(nthreads);
+		Metrics previous = Metrics.setCurrent(metrics);
+		Metrics.Span span = metrics == null ? null : metrics.beginJob("subband.job");
+		try {
+			return process();
+		} finally {
+			if (span != null) {
+				span.end();
+			}
+			Metrics.setCurrent(previous);
+			ThreadUtil.clearLocalNumberOfThreads();
+		}
+	}
+
+	private LETProcess2DFloat process() {
+
+		FComplexMatrix2D decEle = spectra.getDecompositionFloat(jIndex, oIndex);
+
+		// Di = D.*Hli;
+		FComplexMatrix2D decEleH = decEle.copy();
+		decEleH.assign(Hli, FComplexFunctions.mult);
+
+		FloatMatrix2D diReal = HalfSpectrum.ifft2(decEleH, width);
+		FloatMatrix2D di2 = diReal.copy();
+		di2.assign(FloatFunctions.square);
+		FComplexMatrix2D Di2 = HalfSpectrum.fft2(di2);
+
+		FComplexMatrix2D aux_w = decEle.copy();
+		aux_w.assign(Yi, FComplexFunctions.mult);
+		FloatMatrix2D w = HalfSpectrum.ifft2(aux_w, width);
+
+		FComplexMatrix2D aux_v = Di2;
+		aux_v.assign(auxInput, FComplexFunctions.mult);
+		FloatMatrix2D v = HalfSpectrum.ifft2(aux_v, width);
+		v.assign(FloatFunctions.mult(this.alpha));
+
+		float eps = 1e-9f;
+		float beta = 1e2f;
+		FloatMatrix2D betav = v.copy();
+		betav.assign(FloatFunctions.mult(beta));
+
+		float[] b = ((DenseFloatMatrix2D) betav).elements();
+		for (int i = 0; i < b.length; i++) {
+			b[i] = (float) Math.tanh(b[i]);
+		}
+
+		FloatMatrix2D s = betav.copy();
+
+		betav.assign(v, FloatFunctions.mult);
+		betav.assign(FloatFunctions.plus(eps));
+		betav.assign(FloatFunctions.sqrt);
+		FloatMatrix2D t = betav.copy();
+
+		// whether to threshold, with the sums in double: decided from w and
+		// t alone, so that the sub-bands rejected skip the transforms of the
+		// divergence term
+		double mean1 = sumOfSquares(elementsOf(w))
+				/ (width * height);
+		double mean2 = 2 * sumOfSquares(elementsOf(t))
+				/ (width * height);
+
+		if (mean1 <= mean2) {
+			return this;
+		}
+
+		betav = s.copy();
+		betav.assign(FloatFunctions.square);
+		betav.assign(FloatFunctions.mult(-1));
+		betav.assign(FloatFunctions.plus(1));
+		betav.assign(FloatFunctions.mult(beta));
+		betav.assign(v, FloatFunctions.mult);
+		betav.assign(s, FloatFunctions.plus);
+
+		FloatMatrix2D tp = new DenseFloatMatrix2D(height, width);
+		tp.assign(0.5f);
+		tp.assign(t, FloatFunctions.div);
+		tp.assign(betav, FloatFunctions.mult);
+
+		// divergence term
+		FComplexMatrix2D recEle = decEle.copy();
+		recEle.assign(FComplexFunctions.conj);
+		recEle.assign(FComplexFunctions.div((float) Math.pow(4, jIndex + 1)));
+		FComplexMatrix2D auxrt = recEle.copy();
+		auxrt.assign(Hbit, FComplexFunctions.mult);
+		auxrt.assign(FComplexFunctions.conj);
+		FloatMatrix2D rt = HalfSpectrum.ifft2(auxrt, width);
+
+		FloatMatrix2D auxDiRt = rt.copy();
+		auxDiRt.assign(diReal, FloatFunctions.mult);
+		FComplexMatrix2D auxW = HalfSpectrum.fft2(auxDiRt);
+		auxW.assign(auxInput, FComplexFunctions.mult);
+		FloatMatrix2D w1 = HalfSpectrum.ifft2(auxW, width);
+		auxDiRt = rt;
+		auxDiRt.assign(di2, FloatFunctions.mult);
+		auxW = HalfSpectrum.fft2(auxDiRt);
+		auxW.assign(auxInput, FComplexFunctions.mult);
+		FloatMatrix2D w2 = HalfSpectrum.ifft2(auxW, width);
+
+		// begin thresholding
+		ReValue rv = itemThreshold(w1, w2, w, t, tp, recEle, width, height,
+				alpha);
+		this.returnvalue = rv;
+
+		return this;
+	}
+
+	public static ReValue itemThreshold(FloatMatrix2D w1, FloatMatrix2D w2,
+                                        FloatMatrix2D w, FloatMatrix2D t, FloatMatrix2D tp,
+                                        FComplexMatrix2D recEle, int width, int height, double alpha) {
+
+		ReValue rv = new ReValue();
+
+		// both thresholds (factor=4 and factor=9)
+		DenseFloatMatrix2D F_theta4 = new DenseFloatMatrix2D(height, width);
+		DenseFloatMatrix2D F_theta9 = new DenseFloatMatrix2D(height, width);
+
+		double[] div = aux_hard4(elementsOf(w), elementsOf(w1), elementsOf(w2),
+				elementsOf(t), elementsOf(tp), F_theta4.elements(), F_theta9.elements());
+
+		rv.setValues(aux_rec(F_theta4, recEle), aux_rec(F_theta9, recEle),
+				alpha * div[0], alpha * div[1]);
+
+		return rv;
+	}
+
+	private static FComplexMatrix1D aux_rec(FloatMatrix2D F_theta, FComplexMatrix2D recEle) {
+		FComplexMatrix2D F = HalfSpectrum.fft2(F_theta);
+		F.assign(recEle, FComplexFunctions.mult);
+		return F.vectorize();
+	}
+
+	private static float[] elementsOf(FloatMatrix2D m) {
+		if (m.isView()) {
+			m = m.copy();
+		}
+		return ((DenseFloatMatrix2D) m).elements();
+	}
+
+	private static double sumOfSquares(float[] a) {
+		double sum = 0;
+		for (int i = 0; i < a.length; i++) {
+			sum += (double) a[i] * a[i];
+		}
+		return sum;
+	}
+
+	/**
+	 * Single precision version of LETProcess2D.aux_hard4; the thresholds are
+	 * evaluated in float, the divergence terms are summed in double.
+	 */
+	public static double[] aux_hard4(final float[] y, final float[] w1, final float[] w2,
+                                     final float[] t, final float[] tp,
+                                     final float[] theta4, final float[] theta9) {
+		final int size = y.length;
+		int nthreads = ConcurrencyUtils.getNumberOfThreads();
+		if ((nthreads > 1) && (size >= ConcurrencyUtils.getThreadsBeginN_2D())) {
+			Future<?>[] futures = new Future[nthreads];
+			int k = size / nthreads;
+			for (int j = 0; j < nthreads; j++) {
+				final int firstIdx = j * k;
+				final int lastIdx = (j == nthreads - 1) ? size : firstIdx + k;
+				futures[j] = ConcurrencyUtils.submit(new Callable<double[]>() {
+					public double[] call() throws Exception {
+						return aux_hard4(y, w1, w2, t, tp, theta4, theta9, firstIdx, lastIdx);
+					}
+				});
+			}
+			// partial sums are added in a fixed order
+			double[] div = new double[2];
+			try {
+				for (int j = 0; j < nthreads; j++) {
+					double[] aux = (double[]) futures[j].get();
+					div[0] += aux[0];
+					div[1] += aux[1];
+				}
+			} catch (ExecutionException ex) {
+				throw ThreadUtil.unchecked(ex);
+			} catch (InterruptedException e) {
+				throw ThreadUtil.unchecked(e);
+			}
+			return div;
+		}
+		return aux_hard4(y, w1, w2, t, tp, theta4, theta9, 0, size);
+	}
+
+	private static double[] aux_hard4(float[] y, float[] w1, float[] w2, float[] t, float[] tp,
+                                      float[] theta4, float[] theta9, int firstIdx, int lastIdx) {
+		double div4 = 0;
+		double div9 = 0;
+		for (int i = firstIdx; i < lastIdx; i++) {
+			float yi = y[i];
+			float y2 = yi * yi;
+			float y4 = y2 * y2;
+
+			// see LETProcess2D.aux_hard4
+			float T = 4.0f * t[i];
+			float T2 = T * T;
+			float r = y4 / (T2 * T2);
+			float g = (float) Math.exp(-r);
+			theta4[i] = (1 - g) * yi;
+			div4 += w1[i] * (1 - g + 4 * g * r) - w2[i] * 4 * g * r * yi * 4.0f * tp[i] / T;
+
+			T = 9.0f * t[i];
+			T2 = T * T;
+			r = y4 / (T2 * T2);
+			g = (float) Math.exp(-r);
+			theta9[i] = (1 - g) * yi;
+			div9 += w1[i] * (1 - g + 4 * g * r) - w2[i] * 4 * g * r * yi * 9.0f * tp[i] / T;
+		}
+		return new double[]{div4, div9};
+	}
+
+}
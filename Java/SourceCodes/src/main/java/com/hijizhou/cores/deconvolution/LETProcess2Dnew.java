@@ -18,10 +18,9 @@ import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
 import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
 import com.cern.jet.math.tdcomplex.DComplexFunctions;
 import com.cern.jet.math.tdouble.DoubleFunctions;
-import com.hijizhou.utilities.FFT_WFilter;
 import com.hijizhou.utilities.ImageUtil;
-import com.hijizhou.utilities.PSFUtil;
 import com.hijizhou.utilities.SpectralUtils;
+import com.hijizhou.utilities.WaveletFilterBank;
 import org.jblas.ComplexDoubleMatrix;
 import org.jblas.DoubleMatrix;
 import org.jblas.MatrixFunctions;
@@ -34,7 +33,7 @@ public class LETProcess2Dnew {
     private int height;
     private final int jIndex;
     private final int oIndex;
-    private FFT_WFilter wf;
+    private final WaveletFilterBank bank;
     private ComplexDoubleMatrix Yi;
     private double alpha;
     private ComplexDoubleMatrix Hli;
@@ -83,19 +82,19 @@ public class LETProcess2Dnew {
         }
     }
 
-    public LETProcess2Dnew(double alpha, int jIndex, int oIndex, FFT_WFilter wf,
+    public LETProcess2Dnew(double alpha, int jIndex, int oIndex, WaveletFilterBank bank,
                            ComplexDoubleMatrix auxInput, ComplexDoubleMatrix Yi,
                            ComplexDoubleMatrix Hli, ComplexDoubleMatrix Hbit) {
         this.alpha = alpha;
         this.jIndex = jIndex;
         this.oIndex = oIndex;
-        this.wf = wf;
+        this.bank = bank;
         this.Yi = Yi;
         this.Hli = Hli;
         this.Hbit = Hbit;
         this.auxInput = auxInput;
-        this.width = wf.getDx().length / 2;
-        this.height = wf.getDy().length / 2;
+        this.height = bank.getNx();
+        this.width = bank.getNy();
     }
 
     public ReValue getRV() {
@@ -104,9 +103,7 @@ public class LETProcess2Dnew {
 
     public LETProcess2Dnew run() {
         /////
-        wf.fft_wfilters2D(width, height, oIndex, jIndex + 1);
-
-        ComplexDoubleMatrix decEle = PSFUtil.getDecMatrix2DNew(wf);
+        ComplexDoubleMatrix decEle = ImageUtil.colt2blasComplexMatrix(bank.getDecomposition2DFull(jIndex, oIndex));
         ComplexDoubleMatrix decEleH = decEle.dup();
         decEleH.muli(Hli);
 
@@ -172,7 +169,7 @@ public class LETProcess2Dnew {
         betav.muli(v);
         betav.addi(s);
 
-        DoubleMatrix tp = new DoubleMatrix(width, height);
+        DoubleMatrix tp = new DoubleMatrix(height, width);
         tp.fill(0.5);
         tp.divi(t);
         tp.muli(betav);
@@ -240,9 +237,9 @@ public class LETProcess2Dnew {
         private double div;
 
         public ThetaNew(int width, int height) {
-            this.F_theta = new DoubleMatrix(width, height);
-            this.F_theta1 = new DoubleMatrix(width, height);
-            this.F_theta2 = new DoubleMatrix(width, height);
+            this.F_theta = new DoubleMatrix(height, width);
+            this.F_theta1 = new DoubleMatrix(height, width);
+            this.F_theta2 = new DoubleMatrix(height, width);
             this.matrixCFele = new DenseDComplexMatrix1D(width * height);
         }
 
@@ -19,8 +19,10 @@ import com.cern.colt.matrix.tdouble.DoubleMatrix3D;
 import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix3D;
 import com.cern.jet.math.tdcomplex.DComplexFunctions;
 import com.cern.jet.math.tdouble.DoubleFunctions;
-import com.hijizhou.utilities.FFT_WFilter;
-import com.hijizhou.utilities.PSFUtil;
+import com.hijizhou.utilities.HalfSpectrum;
+import com.hijizhou.utilities.Metrics;
+import com.hijizhou.utilities.ThreadUtil;
+import com.hijizhou.utilities.WaveletFilterBank;
 
 import java.util.concurrent.Callable;
 
@@ -31,12 +33,14 @@ public class LETProcess3D implements Callable<LETProcess3D> {
     private int slice;
     private final int jIndex;
     private final int oIndex;
-    private FFT_WFilter wf;
+    private final WaveletFilterBank bank;
     private DComplexMatrix3D Yi;
     private double alpha;
     private DComplexMatrix3D Hli;
     private DComplexMatrix3D Hbit;
     private AbstractMatrix3D auxInput;
+    private int nthreads = 1;
+    private Metrics metrics = null;
     private ReValue3D returnvalue = new ReValue3D();
 
     public static class ReValue3D {
@@ -80,65 +84,89 @@ public class LETProcess3D implements Callable<LETProcess3D> {
         }
     }
 
-    public LETProcess3D(double alpha, int jIndex, int oIndex, FFT_WFilter wf,
+    public LETProcess3D(double alpha, int jIndex, int oIndex, WaveletFilterBank bank,
                         AbstractMatrix3D auxInput, DComplexMatrix3D Yi,
                         DComplexMatrix3D Hli, DComplexMatrix3D Hbit) {
         this.alpha = alpha;
         this.jIndex = jIndex;
         this.oIndex = oIndex;
-        this.wf = wf;
+        this.bank = bank;
         this.Yi = Yi;
         this.Hli = Hli;
         this.Hbit = Hbit;
         this.auxInput = auxInput;
-        this.width = wf.getDx().length / 2;
-        this.height = wf.getDy().length / 2;
-        this.slice = wf.getDz().length / 2;
+        this.height = bank.getNx();
+        this.width = bank.getNy();
+        this.slice = bank.getNz();
     }
 
     public ReValue3D getRV() {
         return this.returnvalue;
     }
 
-    @Override
-    public LETProcess3D call() throws Exception{
+    /**
+     * Rough estimate, in bytes, of the memory one process takes on a volume
+     * of slice x height x width: about 28 volumes of temporaries (real
+     * volumes and complex half spectra) are alive at its peak.
+     */
+    public static long getMemoryEstimate(int slice, int height, int width) {
+        return 28L * 8 * slice * height * width;
+    }
 
+    /**
+     * Number of threads the FFTs and matrix operations of this process may use.
+     */
+    public void setNumberOfThreads(int nthreads) {
+        this.nthreads = nthreads;
+    }
+
+    /**
+     * Metrics the process is timed in, as a "subband.job", and which counts
+     * its Fourier transforms (none by default).
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
 
-        DoubleMatrix3D tp = new DenseDoubleMatrix3D(slice, width, height);
+    @Override
+    public LETProcess3D call() throws Exception{
+        ThreadUtil.setLocalNumberOfThreads(nthreads);
+        Metrics previous = Metrics.setCurrent(metrics);
+        Metrics.Span span = metrics == null ? null : metrics.beginJob("subband.job");
+        try {
+            return process();
+        } finally {
+            if (span != null) {
+                span.end();
+            }
+            Metrics.setCurrent(previous);
+            ThreadUtil.clearLocalNumberOfThreads();
+        }
+    }
 
-        wf.fft_wfilters3D(width, height, slice, oIndex, jIndex + 1);
+    private LETProcess3D process() {
 
-        DComplexMatrix3D decEle = PSFUtil.getDecMatrix3D(wf);
+        // all spectra are Hermitian, only their nonredundant half is kept
+        DComplexMatrix3D decEle = bank.getDecomposition3D(jIndex, oIndex);
 
         // Di = D.*Hli;
         DComplexMatrix3D decEleH = decEle.copy();
         decEleH.assign(Hli, DComplexFunctions.mult);
 
-        DComplexMatrix3D decEleConj = decEle.copy();
-        decEleConj.assign(DComplexFunctions.conj);
-        DComplexMatrix3D recEle = decEleConj.copy();
-        recEle.assign(DComplexFunctions.div(Math.pow(8, jIndex + 1)));
-
-        AbstractMatrix3D di = decEleH.copy();
-
-        ((DenseDComplexMatrix3D) di).ifft3(true);
-
-        DoubleMatrix3D diReal = ((DenseDComplexMatrix3D) di).getRealPart();
+        DoubleMatrix3D diReal = HalfSpectrum.ifft3(decEleH, width);
         AbstractMatrix3D di2 = diReal.copy();
         ((DenseDoubleMatrix3D) di2).assign(DoubleFunctions.square);
-        DComplexMatrix3D Di2 = ((DenseDoubleMatrix3D) di2).getFft3();
+        DComplexMatrix3D Di2 = HalfSpectrum.fft3((DoubleMatrix3D) di2);
 
         DComplexMatrix3D aux_w = decEle.copy();
         aux_w.assign(Yi, DComplexFunctions.mult);
-        ((DenseDComplexMatrix3D) aux_w).ifft3(true);
-        DoubleMatrix3D w = aux_w.getRealPart();
+        DoubleMatrix3D w = HalfSpectrum.ifft3(aux_w, width);
 
 //        ImageUtil.previewSave(w);
 
         DComplexMatrix3D aux_v = Di2.copy();
         aux_v.assign((DComplexMatrix3D) auxInput, DComplexFunctions.mult);
-        ((DenseDComplexMatrix3D) aux_v).ifft3(true);
-        DoubleMatrix3D v = aux_v.getRealPart();
+        DoubleMatrix3D v = HalfSpectrum.ifft3(aux_v, width);
         v.assign(DoubleFunctions.mult(alpha));
 
         double eps = 1e-9;
@@ -163,6 +191,21 @@ public class LETProcess3D implements Callable<LETProcess3D> {
         betav.assign(DoubleFunctions.sqrt);
         DoubleMatrix3D t = betav.copy();
 
+        // whether to threshold: decided from w and t alone, so that the
+        // sub-bands rejected skip the transforms of the divergence term
+        DoubleMatrix3D ww = w.copy();
+        ww.assign(DoubleFunctions.square);
+        double mean1 = ww.zSum()
+                / (width * height*slice);
+        ww = t.copy();
+        ww.assign(DoubleFunctions.square);
+        double mean2 = 2 * ww.zSum()
+                / (width * height*slice);
+
+        if (mean1 <= mean2) {
+            return this;
+        }
+
         betav = s.copy();
         betav.assign(DoubleFunctions.square);
         betav.assign(DoubleFunctions.mult(-1));
@@ -171,46 +214,33 @@ public class LETProcess3D implements Callable<LETProcess3D> {
         betav.assign(v, DoubleFunctions.mult);
         betav.assign(s, DoubleFunctions.plus);
 
+        DoubleMatrix3D tp = new DenseDoubleMatrix3D(slice, height, width);
         tp.assign(0.5);
         tp.assign(t, DoubleFunctions.div);
         tp.assign(betav, DoubleFunctions.mult);
 
         // divergence term
+        DComplexMatrix3D recEle = decEle.copy();
+        recEle.assign(DComplexFunctions.conj);
+        recEle.assign(DComplexFunctions.div(Math.pow(8, jIndex + 1)));
         DComplexMatrix3D auxrt = recEle.copy();
         auxrt.assign(Hbit, DComplexFunctions.mult);
         auxrt.assign(DComplexFunctions.conj);
-        ((DenseDComplexMatrix3D) auxrt).ifft3(true);
-        DoubleMatrix3D rt = auxrt.getRealPart();
+        DoubleMatrix3D rt = HalfSpectrum.ifft3(auxrt, width);
 
         DoubleMatrix3D auxDiRt = rt.copy();
         auxDiRt.assign(diReal, DoubleFunctions.mult);
-        DComplexMatrix3D DiRt = ((DenseDoubleMatrix3D) auxDiRt).getFft3();
+        DComplexMatrix3D DiRt = HalfSpectrum.fft3(auxDiRt);
         auxDiRt = rt.copy();
         auxDiRt.assign((DenseDoubleMatrix3D) di2, DoubleFunctions.mult);
-        DComplexMatrix3D Di2Rt = ((DenseDoubleMatrix3D) auxDiRt).getFft3();
+        DComplexMatrix3D Di2Rt = HalfSpectrum.fft3(auxDiRt);
 
         DComplexMatrix3D auxW = DiRt.copy();
         auxW.assign((DenseDComplexMatrix3D) auxInput, DComplexFunctions.mult);
-        ((DenseDComplexMatrix3D) auxW).ifft3(true);
-        DoubleMatrix3D w1 = auxW.getRealPart();
+        DoubleMatrix3D w1 = HalfSpectrum.ifft3(auxW, width);
         auxW = Di2Rt.copy();
         auxW.assign((DenseDComplexMatrix3D) auxInput, DComplexFunctions.mult);
-        ((DenseDComplexMatrix3D) auxW).ifft3(true);
-        DoubleMatrix3D w2 = auxW.getRealPart();
-
-        // whether to threshold
-        DoubleMatrix3D ww = w.copy();
-        ww.assign(DoubleFunctions.square);
-        double mean1 = ww.zSum()
-                / (width * height*slice);
-        ww = t.copy();
-        ww.assign(DoubleFunctions.square);
-        double mean2 = 2 * ww.zSum()
-                / (width * height*slice);
-
-        if (mean1 <= mean2) {
-            return this;
-        }
+        DoubleMatrix3D w2 = HalfSpectrum.ifft3(auxW, width);
 
         double startTime = System.nanoTime();
 
@@ -237,10 +267,10 @@ public class LETProcess3D implements Callable<LETProcess3D> {
         private double div;
 
         public Theta3D(int width, int height, int slice) {
-            this.F_theta = new DenseDoubleMatrix3D(slice, width, height);
-            this.F_theta1 = new DenseDoubleMatrix3D(slice, width, height);
-            this.F_theta2 = new DenseDoubleMatrix3D(slice, width, height);
-            this.matrixCFele = new DenseDComplexMatrix1D(width * height * slice);
+            this.F_theta = new DenseDoubleMatrix3D(slice, height, width);
+            this.F_theta1 = new DenseDoubleMatrix3D(slice, height, width);
+            this.F_theta2 = new DenseDoubleMatrix3D(slice, height, width);
+            this.matrixCFele = new DenseDComplexMatrix1D(height * HalfSpectrum.halfColumns(width) * slice);
         }
 
         public DoubleMatrix3D getF_theta() {
@@ -330,12 +360,10 @@ public class LETProcess3D implements Callable<LETProcess3D> {
 
         double startFor = System.nanoTime();
 
-        DComplexMatrix1D matrixCF = new DenseDComplexMatrix1D(width * height*slice);
+        DComplexMatrix1D matrixCF = new DenseDComplexMatrix1D(height * HalfSpectrum.halfColumns(width) * slice);
         theta = aux_hard4(w, factor, t, tp, theta);
 
-        DComplexMatrix3D F_thetaFFT = new DenseDComplexMatrix3D(slice, width, height);
-        F_thetaFFT.assignReal(theta.getF_theta());
-        ((DenseDComplexMatrix3D) F_thetaFFT).fft3();
+        DComplexMatrix3D F_thetaFFT = HalfSpectrum.fft3(theta.getF_theta());
         F_thetaFFT.assign(recEle, DComplexFunctions.mult);
 
         //=============================================================
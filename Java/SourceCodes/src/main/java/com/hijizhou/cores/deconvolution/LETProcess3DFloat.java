@@ -0,0 +1,240 @@
+package com.hijizhou.cores.deconvolution;
+/**
+ * Single precision version of LETProcess3D: the spectra, the sub-band stacks
+ * and the FFTs are in float; the divergence terms are summed in double.
+ *
+ * @reference
+ *       [1] J. Li, F. Luisier and T. Blu, PURE-LET image deconvolution,
+ *             IEEE Trans. Image Process., vol. 27, no. 1, pp. 92-105, 2018.
+ *       [2] J. Li, F. Luisier and T. Blu, Deconvolution of Poissonian images with the PURE-LET approach, 2016 23rd Proc. IEEE Int. Conf. on Image Processing (ICIP 2016), Phoenix, Arizona, USA, 2016, pp.2708-2712.
+ *       [3] J. Li, F. Luisier and T. Blu, PURE-LET deconvolution of 3D fluorescence microscopy images, 2017 14th Proc. IEEE Int. Symp. Biomed. Imaging (ISBI 2017), Melbourne, Australia, 2017, pp. 723-727.
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+import com.cern.colt.matrix.tfcomplex.FComplexMatrix1D;
+import com.cern.colt.matrix.tfcomplex.FComplexMatrix3D;
+import com.cern.colt.matrix.tfloat.FloatMatrix3D;
+import com.cern.colt.matrix.tfloat.impl.DenseFloatMatrix3D;
+import com.cern.jet.math.tfcomplex.FComplexFunctions;
+import com.cern.jet.math.tfloat.FloatFunctions;
+import com.hijizhou.cores.deconvolution.LETProcess2DFloat.ReValue;
+import com.hijizhou.utilities.HalfSpectrum;
+import com.hijizhou.utilities.ImageUtil;
+import com.hijizhou.utilities.Metrics;
+import com.hijizhou.utilities.ThreadUtil;
+import com.hijizhou.utilities.WaveletFilterBank;
+
+import java.util.concurrent.Callable;
+
+public class LETProcess3DFloat implements Callable<LETProcess3DFloat> {
+
+    private int width;
+    private int height;
+    private int slice;
+    private final int jIndex;
+    private final int oIndex;
+    private final WaveletFilterBank bank;
+    private FComplexMatrix3D Yi;
+    private float alpha;
+    private FComplexMatrix3D Hli;
+    private FComplexMatrix3D Hbit;
+    private FComplexMatrix3D auxInput;
+    private int nthreads = 1;
+    private Metrics metrics = null;
+    private ReValue returnvalue = new ReValue();
+
+    public LETProcess3DFloat(double alpha, int jIndex, int oIndex, WaveletFilterBank bank,
+                             FComplexMatrix3D auxInput, FComplexMatrix3D Yi,
+                             FComplexMatrix3D Hli, FComplexMatrix3D Hbit) {
+        this.alpha = (float) alpha;
+        this.jIndex = jIndex;
+        this.oIndex = oIndex;
+        this.bank = bank;
+        this.Yi = Yi;
+        this.Hli = Hli;
+        this.Hbit = Hbit;
+        this.auxInput = auxInput;
+        this.height = bank.getNx();
+        this.width = bank.getNy();
+        this.slice = bank.getNz();
+    }
+
+    public ReValue getRV() {
+        return this.returnvalue;
+    }
+
+    /**
+     * Rough estimate, in bytes, of the memory one process takes on a volume
+     * of slice x height x width: about 28 volumes of temporaries (real
+     * volumes and complex half spectra) are alive at its peak.
+     */
+    public static long getMemoryEstimate(int slice, int height, int width) {
+        return 28L * 4 * slice * height * width;
+    }
+
+    /**
+     * Number of threads the FFTs and matrix operations of this process may use.
+     */
+    public void setNumberOfThreads(int nthreads) {
+        this.nthreads = nthreads;
+    }
+
+    /**
+     * Metrics the process is timed in, as a "subband.job", and which counts
+     * its Fourier transforms (none by default).
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public LETProcess3DFloat call() throws Exception {
+        ThreadUtil.setLocalNumberOfThreads(nthreads);
+        Metrics previous = Metrics.setCurrent(metrics);
+        Metrics.Span span = metrics == null ? null : metrics.beginJob("subband.job");
+        try {
+            return process();
+        } finally {
+            if (span != null) {
+                span.end();
+            }
+            Metrics.setCurrent(previous);
+            ThreadUtil.clearLocalNumberOfThreads();
+        }
+    }
+
+    private LETProcess3DFloat process() {
+
+        FComplexMatrix3D decEle = ImageUtil.double2floatComplexMatrix(bank.getDecomposition3D(jIndex, oIndex));
+
+        // Di = D.*Hli;
+        FComplexMatrix3D decEleH = decEle.copy();
+        decEleH.assign(Hli, FComplexFunctions.mult);
+
+        FloatMatrix3D diReal = HalfSpectrum.ifft3(decEleH, width);
+        FloatMatrix3D di2 = diReal.copy();
+        di2.assign(FloatFunctions.square);
+        FComplexMatrix3D Di2 = HalfSpectrum.fft3(di2);
+
+        FComplexMatrix3D aux_w = decEle.copy();
+        aux_w.assign(Yi, FComplexFunctions.mult);
+        FloatMatrix3D w = HalfSpectrum.ifft3(aux_w, width);
+
+        FComplexMatrix3D aux_v = Di2;
+        aux_v.assign(auxInput, FComplexFunctions.mult);
+        FloatMatrix3D v = HalfSpectrum.ifft3(aux_v, width);
+        v.assign(FloatFunctions.mult(alpha));
+
+        float eps = 1e-9f;
+        float beta = 1e2f;
+        FloatMatrix3D betav = v.copy();
+        betav.assign(FloatFunctions.mult(beta));
+
+        float[] b = ((DenseFloatMatrix3D) betav).elements();
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (float) Math.tanh(b[i]);
+        }
+
+        FloatMatrix3D s = betav.copy();
+
+        betav.assign(v, FloatFunctions.mult);
+        betav.assign(FloatFunctions.plus(eps));
+        betav.assign(FloatFunctions.sqrt);
+        FloatMatrix3D t = betav.copy();
+
+        // whether to threshold, with the sums in double: decided from w and
+        // t alone, so that the sub-bands rejected skip the transforms of the
+        // divergence term
+        double mean1 = sumOfSquares(elementsOf(w))
+                / (width * height * slice);
+        double mean2 = 2 * sumOfSquares(elementsOf(t))
+                / (width * height * slice);
+
+        if (mean1 <= mean2) {
+            return this;
+        }
+
+        betav = s.copy();
+        betav.assign(FloatFunctions.square);
+        betav.assign(FloatFunctions.mult(-1));
+        betav.assign(FloatFunctions.plus(1));
+        betav.assign(FloatFunctions.mult(beta));
+        betav.assign(v, FloatFunctions.mult);
+        betav.assign(s, FloatFunctions.plus);
+
+        FloatMatrix3D tp = new DenseFloatMatrix3D(slice, height, width);
+        tp.assign(0.5f);
+        tp.assign(t, FloatFunctions.div);
+        tp.assign(betav, FloatFunctions.mult);
+
+        // divergence term
+        FComplexMatrix3D recEle = decEle.copy();
+        recEle.assign(FComplexFunctions.conj);
+        recEle.assign(FComplexFunctions.div((float) Math.pow(8, jIndex + 1)));
+        FComplexMatrix3D auxrt = recEle.copy();
+        auxrt.assign(Hbit, FComplexFunctions.mult);
+        auxrt.assign(FComplexFunctions.conj);
+        FloatMatrix3D rt = HalfSpectrum.ifft3(auxrt, width);
+
+        FloatMatrix3D auxDiRt = rt.copy();
+        auxDiRt.assign(diReal, FloatFunctions.mult);
+        FComplexMatrix3D auxW = HalfSpectrum.fft3(auxDiRt);
+        auxW.assign(auxInput, FComplexFunctions.mult);
+        FloatMatrix3D w1 = HalfSpectrum.ifft3(auxW, width);
+        auxDiRt = rt;
+        auxDiRt.assign(di2, FloatFunctions.mult);
+        auxW = HalfSpectrum.fft3(auxDiRt);
+        auxW.assign(auxInput, FComplexFunctions.mult);
+        FloatMatrix3D w2 = HalfSpectrum.ifft3(auxW, width);
+
+        // begin thresholding
+        this.returnvalue = itemThreshold(w1, w2, w, t, tp, recEle, width, height, slice,
+                alpha);
+
+        return this;
+    }
+
+    public static ReValue itemThreshold(FloatMatrix3D w1, FloatMatrix3D w2,
+                                        FloatMatrix3D w, FloatMatrix3D t, FloatMatrix3D tp,
+                                        FComplexMatrix3D recEle, int width, int height, int slice, double alpha) {
+
+        ReValue rv = new ReValue();
+
+        // both thresholds (factor=4 and factor=9), computed on the flat
+        // arrays like in 2D
+        DenseFloatMatrix3D F_theta4 = new DenseFloatMatrix3D(slice, height, width);
+        DenseFloatMatrix3D F_theta9 = new DenseFloatMatrix3D(slice, height, width);
+
+        double[] div = LETProcess2DFloat.aux_hard4(elementsOf(w), elementsOf(w1), elementsOf(w2),
+                elementsOf(t), elementsOf(tp), F_theta4.elements(), F_theta9.elements());
+
+        rv.setValues(aux_rec(F_theta4, recEle), aux_rec(F_theta9, recEle),
+                alpha * div[0], alpha * div[1]);
+
+        return rv;
+    }
+
+    private static FComplexMatrix1D aux_rec(FloatMatrix3D F_theta, FComplexMatrix3D recEle) {
+        FComplexMatrix3D F = HalfSpectrum.fft3(F_theta);
+        F.assign(recEle, FComplexFunctions.mult);
+        return F.vectorize();
+    }
+
+    private static float[] elementsOf(FloatMatrix3D m) {
+        if (m.isView()) {
+            m = m.copy();
+        }
+        return ((DenseFloatMatrix3D) m).elements();
+    }
+
+    private static double sumOfSquares(float[] a) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += (double) a[i] * a[i];
+        }
+        return sum;
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.hijizhou.cores.deconvolution;
+/**
+ * LETSOLVER: solver of the (small, symmetric) linear system A*x = C of the
+ * LET coefficients
+ *
+ * CHOLESKY factorizes A in packed storage and is exact and deterministic; it
+ * falls back to SVD when A is not numerically positive definite (e.g. an
+ * MSE-LET system without ridge). CG iterates from an initial guess, such as
+ * the coefficients of the previous frame of a time-lapse, and falls back to
+ * CHOLESKY when it does not converge. SVD solves in the
+ * least-squares sense, dropping the singular values below a relative
+ * threshold. All of them are safe to share between threads, and none of
+ * them modifies A or C.
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+import com.cern.colt.matrix.tdouble.DoubleMatrix1D;
+import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.cern.colt.matrix.tdouble.algo.decomposition.DenseDoubleEigenvalueDecomposition;
+import com.cern.colt.matrix.tdouble.algo.solver.DoubleCG;
+import com.cern.colt.matrix.tdouble.algo.solver.IterativeSolverDoubleNotConvergedException;
+import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+import com.hijizhou.utilities.Metrics;
+
+public interface LETSolver {
+
+    LETSolver CHOLESKY = new Cholesky();
+
+    LETSolver CG = new ConjugateGradient();
+
+    LETSolver SVD = new SingularValue();
+
+    /**
+     * @param initial initial guess, or null; only used by iterative solvers
+     */
+    DoubleMatrix1D solve(DoubleMatrix2D A, DoubleMatrix1D C, DoubleMatrix1D initial);
+
+    class Cholesky implements LETSolver {
+
+        public DoubleMatrix1D solve(DoubleMatrix2D A, DoubleMatrix1D C, DoubleMatrix1D initial) {
+            int n = A.rows();
+            // upper triangle of the factor U (A = U'*U), column by column:
+            // U(i, j), i <= j, is at j*(j+1)/2 + i
+            double[] u = new double[n * (n + 1) / 2];
+            for (int j = 0; j < n; j++) {
+                int cj = j * (j + 1) / 2;
+                for (int i = 0; i <= j; i++) {
+                    int ci = i * (i + 1) / 2;
+                    double sum = A.getQuick(i, j);
+                    for (int k = 0; k < i; k++) {
+                        sum -= u[ci + k] * u[cj + k];
+                    }
+                    if (i < j) {
+                        u[cj + i] = sum / u[ci + i];
+                    } else if (sum > 0) {
+                        u[cj + j] = Math.sqrt(sum);
+                    } else {
+                        return SVD.solve(A, C, initial);
+                    }
+                }
+            }
+            // U'*z = C, then U*x = z
+            double[] x = C.toArray();
+            for (int j = 0; j < n; j++) {
+                int cj = j * (j + 1) / 2;
+                double sum = x[j];
+                for (int k = 0; k < j; k++) {
+                    sum -= u[cj + k] * x[k];
+                }
+                x[j] = sum / u[cj + j];
+            }
+            for (int i = n - 1; i >= 0; i--) {
+                double sum = x[i];
+                for (int j = i + 1; j < n; j++) {
+                    sum -= u[j * (j + 1) / 2 + i] * x[j];
+                }
+                x[i] = sum / u[i * (i + 1) / 2 + i];
+            }
+            return new DenseDoubleMatrix1D(x);
+        }
+    }
+
+    class ConjugateGradient implements LETSolver {
+
+        public DoubleMatrix1D solve(DoubleMatrix2D A, DoubleMatrix1D C, DoubleMatrix1D initial) {
+            int n = A.rows();
+            DenseDoubleMatrix1D coeff = new DenseDoubleMatrix1D(n);
+            if (initial != null && initial.size() == n) {
+                coeff.assign(initial);
+            }
+            DoubleCG dc = new DoubleCG(new DenseDoubleMatrix1D(n));
+            try {
+                dc.solve(A, C, coeff);
+            } catch (IterativeSolverDoubleNotConvergedException e) {
+                Metrics.count("cg.iterations", dc.getIterationMonitor().iterations());
+                Metrics.count("cg.fallbacks", 1);
+                return CHOLESKY.solve(A, C, initial);
+            }
+            Metrics.count("cg.iterations", dc.getIterationMonitor().iterations());
+            return coeff;
+        }
+    }
+
+    class SingularValue implements LETSolver {
+
+        // singular values below this fraction of the largest one are dropped
+        private static final double TOLERANCE = 1e-12;
+
+        public DoubleMatrix1D solve(DoubleMatrix2D A, DoubleMatrix1D C, DoubleMatrix1D initial) {
+            // A is symmetric: its SVD follows from its eigendecomposition
+            DenseDoubleEigenvalueDecomposition eig = new DenseDoubleEigenvalueDecomposition(A);
+            DoubleMatrix2D V = eig.getV();
+            double[] lambda = eig.getRealEigenvalues().toArray();
+            int n = lambda.length;
+            double max = 0;
+            for (int k = 0; k < n; k++) {
+                max = Math.max(max, Math.abs(lambda[k]));
+            }
+            double[] x = new double[n];
+            for (int k = 0; k < n; k++) {
+                if (Math.abs(lambda[k]) <= TOLERANCE * max) {
+                    continue;
+                }
+                double vc = 0;
+                for (int i = 0; i < n; i++) {
+                    vc += V.getQuick(i, k) * C.getQuick(i);
+                }
+                vc /= lambda[k];
+                for (int i = 0; i < n; i++) {
+                    x[i] += vc * V.getQuick(i, k);
+                }
+            }
+            return new DenseDoubleMatrix1D(x);
+        }
+    }
+}
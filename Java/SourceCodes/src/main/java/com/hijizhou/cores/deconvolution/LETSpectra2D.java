@@ -0,0 +1,156 @@
+package com.hijizhou.cores.deconvolution;
+/**
+ * LETSPECTRA2D: spectra of MW_PURE_LET2D that depend only on the image size
+ * and the PSF, computed once and shared by all the images deconvolved with
+ * them (the channels of a stack, the frames of a time-lapse or the tiles of
+ * a large image)
+ *
+ * It holds the PSF spectrum H, |H|^2, the squared regularizer S^2, the
+ * low-pass filter of the coarsest scale and the wavelet filters of the
+ * sub-bands, as half spectra (see HalfSpectrum). The wavelet filters come
+ * from the shared WaveletFilterBank of the image size, and the Wiener filters conj(H)/(|H|^2 + lambda*S^2)
+ * of the most recently used regularization parameters are kept. Instances
+ * are safe to share between threads; the returned matrices must not be
+ * modified.
+ *
+ * @reference
+ *       [1] J. Li, F. Luisier and T. Blu, PURE-LET image deconvolution,
+ *             IEEE Trans. Image Process., vol. 27, no. 1, pp. 92-105, 2018.
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+import com.cern.colt.matrix.AbstractMatrix2D;
+import com.cern.colt.matrix.tdcomplex.DComplexMatrix2D;
+import com.cern.colt.matrix.tdcomplex.impl.DenseDComplexMatrix2D;
+import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import com.cern.colt.matrix.tfcomplex.FComplexMatrix2D;
+import com.cern.jet.math.tdcomplex.DComplexFunctions;
+import com.cern.jet.math.tdouble.DoubleFunctions;
+import com.edu.emory.mathcs.restoretools.spectral.DoubleCommon2D;
+import com.hijizhou.utilities.HalfSpectrum;
+import com.hijizhou.utilities.PSFUtil;
+import com.hijizhou.utilities.WaveletFilterBank;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class LETSpectra2D {
+
+    // Wiener filters kept, enough for the lambdas and beta of a few images
+    private static final int FILTERS = 16;
+
+    private final int height;
+    private final int width;
+    private final int half;
+    private final int level;
+    private final DComplexMatrix2D fftPSF;
+    private final DoubleMatrix2D S2;
+    private final DComplexMatrix2D H2;
+    private final WaveletFilterBank bank;
+    private final Map<Double, DComplexMatrix2D> filters =
+            new LinkedHashMap<Double, DComplexMatrix2D>(FILTERS, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<Double, DComplexMatrix2D> eldest) {
+                    return size() > FILTERS;
+                }
+            };
+
+    /**
+     * @param imPSF PSF of the size of the images, centred on its maximum
+     * @param level number of wavelet decomposition levels
+     */
+    public LETSpectra2D(DoubleMatrix2D imPSF, int level) {
+        this.height = imPSF.rows();
+        this.width = imPSF.columns();
+        this.half = HalfSpectrum.halfColumns(width);
+        this.level = level;
+
+        int[] psfCenter = PSFUtil.getCenter((DenseDoubleMatrix2D) imPSF);
+        AbstractMatrix2D auxPSF = DoubleCommon2D.circShift(imPSF.copy(), psfCenter);
+        this.fftPSF = HalfSpectrum.fft2((DoubleMatrix2D) auxPSF);
+
+        DoubleMatrix2D S = PSFUtil.getRegularizer(height, width);
+        // S is even, its half spectrum is its first columns
+        this.S2 = S.viewPart(0, 0, height, half).copy();
+        this.S2.assign(DoubleFunctions.square);
+
+        this.H2 = fftPSF.copy();
+        this.H2.assign(DComplexFunctions.conj);
+        this.H2.assign(fftPSF, DComplexFunctions.mult);
+
+        this.bank = WaveletFilterBank.get2D(height, width, level);
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Half spectrum of the PSF, H.
+     */
+    public DComplexMatrix2D getFFTPSF() {
+        return fftPSF;
+    }
+
+    /**
+     * Low-pass decomposition filter of the coarsest scale.
+     */
+    public DComplexMatrix2D getLowPass() {
+        return bank.getDecomposition2D(level - 1, 3);
+    }
+
+    /**
+     * Low-pass reconstruction filter of the coarsest scale.
+     */
+    public DComplexMatrix2D getLowPassRec() {
+        return bank.getReconstruction2D(level - 1, 3);
+    }
+
+    /**
+     * Decomposition filter of orientation <code>oIndex</code> (0 to 2) at
+     * scale <code>jIndex</code> (0 to level-1).
+     */
+    public DComplexMatrix2D getDecomposition(int jIndex, int oIndex) {
+        return bank.getDecomposition2D(jIndex, oIndex);
+    }
+
+    /**
+     * getDecomposition in single precision.
+     */
+    public FComplexMatrix2D getDecompositionFloat(int jIndex, int oIndex) {
+        return bank.getDecomposition2DFloat(jIndex, oIndex);
+    }
+
+    /**
+     * Regularized inverse filter conj(H)/(|H|^2 + regParameter*S^2).
+     */
+    public DComplexMatrix2D getWienerFilter(double regParameter) {
+        synchronized (filters) {
+            DComplexMatrix2D filter = filters.get(regParameter);
+            if (filter != null) {
+                return filter;
+            }
+        }
+        DComplexMatrix2D aux = new DenseDComplexMatrix2D(height, half);
+        aux.assignReal(S2);
+        aux.assign(DComplexFunctions.mult(regParameter));
+        aux.assign(H2, DComplexFunctions.plus);
+        DComplexMatrix2D filter = fftPSF.copy();
+        filter.assign(DComplexFunctions.conj);
+        filter.assign(aux, DComplexFunctions.div);
+        synchronized (filters) {
+            filters.put(regParameter, filter);
+        }
+        return filter;
+    }
+}
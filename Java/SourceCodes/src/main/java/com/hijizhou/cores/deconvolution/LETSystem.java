@@ -0,0 +1,172 @@
+package com.hijizhou.cores.deconvolution;
+/**
+ * LETSYSTEM: normal equations of the LET coefficients, indexed by basis
+ * function, which can be averaged over several images (or tiles of one
+ * image) processed with the same basis
+ *
+ * A basis function missing from an image (a sub-band that was not
+ * thresholded) contributes zero rows and columns; its coefficient is then
+ * zero. The system is solved by a LETSolver, Cholesky by default, and the
+ * time and condition number of the last solve are kept.
+ *
+ * @reference
+ *       [1] J. Li, F. Luisier and T. Blu, PURE-LET image deconvolution,
+ *             IEEE Trans. Image Process., vol. 27, no. 1, pp. 92-105, 2018.
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+import com.cern.colt.matrix.tdouble.DoubleMatrix1D;
+import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.cern.colt.matrix.tdouble.algo.decomposition.DenseDoubleEigenvalueDecomposition;
+import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import com.cern.jet.math.tdouble.DoubleFunctions;
+
+public class LETSystem {
+
+    // added to the diagonal of the PURE-LET system
+    private static final double RIDGE = 0.05;
+
+    private final DoubleMatrix2D matrixA;
+    private final DoubleMatrix1D matrixC;
+    private final boolean pure;
+    private int count = 0;
+    private LETSolver solver = LETSolver.CHOLESKY;
+    private double solveTime = 0;
+    private double conditionNumber = Double.NaN;
+    private DoubleMatrix2D solvedMatrix = null;  // matrix of the system solved
+
+    /**
+     * @param size number of basis functions
+     * @param pure whether the right-hand sides are PURE estimates (with the
+     *             divergence term) rather than MSE ones
+     */
+    public LETSystem(int size, boolean pure) {
+        this.matrixA = new DenseDoubleMatrix2D(size, size);
+        this.matrixC = new DenseDoubleMatrix1D(size);
+        this.pure = pure;
+    }
+
+    /**
+     * Adds the normalized system of one image of <code>pixels</code> pixels,
+     * given by the Gram matrix and right-hand side of its basis functions.
+     */
+    public synchronized void add(GramAccumulator gram, int pixels) {
+        int[] indices = gram.getIndices();
+        DoubleMatrix2D A = getMatrixA(gram, pixels);
+        DoubleMatrix1D C = getMatrixC(gram, pixels, pure);
+        for (int i = 0; i < indices.length; i++) {
+            for (int j = 0; j < indices.length; j++) {
+                matrixA.setQuick(indices[i], indices[j],
+                        matrixA.getQuick(indices[i], indices[j]) + A.getQuick(i, j));
+            }
+            matrixC.setQuick(indices[i], matrixC.getQuick(indices[i]) + C.getQuick(i));
+        }
+        count++;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setSolver(LETSolver solver) {
+        this.solver = solver;
+    }
+
+    /**
+     * Time taken by the last solve, in seconds.
+     */
+    public double getSolveTime() {
+        return solveTime;
+    }
+
+    /**
+     * 2-norm condition number of the last system solved, computed (from the
+     * eigenvalues of the system) on the first call only.
+     */
+    public synchronized double getConditionNumber() {
+        if (Double.isNaN(conditionNumber) && solvedMatrix != null) {
+            conditionNumber = getConditionNumber(solvedMatrix);
+        }
+        return conditionNumber;
+    }
+
+    /**
+     * LET coefficients minimizing the average of the added estimates, one
+     * per basis function.
+     */
+    public synchronized DoubleMatrix1D solve() {
+        if (count == 0) {
+            throw new IllegalStateException("no system added");
+        }
+        DoubleMatrix2D A = matrixA.copy();
+        A.assign(DoubleFunctions.div(count));
+        DoubleMatrix1D C = matrixC.copy();
+        C.assign(DoubleFunctions.div(count));
+        double startTime = System.nanoTime();
+        DoubleMatrix1D coeff = solve(A, C, pure, solver, null);
+        solveTime = (System.nanoTime() - startTime) / 1.0E9D;
+        solvedMatrix = A;
+        conditionNumber = Double.NaN;
+        return coeff;
+    }
+
+    /**
+     * Normalized Gram matrix F'*F/N^2 of the received basis functions.
+     */
+    static DoubleMatrix2D getMatrixA(GramAccumulator gram, int pixels) {
+        DoubleMatrix2D matrixA = gram.getGram();
+        matrixA.assign(DoubleFunctions.div(Math.pow(pixels, 2)));
+        return matrixA;
+    }
+
+    /**
+     * Normalized right-hand side F'*y/N^2, minus the divergence terms for
+     * PURE-LET.
+     */
+    static DoubleMatrix1D getMatrixC(GramAccumulator gram, int pixels, boolean pure) {
+        DoubleMatrix1D matrixC = gram.getRhs();
+        matrixC.assign(DoubleFunctions.div(Math.pow(pixels, 2)));
+        if (pure) {
+            DoubleMatrix1D divC = gram.getDiv();
+            matrixC.assign(divC.assign(DoubleFunctions.div(pixels)),
+                    DoubleFunctions.minus);
+        }
+        return matrixC;
+    }
+
+    /**
+     * Solves A*x = C with <code>solver</code>, from <code>initial</code> (or
+     * null) for the iterative ones; the ridge is added to A (in place) for
+     * PURE-LET and C is clipped at zero.
+     */
+    static DoubleMatrix1D solve(DoubleMatrix2D matrixA, DoubleMatrix1D matrixC, boolean pure, LETSolver solver,
+                                DoubleMatrix1D initial) {
+        int size = matrixA.rows();
+        if (pure) {
+            for (int wi = 0; wi < size; wi++) {
+                double mV = matrixA.getQuick(wi, wi);
+                matrixA.setQuick(wi, wi, mV + RIDGE);
+            }
+        }
+        matrixC.assign(DoubleFunctions.max(0));
+        return solver.solve(matrixA, matrixC, initial);
+    }
+
+    /**
+     * 2-norm condition number of the symmetric matrix A, from its
+     * eigenvalues.
+     */
+    static double getConditionNumber(DoubleMatrix2D A) {
+        double[] lambda = new DenseDoubleEigenvalueDecomposition(A).getRealEigenvalues().toArray();
+        double max = 0;
+        double min = Double.POSITIVE_INFINITY;
+        for (int k = 0; k < lambda.length; k++) {
+            max = Math.max(max, Math.abs(lambda[k]));
+            min = Math.min(min, Math.abs(lambda[k]));
+        }
+        return max / min;
+    }
+}
@@ -10,39 +10,36 @@ package com.hijizhou.cores.deconvolution;
  *			The Chinese University of Hong Kong
  *
  */
-import com.cern.colt.matrix.AbstractMatrix2D;
 import com.cern.colt.matrix.tdcomplex.DComplexMatrix1D;
 import com.cern.colt.matrix.tdcomplex.DComplexMatrix2D;
 import com.cern.colt.matrix.tdcomplex.algo.DenseDComplexAlgebra;
-import com.cern.colt.matrix.tdcomplex.impl.DenseDComplexMatrix1D;
 import com.cern.colt.matrix.tdcomplex.impl.DenseDComplexMatrix2D;
 import com.cern.colt.matrix.tdouble.DoubleMatrix1D;
 import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
 import com.cern.colt.matrix.tdouble.algo.DenseDoubleAlgebra;
-import com.cern.colt.matrix.tdouble.algo.solver.DoubleCG;
-import com.cern.colt.matrix.tdouble.algo.solver.IterativeSolverDoubleNotConvergedException;
 import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
 import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import com.cern.colt.matrix.tfcomplex.FComplexMatrix1D;
+import com.cern.colt.matrix.tfcomplex.FComplexMatrix2D;
 import com.cern.jet.math.tdcomplex.DComplexFunctions;
 import com.cern.jet.math.tdouble.DoubleFunctions;
 import com.edu.emory.mathcs.utils.ConcurrencyUtils;
 import com.hijizhou.cores.deconvolution.LETProcess2D.ReValue;
-import com.hijizhou.utilities.FFT_WFilter;
+import com.hijizhou.utilities.BufferArena;
+import com.hijizhou.utilities.HalfSpectrum;
 import com.hijizhou.utilities.ImageUtil;
-import com.hijizhou.utilities.PSFUtil;
-import com.hijizhou.utilities.WalkBar;
+import com.hijizhou.utilities.Metrics;
+import com.hijizhou.utilities.ProgressListener;
+import com.hijizhou.utilities.ThreadUtil;
 import com.edu.emory.mathcs.restoretools.spectral.DoubleCommon2D;
-import ij.IJ;
 import ij.ImagePlus;
 import ij.process.FloatProcessor;
-import org.jblas.ComplexDouble;
-import org.jblas.ComplexDoubleMatrix;
-import org.jblas.DoubleMatrix;
 
 import java.awt.image.ColorModel;
+import java.io.File;
 import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.*;
 
 public class MW_PURE_LET2D {
@@ -51,21 +48,68 @@ public class MW_PURE_LET2D {
     private double alpha; // Poisson noise
     private double sigma; // Gaussian noise
     private double beta;
-    private int level = 4; // level number of wavelet decomposition
-    private static volatile int numSubbands = 0;
+    static final int LEVEL = 4;
+    // Wiener regularization parameters, relative to alpha times the mean intensity
+    private static final double[] WIENER = new double[]{1e-4, 1e-3, 1e-2};
+    private double[] wiener = WIENER;
+    private double Ey;
+    private int level = LEVEL; // level number of wavelet decomposition
+    private int numSubbands = 0;
     private double[] lambda;
     private DoubleMatrix2D imOutput;
     private DComplexMatrix2D fftInput;
     private DComplexMatrix2D fftPSF;
+    private final LETSpectra2D spectra;
     private DComplexMatrix2D fftOriginal = null;
     private int width;
     private int height;
+    private int half;
     private ColorModel cmY;
-    private WalkBar walk;
-    private Boolean Log;
+    private ProgressListener listener = ProgressListener.SILENT;
+    private boolean Log = false;
+    private boolean singlePrecision = false; // sub-band processing in float
+    private int nthreads = ConcurrencyUtils.getNumberOfThreads();
+    private DComplexMatrix2D lowBand;
+    private DoubleMatrix1D fixedCoeff = null; // shared LET coefficients, by basis function
+    private LETSolver solver = LETSolver.CHOLESKY;
+    private DoubleMatrix1D initialCoeff = null; // warm start, by basis function
+    private DoubleMatrix1D coeff = null;        // LET coefficients used, by basis function
+    private double solveTime = 0;
+    private double conditionNumber = Double.NaN;
+    private DoubleMatrix2D solvedMatrix = null;  // matrix of the system solved
+    private BufferArena arena = new BufferArena();
+    private Metrics metrics = new Metrics();
+    private File spillDirectory = null;
+    private long spillBudget = -1;  // bytes of basis functions kept in memory, -1: half the free heap
+    private int spilledCount = 0;
+    private long memoryBudget = -1;  // bytes for the sub-band processes, -1: half the free heap
+    private int concurrency = 0;
+
+    public MW_PURE_LET2D(DoubleMatrix2D imInput, DoubleMatrix2D imPSF, double[] noiseparameters, ProgressListener listener, boolean Log) {
+        this(imInput, imPSF, noiseparameters, listener, Log, false);
+    }
+
+    /**
+     * @param singlePrecision whether the sub-band processes run in float
+     *                        (half the memory); the linear system is still
+     *                        formed and solved in double
+     */
+    public MW_PURE_LET2D(DoubleMatrix2D imInput, DoubleMatrix2D imPSF, double[] noiseparameters, ProgressListener listener, boolean Log,
+                         boolean singlePrecision) {
+        this(imInput, new LETSpectra2D(imPSF, LEVEL), noiseparameters, listener, Log, singlePrecision);
+    }
 
-    public MW_PURE_LET2D(DoubleMatrix2D imInput, DoubleMatrix2D imPSF, double[] noiseparameters, WalkBar walk, Boolean Log) {
-        this.walk = walk;
+    /**
+     * @param spectra PSF and filter spectra of the size of the input, which
+     *                may be shared with other images
+     */
+    public MW_PURE_LET2D(DoubleMatrix2D imInput, LETSpectra2D spectra, double[] noiseparameters, ProgressListener listener,
+                         boolean Log, boolean singlePrecision) {
+        checkSize(imInput, spectra);
+        this.spectra = spectra;
+        this.level = spectra.getLevel();
+        this.singlePrecision = singlePrecision;
+        this.listener = listener;
         this.seType = 0;
         this.alpha = noiseparameters[0];
         this.sigma = noiseparameters[1];
@@ -73,393 +117,594 @@ public class MW_PURE_LET2D {
 
         this.height = imInput.rows();
         this.width = imInput.columns();
+        this.half = HalfSpectrum.halfColumns(width);
 
-        this.fftInput = ((DenseDoubleMatrix2D) imInput)
-                .getFft2();
-        int[] psfCenter = PSFUtil.getCenter((DenseDoubleMatrix2D) imPSF);
-        AbstractMatrix2D auxPSF = DoubleCommon2D.circShift(imPSF, psfCenter);
-        this.fftPSF = ((DenseDoubleMatrix2D) auxPSF).getFft2();
+        // the images are real, so only half of each spectrum is kept
+        this.fftInput = HalfSpectrum.fft2(imInput);
+        this.fftPSF = spectra.getFFTPSF();
 
         //Parameters
-        double[] lambda = new double[]{1e-4, 1e-3, 1e-2};
-
-        this.numWiener = lambda.length;
+        this.numWiener = WIENER.length;
         this.numSubbands = this.numWiener * 2 * this.level * 3;
-        this.lambda = new double[this.numWiener];
-        double Ey = imInput.zSum() / (width * height);
-        for (int i = 0; i < lambda.length; i++) {
-            this.lambda[i] = lambda[i] * this.alpha * Ey;
-        }
-        this.beta = 1e-5 * this.alpha * Ey;
-
-        walk.setMessage("Preparing...");
+        setMeanIntensity(imInput.zSum() / (width * height));
 
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.getNumberOfThreads());
+        listener.setMessage("Preparing...");
 
     }
 
     public MW_PURE_LET2D(DoubleMatrix2D imOriginal, DoubleMatrix2D imInput, DoubleMatrix2D imPSF, double[] noiseparameters) {
+        this(imOriginal, imInput, imPSF, noiseparameters, false);
+    }
+
+    public MW_PURE_LET2D(DoubleMatrix2D imOriginal, DoubleMatrix2D imInput, DoubleMatrix2D imPSF, double[] noiseparameters,
+                         boolean singlePrecision) {
+        this.spectra = new LETSpectra2D(imPSF, LEVEL);
+        this.singlePrecision = singlePrecision;
         this.seType = 1; //MSE-LET
         this.alpha = noiseparameters[0];
         this.sigma = noiseparameters[1];
 
         this.height = imInput.rows();
         this.width = imInput.columns();
+        this.half = HalfSpectrum.halfColumns(width);
 
-        this.fftInput = ((DenseDoubleMatrix2D) imInput)
-                .getFft2();
-
-        int[] psfCenter = PSFUtil.getCenter((DenseDoubleMatrix2D) imPSF);
-        AbstractMatrix2D auxPSF = DoubleCommon2D.circShift(imPSF, psfCenter);
-        this.fftPSF = ((DenseDoubleMatrix2D) auxPSF).getFft2();
-        this.fftOriginal = ((DenseDoubleMatrix2D) imOriginal).getFft2();
+        this.fftInput = HalfSpectrum.fft2(imInput);
+        this.fftPSF = spectra.getFFTPSF();
+        this.fftOriginal = HalfSpectrum.fft2(imOriginal);
 
         //Parameters
-        double[] lambda = new double[]{1e-4, 1e-3, 1e-2};
+        this.numWiener = WIENER.length;
+        this.numSubbands = this.numWiener * 2 * this.level * 3;
+        setMeanIntensity(imInput.zSum() / (width * height));
 
-        this.numWiener = lambda.length;
-        MW_PURE_LET2D.numSubbands = this.numWiener * 2 * this.level * 3;
-        this.lambda = new double[this.numWiener];
+    }
 
-        double Ey = imInput.zSum() / (width * height);
-        for (int i = 0; i < lambda.length; i++) {
-            this.lambda[i] = lambda[i] * this.alpha * Ey;
+    /**
+     * Sets the mean intensity the Wiener regularization parameters are
+     * proportional to (by default the mean of the input), e.g. to use the
+     * same ones for all the tiles of an image.
+     */
+    public void setMeanIntensity(double Ey) {
+        this.Ey = Ey;
+        this.lambda = new double[this.numWiener];
+        for (int i = 0; i < wiener.length; i++) {
+            this.lambda[i] = wiener[i] * this.alpha * Ey;
         }
         this.beta = 1e-5 * this.alpha * Ey;
+    }
 
+    /**
+     * Wiener regularization parameters, relative to alpha times the mean
+     * intensity, each giving its own set of basis functions (by default
+     * 1e-4, 1e-3 and 1e-2). To be set before any coefficients, whose number
+     * depends on it.
+     */
+    public void setWienerParameters(double[] wiener) {
+        if (wiener.length == 0) {
+            throw new IllegalArgumentException("no Wiener regularization parameter");
+        }
+        this.wiener = wiener.clone();
+        this.numWiener = wiener.length;
+        this.numSubbands = this.numWiener * 2 * this.level * 3;
+        setMeanIntensity(this.Ey);
     }
 
-    private DoubleMatrix2D getS2() {
-        DoubleMatrix2D S = PSFUtil.getRegularizer(width, height);
-//        DoubleMatrix2D S = new DenseDoubleMatrix2D(width, height);
-//        S.assign(DoubleFunctions.plus(1));
-        DoubleMatrix2D S2 = S.copy();
-        S2.assign(DoubleFunctions.square);
-        return S2;
+    /**
+     * Maximum number of threads used (by default the global number of
+     * threads).
+     */
+    public void setNumberOfThreads(int nthreads) {
+        this.nthreads = nthreads;
     }
 
-    private DComplexMatrix2D getH2() {
-        DComplexMatrix2D H2 = ((DenseDComplexMatrix2D) fftPSF).copy();
-        (H2).assign(DComplexFunctions.conj);
-        (H2).assign((DComplexMatrix2D) fftPSF,
-                DComplexFunctions.mult);
-        return H2;
+    /**
+     * Number of LET basis functions, i.e. of coefficients.
+     */
+    public int getNumberOfBasisFunctions() {
+        return this.numWiener * 2 * this.level * 3;
     }
 
-    private DComplexMatrix2D getHbi(DoubleMatrix2D S2, DComplexMatrix2D H2){
-        DComplexMatrix2D auxHbi = new DenseDComplexMatrix2D(width, height);
-        auxHbi.assignReal(S2);
-        auxHbi.assign(DComplexFunctions.mult(beta));
-        auxHbi.assign(H2, DComplexFunctions.plus);
-        DComplexMatrix2D Hbi = ((DComplexMatrix2D) fftPSF).copy();
-        Hbi.assign(DComplexFunctions.conj);
-        Hbi.assign(auxHbi, DComplexFunctions.div);
+    /**
+     * Rough estimate, in bytes, of the memory taken by the deconvolution of
+     * a height x width image with <code>nthreads</code> threads, without the
+     * spectra it may share: the basis functions kept until the final
+     * combination, a few spectra of the image and the temporaries of each
+     * sub-band process running.
+     */
+    public static long getMemoryEstimate(int height, int width, boolean singlePrecision, int nthreads) {
+        return getMemoryEstimate(height, width, WIENER.length, singlePrecision, nthreads);
+    }
 
-        return Hbi;
+    /**
+     * Same, with <code>numWiener</code> Wiener regularization parameters
+     * (see setWienerParameters).
+     */
+    public static long getMemoryEstimate(int height, int width, int numWiener, boolean singlePrecision,
+                                         int nthreads) {
+        long elements = (long) height * HalfSpectrum.halfColumns(width);
+        long complexBytes = singlePrecision ? 8 : 16;
+        int basis = numWiener * 2 * LEVEL * 3;
+        int tasks = Math.max(1, Math.min(nthreads, numWiener * LEVEL * 3));
+        return elements * (basis * complexBytes + 10 * 16) + tasks * getTaskMemoryEstimate(height, width, singlePrecision);
     }
 
-    private DComplexMatrix2D getHli(DoubleMatrix2D S2, DComplexMatrix2D H2, double regParameter){
-        DComplexMatrix2D auxHli = new DenseDComplexMatrix2D(width, height);
-        auxHli.assignReal(S2);
-        auxHli.assign(DComplexFunctions.mult(regParameter));
-        auxHli.assign(H2, DComplexFunctions.plus);
-        DComplexMatrix2D Hli = fftPSF.copy();
-        Hli.assign(DComplexFunctions.conj);
-        Hli.assign(auxHli, DComplexFunctions.div);
-        return Hli;
+    private static long getTaskMemoryEstimate(int height, int width, boolean singlePrecision) {
+        long bytes = LETProcess2D.getMemoryEstimate(height, width);
+        return singlePrecision ? bytes / 2 : bytes;
     }
 
-    public boolean doDeconvolution() {
+    /**
+     * Arena the temporaries of the deconvolution are taken from and given
+     * back to (by default one of its own), e.g. one reused for all the
+     * frames a thread deconvolves. The peak of each stage of the last
+     * deconvolution is then found in the arena (see getBufferArena), and
+     * logged with the running times.
+     */
+    public void setBufferArena(BufferArena arena) {
+        this.arena = arena;
+    }
 
+    public BufferArena getBufferArena() {
+        return arena;
+    }
 
-        if(Log) {
-            IJ.log("---- begin deconvolution ----");
-        }
-        double startTime = System.nanoTime(); // start timing
+    /**
+     * Metrics the stages and sub-band processes of the deconvolution are
+     * recorded in (by default one of its own), e.g. one shared by all the
+     * frames of a movie; see Metrics for the names.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
 
-        DoubleMatrix2D S2 = this.getS2();
-        DComplexMatrix2D H2 = this.getH2();
+    public Metrics getMetrics() {
+        return metrics;
+    }
 
-        DComplexMatrix2D Ht = fftPSF.copy();
-        Ht.assign(DComplexFunctions.conj);
+    /**
+     * Keeps at most <code>memoryBudget</code> bytes of LET basis functions
+     * (the thresholded sub-bands, one spectrum each) in memory and spills the
+     * others to a memory-mapped file in <code>directory</code> (null for the
+     * default temporary directory). By default the budget is half the heap
+     * free when the sub-band processing starts.
+     */
+    public void setBasisStorage(File directory, long memoryBudget) {
+        this.spillDirectory = directory;
+        this.spillBudget = memoryBudget;
+    }
 
-        DComplexMatrix2D Hbi = this.getHbi(S2, H2);
-        DComplexMatrix2D Hbit = Hbi.copy();
-        Hbit.assign(DComplexFunctions.conj);
+    /**
+     * Number of basis functions spilled to disk by the last deconvolution.
+     */
+    public int getSpilledCount() {
+        return spilledCount;
+    }
 
-        // Construct fftwfilter
-        FFT_WFilter wf = new FFT_WFilter();
-        wf.fft_wfilters2D(width, height, 3, this.level);
-        DComplexMatrix2D decLow = PSFUtil.getDecMatrix2D(wf);
-        DComplexMatrix2D recLow = PSFUtil.getRecMatrix2D(decLow, this.level);
+    /**
+     * Memory the sub-band processes running at the same time may take, in
+     * bytes; by default half the heap free when they start. At least one
+     * process runs, whatever the budget.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
 
-        DComplexMatrix2D lowBand = new DenseDComplexMatrix2D(width, height);
-        DComplexMatrix2D aux_Band = new DenseDComplexMatrix2D(width, height);
-        DComplexMatrix2D Yi = new DenseDComplexMatrix2D(width, height);
+    /**
+     * Number of sub-band processes run at the same time by the last
+     * deconvolution.
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
 
-        ExecutorService pool = Executors.newFixedThreadPool(ConcurrencyUtils.getNumberOfThreads());
+    /**
+     * As many of the <code>jobs</code> sub-band processes as there are
+     * threads, within the memory budget.
+     */
+    private int getConcurrency(int jobs) {
+        long budget = memoryBudget;
+        if (budget < 0) {
+            budget = getFreeMemory() / 2;
+        }
+        long byMemory = budget / getTaskMemoryEstimate(height, width, singlePrecision);
+        return (int) Math.max(1, Math.min(Math.min(nthreads, jobs), byMemory));
+    }
 
-//        ExecutorService pool = Executors.newFixedThreadPool(24);
+    private static long getFreeMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.maxMemory() - runtime.totalMemory() + runtime.freeMemory();
+    }
 
-        Set<Future<LETProcess2D>> set = new HashSet<Future<LETProcess2D>>();
+    /**
+     * Uses the given LET coefficients, one per basis function (see
+     * LETSystem), instead of solving for them.
+     */
+    public void setCoefficients(DoubleMatrix1D coeff) {
+        if (coeff.size() != getNumberOfBasisFunctions()) {
+            throw new IllegalArgumentException(coeff.size() + " coefficients, expected " + getNumberOfBasisFunctions());
+        }
+        this.fixedCoeff = coeff;
+    }
 
-        for (int wi = 0; wi < this.numWiener; wi++) {
+    public void setSolver(LETSolver solver) {
+        this.solver = solver;
+    }
 
-            DComplexMatrix2D Hli = this.getHli(S2, H2, lambda[wi]);
+    /**
+     * Starts the iterative solvers from <code>coeff</code>, one coefficient
+     * per basis function, e.g. those of the previous frame (see
+     * getCoefficients).
+     */
+    public void setInitialCoefficients(DoubleMatrix1D coeff) {
+        if (coeff.size() != getNumberOfBasisFunctions()) {
+            throw new IllegalArgumentException(coeff.size() + " coefficients, expected " + getNumberOfBasisFunctions());
+        }
+        this.initialCoeff = coeff;
+    }
 
-            Yi = Hli.copy();
-            Yi.assign(fftInput, DComplexFunctions.mult);
+    /**
+     * LET coefficients of the last deconvolution, one per basis function
+     * (zero for the sub-bands that were not used).
+     */
+    public DoubleMatrix1D getCoefficients() {
+        return coeff;
+    }
 
-            aux_Band = Yi.copy();
+    /**
+     * Time taken to solve the linear system, in seconds.
+     */
+    public double getSolveTime() {
+        return solveTime;
+    }
 
-            aux_Band.assign(decLow, DComplexFunctions.mult);
-            aux_Band.assign(recLow, DComplexFunctions.mult);
-            aux_Band.assign(DComplexFunctions.mult(1.0 / this.numWiener));
-            aux_Band.assign(lowBand, DComplexFunctions.plus);
+    /**
+     * 2-norm condition number of the linear system solved, computed (from
+     * the eigenvalues of the system) on the first call only.
+     */
+    public double getConditionNumber() {
+        if (Double.isNaN(conditionNumber) && solvedMatrix != null) {
+            conditionNumber = LETSystem.getConditionNumber(solvedMatrix);
+        }
+        return conditionNumber;
+    }
 
-            lowBand = aux_Band.copy();
+    /**
+     * Runs the sub-band processing and adds the resulting normal equations
+     * to <code>system</code>, without deconvolving.
+     */
+    public void addToSystem(LETSystem system) {
+        Metrics previous = Metrics.setCurrent(metrics);
+        try {
+            GramAccumulator gram = processSubbands();
+            system.add(gram, width * height);
+            gram.close();
+            arena.release(lowBand);
+            arena.endStage();
+        } finally {
+            Metrics.setCurrent(previous);
+        }
+    }
 
-            for (int ji = 0; ji < this.level; ji++) {
-                for (int oi = 0; oi < 3; oi++) {
-                    Callable<LETProcess2D> callable = new LETProcess2D(alpha, ji,
-                            oi, wf, fftInput, Yi, Hli, Hbit);
-                    Future<LETProcess2D> future = pool.submit(callable);
-                    set.add(future);
+    /**
+     * Coefficients of the basis functions <code>indices</code>.
+     */
+    private static DoubleMatrix1D select(DoubleMatrix1D byBasis, int[] indices) {
+        DoubleMatrix1D coeff = new DenseDoubleMatrix1D(indices.length);
+        for (int i = 0; i < indices.length; i++) {
+            coeff.setQuick(i, byBasis.getQuick(indices[i]));
+        }
+        return coeff;
+    }
 
-                    walk.setMessage("Sub-processing: " + wi);
-//                    System.out.println(ji + " " + oi);
-                }
-            }
+    private static void checkSize(DoubleMatrix2D imInput, LETSpectra2D spectra) {
+        if (imInput.rows() != spectra.getHeight() || imInput.columns() != spectra.getWidth()) {
+            throw new IllegalArgumentException("image of " + imInput.rows() + " x " + imInput.columns()
+                    + ", spectra of " + spectra.getHeight() + " x " + spectra.getWidth());
         }
+    }
 
+    public boolean doDeconvolution() {
+        // the Fourier transforms and solver iterations of this thread count
+        // for this deconvolution
+        Metrics previous = Metrics.setCurrent(metrics);
+        try {
+            return deconvolve();
+        } finally {
+            Metrics.setCurrent(previous);
+        }
+    }
+
+    private boolean deconvolve() {
 
-        ////// clear variables //////
-//        S2 = null;
-//        H2 = null;
-//        Ht = null;
-//        Hbit = null;
-//        Yi = null;
-//        wf = null;
-//        decLow = null;
-//        recLow = null;
-//        aux_Band = null;
-//        System.gc();
-        ////////////////////////////
-        double runningTime = (System.nanoTime() - startTime) / 1.0E9D;
         if(Log) {
-            IJ.log("[Step 0 - preparing] running time: " + runningTime + " s");
+            listener.log("---- begin deconvolution ----");
         }
 
-        startTime = System.nanoTime(); // start timing
-        DComplexMatrix1D[] matrixCFele = new DenseDComplexMatrix1D[2];
-        double[] Div = new double[2];
-        DoubleMatrix1D div = new DenseDoubleMatrix1D(MW_PURE_LET2D.numSubbands);
+        GramAccumulator gram = processSubbands();
 
-        int kf = 0;
-        ReValue[] rvList = new ReValue[set.size()];
-        ReValue rv = new ReValue();
-        try {
-            LETProcess2D lp;
-            for (Future<LETProcess2D> future : set) {
-                lp = future.get();
-                rv = lp.getRV();
-                rvList[kf++] = rv;
+        arena.beginStage("solve");
+        DoubleMatrix1D coeff;
+        if (fixedCoeff != null) {
+            coeff = select(fixedCoeff, gram.getIndices());
+        } else {
+            Metrics.Span span = metrics.begin("matrix");
+            DoubleMatrix2D matrixA = LETSystem.getMatrixA(gram, width * height);
+
+            double runningTime = span.end();
+            if(Log) {
+                listener.log("[Step 2 - Matrix formation] running time: " + runningTime + " s");
             }
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        } catch (ExecutionException e) {
-            e.printStackTrace();
-        }
-        pool.shutdown();
 
+            span = metrics.begin("solve");
+            DoubleMatrix1D matrixC = LETSystem.getMatrixC(gram, width * height, this.seType != 1);
 
-        for (int rvi = 0; rvi < kf; rvi++) {
-            rv = rvList[rvi];
-            if (rv.getDiv()[0] == 0) {
-                this.numSubbands -= 2;
-                continue;
+            // solving a linear system of equations
+            DoubleMatrix1D initial = null;
+            if (initialCoeff != null) {
+                initial = select(initialCoeff, gram.getIndices());
             }
-        }
-
-        DComplexMatrix2D matrixCF = new DenseDComplexMatrix2D(width * height,
-                this.numSubbands);
-        int kfv = 0;
-        for (int rvi = 0; rvi < kf; rvi++) {
-            rv = rvList[rvi];
-            if (rv.getDiv()[0] == 0) {
-                continue;
+            coeff = LETSystem.solve(matrixA, matrixC, this.seType != 1, solver, initial);
+
+            solveTime = span.end();
+            solvedMatrix = matrixA;
+            conditionNumber = Double.NaN;
+            if(Log) {
+                listener.log("[Step 3 - Solving linear system] running time: " + solveTime + " s, condition number: "
+                        + getConditionNumber());
             }
-            matrixCFele = rv.getF();
-            Div = rv.getDiv();
-            matrixCF.viewColumn(kfv).assign(matrixCFele[0]);
-            div.setQuick(kfv, Div[0]);
-            kfv += 1;
-
-            matrixCF.viewColumn(kfv).assign(matrixCFele[1]);
-            div.setQuick(kfv, Div[1]);
-            kfv += 1;
+        }
+        this.coeff = new DenseDoubleMatrix1D(getNumberOfBasisFunctions());
+        int[] indices = gram.getIndices();
+        for (int i = 0; i < indices.length; i++) {
+            this.coeff.setQuick(indices[i], coeff.getQuick(i));
         }
 
-        walk.setMessage("Sub-processing finished");
 
+        arena.beginStage("reconstruction");
+        Metrics.Span span = metrics.begin("synthesize");
+        DComplexMatrix1D Fa = gram.combine(coeff);
+        spilledCount = gram.getSpilledCount();
+        metrics.add("basis.spilled", spilledCount);
+        gram.close();
+        HalfSpectrum.scaleMirrored(Fa, height, width, 1 / Math.sqrt(2));
+        Fa.assign(lowBand.vectorize(), DComplexFunctions.plus);
+        arena.release(lowBand);
 
-        runningTime = (System.nanoTime() - startTime) / 1.0E9D;
-        if(Log) {
-            IJ.log("[Step 1 - Subprocessings] running time: " + runningTime + " s");
-        }
-
-        startTime = System.nanoTime(); // start timing
-
-
-        //the most time-costing part
-//        DComplexMatrix2D matrixFTrans = matrixCF.getConjugateTranspose();
-//
-//        DComplexMatrix2D matrixM = new DenseDComplexMatrix2D(MW_PURE_LET2D.numSubbands,
-//                MW_PURE_LET2D.numSubbands);
-//
-//        DComplexMatrix2D pemFtrans = matrixFTrans.copy();
-//
-//        double startTime1 = System.nanoTime();
-//        matrixFTrans.zMult(matrixCF, matrixM);
-//        double runningTime1 = (System.nanoTime() - startTime1) / 1.0E9D;
-//        System.out.println("-- multiplication time: " + runningTime1 + " s");
-//        DoubleMatrix2D matrixA = matrixM.getRealPart();
-
-        //Library: JBLAS
-        DComplexMatrix2D matrixFTrans = matrixCF.getConjugateTranspose();
-        DComplexMatrix2D pemFtrans = matrixFTrans.copy();
-
-        ComplexDoubleMatrix matrix = ImageUtil.colt2blasComplexMatrix(matrixFTrans);
-
-        ComplexDoubleMatrix FF = new ComplexDoubleMatrix(kfv, kfv);
-        matrix.mmuli(matrix.transpose().conji(), FF);
-        ComplexDouble[][] cd = FF.toArray2();
-        DoubleMatrix2D matrixA = new DenseDoubleMatrix2D(kfv, kfv);
-
-        for(int i = 0; i<cd.length; i++){
-            for(int j=0; j<cd[0].length; j++){
-                double tmp = cd[i][j].real() / Math.pow(width * height, 2);
-                matrixA.setQuick(i, j, tmp);
-            }
+        DenseDoubleMatrix2D recImg = new DenseDoubleMatrix2D(height, width);
+        HalfSpectrum.ifft2InPlace((DenseDComplexMatrix2D) Fa.reshape(height, half), recImg);
+        recImg.assign(DoubleFunctions.abs);
+        arena.endStage();
+        for (Map.Entry<String, Long> peak : arena.getStagePeaks().entrySet()) {
+            metrics.record("memory." + peak.getKey(), peak.getValue());
         }
 
-        runningTime = (System.nanoTime() - startTime) / 1.0E9D;
+        double runningTime = span.end();
         if(Log) {
-            IJ.log("[Step 2 - Matrix formation] running time: " + runningTime + " s");
+            listener.log("[Step 4 - Final multiplication] running time: " + runningTime + " s");
+            listener.log("[Memory] peak of the buffers in use by stage:\n" + arena.report());
+
+            listener.log("Deconvolution finished");
+            listener.log("-------------------------");
         }
 
-        DoubleMatrix1D matrixC = new DenseDoubleMatrix1D(width * height);
+        this.imOutput = recImg;
 
-        startTime = System.nanoTime(); // start timing
-        if (this.seType == 1) {
-            // MSE-LET
-            DComplexMatrix2D matricCC = fftOriginal.copy();
-            matricCC.assign(lowBand, DComplexFunctions.minus);
-
-            DComplexMatrix1D matrixMin = matricCC.vectorize();
-
-            DComplexMatrix2D matrixEqC = new DenseDComplexMatrix2D(width
-                    * height, 1);
-            matrixEqC.assign(matrixMin.toArray());
-
-            DComplexMatrix2D auxC = new DenseDComplexMatrix2D(MW_PURE_LET2D.numSubbands,
-                    1);
-            ((DComplexMatrix2D) pemFtrans).zMult(matrixEqC,
-                    auxC, new double[]{1, 0},
-                    new double[]{0, 0}, false, false);
-            matrixC = auxC.getRealPart().vectorize();
-            matrixC.assign(DoubleFunctions.div(Math.pow(width * height, 2)));
-        } else {
-            // PURE-LET
-            DComplexMatrix2D Ybi = fftInput.copy();
-            Ybi.assign(Hbi, DComplexFunctions.mult);
-            Ybi.assign(lowBand, DComplexFunctions.minus);
-
-            DComplexMatrix1D matrixMin = Ybi.vectorize();
-
-            DComplexMatrix2D matrixEqC = new DenseDComplexMatrix2D(width
-                    * height, 1);
-            matrixEqC.assign(matrixMin.toArray());
-
-            DComplexMatrix2D auxC = new DenseDComplexMatrix2D(this.numSubbands,
-                    1);
-            ((DComplexMatrix2D) pemFtrans).zMult(matrixEqC,
-                    auxC, new double[]{1, 0},
-                    new double[]{0, 0}, false, false);
-            matrixC = auxC.getRealPart().vectorize();
-            matrixC.assign(DoubleFunctions.div(Math.pow(width * height, 2)));
-            DoubleMatrix1D divC = new DenseDoubleMatrix1D(MW_PURE_LET2D.numSubbands);
-            divC.viewPart(0, MW_PURE_LET2D.numSubbands).assign(
-                    div.viewPart(0, MW_PURE_LET2D.numSubbands));
-            matrixC.assign(divC.assign(DoubleFunctions.div(width * height)),
-                    DoubleFunctions.minus);
-
-            for (int wi = 0; wi < MW_PURE_LET2D.numSubbands; wi++) {
-                double mV = matrixA.getQuick(wi, wi);
-                matrixA.setQuick(wi, wi, mV + 0.05);
-            }
+        listener.setMessage("Deconvolution finished");
 
-        }
-        matrixC.assign(DoubleFunctions.max(0));
+        return true;
+    }
 
-        // solving a linear system of equations
-        DenseDoubleMatrix1D template = new DenseDoubleMatrix1D(MW_PURE_LET2D.numSubbands);
-        double[] arTemplate = new double[MW_PURE_LET2D.numSubbands];
-        Arrays.fill(arTemplate, 0D);
-        template.assign(arTemplate);
+    /**
+     * Runs the sub-band processes and accumulates the normal equations of
+     * their basis functions; the low-pass band is kept in lowBand.
+     */
+    private GramAccumulator processSubbands() {
+        Metrics.Span span = metrics.begin("prepare");
+        arena.beginStage("prepare");
 
-        DoubleCG dc = new DoubleCG(template);
-        DenseDoubleMatrix1D coeff = new DenseDoubleMatrix1D(MW_PURE_LET2D.numSubbands);
-        try {
-            dc.solve(matrixA, matrixC, coeff);
-        } catch (IterativeSolverDoubleNotConvergedException e) {
-            e.printStackTrace();
-        }
+        DComplexMatrix2D Hbi = spectra.getWienerFilter(beta);
+        DenseDComplexMatrix2D Hbit = arena.complexCopy(Hbi);
+        Hbit.assign(DComplexFunctions.conj);
 
-        runningTime = (System.nanoTime() - startTime) / 1.0E9D;
-        if(Log) {
-            IJ.log("[Step 3 - Solving linear system] running time: " + runningTime + " s");
+        DComplexMatrix2D decLow = spectra.getLowPass();
+        DComplexMatrix2D recLow = spectra.getLowPassRec();
+
+        // the low-pass band, averaged over the Wiener filters, is accumulated
+        // in place
+        lowBand = arena.complex(height, half);
+        lowBand.assign(0, 0);
+        DenseDComplexMatrix2D[] Yi = new DenseDComplexMatrix2D[this.numWiener];
+        FComplexMatrix2D[] YiF = new FComplexMatrix2D[this.numWiener];
+        FComplexMatrix2D[] HliF = new FComplexMatrix2D[this.numWiener];
+        DComplexMatrix2D[] Hli = new DComplexMatrix2D[this.numWiener];
+
+        FComplexMatrix2D fftInputF = null;
+        FComplexMatrix2D HbitF = null;
+        if (singlePrecision) {
+            fftInputF = ImageUtil.double2floatComplexMatrix(fftInput);
+            HbitF = ImageUtil.double2floatComplexMatrix(Hbit);
         }
 
+        for (int wi = 0; wi < this.numWiener; wi++) {
 
-        startTime = System.nanoTime(); // start timing
-        DComplexMatrix2D coeff2D = new DenseDComplexMatrix2D(MW_PURE_LET2D.numSubbands,
-                1);
-        (coeff2D).viewColumn(0).assignReal(coeff);
-
-        DComplexMatrix2D Fa = new DenseDComplexMatrix2D(width * height, 1);
+            Hli[wi] = spectra.getWienerFilter(lambda[wi]);
 
-        Fa = matrixCF.zMult(coeff2D,
-                Fa, new double[]{1, 1}, new double[]{0,
-                        0}, false, false);
+            Yi[wi] = arena.complexCopy(Hli[wi]);
+            Yi[wi].assign(fftInput, DComplexFunctions.mult);
 
-        DComplexMatrix2D matrixLow2D = new DenseDComplexMatrix2D(
-                width * height, 1);
-        DComplexMatrix1D lowBand1D = lowBand.vectorize();
+            DenseDComplexMatrix2D aux_Band = arena.complexCopy(Yi[wi]);
+            aux_Band.assign(decLow, DComplexFunctions.mult);
+            aux_Band.assign(recLow, DComplexFunctions.mult);
+            aux_Band.assign(DComplexFunctions.mult(1.0 / this.numWiener));
+            lowBand.assign(aux_Band, DComplexFunctions.plus);
+            arena.release(aux_Band);
 
-        matrixLow2D.viewColumn(0).assign(lowBand1D);
+            if (singlePrecision) {
+                YiF[wi] = ImageUtil.double2floatComplexMatrix(Yi[wi]);
+                HliF[wi] = ImageUtil.double2floatComplexMatrix(Hli[wi]);
+                arena.release(Yi[wi]);
+            }
+        }
 
-        Fa.assign(matrixLow2D, DComplexFunctions.plus);
+        // the sub-band processes share the threads, as many running at once
+        // as the threads and the memory budget allow
+        arena.beginStage("sub-bands");
+        int jobsPerWiener = this.level * 3;
+        this.concurrency = getConcurrency(this.numWiener * jobsPerWiener);
+        int taskThreads = Math.max(1, nthreads / concurrency);
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        metrics.record("subband.concurrency", concurrency);
+        metrics.record("subband.threads", taskThreads);
+        if (Log) {
+            listener.log("Sub-band processes: " + concurrency + " at a time, " + taskThreads + " threads each");
+        }
 
-        Fa = (Fa.vectorize()).reshape(width, height);
-        ((DenseDComplexMatrix2D) Fa).ifft2(true);
+        CompletionService<LETProcess2D> completion = new ExecutorCompletionService<LETProcess2D>(pool);
+        CompletionService<LETProcess2DFloat> completionF = new ExecutorCompletionService<LETProcess2DFloat>(pool);
+        Map<Future<?>, Integer> tasks = new HashMap<Future<?>, Integer>();
 
-        DoubleMatrix2D recImg = Fa.getRealPart();
-        recImg.assign(DoubleFunctions.abs);
+        for (int wi = 0; wi < this.numWiener; wi++) {
+            for (int ji = 0; ji < this.level; ji++) {
+                for (int oi = 0; oi < 3; oi++) {
+                    Future<?> future;
+                    if (singlePrecision) {
+                        LETProcess2DFloat callable = new LETProcess2DFloat(alpha, ji,
+                                oi, spectra, fftInputF, YiF[wi], HliF[wi], HbitF);
+                        callable.setNumberOfThreads(taskThreads);
+                        callable.setMetrics(metrics);
+                        future = completionF.submit(callable);
+                    } else {
+                        LETProcess2D callable = new LETProcess2D(alpha, ji,
+                                oi, spectra, fftInput, Yi[wi], Hli[wi], Hbit);
+                        callable.setNumberOfThreads(taskThreads);
+                        callable.setBufferArena(arena);
+                        callable.setMetrics(metrics);
+                        future = completion.submit(callable);
+                    }
+                    tasks.put(future, tasks.size());
+
+                    listener.setMessage("Sub-processing: " + wi);
+                }
+            }
+        }
 
-        runningTime = (System.nanoTime() - startTime) / 1.0E9D;
+        ////// clear variables //////
+//        S2 = null;
+//        H2 = null;
+//        Ht = null;
+//        Hbit = null;
+//        Yi = null;
+//        wf = null;
+//        decLow = null;
+//        recLow = null;
+//        aux_Band = null;
+//        System.gc();
+        ////////////////////////////
+        double runningTime = span.end();
         if(Log) {
-            IJ.log("[Step 4 - Final multiplication] running time: " + runningTime + " s");
+            listener.log("[Step 0 - preparing] running time: " + runningTime + " s");
+        }
 
-            IJ.log("Deconvolution finished");
-            IJ.log("-------------------------");
+        span = metrics.begin("subband");
+
+        // right-hand side y, weighted like the basis functions: products over
+        // the half spectrum then equal those over the full spectrum
+        DenseDComplexMatrix2D matrixEqC;
+        if (this.seType == 1) {
+            // MSE-LET
+            matrixEqC = arena.complexCopy(fftOriginal);
+            matrixEqC.assign(lowBand, DComplexFunctions.minus);
+        } else {
+            // PURE-LET
+            matrixEqC = arena.complexCopy(fftInput);
+            matrixEqC.assign(Hbi, DComplexFunctions.mult);
+            matrixEqC.assign(lowBand, DComplexFunctions.minus);
+        }
+        DComplexMatrix1D matrixMin = matrixEqC.vectorize();
+        arena.release(matrixEqC);
+        HalfSpectrum.scaleMirrored(matrixMin, height, width, Math.sqrt(2));
+
+        // F'*F and F'*y are accumulated as the sub-band processes complete,
+        // F itself is never formed; the basis functions beyond the budget
+        // are spilled to disk
+        int submitted = tasks.size();
+        GramAccumulator gram = new GramAccumulator(2 * submitted, matrixMin, singlePrecision);
+        gram.setSpill(spillDirectory, spillBudget >= 0 ? spillBudget : getFreeMemory() / 2);
+        // sub-band processes still running per Wiener filter, whose filtered
+        // input is given back once they are all done
+        int[] running = new int[this.numWiener];
+        Arrays.fill(running, jobsPerWiener);
+        boolean completed = false;
+        try {
+            for (int ti = 0; ti < submitted; ti++) {
+                if (singlePrecision) {
+                    Future<LETProcess2DFloat> future = completionF.take();
+                    int index = tasks.remove(future);
+                    LETProcess2DFloat.ReValue rv = future.get().getRV();
+                    if (rv.getDiv()[0] == 0) {
+                        metrics.add("subbands.skipped", 1);
+                        continue;
+                    }
+                    metrics.add("subbands.kept", 1);
+                    FComplexMatrix1D[] matrixCFele = rv.getF();
+                    double[] Div = rv.getDiv();
+                    Metrics.Span gramSpan = metrics.begin("gram");
+                    HalfSpectrum.scaleMirrored(matrixCFele[0], height, width, Math.sqrt(2));
+                    HalfSpectrum.scaleMirrored(matrixCFele[1], height, width, Math.sqrt(2));
+                    gram.add(2 * index, matrixCFele[0], Div[0]);
+                    gram.add(2 * index + 1, matrixCFele[1], Div[1]);
+                    gramSpan.end();
+                } else {
+                    Future<LETProcess2D> future = completion.take();
+                    int index = tasks.remove(future);
+                    ReValue rv = future.get().getRV();
+                    if (--running[index / jobsPerWiener] == 0) {
+                        arena.release(Yi[index / jobsPerWiener]);
+                    }
+                    if (rv.getDiv()[0] == 0) {
+                        metrics.add("subbands.skipped", 1);
+                        continue;
+                    }
+                    metrics.add("subbands.kept", 1);
+                    DComplexMatrix1D[] matrixCFele = rv.getF();
+                    double[] Div = rv.getDiv();
+                    Metrics.Span gramSpan = metrics.begin("gram");
+                    HalfSpectrum.scaleMirrored(matrixCFele[0], height, width, Math.sqrt(2));
+                    HalfSpectrum.scaleMirrored(matrixCFele[1], height, width, Math.sqrt(2));
+                    gram.add(2 * index, matrixCFele[0], Div[0]);
+                    gram.add(2 * index + 1, matrixCFele[1], Div[1]);
+                    gramSpan.end();
+                }
+            }
+            // no process uses the Wiener filter of the blur any more
+            arena.release(Hbit);
+            completed = true;
+        } catch (InterruptedException e) {
+            throw ThreadUtil.unchecked(e);
+        } catch (ExecutionException e) {
+            throw ThreadUtil.unchecked(e);
+        } finally {
+            // a failed process leaves the system incomplete: the others are
+            // not waited for, and the spilled basis functions are deleted
+            if (!completed) {
+                for (Future<?> future : tasks.keySet()) {
+                    future.cancel(true);
+                }
+                gram.close();
+            }
+            pool.shutdown();
         }
+        this.numSubbands = gram.getIndices().length;
 
-        this.imOutput = recImg;
+        listener.setMessage("Sub-processing finished");
 
-        walk.setMessage("Deconvolution finished");
 
-        return true;
+        runningTime = span.end();
+        if(Log) {
+            listener.log("[Step 1 - Subprocessings] running time: " + runningTime + " s");
+        }
+
+        return gram;
     }
 
     public DoubleMatrix2D getOutputMatrix() {
@@ -467,7 +712,7 @@ public class MW_PURE_LET2D {
     }
 
     public ImagePlus getOutputPlus() {
-        FloatProcessor ip = new FloatProcessor(height, width);
+        FloatProcessor ip = new FloatProcessor(width, height);
         DoubleMatrix2D recImg = this.imOutput;
         DoubleCommon2D.assignPixelsToProcessor(ip,
                 recImg, this.cmY);
@@ -0,0 +1,412 @@
+package com.hijizhou.cores.deconvolution;
+/**
+ * Tiled version of MW_PURE_LET2D, for images too large to be transformed at
+ * once
+ *
+ * The image is split into tiles, each extended on every side by a margin
+ * covering the PSF support and the coarsest wavelet scale (mirrored at the
+ * image borders) to a 2-3-5 smooth block. The blocks are deconvolved in
+ * parallel and their central parts are blended with linear ramps across the
+ * tile boundaries, so that the working memory is bounded by the blocks in
+ * flight rather than by the image.
+ *
+ * All the tiles use the Wiener filters of the whole image. Their LET
+ * coefficients are either estimated tile by tile or shared: in that case
+ * they are solved once from the normal equations averaged over a subsample
+ * of tiles.
+ *
+ * @reference
+ *       [1] J. Li, F. Luisier and T. Blu, PURE-LET image deconvolution,
+ *             IEEE Trans. Image Process., vol. 27, no. 1, pp. 92-105, 2018.
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+import com.cern.colt.matrix.tdouble.DoubleMatrix1D;
+import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import com.edu.emory.mathcs.utils.ConcurrencyUtils;
+import com.hijizhou.utilities.BufferArena;
+import com.hijizhou.utilities.Metrics;
+import com.hijizhou.utilities.PSFUtil;
+import com.hijizhou.utilities.Padding;
+import com.hijizhou.utilities.ThreadUtil;
+import com.hijizhou.utilities.ProgressListener;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class MW_PURE_LET2DTiled {
+
+    // PSF values below this fraction of the maximum are outside its support
+    private static final double PSF_THRESHOLD = 1e-3;
+
+    private final DoubleMatrix2D imInput;
+    private final DoubleMatrix2D imPSF;
+    private final double[] noiseparameters;
+    private final ProgressListener listener;
+    private final boolean Log;
+    private final int height;
+    private final int width;
+    private int[] psfCenter;
+    private int margin;
+    private int tileSize = 512;
+    private boolean shared = false;
+    private int sampleTiles = 4;
+    private boolean singlePrecision = false;
+    private LETSolver solver = LETSolver.CHOLESKY;
+    private double[] wiener = null;  // null: those of MW_PURE_LET2D
+    private int nthreads = ConcurrencyUtils.getNumberOfThreads();
+    private DoubleMatrix2D imOutput;
+    private Metrics metrics = new Metrics();
+    // temporaries of the deconvolutions, reused by each thread from one tile to
+    // the next within its share of the heap
+    private final ThreadLocal<BufferArena> arenas = new ThreadLocal<BufferArena>() {
+        protected BufferArena initialValue() {
+            return BufferArena.forWorker(nthreads);
+        }
+    };
+
+    /**
+     * @param imPSF PSF, centred on its maximum; it may be smaller than the
+     *              image but not than the tiles' support
+     */
+    public MW_PURE_LET2DTiled(DoubleMatrix2D imInput, DoubleMatrix2D imPSF, double[] noiseparameters, ProgressListener listener, boolean Log) {
+        this.imInput = imInput;
+        this.imPSF = imPSF.copy();
+        this.noiseparameters = noiseparameters;
+        this.listener = listener;
+        this.Log = Log;
+        this.height = imInput.rows();
+        this.width = imInput.columns();
+
+        this.psfCenter = getCenter(this.imPSF);
+        this.margin = getPSFRadius() + (2 << MW_PURE_LET2D.LEVEL);
+    }
+
+    /**
+     * Size of the (square) tiles, before the margins are added; raised to
+     * twice the margin if smaller.
+     */
+    public void setTileSize(int tileSize) {
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Shares one set of LET coefficients between all the tiles, estimated
+     * from <code>sampleTiles</code> tiles spread over the image.
+     */
+    public void setSharedCoefficients(boolean shared, int sampleTiles) {
+        this.shared = shared;
+        this.sampleTiles = sampleTiles;
+    }
+
+    public void setSinglePrecision(boolean singlePrecision) {
+        this.singlePrecision = singlePrecision;
+    }
+
+    public void setSolver(LETSolver solver) {
+        this.solver = solver;
+    }
+
+    /**
+     * Wiener regularization parameters of all the tiles (see
+     * MW_PURE_LET2D.setWienerParameters).
+     */
+    public void setWienerParameters(double[] wiener) {
+        this.wiener = wiener.clone();
+    }
+
+    /**
+     * Maximum number of threads used, shared between the tiles processed
+     * concurrently (by default the global number of threads).
+     */
+    public void setNumberOfThreads(int nthreads) {
+        this.nthreads = nthreads;
+    }
+
+    /**
+     * Metrics the deconvolutions of all the tiles add up in (by default one
+     * of its own).
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Number of pixels each tile is extended by on every side.
+     */
+    public int getMargin() {
+        return margin;
+    }
+
+    public boolean doDeconvolution() {
+        double startTime = System.nanoTime(); // start timing
+
+        int core = Math.max(tileSize, 2 * margin);
+        final int[] rowBounds = getTileBounds(height, core);
+        final int[] columnBounds = getTileBounds(width, core);
+        final int blockRows = Padding.nextSmoothSize(getMaxTile(rowBounds) + 2 * margin);
+        final int blockColumns = Padding.nextSmoothSize(getMaxTile(columnBounds) + 2 * margin);
+        final int numTiles = (rowBounds.length - 1) * (columnBounds.length - 1);
+
+        // all the blocks share the spectra of the PSF and of the filters
+        final LETSpectra2D spectra = new LETSpectra2D(PSFUtil.getCenteredPSF(imPSF, blockRows, blockColumns),
+                MW_PURE_LET2D.LEVEL);
+        final double Ey = imInput.zSum() / ((double) width * height);
+
+        if (Log) {
+            listener.log("---- begin tiled deconvolution ----");
+            listener.log(numTiles + " tiles, blocks of " + blockRows + " x " + blockColumns + ", margin " + margin);
+        }
+
+        final DoubleMatrix1D coeff = shared
+                ? getSharedCoefficients(rowBounds, columnBounds, blockRows, blockColumns, spectra, Ey)
+                : null;
+
+        final DoubleMatrix2D output = new DenseDoubleMatrix2D(height, width);
+        runTiles(getAllTiles(numTiles), new TileTask() {
+            public void run(int tile, int threads) {
+                int ti = tile / (columnBounds.length - 1);
+                int tj = tile % (columnBounds.length - 1);
+                MW_PURE_LET2D mw = createTile(rowBounds, columnBounds, ti, tj, blockRows, blockColumns,
+                        spectra, Ey, threads);
+                if (coeff != null) {
+                    mw.setCoefficients(coeff);
+                }
+                mw.doDeconvolution();
+                blend(mw.getOutputMatrix(), output, rowBounds, columnBounds, ti, tj, blockRows, blockColumns);
+                listener.setMessage("Tile " + (tile + 1) + "/" + numTiles);
+            }
+        });
+
+        this.imOutput = output;
+
+        double runningTime = (System.nanoTime() - startTime) / 1.0E9D;
+        if (Log) {
+            listener.log("Tiled deconvolution finished, running time: " + runningTime + " s");
+            listener.log("-------------------------");
+        }
+        listener.setMessage("Deconvolution finished");
+
+        return true;
+    }
+
+    public DoubleMatrix2D getOutputMatrix() {
+        return this.imOutput;
+    }
+
+    private DoubleMatrix1D getSharedCoefficients(final int[] rowBounds, final int[] columnBounds,
+                                                 final int blockRows, final int blockColumns,
+                                                 final LETSpectra2D spectra, final double Ey) {
+        int numTiles = (rowBounds.length - 1) * (columnBounds.length - 1);
+        int numSamples = Math.max(1, Math.min(sampleTiles, numTiles));
+        // tiles spread evenly over the image, in raster order
+        int[] samples = new int[numSamples];
+        for (int k = 0; k < numSamples; k++) {
+            samples[k] = (int) (((2L * k + 1) * numTiles) / (2L * numSamples));
+        }
+
+        final LETSystem[] system = new LETSystem[1];
+        runTiles(samples, new TileTask() {
+            public void run(int tile, int threads) {
+                int ti = tile / (columnBounds.length - 1);
+                int tj = tile % (columnBounds.length - 1);
+                MW_PURE_LET2D mw = createTile(rowBounds, columnBounds, ti, tj, blockRows, blockColumns,
+                        spectra, Ey, threads);
+                synchronized (system) {
+                    if (system[0] == null) {
+                        system[0] = new LETSystem(mw.getNumberOfBasisFunctions(), true);
+                        system[0].setSolver(solver);
+                    }
+                }
+                mw.addToSystem(system[0]);
+                listener.setMessage("Sample tile " + (tile + 1));
+            }
+        });
+
+        DoubleMatrix1D coeff = system[0].solve();
+        if (Log) {
+            listener.log("LET coefficients estimated from " + system[0].getCount() + " tiles in "
+                    + system[0].getSolveTime() + " s, condition number: " + system[0].getConditionNumber());
+        }
+        return coeff;
+    }
+
+    private interface TileTask {
+        void run(int tile, int threads);
+    }
+
+    /**
+     * Runs <code>task</code> on the given tiles, with as many tiles in flight
+     * as threads (and the threads split between them); the first failure of
+     * a tile is rethrown.
+     */
+    private void runTiles(final int[] tiles, final TileTask task) {
+        int numTasks = Math.max(1, Math.min(nthreads, tiles.length));
+        final int threads = Math.max(1, nthreads / numTasks);
+        ExecutorService pool = Executors.newFixedThreadPool(numTasks);
+        Future<?>[] futures = new Future[tiles.length];
+        for (int k = 0; k < tiles.length; k++) {
+            final int tile = tiles[k];
+            futures[k] = pool.submit(new Runnable() {
+                public void run() {
+                    ThreadUtil.setLocalNumberOfThreads(threads);
+                    try {
+                        task.run(tile, threads);
+                    } finally {
+                        ThreadUtil.clearLocalNumberOfThreads();
+                    }
+                }
+            });
+        }
+        boolean completed = false;
+        try {
+            for (int k = 0; k < futures.length; k++) {
+                futures[k].get();
+            }
+            completed = true;
+        } catch (InterruptedException e) {
+            throw ThreadUtil.unchecked(e);
+        } catch (ExecutionException e) {
+            throw ThreadUtil.unchecked(e);
+        } finally {
+            // a failed tile fails the whole image: the others are not waited for
+            if (!completed) {
+                for (Future<?> future : futures) {
+                    future.cancel(true);
+                }
+            }
+            pool.shutdown();
+        }
+    }
+
+    private MW_PURE_LET2D createTile(int[] rowBounds, int[] columnBounds, int ti, int tj,
+                                     int blockRows, int blockColumns, LETSpectra2D spectra, double Ey,
+                                     int threads) {
+        int r0 = getBlockStart(rowBounds, ti, blockRows);
+        int c0 = getBlockStart(columnBounds, tj, blockColumns);
+        DoubleMatrix2D block = new DenseDoubleMatrix2D(blockRows, blockColumns);
+        for (int r = 0; r < blockRows; r++) {
+            int sr = Padding.reflect(r0 + r, height);
+            for (int c = 0; c < blockColumns; c++) {
+                block.setQuick(r, c, imInput.getQuick(sr, Padding.reflect(c0 + c, width)));
+            }
+        }
+        MW_PURE_LET2D mw = new MW_PURE_LET2D(block, spectra, noiseparameters, listener, false,
+                singlePrecision);
+        if (wiener != null) {
+            mw.setWienerParameters(wiener);
+        }
+        mw.setMeanIntensity(Ey);
+        mw.setNumberOfThreads(threads);
+        mw.setSolver(solver);
+        mw.setBufferArena(arenas.get());
+        mw.setMetrics(metrics);
+        return mw;
+    }
+
+    /**
+     * Adds the deconvolved block of tile (ti, tj), weighted by its blending
+     * window, to the output. The windows of neighbouring tiles ramp linearly
+     * across their common boundary and sum to one.
+     */
+    private void blend(DoubleMatrix2D block, DoubleMatrix2D output, int[] rowBounds, int[] columnBounds,
+                       int ti, int tj, int blockRows, int blockColumns) {
+        int ramp = margin / 2;
+        int r0 = getBlockStart(rowBounds, ti, blockRows);
+        int c0 = getBlockStart(columnBounds, tj, blockColumns);
+        int rFirst = Math.max(0, rowBounds[ti] - ramp);
+        int rLast = Math.min(height, rowBounds[ti + 1] + ramp);
+        int cFirst = Math.max(0, columnBounds[tj] - ramp);
+        int cLast = Math.min(width, columnBounds[tj + 1] + ramp);
+        double[] wc = new double[cLast - cFirst];
+        for (int c = cFirst; c < cLast; c++) {
+            wc[c - cFirst] = getWeight(c, columnBounds[tj], columnBounds[tj + 1], width, ramp);
+        }
+        synchronized (output) {
+            for (int r = rFirst; r < rLast; r++) {
+                double wr = getWeight(r, rowBounds[ti], rowBounds[ti + 1], height, ramp);
+                for (int c = cFirst; c < cLast; c++) {
+                    double v = output.getQuick(r, c) + wr * wc[c - cFirst] * block.getQuick(r - r0, c - c0);
+                    output.setQuick(r, c, v);
+                }
+            }
+        }
+    }
+
+    private static double getWeight(int x, int first, int last, int n, int ramp) {
+        if (ramp == 0) {
+            return (x >= first && x < last) ? 1 : 0;
+        }
+        if (first > 0 && x < first + ramp) {
+            return (x - (first - ramp) + 0.5) / (2 * ramp);
+        }
+        if (last < n && x >= last - ramp) {
+            return 1 - (x - (last - ramp) + 0.5) / (2 * ramp);
+        }
+        return 1;
+    }
+
+    /**
+     * Boundaries of tiles of at most <code>core</code> pixels evenly covering
+     * [0, n).
+     */
+    private static int[] getTileBounds(int n, int core) {
+        int numTiles = (n + core - 1) / core;
+        int[] bounds = new int[numTiles + 1];
+        for (int k = 0; k <= numTiles; k++) {
+            bounds[k] = (int) (((long) k * n) / numTiles);
+        }
+        return bounds;
+    }
+
+    private static int getMaxTile(int[] bounds) {
+        int max = 0;
+        for (int k = 0; k < bounds.length - 1; k++) {
+            max = Math.max(max, bounds[k + 1] - bounds[k]);
+        }
+        return max;
+    }
+
+    private static int getBlockStart(int[] bounds, int k, int blockSize) {
+        return bounds[k] - (blockSize - (bounds[k + 1] - bounds[k])) / 2;
+    }
+
+    private static int[] getAllTiles(int numTiles) {
+        int[] tiles = new int[numTiles];
+        for (int k = 0; k < numTiles; k++) {
+            tiles[k] = k;
+        }
+        return tiles;
+    }
+
+    /**
+     * Largest distance (along the rows or the columns) from the centre of a
+     * PSF value above PSF_THRESHOLD times the maximum.
+     */
+    private int getPSFRadius() {
+        double threshold = PSF_THRESHOLD * imPSF.getQuick(psfCenter[0], psfCenter[1]);
+        int radius = 0;
+        for (int r = 0; r < imPSF.rows(); r++) {
+            for (int c = 0; c < imPSF.columns(); c++) {
+                if (imPSF.getQuick(r, c) > threshold) {
+                    radius = Math.max(radius, Math.max(Math.abs(r - psfCenter[0]), Math.abs(c - psfCenter[1])));
+                }
+            }
+        }
+        return radius;
+    }
+
+    private static int[] getCenter(DoubleMatrix2D psf) {
+        double[] maxAndLoc = psf.getMaxLocation();
+        return new int[]{(int) maxAndLoc[1], (int) maxAndLoc[2]};
+    }
+}
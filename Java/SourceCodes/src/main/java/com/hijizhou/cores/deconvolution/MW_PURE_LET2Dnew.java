@@ -25,10 +25,8 @@ import com.edu.emory.mathcs.restoretools.spectral.DoubleCommon2D;
 import com.edu.emory.mathcs.utils.ConcurrencyUtils;
 import com.hijizhou.cores.deconvolution.LETProcess2Dnew.ReValue;
 import com.hijizhou.utilities.*;
-import ij.IJ;
 import ij.ImagePlus;
 import ij.process.FloatProcessor;
-import org.jblas.ComplexDouble;
 import org.jblas.ComplexDoubleMatrix;
 import org.jblas.DoubleMatrix;
 
@@ -54,11 +52,11 @@ public class MW_PURE_LET2Dnew {
     private int width;
     private int height;
     private ColorModel cmY;
-    private WalkBar walk;
+    private ProgressListener listener;
     private Boolean Log;
 
-    public MW_PURE_LET2Dnew(DoubleMatrix2D imInput, DoubleMatrix2D imPSF, double[] noiseparameters, WalkBar walk, Boolean Log) {
-        this.walk = walk;
+    public MW_PURE_LET2Dnew(DoubleMatrix2D imInput, DoubleMatrix2D imPSF, double[] noiseparameters, ProgressListener listener, Boolean Log) {
+        this.listener = listener;
         this.seType = 0;
         this.alpha = noiseparameters[0];
         this.sigma = noiseparameters[1];
@@ -88,14 +86,14 @@ public class MW_PURE_LET2Dnew {
         }
         this.beta = 1e-5 * this.alpha * Ey;
 
-        walk.setMessage("Preparing...");
+        listener.setMessage("Preparing...");
 
         ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.getNumberOfThreads());
 
     }
 
     private DoubleMatrix getS2() {
-        DoubleMatrix2D S = PSFUtil.getRegularizer(width, height);
+        DoubleMatrix2D S = PSFUtil.getRegularizer(height, width);
 //        DoubleMatrix2D S = new DenseDoubleMatrix2D(width, height);
 //        S.assign(DoubleFunctions.plus(1));
         DoubleMatrix2D S2 = S.copy();
@@ -141,7 +139,7 @@ public class MW_PURE_LET2Dnew {
 
 
         if (Log) {
-            IJ.log("---- begin deconvolution ----");
+            listener.log("---- begin deconvolution ----");
         }
         double startTime = System.nanoTime(); // start timing
 
@@ -154,10 +152,9 @@ public class MW_PURE_LET2Dnew {
         ComplexDoubleMatrix Hbi = this.getHbi(S2, H2);
 
 
-        // Construct fftwfilter
-        final FFT_WFilter wf = new FFT_WFilter();
-        wf.fft_wfilters2D(width, height, 3, this.level);
-        ComplexDoubleMatrix decLow = PSFUtil.getDecMatrix2DNew(wf);
+        // the filters of all the sub-bands, shared by the processes
+        final WaveletFilterBank bank = WaveletFilterBank.get2D(height, width, this.level);
+        ComplexDoubleMatrix decLow = ImageUtil.colt2blasComplexMatrix(bank.getDecomposition2DFull(this.level - 1, 3));
         ComplexDoubleMatrix recLow = PSFUtil.getRecMatrix2DNew(decLow, this.level);
 
         int subnum = this.level * 3 * this.numWiener;
@@ -187,7 +184,7 @@ public class MW_PURE_LET2Dnew {
         double runningTime = (System.nanoTime() - startTime) / 1.0E9D;
         if (Log)
         {
-            IJ.log("[Step 0 - preparing] running time: " + runningTime + " s");
+            listener.log("[Step 0 - preparing] running time: " + runningTime + " s");
         }
 
         startTime = System.nanoTime(); // start timing
@@ -197,7 +194,7 @@ public class MW_PURE_LET2Dnew {
         ComplexDoubleMatrix Hbit = Hbi.dup();
         Hbit.conji();
 
-        ComplexDoubleMatrix lowBand = new ComplexDoubleMatrix(width, height);
+        ComplexDoubleMatrix lowBand = new ComplexDoubleMatrix(height, width);
         ComplexDoubleMatrix[] YI = new ComplexDoubleMatrix[this.numWiener];
         ComplexDoubleMatrix[] HLI = new ComplexDoubleMatrix[this.numWiener];
 
@@ -230,6 +227,16 @@ public class MW_PURE_LET2Dnew {
 
                 futures[j] = ConcurrencyUtils.submit(new Runnable() {
                     public void run() {
+                        // the np workers share the threads with the FFTs they run
+                        ThreadUtil.setLocalNumberOfThreads(ThreadUtil.getThreadsPerTask(np));
+                        try {
+                            runRows();
+                        } finally {
+                            ThreadUtil.clearLocalNumberOfThreads();
+                        }
+                    }
+
+                    private void runRows() {
                         for (int i = firstRow; i < lastRow; i++) {
 
                             int wwi = indices[i][1];
@@ -237,7 +244,7 @@ public class MW_PURE_LET2Dnew {
                             int oi = indices[i][3];
 
                             LETProcess2Dnew lp = new LETProcess2Dnew(alpha, ji,
-                                    oi, wf, fftInput, YI[wwi], HLI[wwi], Hbit);
+                                    oi, bank, fftInput, YI[wwi], HLI[wwi], Hbit);
 
                             long time1 = System.nanoTime();
                             try {
@@ -252,7 +259,7 @@ public class MW_PURE_LET2Dnew {
 
                             double time2 = (System.nanoTime() - time1) / 1.0E9D;
                             if(Log) {
-                                IJ.log("proc: " + i + ", w: " + wwi + ", j: " + ji + ", o: " + oi + ", time:" + time2);
+                                listener.log("proc: " + i + ", w: " + wwi + ", j: " + ji + ", o: " + oi + ", time:" + time2);
                             }
                         }
 
@@ -266,7 +273,7 @@ public class MW_PURE_LET2Dnew {
         if (Log)
 
         {
-            IJ.log("[Step 1 - Subprocessings] running time: " + runningTime + " s");
+            listener.log("[Step 1 - Subprocessings] running time: " + runningTime + " s");
         }
 
         startTime = System.nanoTime(); // start timing
@@ -284,8 +291,7 @@ public class MW_PURE_LET2Dnew {
             }
         }
 
-        DComplexMatrix2D matrixCF = new DenseDComplexMatrix2D(width * height,
-                this.numSubbands);
+        DComplexMatrix1D[] columns = new DComplexMatrix1D[this.numSubbands];
         int kfv = 0;
         for (
                 int rvi = 0;
@@ -298,23 +304,23 @@ public class MW_PURE_LET2Dnew {
             }
             matrixCFele = rv.getF();
             Div = rv.getDiv();
-            matrixCF.viewColumn(kfv).assign(matrixCFele[0]);
+            columns[kfv] = matrixCFele[0];
             div.setQuick(kfv, Div[0]);
             kfv += 1;
 
-            matrixCF.viewColumn(kfv).assign(matrixCFele[1]);
+            columns[kfv] = matrixCFele[1];
             div.setQuick(kfv, Div[1]);
             kfv += 1;
         }
 
-        walk.setMessage("Sub-processing finished");
+        listener.setMessage("Sub-processing finished");
 
 
         runningTime = (System.nanoTime() - startTime) / 1.0E9D;
         if (Log)
 
         {
-            IJ.log("[Step 1-1 - Post-Subprocessings] running time: " + runningTime + " s");
+            listener.log("[Step 1-1 - Post-Subprocessings] running time: " + runningTime + " s");
         }
 
         startTime = System.nanoTime(); // start timing
@@ -334,35 +340,14 @@ public class MW_PURE_LET2Dnew {
 //        System.out.println("-- multiplication time: " + runningTime1 + " s");
 //        DoubleMatrix2D matrixA = matrixM.getRealPart();
 
-        //Library: JBLAS
-        DComplexMatrix2D matrixFTrans = matrixCF.getConjugateTranspose();
-        DComplexMatrix2D pemFtrans = matrixFTrans.copy();
-
-        ComplexDoubleMatrix matrix = ImageUtil.colt2blasComplexMatrix(matrixFTrans);
-
-        ComplexDoubleMatrix FF = new ComplexDoubleMatrix(kfv, kfv);
-        matrix.mmuli(matrix.transpose().
-
-                conji(), FF);
-        ComplexDouble[][] cd = FF.toArray2();
-        DoubleMatrix2D matrixA = new DenseDoubleMatrix2D(kfv, kfv);
-
-        for (
-                int i = 0;
-                i < cd.length; i++)
-
-        {
-            for (int j = 0; j < cd[0].length; j++) {
-                double tmp = cd[i][j].real() / Math.pow(width * height, 2);
-                matrixA.setQuick(i, j, tmp);
-            }
-        }
+        // upper triangle of Re(F'*F), straight from the basis functions
+        DoubleMatrix2D matrixA = GramKernel.getGram(columns, 1.0 / Math.pow(width * height, 2));
 
         runningTime = (System.nanoTime() - startTime) / 1.0E9D;
         if (Log)
 
         {
-            IJ.log("[Step 2 - Matrix formation] running time: " + runningTime + " s");
+            listener.log("[Step 2 - Matrix formation] running time: " + runningTime + " s");
         }
 
         DoubleMatrix1D matrixC = new DenseDoubleMatrix1D(width * height);
@@ -378,17 +363,7 @@ public class MW_PURE_LET2Dnew {
 
         DComplexMatrix1D matrixMin = Ybi.vectorize();
 
-        DComplexMatrix2D matrixEqC = new DenseDComplexMatrix2D(width
-                * height, 1);
-        matrixEqC.assign(matrixMin.toArray());
-
-        DComplexMatrix2D auxC = new DenseDComplexMatrix2D(this.numSubbands,
-                1);
-        pemFtrans.zMult(matrixEqC,
-                auxC, new double[]{1, 0},
-                new double[]{0, 0}, false, false);
-        matrixC = auxC.getRealPart().vectorize();
-        matrixC.assign(DoubleFunctions.div(Math.pow(width * height, 2)));
+        matrixC = GramKernel.getProducts(columns, matrixMin, 1.0 / Math.pow(width * height, 2));
         DoubleMatrix1D divC = new DenseDoubleMatrix1D(MW_PURE_LET2Dnew.numSubbands);
         divC.viewPart(0, MW_PURE_LET2Dnew.numSubbands).assign(
                 div.viewPart(0, MW_PURE_LET2Dnew.numSubbands));
@@ -426,46 +401,17 @@ public class MW_PURE_LET2Dnew {
         if (Log)
 
         {
-            IJ.log("[Step 3 - Solving linear system] running time: " + runningTime + " s");
+            listener.log("[Step 3 - Solving linear system] running time: " + runningTime + " s");
         }
 
 
         startTime = System.nanoTime(); // start timing
-        DComplexMatrix2D coeff2D = new DenseDComplexMatrix2D(MW_PURE_LET2Dnew.numSubbands,
-                1);
-        (coeff2D).
-
-                viewColumn(0).
-
-                assignReal(coeff);
-
-        DComplexMatrix2D Fa = new DenseDComplexMatrix2D(width * height, 1);
-
-        Fa = matrixCF.zMult(coeff2D,
-                Fa, new double[]
-
-                        {
-                                1, 1
-                        }, new double[]
-
-                        {
-                                0,
-                                0
-                        }, false, false);
-
-        DComplexMatrix2D matrixLow2D = new DenseDComplexMatrix2D(
-                width * height, 1);
-        DComplexMatrix1D lowBand1D = lowBandColt.vectorize();
-
-        matrixLow2D.viewColumn(0).
-
-                assign(lowBand1D);
-
-        Fa.assign(matrixLow2D, DComplexFunctions.plus);
 
-        Fa = (Fa.vectorize()).
+        // F*a + low-pass band, from the basis functions themselves
+        DComplexMatrix1D Fa1D = lowBandColt.vectorize();
+        GramKernel.addCombination(columns, coeff, Fa1D);
 
-                reshape(width, height);
+        DComplexMatrix2D Fa = Fa1D.reshape(height, width);
         ((DenseDComplexMatrix2D) Fa).
 
                 ifft2(true);
@@ -477,15 +423,15 @@ public class MW_PURE_LET2Dnew {
         if (Log)
 
         {
-            IJ.log("[Step 4 - Final multiplication] running time: " + runningTime + " s");
+            listener.log("[Step 4 - Final multiplication] running time: " + runningTime + " s");
 
-            IJ.log("Deconvolution finished");
-            IJ.log("-------------------------");
+            listener.log("Deconvolution finished");
+            listener.log("-------------------------");
         }
 
         this.imOutput = recImg;
 
-        walk.setMessage("Deconvolution finished");
+        listener.setMessage("Deconvolution finished");
 
         return true;
     }
@@ -495,7 +441,7 @@ public class MW_PURE_LET2Dnew {
     }
 
     public ImagePlus getOutputPlus() {
-        FloatProcessor ip = new FloatProcessor(height, width);
+        FloatProcessor ip = new FloatProcessor(width, height);
         DoubleMatrix2D recImg = this.imOutput;
         DoubleCommon2D.assignPixelsToProcessor(ip,
                 recImg, this.cmY);
@@ -10,34 +10,35 @@ package com.hijizhou.cores.deconvolution;
  *			The Chinese University of Hong Kong
  *
  */
-import com.cern.colt.matrix.AbstractMatrix2D;
 import com.cern.colt.matrix.AbstractMatrix3D;
 import com.cern.colt.matrix.tdcomplex.DComplexMatrix1D;
-import com.cern.colt.matrix.tdcomplex.DComplexMatrix2D;
 import com.cern.colt.matrix.tdcomplex.DComplexMatrix3D;
-import com.cern.colt.matrix.tdcomplex.impl.DenseDComplexMatrix1D;
-import com.cern.colt.matrix.tdcomplex.impl.DenseDComplexMatrix2D;
 import com.cern.colt.matrix.tdcomplex.impl.DenseDComplexMatrix3D;
 import com.cern.colt.matrix.tdouble.DoubleMatrix1D;
 import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
 import com.cern.colt.matrix.tdouble.DoubleMatrix3D;
-import com.cern.colt.matrix.tdouble.algo.solver.DoubleCG;
-import com.cern.colt.matrix.tdouble.algo.solver.IterativeSolverDoubleNotConvergedException;
 import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
 import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix3D;
+import com.cern.colt.matrix.tfcomplex.FComplexMatrix1D;
+import com.cern.colt.matrix.tfcomplex.FComplexMatrix3D;
 import com.cern.jet.math.tdcomplex.DComplexFunctions;
 import com.cern.jet.math.tdouble.DoubleFunctions;
+import com.edu.emory.mathcs.utils.ConcurrencyUtils;
 import com.hijizhou.cores.deconvolution.LETProcess3D.ReValue3D;
-import com.hijizhou.utilities.FFT_WFilter;
+import com.hijizhou.utilities.HalfSpectrum;
+import com.hijizhou.utilities.ImageUtil;
+import com.hijizhou.utilities.Metrics;
 import com.hijizhou.utilities.PSFUtil;
+import com.hijizhou.utilities.ThreadUtil;
+import com.hijizhou.utilities.WaveletFilterBank;
 import com.edu.emory.mathcs.restoretools.spectral.DoubleCommon3D;
 import ij.ImagePlus;
 import ij.ImageStack;
 
 import java.awt.image.ColorModel;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.*;
 
 public class MW_PURE_LET3D {
@@ -56,9 +57,36 @@ public class MW_PURE_LET3D {
     private int width;
     private int height;
     private int slice;
+    private int half;
     private ColorModel cmY;
+    private boolean singlePrecision = false; // sub-band processing in float
+    private long voxels;
+    private File spillDirectory = null;
+    private long spillBudget = -1;  // bytes of basis functions kept in memory, -1: half the free heap
+    private int spilledCount = 0;
+    private int nthreads = ConcurrencyUtils.getNumberOfThreads();
+    private long memoryBudget = -1;  // bytes for the sub-band processes, -1: half the free heap
+    private int concurrency = 0;
+    private LETSolver solver = LETSolver.CHOLESKY;
+    private DoubleMatrix1D initialCoeff = null; // warm start, by basis function
+    private DoubleMatrix1D coeff = null;        // LET coefficients used, by basis function
+    private double solveTime = 0;
+    private double conditionNumber = Double.NaN;
+    private DoubleMatrix2D solvedMatrix = null;  // matrix of the system solved
+    private Metrics metrics = new Metrics();
 
     public MW_PURE_LET3D(DoubleMatrix3D imInput, DoubleMatrix3D imPSF, double[] noiseparameters) {
+        this(imInput, imPSF, noiseparameters, false);
+    }
+
+    /**
+     * @param singlePrecision whether the sub-band processes run in float
+     *                        (half the memory); the linear system is still
+     *                        formed and solved in double
+     */
+    public MW_PURE_LET3D(DoubleMatrix3D imInput, DoubleMatrix3D imPSF, double[] noiseparameters,
+                         boolean singlePrecision) {
+        this.singlePrecision = singlePrecision;
         this.seType = 0;
         this.alpha = noiseparameters[0];
         this.sigma = noiseparameters[1];
@@ -67,13 +95,15 @@ public class MW_PURE_LET3D {
         this.width = imInput.columns();
 
         this.slice = imInput.slices();
+        this.half = HalfSpectrum.halfColumns(width);
+        this.voxels = checkSize(slice, height, width);
 
-        this.fftInput = ((DenseDoubleMatrix3D) imInput)
-                .getFft3();
+        // the stacks are real, so only half of each spectrum is kept
+        this.fftInput = HalfSpectrum.fft3(imInput);
 
         int[] psfCenter = PSFUtil.getCenter((DenseDoubleMatrix3D) imPSF);
         AbstractMatrix3D auxPSF = DoubleCommon3D.circShift(imPSF, psfCenter);
-        this.fftPSF = ((DenseDoubleMatrix3D) auxPSF).getFft3();
+        this.fftPSF = HalfSpectrum.fft3((DoubleMatrix3D) auxPSF);
 
         //Parameters
         double[] lambda = new double[]{1e-3D};
@@ -82,7 +112,7 @@ public class MW_PURE_LET3D {
         MW_PURE_LET3D.numSubbands = this.numWiener * 2 * this.level * 7;
         this.lambda = new double[this.numWiener];
 
-        double Ey = imInput.zSum() / (width * height * slice);
+        double Ey = imInput.zSum() / voxels;
         for (int i = 0; i < lambda.length; i++) {
             this.lambda[i] = lambda[i] * this.alpha * Ey;
         }
@@ -91,6 +121,12 @@ public class MW_PURE_LET3D {
     }
 
     public MW_PURE_LET3D(DoubleMatrix3D imOriginal, DoubleMatrix3D imInput, DoubleMatrix3D imPSF, double[] noiseparameters) {
+        this(imOriginal, imInput, imPSF, noiseparameters, false);
+    }
+
+    public MW_PURE_LET3D(DoubleMatrix3D imOriginal, DoubleMatrix3D imInput, DoubleMatrix3D imPSF, double[] noiseparameters,
+                         boolean singlePrecision) {
+        this.singlePrecision = singlePrecision;
         this.seType = 1; //MSE-LET
         this.alpha = noiseparameters[0];
         this.sigma = noiseparameters[1];
@@ -98,19 +134,20 @@ public class MW_PURE_LET3D {
         this.height = imInput.rows();
         this.width = imInput.columns();
         this.slice = imInput.slices();
+        this.half = HalfSpectrum.halfColumns(width);
+        this.voxels = checkSize(slice, height, width);
 
         double[] minLocation = imInput.getMinLocation();
         if(minLocation[0]>10) {
             imInput.assign(DoubleFunctions.minus(minLocation[0]));
         }
 
-        this.fftInput = ((DenseDoubleMatrix3D) imInput)
-                .getFft3();
+        this.fftInput = HalfSpectrum.fft3(imInput);
 
         int[] psfCenter = PSFUtil.getCenter((DenseDoubleMatrix3D) imPSF);
         AbstractMatrix3D auxPSF = DoubleCommon3D.circShift(imPSF, psfCenter);
-        this.fftPSF = ((DenseDoubleMatrix3D) auxPSF).getFft3();
-        this.fftOriginal = ((DenseDoubleMatrix3D) imOriginal).getFft3();
+        this.fftPSF = HalfSpectrum.fft3((DoubleMatrix3D) auxPSF);
+        this.fftOriginal = HalfSpectrum.fft3(imOriginal);
 
 
         //Parameters
@@ -121,7 +158,7 @@ public class MW_PURE_LET3D {
         MW_PURE_LET3D.numSubbands = this.numWiener * 2 * this.level * 7;
         this.lambda = new double[this.numWiener];
 
-        double Ey = imInput.zSum() / (width * height * slice);
+        double Ey = imInput.zSum() / voxels;
         for (int i = 0; i < lambda.length; i++) {
             this.lambda[i] = lambda[i] * this.alpha * Ey;
         }
@@ -129,9 +166,144 @@ public class MW_PURE_LET3D {
 
     }
 
+    /**
+     * Number of voxels; the half spectra are held in colt matrices, which
+     * are indexed with ints.
+     */
+    private static long checkSize(int slice, int height, int width) {
+        long elements = 2L * slice * height * HalfSpectrum.halfColumns(width);
+        if (elements > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("volume of " + slice + " x " + height + " x " + width
+                    + " too large, its spectrum has more than 2^31 values");
+        }
+        return (long) slice * height * width;
+    }
+
+    /**
+     * Keeps at most <code>memoryBudget</code> bytes of LET basis functions
+     * (the thresholded sub-bands, one volume each) in memory and spills the
+     * others to a memory-mapped file in <code>directory</code> (null for the
+     * default temporary directory). By default the budget is half the heap
+     * free when the sub-band processing starts.
+     */
+    public void setBasisStorage(File directory, long memoryBudget) {
+        this.spillDirectory = directory;
+        this.spillBudget = memoryBudget;
+    }
+
+    /**
+     * Number of basis functions spilled to disk by the last deconvolution.
+     */
+    public int getSpilledCount() {
+        return spilledCount;
+    }
+
+    /**
+     * Maximum number of threads used (by default the global number of
+     * threads).
+     */
+    public void setNumberOfThreads(int nthreads) {
+        this.nthreads = nthreads;
+    }
+
+    /**
+     * Metrics the stages and sub-band processes of the deconvolution are
+     * recorded in (by default one of its own); see Metrics for the names.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Memory the sub-band processes running at the same time may take, in
+     * bytes; by default half the heap free when they start. At least one
+     * process runs, whatever the budget.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Number of sub-band processes run at the same time by the last
+     * deconvolution.
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setSolver(LETSolver solver) {
+        this.solver = solver;
+    }
+
+    /**
+     * Starts the iterative solvers from <code>coeff</code>, one coefficient
+     * per basis function, e.g. those of the previous time point (see
+     * getCoefficients).
+     */
+    public void setInitialCoefficients(DoubleMatrix1D coeff) {
+        if (coeff.size() != getNumberOfBasisFunctions()) {
+            throw new IllegalArgumentException(coeff.size() + " coefficients, expected " + getNumberOfBasisFunctions());
+        }
+        this.initialCoeff = coeff;
+    }
+
+    /**
+     * Number of LET basis functions, i.e. of coefficients.
+     */
+    public int getNumberOfBasisFunctions() {
+        return this.numWiener * 2 * this.level * 7;
+    }
+
+    /**
+     * LET coefficients of the last deconvolution, one per basis function
+     * (zero for the sub-bands that were not used).
+     */
+    public DoubleMatrix1D getCoefficients() {
+        return coeff;
+    }
+
+    /**
+     * Time taken to solve the linear system, in seconds.
+     */
+    public double getSolveTime() {
+        return solveTime;
+    }
+
+    /**
+     * 2-norm condition number of the linear system solved, computed (from
+     * the eigenvalues of the system) on the first call only.
+     */
+    public double getConditionNumber() {
+        if (Double.isNaN(conditionNumber) && solvedMatrix != null) {
+            conditionNumber = LETSystem.getConditionNumber(solvedMatrix);
+        }
+        return conditionNumber;
+    }
+
+    /**
+     * As many of the <code>jobs</code> sub-band processes as there are
+     * threads, within the memory budget.
+     */
+    private int getConcurrency(int jobs) {
+        long budget = memoryBudget;
+        if (budget < 0) {
+            Runtime runtime = Runtime.getRuntime();
+            budget = (runtime.maxMemory() - runtime.totalMemory() + runtime.freeMemory()) / 2;
+        }
+        long perJob = singlePrecision ? LETProcess3DFloat.getMemoryEstimate(slice, height, width)
+                : LETProcess3D.getMemoryEstimate(slice, height, width);
+        long byMemory = budget / perJob;
+        return (int) Math.max(1, Math.min(Math.min(nthreads, jobs), byMemory));
+    }
+
     public DoubleMatrix3D getS2() {
-        DoubleMatrix3D S = PSFUtil.getRegularizer(width, height,slice);
-        DoubleMatrix3D S2 = S.copy();
+        DoubleMatrix3D S = PSFUtil.getRegularizer(height, width, slice);
+        // S is even, its half spectrum is its first columns
+        DoubleMatrix3D S2 = S.viewPart(0, 0, 0, slice, height, half).copy();
         S2.assign(DoubleFunctions.square);
         return S2;
     }
@@ -145,13 +317,23 @@ public class MW_PURE_LET3D {
     }
 
     public boolean doDeconvolution() {
+        Metrics previous = Metrics.setCurrent(metrics);
+        try {
+            return deconvolve();
+        } finally {
+            Metrics.setCurrent(previous);
+        }
+    }
+
+    private boolean deconvolve() {
+        Metrics.Span span = metrics.begin("prepare");
 
         DoubleMatrix3D S2 = this.getS2();
         DComplexMatrix3D H2 = this.getH2();
 
         DComplexMatrix3D Ht = ((DComplexMatrix3D) fftPSF).copy();
         Ht.assign(DComplexFunctions.conj);
-        DComplexMatrix3D auxHbi = new DenseDComplexMatrix3D(slice, width, height);
+        DComplexMatrix3D auxHbi = new DenseDComplexMatrix3D(slice, height, half);
         auxHbi.assignReal(S2);
 
         auxHbi.assign(DComplexFunctions.mult(beta));
@@ -162,32 +344,42 @@ public class MW_PURE_LET3D {
         DComplexMatrix3D Hbit = Hbi.copy();
         Hbit.assign(DComplexFunctions.conj);
 
-        // Construct fftwfilter
-        FFT_WFilter wf = new FFT_WFilter();
-        wf.fft_wfilters3D(width, height, slice, 7, this.level);
-        DComplexMatrix3D decLow = PSFUtil.getDecMatrix3D(wf);
-
-        System.out.println(decLow.getQuick(30,107,118)[0]);
-        DComplexMatrix3D recLow = decLow.copy();
-        recLow.assign(DComplexFunctions.conj);
-        recLow.assign(DComplexFunctions.mult(1.0 / Math.pow(8, this.level)));
+        // the filters of all the sub-bands, shared by the processes
+        WaveletFilterBank bank = WaveletFilterBank.get3D(height, width, slice, this.level);
+        DComplexMatrix3D decLow = bank.getDecomposition3D(this.level - 1, 7);
+        DComplexMatrix3D recLow = bank.getReconstruction3D(this.level - 1, 7);
 
 //		startTime = System.nanoTime();
-        DComplexMatrix3D lowBand = new DenseDComplexMatrix3D(slice, width, height);
+        DComplexMatrix3D lowBand = new DenseDComplexMatrix3D(slice, height, half);
 
-        DComplexMatrix3D aux_Band = new DenseDComplexMatrix3D(slice, width, height);
+        DComplexMatrix3D aux_Band = new DenseDComplexMatrix3D(slice, height, half);
 
 //		endTime = System.nanoTime();
 //		System.out.println("Variable initilization: " + (endTime - startTime)
 //				/ 1.0E9D);
 
-        ExecutorService pool = Executors.newFixedThreadPool(4);
-        Set<Future<LETProcess3D>> set = new HashSet<Future<LETProcess3D>>();
+        // the sub-band processes share the threads, as many running at once
+        // as the threads and the memory budget allow
+        this.concurrency = getConcurrency(this.numWiener * this.level * 7);
+        int taskThreads = Math.max(1, nthreads / concurrency);
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        metrics.record("subband.concurrency", concurrency);
+        metrics.record("subband.threads", taskThreads);
+        CompletionService<LETProcess3D> completion = new ExecutorCompletionService<LETProcess3D>(pool);
+        CompletionService<LETProcess3DFloat> completionF = new ExecutorCompletionService<LETProcess3DFloat>(pool);
+        Map<Future<?>, Integer> tasks = new HashMap<Future<?>, Integer>();
+
+        FComplexMatrix3D fftInputF = null;
+        FComplexMatrix3D HbitF = null;
+        if (singlePrecision) {
+            fftInputF = ImageUtil.double2floatComplexMatrix((DComplexMatrix3D) fftInput);
+            HbitF = ImageUtil.double2floatComplexMatrix(Hbit);
+        }
 
         for (int wi = 0; wi < this.numWiener; wi++) {
             double regParameter = lambda[wi];
 
-            DComplexMatrix3D auxHli = new DenseDComplexMatrix3D(slice, width, height);
+            DComplexMatrix3D auxHli = new DenseDComplexMatrix3D(slice, height, half);
             auxHli.assignReal(S2);
             auxHli.assign(DComplexFunctions.mult(regParameter));
             auxHli.assign(H2, DComplexFunctions.plus);
@@ -214,147 +406,138 @@ public class MW_PURE_LET3D {
 
 //            ImageUtil.preview((DComplexMatrix3D) auxPSF);
 
+            FComplexMatrix3D YiF = null;
+            FComplexMatrix3D HliF = null;
+            if (singlePrecision) {
+                YiF = ImageUtil.double2floatComplexMatrix(Yi);
+                HliF = ImageUtil.double2floatComplexMatrix(Hli);
+            }
+
             for (int ji = 0; ji < this.level; ji++) {
                 for (int oi = 0; oi < 7; oi++) {
                     // D = Dx(:,:,j,o)*Dy(:,:,j,o);
-                    Callable<LETProcess3D> callable = new LETProcess3D(alpha, ji,
-                            oi, wf, fftInput, Yi, Hli, Hbit);
-                    Future<LETProcess3D> future = pool.submit(callable);
-                    set.add(future);
+                    Future<?> future;
+                    if (singlePrecision) {
+                        LETProcess3DFloat callable = new LETProcess3DFloat(alpha, ji,
+                                oi, bank, fftInputF, YiF, HliF, HbitF);
+                        callable.setNumberOfThreads(taskThreads);
+                        callable.setMetrics(metrics);
+                        future = completionF.submit(callable);
+                    } else {
+                        LETProcess3D callable = new LETProcess3D(alpha, ji,
+                                oi, bank, fftInput, Yi, Hli, Hbit);
+                        callable.setNumberOfThreads(taskThreads);
+                        callable.setMetrics(metrics);
+                        future = completion.submit(callable);
+                    }
+                    tasks.put(future, tasks.size());
 
                 }
             }
         }
 
-        MW_PURE_LET3D.numSubbands = set.size() * 2;
-
-        DComplexMatrix1D[] matrixCFele = new DenseDComplexMatrix1D[2];
-        double[] Div = new double[2];
-        DComplexMatrix2D matrixCF = new DenseDComplexMatrix2D(width * height*slice,
-                MW_PURE_LET3D.numSubbands);
-        DoubleMatrix1D div = new DenseDoubleMatrix1D(MW_PURE_LET3D.numSubbands);
-
-        int kf = 0;
-        ReValue3D[] rvList = new ReValue3D[MW_PURE_LET3D.numSubbands];
-        ReValue3D rv = new ReValue3D();
-
+        // right-hand side y, weighted like the basis functions: products over
+        // the half spectrum then equal those over the full spectrum
+        DComplexMatrix3D matrixEqC;
+        if (this.seType == 1) {
+            // MSE-LET
+            matrixEqC = ((DenseDComplexMatrix3D) fftOriginal).copy();
+            matrixEqC.assign(lowBand, DComplexFunctions.minus);
+        } else {
+            // PURE-LET
+            // Ybi = Hbi.*Y;
+            // c = real(F'*(Ybi(:)-Yl(:)))/N^2-div/N;
+            // c = max(c,0);
+            matrixEqC = ((DenseDComplexMatrix3D) fftInput).copy();
+            matrixEqC.assign(Hbi, DComplexFunctions.mult);
+            matrixEqC.assign(lowBand, DComplexFunctions.minus);
+        }
+        DComplexMatrix1D matrixMin = matrixEqC.vectorize();
+        HalfSpectrum.scaleMirrored(matrixMin, slice, height, width, Math.sqrt(2));
+
+        span.end();
+        span = metrics.begin("subband");
+
+        // F'*F and F'*y are accumulated as the sub-band processes complete,
+        // F itself is never formed
+        int submitted = tasks.size();
+        GramAccumulator gram = new GramAccumulator(2 * submitted, matrixMin, singlePrecision);
+        if (spillBudget >= 0) {
+            gram.setSpill(spillDirectory, spillBudget);
+        } else {
+            Runtime runtime = Runtime.getRuntime();
+            gram.setSpill(spillDirectory, (runtime.maxMemory() - runtime.totalMemory() + runtime.freeMemory()) / 2);
+        }
+        boolean completed = false;
         try {
-            LETProcess3D lp;
-            for (Future<LETProcess3D> future : set) {
-                double startTime = System.nanoTime();
-                lp = future.get();
-                rv = lp.getRV();
-                rvList[kf++] = rv;
-                double endTime = System.nanoTime();
-                System.out.println(set.size()+"Thread time: " + (endTime - startTime) / 1.0E9D);
+            for (int ti = 0; ti < submitted; ti++) {
+                if (singlePrecision) {
+                    Future<LETProcess3DFloat> future = completionF.take();
+                    int index = tasks.remove(future);
+                    LETProcess2DFloat.ReValue rv = future.get().getRV();
+                    if (rv.getDiv()[0] == 0) {
+                        metrics.add("subbands.skipped", 1);
+                        continue;
+                    }
+                    metrics.add("subbands.kept", 1);
+                    FComplexMatrix1D[] matrixCFele = rv.getF();
+                    double[] Div = rv.getDiv();
+                    Metrics.Span gramSpan = metrics.begin("gram");
+                    HalfSpectrum.scaleMirrored(matrixCFele[0], slice, height, width, Math.sqrt(2));
+                    HalfSpectrum.scaleMirrored(matrixCFele[1], slice, height, width, Math.sqrt(2));
+                    gram.add(2 * index, matrixCFele[0], Div[0]);
+                    gram.add(2 * index + 1, matrixCFele[1], Div[1]);
+                    gramSpan.end();
+                } else {
+                    Future<LETProcess3D> future = completion.take();
+                    int index = tasks.remove(future);
+                    ReValue3D rv = future.get().getRV();
+                    if (rv.getDiv()[0] == 0) {
+                        metrics.add("subbands.skipped", 1);
+                        continue;
+                    }
+                    metrics.add("subbands.kept", 1);
+                    DComplexMatrix1D[] matrixCFele = rv.getF();
+                    double[] Div = rv.getDiv();
+                    Metrics.Span gramSpan = metrics.begin("gram");
+                    HalfSpectrum.scaleMirrored(matrixCFele[0], slice, height, width, Math.sqrt(2));
+                    HalfSpectrum.scaleMirrored(matrixCFele[1], slice, height, width, Math.sqrt(2));
+                    gram.add(2 * index, matrixCFele[0], Div[0]);
+                    gram.add(2 * index + 1, matrixCFele[1], Div[1]);
+                    gramSpan.end();
+                }
             }
+            completed = true;
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            throw ThreadUtil.unchecked(e);
         } catch (ExecutionException e) {
-            e.printStackTrace();
-        }
-        pool.shutdown();
-
-        int kfv = 0;
-        for (int rvi = 0; rvi < kf; rvi++) {
-            rv = rvList[rvi];
-            if (rv.getDiv()[0] == 0) {
-                MW_PURE_LET3D.numSubbands -= 2;
-                continue;
+            throw ThreadUtil.unchecked(e);
+        } finally {
+            // a failed process, or a basis function that could not be
+            // spilled, leaves the system incomplete: the other processes are
+            // not waited for, and the spill file is deleted
+            if (!completed) {
+                for (Future<?> future : tasks.keySet()) {
+                    future.cancel(true);
+                }
+                gram.close();
             }
-            matrixCFele = rv.getF();
-            Div = rv.getDiv();
-            matrixCF.viewColumn(kfv).assign(matrixCFele[0]);
-            div.setQuick(kfv, Div[0]);
-            kfv += 1;
-
-            matrixCF.viewColumn(kfv).assign(matrixCFele[1]);
-            div.setQuick(kfv, Div[1]);
-            kfv += 1;
-        }
-
-//        endFor = System.nanoTime();
-//        System.out.println("Extract time: " + (endFor - startFor) / 1.0E9D);
-
-        for(int i=0; i< div.size(); i++){
-            System.out.println(div.getQuick(i));
+            pool.shutdown();
         }
+        MW_PURE_LET3D.numSubbands = gram.getIndices().length;
+        span.end();
 
-        DComplexMatrix2D matrixF = new DenseDComplexMatrix2D(width * height * slice,
-                MW_PURE_LET3D.numSubbands);
-
-        matrixF.viewPart(0, 0, width * height * slice,
-                MW_PURE_LET3D.numSubbands).assign(
-                matrixCF.viewPart(0, 0, width
-                        * height * slice, MW_PURE_LET3D.numSubbands));
-
-        AbstractMatrix2D matrixFTrans = matrixF.getConjugateTranspose();
-
-        DComplexMatrix2D matrixM = new DenseDComplexMatrix2D(MW_PURE_LET3D.numSubbands,
-                MW_PURE_LET3D.numSubbands);
-
-        AbstractMatrix2D pemFtrans = ((DenseDComplexMatrix2D) matrixFTrans)
-                .copy();
-
-//        startFor = System.nanoTime();
-
-        ((DenseDComplexMatrix2D) matrixFTrans).zMult(matrixF, matrixM);
-
-//        endFor = System.nanoTime();
-//        System.out.println("Multiplication time: " + (endFor - startFor) / 1.0E9D);
-
-        DoubleMatrix2D matrixA = matrixM.getRealPart();
-        matrixA.assign(DoubleFunctions.div(Math.pow(width * height * slice, 2)));
-        DoubleMatrix1D matrixC = new DenseDoubleMatrix1D(width * height * slice);
+        DoubleMatrix1D div = gram.getDiv();
 
-        double startTime = System.nanoTime();
+        span = metrics.begin("matrix");
+        DoubleMatrix2D matrixA = gram.getGram();
+        matrixA.assign(DoubleFunctions.div(Math.pow(voxels, 2)));
 
-        if (this.seType == 1) {
-            // MSE-LET
-
-            DComplexMatrix3D matricCC = ((DenseDComplexMatrix3D) fftOriginal)
-                    .copy();
-            matricCC.assign(lowBand, DComplexFunctions.minus);
-
-            DComplexMatrix1D matrixMin = matricCC.vectorize();
-
-            DComplexMatrix2D matrixEqC = new DenseDComplexMatrix2D(width
-                    * height * slice, 1);
-            matrixEqC.assign(matrixMin.toArray());
-
-            DComplexMatrix2D auxC = new DenseDComplexMatrix2D(MW_PURE_LET3D.numSubbands,
-                    1);
-            ((DComplexMatrix2D) pemFtrans).zMult(matrixEqC,
-                    auxC, new double[]{1, 0},
-                    new double[]{0, 0}, false, false);
-            matrixC = auxC.getRealPart().vectorize();
-            matrixC.assign(DoubleFunctions.div(Math.pow(width * height * slice, 2)));
-        } else {
+        DoubleMatrix1D matrixC = gram.getRhs();
+        matrixC.assign(DoubleFunctions.div(Math.pow(voxels, 2)));
+        if (this.seType != 1) {
             // PURE-LET
-            // Ybi = Hbi.*Y;
-            // c = real(F'*(Ybi(:)-Yl(:)))/N^2-div/N;
-            // c = max(c,0);
-            DComplexMatrix3D Ybi = ((DenseDComplexMatrix3D) fftInput).copy();
-            Ybi.assign(Hbi, DComplexFunctions.mult);
-            Ybi.assign(lowBand, DComplexFunctions.minus);
-
-            DComplexMatrix1D matrixMin = Ybi.vectorize();
-
-            DComplexMatrix2D matrixEqC = new DenseDComplexMatrix2D(width
-                    * height * slice, 1);
-            matrixEqC.assign(matrixMin.toArray());
-
-            DComplexMatrix2D auxC = new DenseDComplexMatrix2D(MW_PURE_LET3D.numSubbands,
-                    1);
-            ((DComplexMatrix2D) pemFtrans).zMult(matrixEqC,
-                    auxC, new double[]{1, 0},
-                    new double[]{0, 0}, false, false);
-            matrixC = auxC.getRealPart().vectorize();
-            matrixC.assign(DoubleFunctions.div(Math.pow(width * height * slice, 2)));
-            DoubleMatrix1D divC = new DenseDoubleMatrix1D(MW_PURE_LET3D.numSubbands);
-            divC.viewPart(0, MW_PURE_LET3D.numSubbands).assign(
-                    div.viewPart(0, MW_PURE_LET3D.numSubbands));
-            matrixC.assign(divC.assign(DoubleFunctions.div(width * height * slice)),
+            matrixC.assign(div.assign(DoubleFunctions.div(voxels)),
                     DoubleFunctions.minus);
 
             matrixA.assign(DoubleFunctions.plus(5e-3D));
@@ -362,27 +545,26 @@ public class MW_PURE_LET3D {
         }
         matrixC.assign(DoubleFunctions.max(0));
 
-        double endTime = System.nanoTime();
-        System.out.println("Equation time: " + (endTime - startTime) / 1.0E9D);
-
-//		double startTime = System.nanoTime();
+        span.end();
 
         // solving a linear system of equations
-//        DoubleMatrix1D coeff = (new DenseDoubleAlgebra()).solve(matrixA, matrixC);
-
-
-        DenseDoubleMatrix1D template = new DenseDoubleMatrix1D(MW_PURE_LET3D.numSubbands);
-        double[] arTemplate = new double[MW_PURE_LET3D.numSubbands];
-        Arrays.fill(arTemplate, 0D);
-        template.assign(arTemplate);
-
-        DoubleCG dc = new DoubleCG(template);
-        DenseDoubleMatrix1D coeff = new DenseDoubleMatrix1D(MW_PURE_LET3D.numSubbands);
-        try {
-            dc.solve(matrixA, matrixC, coeff);
-        } catch (IterativeSolverDoubleNotConvergedException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+        int[] indices = gram.getIndices();
+        DoubleMatrix1D initial = null;
+        if (initialCoeff != null) {
+            initial = new DenseDoubleMatrix1D(indices.length);
+            for (int i = 0; i < indices.length; i++) {
+                initial.setQuick(i, initialCoeff.getQuick(indices[i]));
+            }
+        }
+        span = metrics.begin("solve");
+        DoubleMatrix1D coeff = solver.solve(matrixA, matrixC, initial);
+        solveTime = span.end();
+        solvedMatrix = matrixA;
+        conditionNumber = Double.NaN;
+
+        this.coeff = new DenseDoubleMatrix1D(2 * submitted);
+        for (int i = 0; i < indices.length; i++) {
+            this.coeff.setQuick(indices[i], coeff.getQuick(i));
         }
 
 //		double endTime = System.nanoTime();
@@ -390,34 +572,17 @@ public class MW_PURE_LET3D {
 //
 //		startTime = System.nanoTime();
 
-        DComplexMatrix2D coeff2D = new DenseDComplexMatrix2D(MW_PURE_LET3D.numSubbands,
-                1);
-        coeff2D.viewColumn(0).assignReal(coeff);
-
-        DComplexMatrix2D Fa = new DenseDComplexMatrix2D(width * height * slice, 1);
-
-        Fa = matrixF.zMult(coeff2D,
-                Fa, new double[]{1, 1}, new double[]{0,
-                        0}, false, false);
-
-        DComplexMatrix2D matrixLow2D = new DenseDComplexMatrix2D(
-                width * height * slice, 1);
-        DComplexMatrix1D lowBand1D = lowBand.vectorize();
-
-        ((DenseDComplexMatrix2D) matrixLow2D).viewColumn(0).assign(lowBand1D);
-
-        // for (int ttt = 0; ttt < width * height; ttt++) {
-        // matrixLow2D.setQuick(ttt, 0, lowBand1D.getQuick(ttt));
-        // }
-
-        ((DenseDComplexMatrix2D) Fa)
-                .assign(matrixLow2D, DComplexFunctions.plus);
-
-        DComplexMatrix3D Faa = (((DenseDComplexMatrix2D) Fa).vectorize()).reshape(slice, width, height);
-        ((DenseDComplexMatrix3D) Faa).ifft3(true);
+        span = metrics.begin("synthesize");
+        DComplexMatrix1D Fa = gram.combine(coeff);
+        spilledCount = gram.getSpilledCount();
+        metrics.add("basis.spilled", spilledCount);
+        gram.close();
+        HalfSpectrum.scaleMirrored(Fa, slice, height, width, 1 / Math.sqrt(2));
+        Fa.assign(lowBand.vectorize(), DComplexFunctions.plus);
 
-        DoubleMatrix3D recImg = ((DenseDComplexMatrix3D) Faa).getRealPart();
+        DoubleMatrix3D recImg = HalfSpectrum.ifft3(Fa.reshape(slice, height, half), width);
         recImg.assign(DoubleFunctions.abs);
+        span.end();
 
         this.imOutput = recImg;
 
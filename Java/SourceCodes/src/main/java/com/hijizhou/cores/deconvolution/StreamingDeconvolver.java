@@ -0,0 +1,342 @@
+package com.hijizhou.cores.deconvolution;
+/**
+ * STREAMINGDECONVOLVER: PURE-LET deconvolution of the frames of a 2D
+ * time-lapse, all of the same size and with the same PSF
+ *
+ * The deconvolver is prepared once: the PSF and filter spectra (see
+ * LETSpectra2D) and the Wiener regularization parameters, which are fixed
+ * by the mean intensity of the first frame (or a given one) so that their
+ * filters are also computed only once. Each frame then only goes through
+ * the input-dependent work: its FFT, the sub-band processes and the LET
+ * solve, which can start from the coefficients of the previous frame.
+ *
+ * process() runs the frames as a pipeline: a reader thread pulls them from
+ * the source, workers deconvolve them and the calling thread hands them,
+ * in order, to the sink, with bounded queues in between so that reading,
+ * deconvolution and writing overlap without buffering the whole movie.
+ *
+ * @reference
+ *       [1] J. Li, F. Luisier and T. Blu, PURE-LET image deconvolution,
+ *             IEEE Trans. Image Process., vol. 27, no. 1, pp. 92-105, 2018.
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+import com.cern.colt.matrix.tdouble.DoubleMatrix1D;
+import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import com.edu.emory.mathcs.restoretools.spectral.DoubleCommon2D;
+import com.edu.emory.mathcs.utils.ConcurrencyUtils;
+import com.hijizhou.utilities.BufferArena;
+import com.hijizhou.utilities.ImageUtil;
+import com.hijizhou.utilities.Metrics;
+import com.hijizhou.utilities.ProgressListener;
+import com.hijizhou.utilities.ThreadUtil;
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.io.FileSaver;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class StreamingDeconvolver {
+
+    /**
+     * Receives the deconvolved frames, in order.
+     */
+    public interface FrameSink {
+        void write(int index, DoubleMatrix2D frame) throws IOException;
+    }
+
+    // marks the end of the frames in the queues
+    private static final DoubleMatrix2D END = new DenseDoubleMatrix2D(0, 0);
+
+    private final LETSpectra2D spectra;
+    private final double[] noiseparameters;
+    private volatile double Ey = -1;
+    private boolean singlePrecision = false;
+    private int nthreads = ConcurrencyUtils.getNumberOfThreads();
+    private ProgressListener listener = ProgressListener.SILENT;
+    private LETSolver solver = LETSolver.CHOLESKY;
+    private boolean warmStart = false;
+    private volatile DoubleMatrix1D lastCoefficients = null;
+    private Metrics metrics = new Metrics();
+    // temporaries of the deconvolutions, reused by each thread from one frame to
+    // the next within its share of the heap
+    private final ThreadLocal<BufferArena> arenas = new ThreadLocal<BufferArena>() {
+        protected BufferArena initialValue() {
+            return BufferArena.forWorker(nthreads);
+        }
+    };
+
+    /**
+     * @param imPSF PSF of the size of the frames, centred on its maximum
+     */
+    public StreamingDeconvolver(DoubleMatrix2D imPSF, double[] noiseparameters) {
+        this.spectra = new LETSpectra2D(imPSF, MW_PURE_LET2D.LEVEL);
+        this.noiseparameters = noiseparameters;
+    }
+
+    /**
+     * Mean intensity the Wiener regularization parameters of all the frames
+     * are proportional to; by default that of the first frame.
+     */
+    public void setMeanIntensity(double Ey) {
+        this.Ey = Ey;
+    }
+
+    public void setSinglePrecision(boolean singlePrecision) {
+        this.singlePrecision = singlePrecision;
+    }
+
+    /**
+     * Maximum number of threads used, shared between the frames processed
+     * at the same time (by default the global number of threads).
+     */
+    public void setNumberOfThreads(int nthreads) {
+        this.nthreads = nthreads;
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Metrics the deconvolutions of all the frames add up in (by default one
+     * of its own).
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Solver of the LET linear systems; with <code>warmStart</code>, the
+     * iterative ones start from the coefficients of the last frame solved,
+     * which change little from one frame to the next.
+     */
+    public void setSolver(LETSolver solver, boolean warmStart) {
+        this.solver = solver;
+        this.warmStart = warmStart;
+    }
+
+    /**
+     * Deconvolves one frame in the calling thread.
+     */
+    public DoubleMatrix2D deconvolve(DoubleMatrix2D frame) {
+        return deconvolve(frame, nthreads);
+    }
+
+    /**
+     * Frames of <code>frames</code>, deconvolved one by one as they are
+     * requested.
+     */
+    public Iterator<DoubleMatrix2D> deconvolve(final Iterator<DoubleMatrix2D> frames) {
+        return new Iterator<DoubleMatrix2D>() {
+            public boolean hasNext() {
+                return frames.hasNext();
+            }
+
+            public DoubleMatrix2D next() {
+                return deconvolve(frames.next());
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Deconvolves all the frames of <code>source</code> and writes them to
+     * <code>sink</code>, with <code>workers</code> frames deconvolved at the
+     * same time and at most <code>depth</code> frames waiting at each stage.
+     * The first frame that fails to deconvolve stops the reading and the
+     * other workers, and is reported by an IllegalStateException.
+     *
+     * @return number of frames
+     */
+    public int process(final Iterator<DoubleMatrix2D> source, FrameSink sink, int workers, int depth)
+            throws IOException, InterruptedException {
+        final BlockingQueue<Object[]> input = new ArrayBlockingQueue<Object[]>(depth);
+        final BlockingQueue<Object[]> output = new ArrayBlockingQueue<Object[]>(depth + workers);
+        final int threads = Math.max(1, nthreads / workers);
+        ExecutorService pool = Executors.newFixedThreadPool(workers + 1);
+        Future<?>[] futures = new Future[workers + 1];
+
+        futures[0] = pool.submit(new Callable<Void>() {
+            public Void call() throws InterruptedException {
+                int index = 0;
+                try {
+                    while (source.hasNext()) {
+                        DoubleMatrix2D frame = source.next();
+                        if (index == 0) {
+                            setDefaultMeanIntensity(frame);
+                        }
+                        input.put(new Object[]{index++, frame});
+                    }
+                } finally {
+                    input.put(new Object[]{-1, END});
+                }
+                return null;
+            }
+        });
+        for (int w = 1; w <= workers; w++) {
+            futures[w] = pool.submit(new Callable<Void>() {
+                public Void call() throws InterruptedException {
+                    ThreadUtil.setLocalNumberOfThreads(threads);
+                    // the frame that failed and why, passed on with the end
+                    Object index = -1;
+                    Throwable failure = null;
+                    try {
+                        while (true) {
+                            Object[] item = input.take();
+                            if (item[1] == END) {
+                                // let the other workers see the end too
+                                input.put(item);
+                                return null;
+                            }
+                            index = item[0];
+                            DoubleMatrix2D frame = deconvolve((DoubleMatrix2D) item[1], threads);
+                            output.put(new Object[]{item[0], frame});
+                        }
+                    } catch (RuntimeException e) {
+                        failure = e;
+                        throw e;
+                    } catch (Error e) {
+                        failure = e;
+                        throw e;
+                    } finally {
+                        ThreadUtil.clearLocalNumberOfThreads();
+                        output.put(new Object[]{index, END, failure});
+                    }
+                }
+            });
+        }
+
+        // write in order, holding the frames that complete early; the first
+        // failure of a worker ends the stream at once, the frames still
+        // being read or deconvolved being cancelled
+        Map<Integer, DoubleMatrix2D> pending = new HashMap<Integer, DoubleMatrix2D>();
+        int next = 0;
+        int ended = 0;
+        try {
+            while (ended < workers) {
+                Object[] item = output.take();
+                if (item[1] == END) {
+                    if (item[2] != null) {
+                        throw new IllegalStateException("deconvolution of frame " + item[0] + " failed",
+                                (Throwable) item[2]);
+                    }
+                    ended++;
+                    continue;
+                }
+                pending.put((Integer) item[0], (DoubleMatrix2D) item[1]);
+                while (pending.containsKey(next)) {
+                    sink.write(next, pending.remove(next));
+                    listener.setMessage("Frame " + (next + 1) + " written");
+                    next++;
+                }
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("deconvolution of frame " + next + " failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return next;
+    }
+
+    /**
+     * Frames of the stack in <code>file</code>, read one by one as they are
+     * requested (as a virtual stack when ImageJ can open it so).
+     */
+    public static Iterator<DoubleMatrix2D> openFrames(File file) throws IOException {
+        ImagePlus imp = IJ.openVirtual(file.getPath());
+        if (imp == null) {
+            imp = IJ.openImage(file.getPath());
+        }
+        if (imp == null) {
+            throw new IOException("cannot open " + file);
+        }
+        final ImageStack stack = imp.getStack();
+        return new Iterator<DoubleMatrix2D>() {
+            private int slice = 1;
+
+            public boolean hasNext() {
+                return slice <= stack.getSize();
+            }
+
+            public DoubleMatrix2D next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                DoubleMatrix2D frame = new DenseDoubleMatrix2D(stack.getHeight(), stack.getWidth());
+                DoubleCommon2D.assignPixelsToMatrix(frame, stack.getProcessor(slice++));
+                return frame;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Sink saving each frame as a 32-bit TIFF, prefix0000.tif, prefix0001.tif,
+     * ..., in <code>directory</code>.
+     */
+    public static FrameSink saveFrames(final File directory, final String prefix) {
+        return new FrameSink() {
+            public void write(int index, DoubleMatrix2D frame) throws IOException {
+                String name = String.format("%s%04d.tif", prefix, index);
+                ImagePlus imp = ImageUtil.matrix2Plus(frame, null, name);
+                if (!new FileSaver(imp).saveAsTiff(new File(directory, name).getPath())) {
+                    throw new IOException("cannot save " + name);
+                }
+            }
+        };
+    }
+
+    private synchronized void setDefaultMeanIntensity(DoubleMatrix2D frame) {
+        if (Ey < 0) {
+            Ey = frame.zSum() / ((double) frame.rows() * frame.columns());
+        }
+    }
+
+    private DoubleMatrix2D deconvolve(DoubleMatrix2D frame, int threads) {
+        setDefaultMeanIntensity(frame);
+        MW_PURE_LET2D mw = new MW_PURE_LET2D(frame, spectra, noiseparameters, ProgressListener.SILENT, false,
+                singlePrecision);
+        mw.setMeanIntensity(Ey);
+        mw.setNumberOfThreads(threads);
+        mw.setSolver(solver);
+        mw.setBufferArena(arenas.get());
+        mw.setMetrics(metrics);
+        DoubleMatrix1D initial = lastCoefficients;
+        if (warmStart && initial != null) {
+            mw.setInitialCoefficients(initial);
+        }
+        mw.doDeconvolution();
+        lastCoefficients = mw.getCoefficients();
+        return mw.getOutputMatrix();
+    }
+}
@@ -0,0 +1,144 @@
+package com.hijizhou.cores.denoising;
+/**
+ * DDIDPIPELINE: several DDID steps in a row, the first guided by the noisy
+ * image itself and each next one by the output of the previous step (see
+ * DDIDstep.main, and standard for its three steps)
+ *
+ * The noisy image is extended once per frame, and the steps write their
+ * output straight inside the extension that guides the next one, two such
+ * buffers being used in turn; the borders are then mirrored in place. The
+ * buffers are kept from one frame to the next of the same size, so that a
+ * stream of frames is filtered without allocating anything but the outputs.
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class DDIDPipeline {
+
+    private final int r;
+    private final double sigma2;
+    private final List<DDIDstep> steps = new ArrayList<DDIDstep>();
+    private boolean vector = Boolean.getBoolean(DDIDstep.VECTOR_PROPERTY) && DDIDstep.isVectorAvailable();
+
+    // symmetric extensions of the last frame size
+    private int height = -1;
+    private int width = -1;
+    private double[] noisy;
+    private double[] guide;
+    private double[] next;
+
+    /**
+     * @param r      patch radius of the steps
+     * @param sigma2 noise variance
+     */
+    public DDIDPipeline(int r, double sigma2) {
+        this.r = r;
+        this.sigma2 = sigma2;
+    }
+
+    /**
+     * The three steps of DDIDstep.main, with decreasing range and frequency
+     * parameters.
+     */
+    public static DDIDPipeline standard(int r, double sigma2) {
+        return new DDIDPipeline(r, sigma2)
+                .addStep(10, 200)
+                .addStep(8.7, 0.4)
+                .addStep(0.7, 0.8);
+    }
+
+    /**
+     * Appends a step with the range and frequency parameters gamma_r and
+     * gamma_f.
+     */
+    public DDIDPipeline addStep(double gamma_r, double gamma_f) {
+        DDIDstep step = new DDIDstep();
+        step.setR(r);
+        step.setSigma2(sigma2);
+        step.setGamma_r(gamma_r);
+        step.setGamma_f(gamma_f);
+        step.setVector(vector);
+        steps.add(step);
+        return this;
+    }
+
+    /**
+     * Computes the steps with the Vector API when available (see
+     * DDIDstep.setVector).
+     */
+    public void setVector(boolean vector) {
+        for (DDIDstep step : steps) {
+            step.setVector(vector);
+        }
+        this.vector = vector && DDIDstep.isVectorAvailable();
+    }
+
+    public boolean isVector() {
+        return vector;
+    }
+
+    public int getR() {
+        return r;
+    }
+
+    public double getSigma2() {
+        return sigma2;
+    }
+
+    public int getNumberOfSteps() {
+        return steps.size();
+    }
+
+    /**
+     * Denoised <code>y</code>, or a copy of it without any step.
+     */
+    public DoubleMatrix2D run(DoubleMatrix2D y) {
+        int rows = y.rows();
+        int columns = y.columns();
+        if (steps.isEmpty()) {
+            return y.copy();
+        }
+        allocate(rows, columns);
+        int stride = columns + 2 * r;
+
+        DDIDstep.extend(y, noisy, r);
+        double[] out = new double[rows * columns];
+        double[] x = noisy;
+        for (int s = 0; s < steps.size(); s++) {
+            DDIDstep step = steps.get(s);
+            if (s == steps.size() - 1) {
+                step.filter(x, noisy, rows, columns, out);
+            } else {
+                double[] target = x == guide ? next : guide;
+                step.filter(x, noisy, rows, columns, target, r * stride + r, stride);
+                DDIDstep.mirror(target, rows, columns, r);
+                x = target;
+            }
+        }
+        return new DenseDoubleMatrix2D(rows, columns, out, 0, 0, columns, 1, false);
+    }
+
+    private void allocate(int rows, int columns) {
+        int size = (rows + 2 * r) * (columns + 2 * r);
+        if (rows != height || columns != width) {
+            noisy = new double[size];
+            guide = null;
+            next = null;
+            height = rows;
+            width = columns;
+        }
+        if (steps.size() > 1 && guide == null) {
+            guide = new double[size];
+        }
+        if (steps.size() > 2 && next == null) {
+            next = new double[size];
+        }
+    }
+}
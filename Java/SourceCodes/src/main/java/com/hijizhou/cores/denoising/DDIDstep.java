@@ -15,14 +15,40 @@ import ij.IJ;
 import ij.ImageJ;
 import ij.ImagePlus;
 
-import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class DDIDstep {
+    // exp(-t) for 0 <= t < RANGE_MAX, sampled RANGE_STEPS times per unit:
+    // the range kernel, linearly interpolated (relative error below 2e-6)
+    private static final int RANGE_STEPS = 256;
+    static final int RANGE_MAX = 40;
+    private static final double[] RANGE_LUT = new double[RANGE_MAX * RANGE_STEPS + 1];
+    // regularization of the shrinkage, added to |G|^2 as in basisPixel2
+    static final double EPSILON_RE = 0.00000001;
+    static final double EPSILON_IM = 0.0000001;
+    // below, a shrinkage term is under the rounding error of the sum
+    // (exp(-36) < 2.4e-16)
+    static final double EXP_MIN = -36;
+    // pixels per side of a tile: with r = 9, the (TILE + 2r)^2 values of both
+    // extended images it reads take about 110 KB, and stay in L2
+    private static final int TILE = 64;
+    // system property setting the default of setVector
+    static final String VECTOR_PROPERTY = "pureletdeconv.vector";
+
+    static {
+        for (int i = 0; i < RANGE_LUT.length; i++) {
+            RANGE_LUT[i] = Math.exp(-(double) i / RANGE_STEPS);
+        }
+    }
+
     private double sigma2 = 5.0f;
     private int r = 15;
     private double sigma_s = 10f;
     private double gamma_r = 10f;
     private double gamma_f = 200f;
+    // Vector API kernels, when available (see setVector)
+    private boolean vector = Boolean.getBoolean(VECTOR_PROPERTY) && isVectorAvailable();
 
     public void setSigma2(double sigma2) {
         this.sigma2 = sigma2;
@@ -64,62 +90,314 @@ public class DDIDstep {
         return gamma_f;
     }
 
+    /**
+     * Computes the bilateral weights and the shrinkage with the Vector API
+     * (jdk.incubator.vector). This needs the classes of the vector profile,
+     * Java 17 or later and --add-modules jdk.incubator.vector; otherwise, as
+     * by default, the scalar loops are used. The default can also be set
+     * with -Dpureletdeconv.vector=true.
+     */
+    public void setVector(boolean vector) {
+        this.vector = vector && isVectorAvailable();
+    }
+
+    /**
+     * Whether the Vector API kernels can be used.
+     */
+    static boolean isVectorAvailable() {
+        return VectorKernelsHolder.INSTANCE != null;
+    }
+
+    /**
+     * Whether the Vector API kernels are used.
+     */
+    public boolean isVector() {
+        return vector;
+    }
+
     public DoubleMatrix2D run(DoubleMatrix2D x, DoubleMatrix2D y) {
 
         int width = x.columns();
         int height = x.rows();
 
-        DoubleMatrix2D output = new DenseDoubleMatrix2D(height, width);
+        //Boundary extension - symmetric
+        double[] xp = (double[]) symExtension(x).elements();
+        double[] yp = x == y ? xp : (double[]) symExtension(y).elements();
 
-        int sW = 2 * r + 1;
-        DoubleMatrix2D H = getH(sW);
+        double[] out = new double[height * width];
+        filter(xp, yp, height, width, out);
+        return new DenseDoubleMatrix2D(height, width, out, 0, 0, width, 1, false);
+    }
 
-        //Boundary extension - symmetric
-        DoubleMatrix2D xp = symExtension(x);
-        DoubleMatrix2D yp = symExtension(y);
+    /**
+     * DDID step of a height x width image, from the symmetric extensions
+     * <code>xp</code> and <code>yp</code> (row by row, width + 2r columns) of
+     * the guide and of the noisy image; the result is written row by row to
+     * <code>out</code>.
+     */
+    public void filter(double[] xp, double[] yp, int height, int width, double[] out) {
+        filter(xp, yp, height, width, out, 0, width);
+    }
 
-        double[][] o_m = new double[width][height];
+    /**
+     * As above, pixel (i, j) being written to out[offset + i * outStride + j],
+     * e.g. into the inside of an extended image.
+     *
+     * The image is cut into tiles of TILE x TILE pixels, filtered in turn, or
+     * as fork/join tasks splitting the image in halves down to the tiles when
+     * several threads are available and the image is large enough. Each pixel
+     * being computed on its own, the result does not depend on the number of
+     * threads.
+     */
+    public void filter(double[] xp, double[] yp, int height, int width, double[] out, int offset, int outStride) {
+        int stride = width + 2 * this.r;
+        int padded = (height + 2 * this.r) * stride;
+        if (xp.length < padded || yp.length < padded || outStride < width
+                || out.length < offset + (height - 1) * outStride + width) {
+            throw new IllegalArgumentException("buffers too small for a " + height + " x " + width + " image");
+        }
+        Pass pass = new Pass(xp, yp, width, out, offset, outStride);
 
         int np = ConcurrencyUtils.getNumberOfThreads();
+        if (np <= 1 || height * width < ConcurrencyUtils.getThreadsBeginN_2D()) {
+            Workspace ws = new Workspace(pass.dft);
+            for (int firstRow = 0; firstRow < height; firstRow += TILE) {
+                for (int firstCol = 0; firstCol < width; firstCol += TILE) {
+                    filterTile(pass, firstRow, Math.min(firstRow + TILE, height),
+                            firstCol, Math.min(firstCol + TILE, width), ws);
+                }
+            }
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(np);
+        try {
+            pool.invoke(new TileTask(pass, 0, height, 0, width));
+        } finally {
+            pool.shutdown();
+        }
+    }
 
-//        long startTime = System.nanoTime();
+    /**
+     * Constants of one filtering, shared by its tiles.
+     */
+    private final class Pass {
+        final double[] xp;
+        final double[] yp;
+        final int stride;
+        final double[] out;
+        final int offset;
+        final int outStride;
+        final double[] h;
+        final PatchDFT dft;
+        final double invRange;
+        final PatchKernels kernels;
+
+        Pass(double[] xp, double[] yp, int width, double[] out, int offset, int outStride) {
+            this.xp = xp;
+            this.yp = yp;
+            this.stride = width + 2 * r;
+            this.out = out;
+            this.offset = offset;
+            this.outStride = outStride;
+            this.h = (double[]) getH(2 * r + 1).elements();
+            this.dft = PatchDFT.forRadius(r);
+            this.invRange = 1.0 / (gamma_r * sigma2);
+            this.kernels = vector ? VectorKernelsHolder.INSTANCE : SCALAR;
+        }
+    }
 
-        if ((np > 1) && (width * height >= ConcurrencyUtils.getThreadsBeginN_2D())) {
-            Future<?>[] futures = new Future[np];
-            int k = height / np;
-            for (int j = 0; j < np; j++) {
-                final int firstRow = j * k;
-                final int lastRow = (j == np - 1) ? height : firstRow + k;
+    /**
+     * Rows [firstRow, lastRow) and columns [firstCol, lastCol) of the image,
+     * split in halves along the longer side down to tiles of TILE x TILE
+     * pixels, each filtered with a workspace of its own.
+     */
+    private final class TileTask extends RecursiveAction {
+        private final Pass pass;
+        private final int firstRow;
+        private final int lastRow;
+        private final int firstCol;
+        private final int lastCol;
+
+        TileTask(Pass pass, int firstRow, int lastRow, int firstCol, int lastCol) {
+            this.pass = pass;
+            this.firstRow = firstRow;
+            this.lastRow = lastRow;
+            this.firstCol = firstCol;
+            this.lastCol = lastCol;
+        }
+
+        protected void compute() {
+            int rows = lastRow - firstRow;
+            int cols = lastCol - firstCol;
+            if (rows <= TILE && cols <= TILE) {
+                filterTile(pass, firstRow, lastRow, firstCol, lastCol, new Workspace(pass.dft));
+            } else if (rows >= cols) {
+                int mid = firstRow + rows / 2;
+                invokeAll(new TileTask(pass, firstRow, mid, firstCol, lastCol),
+                        new TileTask(pass, mid, lastRow, firstCol, lastCol));
+            } else {
+                int mid = firstCol + cols / 2;
+                invokeAll(new TileTask(pass, firstRow, lastRow, firstCol, mid),
+                        new TileTask(pass, firstRow, lastRow, mid, lastCol));
+            }
+        }
+    }
+
+    private void filterTile(Pass pass, int firstRow, int lastRow, int firstCol, int lastCol, Workspace ws) {
+        for (int i = firstRow; i < lastRow; i++) {
+            int o = pass.offset + i * pass.outStride;
+            for (int j = firstCol; j < lastCol; j++) {
+                pass.out[o + j] = basisPixel(pass, i, j, ws);
+            }
+        }
+    }
 
-                futures[j] = ConcurrencyUtils.submit(new Runnable() {
-                    public void run() {
-                        //basis functions for each pixel
-                        for (int i = firstRow; i < lastRow; i++) {
-                            for (int j = 0; j < height; j++) {
-//                                long startTime_pixel = System.nanoTime();
+    /**
+     * Buffers of the patches of one thread, reused for all its pixels.
+     */
+    private static final class Workspace {
+        final double[] g;
+        final double[] y;
+        final double[] k;
+        final double[] c;
+        final double[] s;
+        final double[] gRe;
+        final double[] gIm;
+        final double[] yRe;
+        final double[] sums = new double[4];
+
+        Workspace(PatchDFT dft) {
+            int size = dft.n * dft.n;
+            int spectrum = dft.n * dft.half;
+            g = new double[size];
+            y = new double[size];
+            k = new double[size];
+            c = new double[spectrum];
+            s = new double[spectrum];
+            gRe = new double[spectrum];
+            gIm = new double[spectrum];
+            yRe = new double[spectrum];
+        }
+    }
 
-                                double value = basisPixel2(xp, yp, i, j, sW, H);
-                                o_m[i][j] = value;
+    private static final PatchKernels SCALAR = new ScalarKernels();
+
+    /**
+     * The kernels as plain loops, the range kernel being read from RANGE_LUT.
+     */
+    private static final class ScalarKernels implements PatchKernels {
+
+        public void weights(double[] xp, double[] yp, int stride, int row, int col, int n, double[] h,
+                            double invRange, double[] g, double[] y, double[] k, double[] sums) {
+            double center = xp[(row + n / 2) * stride + col + n / 2];
+            double sk = 0;
+            double sgk = 0;
+            double syk = 0;
+            double skk = 0;
+            for (int a = 0, m = 0; a < n; a++) {
+                int p = (row + a) * stride + col;
+                for (int b = 0; b < n; b++, m++, p++) {
+                    double gv = xp[p];
+                    double yv = yp[p];
+                    double d = gv - center;
+                    double kv = rangeKernel(d * d * invRange) * h[m];
+                    g[m] = gv;
+                    y[m] = yv;
+                    k[m] = kv;
+                    sk += kv;
+                    sgk += gv * kv;
+                    syk += yv * kv;
+                    skk += kv * kv;
+                }
+            }
+            sums[0] = sk;
+            sums[1] = sgk;
+            sums[2] = syk;
+            sums[3] = skk;
+        }
 
-//                                long endTime_pixel = System.nanoTime();
-//                                System.out.println(" ----- time: " + (endTime_pixel - startTime_pixel) / 1000000000.0);
-                            }
-                        }
+        public double shrink(double[] gRe, double[] gIm, double[] yRe, double[] multiplicity, double v) {
+            double sum = 0;
+            for (int m = 0; m < gRe.length; m++) {
+                // K = exp(v / (|G|^2 + epsilon)), real part
+                double re = gRe[m] * gRe[m] + gIm[m] * gIm[m] + EPSILON_RE;
+                double q = re * re + EPSILON_IM * EPSILON_IM;
+                double e = v * re / q;
+                if (e > EXP_MIN) {
+                    sum += multiplicity[m] * yRe[m] * Math.exp(e) * Math.cos(v * EPSILON_IM / q);
+                }
+            }
+            return sum;
+        }
+    }
 
-                    }
-                });
+    /**
+     * VectorKernels, loaded on first use; null when its class was not
+     * compiled (vector profile), or the JVM is older than Java 17 or runs
+     * without the module jdk.incubator.vector.
+     */
+    private static final class VectorKernelsHolder {
+        static final PatchKernels INSTANCE = load();
+
+        private static PatchKernels load() {
+            try {
+                return (PatchKernels) Class.forName("com.hijizhou.cores.denoising.VectorKernels")
+                        .getDeclaredConstructor().newInstance();
+            } catch (Throwable e) {
+                return null;
             }
-            ConcurrencyUtils.waitForCompletion(futures);
         }
+    }
 
-        output.assign(o_m);
+    static double rangeKernel(double t) {
+        double x = t * RANGE_STEPS;
+        if (x >= RANGE_LUT.length - 1) {
+            return 0;
+        }
+        int i = (int) x;
+        return RANGE_LUT[i] + (x - i) * (RANGE_LUT[i + 1] - RANGE_LUT[i]);
+    }
+
+    /**
+     * Value of the pixel (i, j), whose patch starts at (i, j) of the extended
+     * images: the same as basisPixel2, without allocating.
+     *
+     * The patch transforms are computed on the half spectrum. As the
+     * shrinkage kernel K is even in the frequency and the imaginary part of S
+     * odd, only the real part of S is needed, each frequency with f2 > 0
+     * standing for its conjugate as well.
+     */
+    private double basisPixel(Pass pass, int i, int j, Workspace ws) {
+        PatchDFT dft = pass.dft;
+        int n = dft.n;
+        double[] g = ws.g;
+        double[] y = ws.y;
+        double[] k = ws.k;
 
-//        long endTime = System.nanoTime();
-//        System.out.println(" step time: " + (endTime - startTime) / 1000000000.0);
+        // Spatial Domain: Bilateral Filter
+        pass.kernels.weights(pass.xp, pass.yp, pass.stride, i, j, n, pass.h, pass.invRange, g, y, k, ws.sums);
+        double gt = ws.sums[1] / ws.sums[0];
+        double yt = ws.sums[2] / ws.sums[0];
 
-        return output;
+        // Fourier Domain: Wavelet Shrinkage
+        double v = ws.sums[3] * this.sigma2 * this.gamma_f * (-1);
+        for (int m = 0; m < n * n; m++) {
+            g[m] = (g[m] - gt) * k[m];
+            y[m] = (y[m] - yt) * k[m];
+        }
+        dft.rows(g, ws.c, ws.s);
+        dft.columns(ws.c, ws.s, ws.gRe, ws.gIm);
+        dft.rows(y, ws.c, ws.s);
+        dft.columns(ws.c, ws.s, ws.yRe, null);
+
+        double St = pass.kernels.shrink(ws.gRe, ws.gIm, ws.yRe, dft.multiplicity, v);
+        return St / (n * n) + yt;
     }
 
+    /**
+     * Value of the pixel whose patch starts at (i, j) of the extended images,
+     * through Colt matrices and FFTs; run computes it with basisPixel.
+     */
     public double basisPixel2(DoubleMatrix2D xp, DoubleMatrix2D yp, int i, int j, int sW, DoubleMatrix2D H) {
 
         DoubleMatrix2D g = xp.viewPart(i, j, sW, sW).copy();
@@ -202,54 +480,51 @@ public class DDIDstep {
     }
 
     public DoubleMatrix2D symExtension(DoubleMatrix2D input) {
-        //imagesize
-        int wI = input.columns();
-        int hI = input.rows();
-        int wO = wI + 2 * this.r;
-        int hO = hI + 2 * this.r;
-
-        DoubleMatrix2D output = new DenseDoubleMatrix2D(hO, wO);
-        double[][] o_m = new double[hO][wO];
-        double[][] i_m = input.toArray();
+        int hO = input.rows() + 2 * this.r;
+        int wO = input.columns() + 2 * this.r;
+        double[] output = new double[hO * wO];
+        extend(input, output, this.r);
+        return new DenseDoubleMatrix2D(hO, wO, output, 0, 0, wO, 1, false);
+    }
 
-        int idX = 0;
-        int idY = 0;
-        double value = 0.0f;
+    /**
+     * Writes <code>input</code> inside <code>output</code>, its symmetric
+     * extension by r pixels on each side (row by row, input.columns() + 2r
+     * columns).
+     */
+    static void extend(DoubleMatrix2D input, double[] output, int r) {
+        int hI = input.rows();
+        int wI = input.columns();
+        int wO = wI + 2 * r;
         //! Inner image
-
-        for (int i = 0; i < wI; i++) {
-            for (int j = 0; j < hI; j++) {
-                o_m[r + j][r + i] = i_m[j][i];
+        for (int i = 0; i < hI; i++) {
+            int o = (r + i) * wO + r;
+            for (int j = 0; j < wI; j++) {
+                output[o + j] = input.getQuick(i, j);
             }
         }
+        mirror(output, hI, wI, r);
+    }
 
+    /**
+     * Fills the borders of the symmetric extension <code>p</code> of a
+     * height x width image from its inside.
+     */
+    static void mirror(double[] p, int height, int width, int r) {
+        int wO = width + 2 * r;
         // Top and bottom
-        for (int i = 0; i < wI; i++) {
-            for (int j = 0; j < this.r; j++) {
-                idX = this.r - j - 1;
-                value = i_m[j][i];
-                o_m[idX][i + this.r] = value;
-
-                idX = hI + this.r + j;
-                value = i_m[hI - j - 1][i];
-                o_m[idX][i + this.r] = value;
-            }
+        for (int j = 0; j < r; j++) {
+            System.arraycopy(p, (r + j) * wO + r, p, (r - j - 1) * wO + r, width);
+            System.arraycopy(p, (height + r - j - 1) * wO + r, p, (height + r + j) * wO + r, width);
         }
-
         // Left and right
-        for (int i = 0; i < hO; i++) {
-            for (int j = 0; j < this.r; j++) {
-                idY = this.r - j - 1;
-                value = o_m[i][this.r + j];
-                o_m[i][idY] = value;
-
-                idY = wI + this.r + j;
-                value = o_m[i][wI + this.r - j - 1];
-                o_m[i][idY] = value;
+        for (int i = 0; i < height + 2 * r; i++) {
+            int row = i * wO;
+            for (int j = 0; j < r; j++) {
+                p[row + r - j - 1] = p[row + r + j];
+                p[row + width + r + j] = p[row + width + r - j - 1];
             }
         }
-        output.assign(o_m);
-        return output;
     }
 
 
@@ -0,0 +1,161 @@
+package com.hijizhou.cores.denoising;
+/**
+ * PATCHDFT: discrete Fourier transform of the real (2r+1)x(2r+1) patches of
+ * the DDID step, computed separably (rows, then columns) on the half spectrum
+ *
+ * A patch is stored row by row with its center at (r, r), and is transformed
+ * as if circularly shifted so that the center sits at the origin (as
+ * DoubleCommon2D.circShift does). Being real, it is folded about its center
+ * and only the frequencies (f1, f2) with -r <= f1 <= r and 0 <= f2 <= r are
+ * computed, the others being the conjugates of (-f1, -f2). A spectrum of
+ * (2r+1)x(r+1) values is stored row by row with f1 = -r at row 0.
+ *
+ * The cosine and sine tables are shared by all the patches of a radius (see
+ * forRadius); the buffers given to the transforms are the caller's.
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+import java.util.concurrent.ConcurrentHashMap;
+
+final class PatchDFT {
+
+    private static final ConcurrentHashMap<Integer, PatchDFT> PLANS = new ConcurrentHashMap<Integer, PatchDFT>();
+
+    final int r;
+    final int n;
+    final int half;
+    // times each frequency of the half spectrum stands in the full one:
+    // 1 at f2 = 0, 2 with its conjugate elsewhere
+    final double[] multiplicity;
+    // cos/sin(2 pi f d / n) at f * half + d, for 0 <= f, d <= r
+    private final double[] cos;
+    private final double[] sin;
+
+    private PatchDFT(int r) {
+        this.r = r;
+        this.n = 2 * r + 1;
+        this.half = r + 1;
+        this.cos = new double[half * half];
+        this.sin = new double[half * half];
+        this.multiplicity = new double[n * half];
+        for (int m = 0; m < multiplicity.length; m++) {
+            multiplicity[m] = m % half == 0 ? 1 : 2;
+        }
+        for (int f = 0; f < half; f++) {
+            for (int d = 0; d < half; d++) {
+                double theta = 2 * Math.PI * ((f * d) % n) / n;
+                cos[f * half + d] = Math.cos(theta);
+                sin[f * half + d] = Math.sin(theta);
+            }
+        }
+    }
+
+    /**
+     * Transform of the patches of radius r, created once and shared.
+     */
+    static PatchDFT forRadius(int r) {
+        PatchDFT plan = PLANS.get(r);
+        if (plan == null) {
+            plan = new PatchDFT(r);
+            PatchDFT previous = PLANS.putIfAbsent(r, plan);
+            if (previous != null) {
+                plan = previous;
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Row pass: for each row of the n x n patch <code>x</code>, the cosine
+     * and sine sums c and s over its columns, the row spectrum being c - i s.
+     * <code>c</code> and <code>s</code> hold n x half values; <code>x</code>
+     * is overwritten.
+     */
+    void rows(double[] x, double[] c, double[] s) {
+        for (int d1 = 0; d1 < n; d1++) {
+            int row = d1 * n + r;
+            int out = d1 * half;
+            // fold the row about its center: sums right, differences left
+            double x0 = x[row];
+            double sum = x0;
+            for (int d2 = 1; d2 <= r; d2++) {
+                double plus = x[row + d2];
+                double minus = x[row - d2];
+                x[row + d2] = plus + minus;
+                x[row - d2] = plus - minus;
+                sum += plus + minus;
+            }
+            c[out] = sum;
+            s[out] = 0;
+            for (int f2 = 1; f2 < half; f2++) {
+                int t = f2 * half;
+                double sc = x0;
+                double ss = 0;
+                for (int d2 = 1; d2 <= r; d2++) {
+                    sc += cos[t + d2] * x[row + d2];
+                    ss += sin[t + d2] * x[row - d2];
+                }
+                c[out + f2] = sc;
+                s[out + f2] = ss;
+            }
+        }
+    }
+
+    /**
+     * Column pass after rows: the real and imaginary parts of the half
+     * spectrum. <code>im</code> may be null when only the real part is
+     * needed; <code>c</code> and <code>s</code> are overwritten.
+     */
+    void columns(double[] c, double[] s, double[] re, double[] im) {
+        int center = r * half;
+        // fold the columns about the center row: sums below, differences above
+        for (int d1 = 1; d1 <= r; d1++) {
+            int plus = center + d1 * half;
+            int minus = center - d1 * half;
+            for (int f2 = 0; f2 < half; f2++) {
+                double cp = c[plus + f2];
+                double cm = c[minus + f2];
+                double sp = s[plus + f2];
+                double sm = s[minus + f2];
+                c[plus + f2] = cp + cm;
+                c[minus + f2] = cp - cm;
+                s[plus + f2] = sp + sm;
+                s[minus + f2] = sp - sm;
+            }
+        }
+
+        // the frequencies f1 and -f1 share their cosine and sine sums
+        for (int f1 = 0; f1 < half; f1++) {
+            int t = f1 * half;
+            for (int f2 = 0; f2 < half; f2++) {
+                double e1 = c[center + f2];
+                double e2 = 0;
+                if (im != null) {
+                    double g1 = 0;
+                    double g2 = s[center + f2];
+                    for (int d1 = 1; d1 <= r; d1++) {
+                        int plus = center + d1 * half + f2;
+                        int minus = center - d1 * half + f2;
+                        double cf = cos[t + d1];
+                        double sf = sin[t + d1];
+                        e1 += cf * c[plus];
+                        e2 += sf * s[minus];
+                        g1 += sf * c[minus];
+                        g2 += cf * s[plus];
+                    }
+                    im[center + t + f2] = -(g1 + g2);
+                    im[center - t + f2] = g1 - g2;
+                } else {
+                    for (int d1 = 1; d1 <= r; d1++) {
+                        e1 += cos[t + d1] * c[center + d1 * half + f2];
+                        e2 += sin[t + d1] * s[center - d1 * half + f2];
+                    }
+                }
+                re[center + t + f2] = e1 - e2;
+                re[center - t + f2] = e1 + e2;
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.hijizhou.cores.denoising;
+/**
+ * PATCHKERNELS: the element-wise loops of the DDID step on one patch, the
+ * bilateral weights and the Fourier shrinkage
+ *
+ * DDIDstep uses its scalar implementation, or the one written with the
+ * Vector API (VectorKernels, compiled by the vector profile) when asked to
+ * and available.
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+interface PatchKernels {
+
+    /**
+     * Copies the n x n patches at (row, col) of the extended images xp and yp
+     * (row by row, <code>stride</code> columns) to g and y, and sets their
+     * weights k = exp(-(g - center)^2 * invRange) * h, the range kernel being
+     * 0 from an exponent of -DDIDstep.RANGE_MAX. The sums of k, g*k, y*k and
+     * k^2 are returned in <code>sums</code>.
+     */
+    void weights(double[] xp, double[] yp, int stride, int row, int col, int n, double[] h,
+                 double invRange, double[] g, double[] y, double[] k, double[] sums);
+
+    /**
+     * Sum over the half spectrum of multiplicity * yRe * Re(K), with
+     * K = exp(v / (gRe^2 + gIm^2 + epsilon)); the terms whose exponent is
+     * below DDIDstep.EXP_MIN are left out.
+     */
+    double shrink(double[] gRe, double[] gIm, double[] yRe, double[] multiplicity, double v);
+}
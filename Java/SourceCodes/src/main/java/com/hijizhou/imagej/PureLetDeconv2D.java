@@ -12,8 +12,9 @@ package com.hijizhou.imagej;
  */
 import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
 import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import com.hijizhou.cores.deconvolution.DeconvolutionEngine;
+import com.hijizhou.cores.deconvolution.DeconvolutionParameters;
 import com.hijizhou.cores.deconvolution.MW_PURE_LET2D;
-import com.hijizhou.cores.deconvolution.MW_PURE_LET2Dnew;
 import com.hijizhou.imageware.Builder;
 import com.hijizhou.imageware.ImageWare;
 import com.hijizhou.imageware.Operations;
@@ -44,6 +45,10 @@ import static ij.plugin.ChannelSplitter.split;
 public class PureLetDeconv2D extends JDialog implements ChangeListener, ActionListener,
         ItemListener, WindowListener, TextListener, Runnable {
     private static final long serialVersionUID = 1L;
+    // pixels added on each side of the image when padding, besides the PSF
+    private static final int PADDING_BORDER = 16;
+    // slices of a stack the noise is estimated on
+    private static final int NOISE_FRAMES = 4;
     JSlider sldDemoPSFsize = new JSlider(0, 0, 500, 300);
     JSlider sldDemoAlpha = new JSlider(0, 0, 1000, 10);
     JSlider sldDemoStd = new JSlider(0, 0, 1000, 0);
@@ -88,6 +93,7 @@ public class PureLetDeconv2D extends JDialog implements ChangeListener, ActionLi
     private JButton bnRunRun = new JButton("Start Deconvolution");
     private JComboBox cmbPSF = new JComboBox(new String[]{"Gaussian"});
     private JComboBox cmbPSFRun = new JComboBox(new String[]{"Confocal"});
+    private JComboBox cmbRunPadding = new JComboBox(new String[]{"None", "Mirror", "Periodic", "Smooth size"});
     private ButtonGroup bgConvolution;
     private ButtonGroup bgResults;
     private JLabel lblDemoAlpha = new JLabel("<html>Level <br/>(alpha)</html>");
@@ -135,6 +141,7 @@ public class PureLetDeconv2D extends JDialog implements ChangeListener, ActionLi
     private JTextField txtRunPSFsize = new JTextField("1", 3);
     GridPanel jplRunPSFsize = addSliderValue(sldRunPSFsize, txtRunPSFsize, 50);
     private JLabel lblRunRunningTime = new JLabel("<html>Running Time (sec.)</html>");
+    private JLabel lblRunPadding = new JLabel("Padding");
     private JTextField txtRunTime = new JTextField("", 6);
     //    private JRadioButton checkRunShowPSF = new JRadioButton("Show PSF?", false);
     private JRadioButton checkRunPostFilter = new JRadioButton("Post-Filtering?", false);
@@ -321,6 +328,8 @@ public class PureLetDeconv2D extends JDialog implements ChangeListener, ActionLi
         pnRunResult.place(0, 1, txtRunTime);
 //        pnRunResult.place(0, 2, checkRunShowPSF);
         pnRunResult.place(0, 2, checkRunPostFilter);
+        pnRunResult.place(1, 0, this.lblRunPadding);
+        pnRunResult.place(1, 1, this.cmbRunPadding);
         this.txtRunTime.setEnabled(false);
 
         GridPanel pnRunButtons = new GridPanel("");
@@ -509,6 +518,7 @@ public class PureLetDeconv2D extends JDialog implements ChangeListener, ActionLi
         this.sldRunStd.setForeground(color);
 //        this.checkRunShowPSF.setEnabled(isready);
         this.checkRunPostFilter.setEnabled(isready);
+        this.cmbRunPadding.setEnabled(isready);
         this.bnRunEstNoise.setEnabled(isready);
 //        this.bnRunRun.setEnabled(isready);
     }
@@ -560,20 +570,6 @@ public class PureLetDeconv2D extends JDialog implements ChangeListener, ActionLi
         this.width = impOriginal.getWidth();
         this.height = impOriginal.getHeight();
 
-
-        if (this.width != this.height) {
-            IJ.showMessage("Only square image is supported currently.");
-            this.thread = null;
-            changeStatusRun(false);
-            return;
-        }
-
-        if (this.width % 2 != 0) {
-            this.txtOriginal.setText("Only 2^n size image is supported currently.");
-            changeStatusDemo(false);
-            return;
-        }
-
         if (this.impOriginal.isComposite()) {
             this.txtOriginal.setText("This plugin does not handle composite yet.");
             changeStatusDemo(false);
@@ -612,19 +608,6 @@ public class PureLetDeconv2D extends JDialog implements ChangeListener, ActionLi
         this.cmY = new ColorModel[nchannel];
         this.channelsOutput = new ImagePlus[nchannel];
 
-        if (this.width != this.height) {
-            IJ.showMessage("Only square image is supported currently.");
-            this.thread = null;
-            changeStatusRun(false);
-            return;
-        }
-
-        if (this.width % 2 != 0) {
-            this.txtOriginal.setText("Only 2^n size image is supported currently.");
-            changeStatusRun(false);
-            return;
-        }
-
         this.txtInput.setText(this.impInput.getTitle());
         this.txtInput.setCaretPosition(0);
 
@@ -773,10 +756,11 @@ public class PureLetDeconv2D extends JDialog implements ChangeListener, ActionLi
 
         int nchannel = this.channels.length;
         double alpha = 0.001;
+        double sigma = 0.0;
         double totaltime = 0.0;
         for(int i=0; i<nchannel; i++){
             this.estInput = Builder.create(channels[i]);
-            double[] fitRs = Operations.estimateNoiseParams(estInput, 100);
+            double[] fitRs = Operations.estimateNoiseParams(estInput, 100, NOISE_FRAMES);
 
             long endTime = System.nanoTime();
 
@@ -785,20 +769,23 @@ public class PureLetDeconv2D extends JDialog implements ChangeListener, ActionLi
             totaltime = totaltime + estTime;
 
             double alphaItr = fitRs[0] >= 0 ? fitRs[0] : 0.001;
-//            double variance = fitRs[2] * fitRs[2];
 
             if(alphaItr > alpha)
             {
                 alpha = alphaItr; //take the maximum number of alpha as the overall alpha
             }
+            if(fitRs[2] > sigma)
+            {
+                sigma = fitRs[2]; //and of the Gaussian standard deviation
+            }
 
         }
 
         this.txtRunAlpha.setText(new Double(df2.format(alpha)) + "");
-//        this.txtRunStd.setText(new Double(df2.format(variance)) + "");
+        this.txtRunStd.setText(new Double(df2.format(sigma)) + "");
 
-        this.sldRunAlpha.setValue((int) alpha * 100);
-//        this.sldRunStd.setValue((int) variance * 100);
+        this.sldRunAlpha.setValue((int) (alpha * 100));
+        this.sldRunStd.setValue((int) (sigma * 100));
 
         this.walk.setMessage("Finished [" + new Double(df2.format(totaltime)) + "s], press Start Deconvolution");
     }
@@ -819,29 +806,22 @@ public class PureLetDeconv2D extends JDialog implements ChangeListener, ActionLi
         this.width = this.impOriginal.getWidth();
         this.height = this.impOriginal.getHeight();
 
-        if (this.width != this.height) {
-            IJ.showMessage("Only squared image is supported.");
-            this.walk.reset();
-            IJ.showStatus("Finished");
-            return;
-        }
-
-        DoubleMatrix2D PSF = new DenseDoubleMatrix2D(width, height);
-        DoubleMatrix2D Original = new DenseDoubleMatrix2D(width, height);
+        DoubleMatrix2D PSF = new DenseDoubleMatrix2D(height, width);
+        DoubleMatrix2D Original = new DenseDoubleMatrix2D(height, width);
         DoubleCommon2D.assignPixelsToMatrix(Original, ipOriginal);
 
         int strPSF = this.cmbPSF.getSelectedIndex();
 
         switch (strPSF) {
             case 0: //Gaussian
-                PSF = PSFUtil.getGaussPSF(width, height, Math.sqrt(new Double(txtDemoPSFsize.getText()).doubleValue()));
+                PSF = PSFUtil.getGaussPSF(height, width, Math.sqrt(new Double(txtDemoPSFsize.getText()).doubleValue()));
                 break;
             case 1: // Uniform:
                 break;
             case 2: // SeparableFilter:
                 break;
             default:
-                PSF = PSFUtil.getGaussPSF(width, height, Math.sqrt(new Double(txtDemoPSFsize.getText()).doubleValue()));
+                PSF = PSFUtil.getGaussPSF(height, width, Math.sqrt(new Double(txtDemoPSFsize.getText()).doubleValue()));
                 break;
         }
 
@@ -950,23 +930,23 @@ public class PureLetDeconv2D extends JDialog implements ChangeListener, ActionLi
         this.width = this.impInput.getWidth();
         this.height = this.impInput.getHeight();
 
-        DoubleMatrix2D PSF = new DenseDoubleMatrix2D(width, height);
+        DoubleMatrix2D PSF = new DenseDoubleMatrix2D(height, width);
 
-        DoubleMatrix2D Input = new DenseDoubleMatrix2D(width, height);
+        DoubleMatrix2D Input = new DenseDoubleMatrix2D(height, width);
         DoubleCommon2D.assignPixelsToMatrix(Input, ipInput);
 
         int strPSF = this.cmbPSF.getSelectedIndex();
 
         switch (strPSF) {
             case 0: //Gaussian
-                PSF = PSFUtil.getGaussPSF(width, height, Math.sqrt(new Double(txtDemoPSFsize.getText()).doubleValue()));
+                PSF = PSFUtil.getGaussPSF(height, width, Math.sqrt(new Double(txtDemoPSFsize.getText()).doubleValue()));
                 break;
             case 1: // Uniform:
                 break;
             case 2: // SeparableFilter:
                 break;
             default:
-                PSF = PSFUtil.getGaussPSF(width, height, Math.sqrt(new Double(txtDemoPSFsize.getText()).doubleValue()));
+                PSF = PSFUtil.getGaussPSF(height, width, Math.sqrt(new Double(txtDemoPSFsize.getText()).doubleValue()));
                 break;
         }
 
@@ -978,17 +958,18 @@ public class PureLetDeconv2D extends JDialog implements ChangeListener, ActionLi
         // Noise
         double alphaPoisson = Double.parseDouble(this.txtDemoAlpha.getText());
         double sigmaGauss = Double.parseDouble(this.txtDemoStd.getText());
-        double[] noisePar = {alphaPoisson, sigmaGauss}; // alphaPoisson, sigmaGauss
 
-        MW_PURE_LET2Dnew sl;
-        sl = new MW_PURE_LET2Dnew(Input, PSF, noisePar, this.walk, false);
+        // the simulated image is deconvolved as it is, with the PSF it was
+        // blurred with
+        DeconvolutionParameters params = new DeconvolutionParameters();
+        params.setNoiseParameters(alphaPoisson, sigmaGauss); // alphaPoisson, sigmaGauss
+        params.setPSF(PSF);
+        params.setPadding(Padding.Mode.NONE, 0);
 
         double startTime = System.nanoTime(); // start timing
-        sl.doDeconvolution();
+        DoubleMatrix2D Output = deconvolve(Input, params);
         double runningTime = (System.nanoTime() - startTime) / 1.0E9D;
 
-        DoubleMatrix2D Output = sl.getOutputMatrix();
-
         if (this.checkDemoPostFilter.isSelected()) {
             walk.setMessage("Starting post-filtering...");
 
@@ -999,7 +980,7 @@ public class PureLetDeconv2D extends JDialog implements ChangeListener, ActionLi
 
         DecimalFormat df2 = new DecimalFormat("#,###,###,##0.000");
 
-        DoubleMatrix2D Original = new DenseDoubleMatrix2D(width, height);
+        DoubleMatrix2D Original = new DenseDoubleMatrix2D(height, width);
         DoubleCommon2D.assignPixelsToMatrix(Original, ipOriginal);
         // // output PSNR
         double outputPSNR = Evaluation.psnr(Output, Original);
@@ -1024,24 +1005,33 @@ public class PureLetDeconv2D extends JDialog implements ChangeListener, ActionLi
         //run all channels
         int nchannel = this.channels.length;
 
-        ImagePlus tmpOutput = null;
-
         DecimalFormat df2 = new DecimalFormat("#,###,###,##0.000");
 
-        double runtime = 0.0;
-        for(int i=0; i<nchannel; i++){
-
-            double startTime = System.nanoTime(); // start timing
-
-            tmpOutput = runRunChannel(this.channels[i]);
-
-            double runningTime = (System.nanoTime() - startTime) / 1.0E9D;
+        // the channels share the PSF: its spectra and the wavelet filters
+        // are computed once and the channels run concurrently
+        double startTime = System.nanoTime(); // start timing
 
-            runtime = runtime + runningTime;
-            channelsOutput[i] = tmpOutput;
-            walk.setMessage("Channel " + i + ", finished [" + runningTime + " s]");
+        DoubleMatrix2D[] inputs = new DoubleMatrix2D[nchannel];
+        for (int i = 0; i < nchannel; i++) {
+            ImageProcessor ip = this.channels[i].getProcessor();
+            inputs[i] = new DenseDoubleMatrix2D(ip.getHeight(), ip.getWidth());
+            DoubleCommon2D.assignPixelsToMatrix(inputs[i], ip);
+        }
+        DeconvolutionEngine engine = new DeconvolutionEngine(getRunParameters(), 1, 0);
+        engine.setProgressListener(this.walk);
+        DoubleMatrix2D[] outputs;
+        try {
+            outputs = engine.deconvolveChannels(inputs);
+        } finally {
+            engine.shutdown();
+        }
+        for (int i = 0; i < nchannel; i++) {
+            channelsOutput[i] = ImageUtil.matrix2Plus(outputs[i],
+                    this.channels[i].getProcessor().getColorModel(), "Deconvolved image");
         }
 
+        double runtime = (System.nanoTime() - startTime) / 1.0E9D;
+        walk.setMessage(nchannel + (nchannel > 1 ? " channels" : " channel") + ", finished [" + runtime + " s]");
 
         this.txtRunTime.setText(df2.format(runtime));
 
@@ -1072,91 +1062,50 @@ public class PureLetDeconv2D extends JDialog implements ChangeListener, ActionLi
     }
 
 
-    public ImagePlus runRunChannel(ImagePlus channel) {
+    /**
+     * Settings of the Run tab.
+     */
+    private DeconvolutionParameters getRunParameters() {
+        DeconvolutionParameters params = new DeconvolutionParameters();
+        params.setNoiseParameters(Double.parseDouble(this.txtRunAlpha.getText()),
+                Double.parseDouble(this.txtRunStd.getText()));
+        params.setPSFFWHM(Double.parseDouble(this.txtRunPSFsize.getText()));
+        params.setPadding(Padding.Mode.values()[this.cmbRunPadding.getSelectedIndex()], PADDING_BORDER);
+        params.setPostFiltering(this.checkRunPostFilter.isSelected());
+        params.setLog(this.checkRunLog.isSelected());
+        return params;
+    }
 
-//        ConcurrencyUtils.setNumberOfThreads(4);
-        this.width = this.impInput.getWidth();
-        this.height = this.impInput.getHeight();
+    public ImagePlus runRunChannel(ImagePlus channel) {
 
         this.ipInput = channel.getProcessor();
         this.cmY[0] = this.ipInput.getColorModel();
 
-        DoubleMatrix2D PSF = new DenseDoubleMatrix2D(width, height);
-
-        DoubleMatrix2D Input = new DenseDoubleMatrix2D(width, height);
+        DoubleMatrix2D Input = new DenseDoubleMatrix2D(this.ipInput.getHeight(), this.ipInput.getWidth());
         DoubleCommon2D.assignPixelsToMatrix(Input, ipInput);
 
-        int strPSF = this.cmbPSF.getSelectedIndex();
-
-        double NA = Double.parseDouble(this.txtRunNA.getText());
-        double lambda = Double.parseDouble(this.txtRunLambda.getText());
-        double pixelsize = Double.parseDouble(this.txtRunPixelSize.getText());
-
-        double psfsigma =1/2.355*Double.parseDouble(this.txtRunPSFsize.getText());
-
-        switch (strPSF) {
-            case 0: //Gaussian
-                PSF = PSFUtil.getGaussPSF(width, height, psfsigma);
-                break;
-            case 1: // Uniform:
-                break;
-            case 2: // SeparableFilter:
-                break;
-            default:
-                PSF = PSFUtil.getGaussPSF(width, height, psfsigma);
-                break;
+        DeconvolutionParameters params = getRunParameters();
+        if (params.isLog()) {
+            IJ.log("Gaussian PSF size: " + params.getPSFSigma());
         }
+        DoubleMatrix2D Output = deconvolve(Input, params);
 
-//        this.impPSF = ImageUtil.matrix2Plus(PSF, cmY, "PSF");
-//        if (this.checkRunShowPSF.isSelected()) {
-//            this.impPSF.show();
-//        }
-
-        // Noise
-        double alphaPoisson = Double.parseDouble(this.txtRunAlpha.getText());
-        double sigmaGauss = Double.parseDouble(this.txtRunStd.getText());
-//        sigmaGauss = 0;
-        double[] noisePar = {alphaPoisson, sigmaGauss}; // alphaPoisson, sigmaGauss
-
-        //rescale
-//        Input = rescale(Input, 1, 255);
+        return ImageUtil.matrix2Plus(Output, cmY[0], "Deconvolved image");
 
-        Boolean Log = false;
-        if(this.checkRunLog.isSelected()){Log = true;}
-
-        if(Log){
-            IJ.log("Gaussian PSF size: " + psfsigma);
-        }
-        MW_PURE_LET2Dnew sl;
-        sl = new MW_PURE_LET2Dnew(Input, PSF, noisePar, this.walk, Log);
-
-
-        sl.doDeconvolution();
-
-
-        DoubleMatrix2D Output = sl.getOutputMatrix();
-
-        double runningTimepost = 0.0;
-
-        if (this.checkRunPostFilter.isSelected()) {
-            //Post-filtering
-            walk.setMessage("Starting post-filtering...");
-
-            double startTime = System.nanoTime();
-
-            Output = ImageUtil.postfiltering(Output, 30 / alphaPoisson);
+    }
 
-            runningTimepost = (System.nanoTime() - startTime) / 1.0E9D;
-            walk.setMessage("Post-filtering finished");
+    /**
+     * Deconvolves <code>input</code> in the calling thread, padded, cropped
+     * and post-filtered as <code>params</code> say.
+     */
+    private DoubleMatrix2D deconvolve(DoubleMatrix2D input, DeconvolutionParameters params) {
+        DeconvolutionEngine engine = new DeconvolutionEngine(params, 1, 0);
+        engine.setProgressListener(this.walk);
+        try {
+            return engine.deconvolve(input);
+        } finally {
+            engine.shutdown();
         }
-
-        //rescale
-//        Output = rescale(Output, 0, 255);
-
-        ImagePlus impOutput = ImageUtil.matrix2Plus(Output, cmY[0], "Deconvolved image");
-
-        return impOutput;
-
     }
 
     public void updatePSFsizze(){
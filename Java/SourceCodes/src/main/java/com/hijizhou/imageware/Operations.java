@@ -152,6 +152,9 @@ final public class Operations extends Object {
     final static protected double computeMode(double a[]) {
         int maxCount = 0, count;
         double maxValue = 0.0, M = getMax(a), dyn = 1 * a.length;
+        if (M == 0) {
+            return 0.0;
+        }
         multiplyAndRound(a, dyn / M, a);
         for (int i = 0; i < a.length; i++) {
             count = 0;
@@ -249,14 +252,60 @@ final public class Operations extends Object {
     /**
      */
     final static protected double getMedian(double[] input) {
+        return getMedian(input, new double[input.length]);
+    }
+
+    /**
+     * Same, with <code>sorted</code> as work buffer; the middle values are
+     * selected rather than the whole input sorted.
+     */
+    final static protected double getMedian(double[] input, double[] sorted) {
         int N = input.length;
-        double[] sorted = new double[N];
         System.arraycopy(input, 0, sorted, 0, N);
-        java.util.Arrays.sort(sorted);
         int n = (int) Math.floor((N + 1.0) / 2.0);
         int m = 2 * n == N ? n : n - 1;
+        double lower = select(sorted, 0, N, n - 1);
+        double upper = lower;
+        if (m != n - 1) {
+            // the smallest value above the lower middle one
+            upper = sorted[m];
+            for (int i = m + 1; i < N; i++) {
+                upper = Math.min(upper, sorted[i]);
+            }
+        }
 
-        return (sorted[n - 1] + sorted[m]) / 2.0;
+        return (lower + upper) / 2.0;
+    }
+
+    /**
+     * k-th smallest value of array[from..to), moved to array[k], the values
+     * before it being smaller or equal and those after larger or equal.
+     */
+    final static protected double select(double[] array, int from, int to, int k) {
+        int lo = from, hi = to - 1;
+        while (lo < hi) {
+            double pivot = array[(lo + hi) >>> 1];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (array[i] < pivot) {
+                    i++;
+                }
+                while (array[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(array, i++, j--);
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                break;
+            }
+        }
+        return array[k];
     }
 
     /**
@@ -920,91 +969,221 @@ final public class Operations extends Object {
         return output;
     }
 
+    /**
+     * Poisson-Gaussian noise parameters of the first slice of
+     * <code>input</code>, see estimateNoiseParams(ImageWare, int, int).
+     */
     public final static double[] estimateNoiseParams(ImageWare input, int CS) {
-        int[] size = input.getSize();
-        int Nx = (int)(Math.ceil((double)size[0]/Nmin)*Nmin);
-        int Ny = (int)(Math.ceil((double)size[1]/Nmin)*Nmin);
-        //System.out.printf("Nx=%d,Ny=%d\n",Nx,Ny);
-        ImageWare in = symextend2D(input,Nx,Ny);
+        return estimateNoiseParams(input, CS, 1);
+    }
+
+    /**
+     * Poisson-Gaussian noise parameters, fitted on <code>frames</code>
+     * slices of <code>input</code> spread over the stack, the first one
+     * included, so that a whole stack is estimated at once.
+     *
+     * The CS trials (block partitions at random offsets) are shared between
+     * the sampled slices and run in parallel. Each trial draws its offsets
+     * from its own random stream and the results are summed in trial order,
+     * so that the estimate does not depend on the number of threads.
+     *
+     * @return {alpha, delta, sigma, beta}: the Poisson gain alpha and the
+     *         intercept beta of the fit var = alpha * mean + beta, the
+     *         background level delta and the standard deviation
+     *         sigma = sqrt(max(beta, 0)) of the Gaussian noise
+     */
+    public final static double[] estimateNoiseParams(ImageWare input, int CS, int frames) {
+        final int[] size = input.getSize();
+        frames = Math.max(1, Math.min(frames, size[2]));
+        final int Nx = (int)(Math.ceil((double)size[0]/Nmin)*Nmin);
+        final int Ny = (int)(Math.ceil((double)size[1]/Nmin)*Nmin);
+        // the trials only shift the block grid periodically: the pixels,
+        // their integral image and their Laplacian residual are computed
+        // once per slice
+        final double[][][] pixels = new double[frames][Nx][Ny];
+        final double[][][] residuals = new double[frames][][];
+        final double[][] integrals = new double[frames][];
+        ImageWare slice = Builder.create(size[0], size[1], 1, ImageWare.DOUBLE);
+        for (int f = 0; f < frames; f++) {
+            input.getXY(0, 0, (int) ((long) f * size[2] / frames), slice);
+            symextend2D(slice, Nx, Ny).getBlockXY(0, 0, 0, pixels[f], ImageWare.PERIODIC);
+            residuals[f] = laplacianResidual(pixels[f]);
+            integrals[f] = integralImage(pixels[f]);
+        }
+
+        final double[][] trials = new double[CS][];
+        int np = Math.min(ConcurrencyUtils.getNumberOfThreads(), CS);
+        if (np > 1) {
+            Future<?>[] futures = new Future[np];
+            int k = CS / np;
+            for (int j = 0; j < np; j++) {
+                final int firstTrial = j * k;
+                final int lastTrial = (j == np - 1) ? CS : firstTrial + k;
+
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        estimateNoiseTrials(pixels, residuals, integrals, size, firstTrial, lastTrial, trials);
+                    }
+                });
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+        } else {
+            estimateNoiseTrials(pixels, residuals, integrals, size, 0, CS, trials);
+        }
+
+        double[] noiseParams = new double[4];
+        for (int cs = 0; cs < CS; cs++) {
+            for (int i = 0; i < 4; i++) {
+                noiseParams[i] = noiseParams[i] + trials[cs][i];
+            }
+        }
+        for (int i = 0; i < 4; i++) {
+            noiseParams[i] = noiseParams[i] / CS;
+        }
+
+        return noiseParams;
+    }
+
+    /**
+     * Runs the trials firstTrial to lastTrial - 1, trial cs on the slice
+     * cs % pixels.length, with buffers of its own. The blocks of a trial are
+     * read in place, at the offsets of its grid: their plain means come from
+     * the integral image and start the robust means, and the robust
+     * variances take the Laplacian residual of the slice.
+     */
+    final static private void estimateNoiseTrials(double[][][] pixels, double[][][] residuals, double[][] integrals,
+                                                  int[] size, int firstTrial, int lastTrial, double[][] trials) {
+        int Nx = pixels[0].length, Ny = pixels[0][0].length;
         int[] It = numOfDyadicIters(Nx,Ny);
         int K1 = (int) Math.pow(2.0, It[0] - 1), K2 = (int) Math.pow(2.0, It[1] - 1);
-        //System.out.printf("K1=%d,K2=%d\n",K1,K2);
         int Nblk = Nx * Ny / (K1 * K2);
-        //System.out.printf("Nblk=%d\n",Nblk);
         int wtype = 0; //0 = "huber", 1 = "bisquare";
         double Tol = 1;
         int L = (int) Math.floor(Tol * (Nblk));
-        double alpha = 0.0, beta = 0.0, delta = 0.0, sigma = 0.0, sig = 0.0, d;
+        int I = (int) Math.round(0.05 * L);
 
-        int[] offset = new int[2];
         double[] mean = new double[Nblk], sortedMean = new double[Nblk];
         double[] var = new double[Nblk];
         double[] rmean = new double[L], rvar = new double[L];
-//        double[] alphaBeta = new double[2];
-        double[] noiseParams = new double[4];
-        double[][] array = new double[Nx][Ny];
-        java.util.Random rand = new java.util.Random(0);
+        int[] index = new int[Nblk];
+        // one block and the work buffers of the robust estimates
+        double[] block = new double[K1 * K2];
+        double[] w = new double[K1 * K2], r = new double[K1 * K2], sorted = new double[K1 * K2];
+
+        for (int cs = firstTrial; cs < lastTrial; cs++) {
+            // the first trial of each slice is not shifted
+            java.util.Random rand = new java.util.Random(cs);
+            boolean shift = cs >= pixels.length;
+            int offsetX = (int) (shift ? Math.floor(rand.nextDouble() * size[0]) : 0);
+            int offsetY = (int) (shift ? Math.floor(rand.nextDouble() * size[1]) : 0);
+            int f = cs % pixels.length;
+            int k = 0;
+            for (int x = 0; x < Nx; x = x + K1) {
+                for (int y = 0; y < Ny; y = y + K2) {
+                    int x0 = (offsetX + x) % Nx, y0 = (offsetY + y) % Ny;
+                    getBlock(pixels[f], x0, y0, K1, K2, block);
+                    double blockMean = getBlockSum(integrals[f], Nx, Ny, x0, y0, K1, K2) / (K1 * K2);
+                    mean[k] = robustMeanEstimate(block, blockMean, wtype, w, r, sorted);
+                    getBlock(residuals[f], x0, y0, K1, K2, block);
+                    var[k] = robustVarEstimate(block, sorted);
+                    k++;
+                }
+            }
+            for (int i = 0; i < Nblk; i++) {
+                index[i] = i;
+            }
+            System.arraycopy(mean, 0, sortedMean, 0, mean.length);
+            quickSort(sortedMean, index);
+            putIndexedValues(mean, rmean, index, L);
+            putIndexedValues(var, rvar, index, L);
+            double[] alphaBeta = wlsFit(rmean, rvar, wtype);
 
-        double[] Alpha = new double[CS]; //currently only compute alpha
+            // background level from the darkest blocks; the variance of the
+            // Gaussian noise is the intercept of the fit
+            double delta = computeMode(restrictArray(rmean, 0, I));
+            double sigma = Math.sqrt(Math.max(alphaBeta[1], 0));
 
-        int np = ConcurrencyUtils.getNumberOfThreads();
-        if ((np > 1)) {
-            Future<?>[] futures = new Future[np];
-            int k = CS / np;
-            for (int j = 0; j < np; j++) {
-                final int firstRow = j * k;
-                final int lastRow = (j == np - 1) ? CS : firstRow + k;
+            trials[cs] = new double[]{alphaBeta[0], delta, sigma, alphaBeta[1]};
+        }
+    }
 
-                futures[j] = ConcurrencyUtils.submit(new Runnable() {
-                    public void run() {
-                        //basis functions for each pixel
-                        for (int cs = firstRow; cs < lastRow; cs++) {
-
-                            offset[0] = (int) (cs > 0 ? Math.floor(rand.nextDouble() * size[0]) : 0);
-                            offset[1] = (int) (cs > 0 ? Math.floor(rand.nextDouble() * size[1]) : 0);
-                            int[] index = createIndex(Nblk);
-                            in.getBlockXY(offset[0], offset[1], 0, array, ImageWare.PERIODIC);
-                            computeBlkMean(array, mean, K1, K2, wtype);
-                            computeBlkVar(Builder.create(array, ImageWare.DOUBLE), var, K1, K2);
-                            System.arraycopy(mean, 0, sortedMean, 0, mean.length);
-                            quickSort(sortedMean, index);
-                            System.arraycopy(index, 0, index, 0, L);
-                            putIndexedValues(mean, rmean, index, L);
-                            putIndexedValues(var, rvar, index, L);
-                            double[] alphaBeta = new double[2];
-                            alphaBeta = wlsFit(rmean, rvar, wtype);
-
-                            Alpha[cs] = alphaBeta[0];
-
-
-//            alpha = alpha + alphaBeta[0];
-//            beta = beta + alphaBeta[1];
-//            d = computeMode(restrictArray(rmean, 0, (int) Math.round(0.05 * L)));
-//            //d     = computeMode(rmean);
-//            delta = delta + d;
-//            d = computeMode(restrictArray(rvar, 0, (int) Math.round(0.05 * L)));
-//            //d     = computeMode(rvar);
-//            sig = Math.sqrt(d);
-//            //sig   = Math.sqrt(Math.max(d,Math.max(alphaBeta[1]+alphaBeta[0]*d,0)));
-//            sigma = sigma + sig;
-                        }
+    /**
+     * Periodic convolution of <code>input</code> with the Laplacian, as
+     * convolveFIR2 does.
+     */
+    final static private double[][] laplacianResidual(double[][] input) {
+        int Nx = input.length, Ny = input[0].length;
+        double[][] output = new double[Nx][Ny];
+        for (int x = 0; x < Nx; x++) {
+            for (int y = 0; y < Ny; y++) {
+                double pix = 0.0;
+                for (int i = 0; i < 3; i++) {
+                    int xp = (x + i - 1 + Nx) % Nx;
+                    for (int j = 0; j < 3; j++) {
+                        pix = pix + input[xp][(y + j - 1 + Ny) % Ny] * laplacian[i][j];
                     }
-                });
+                }
+                output[x][y] = pix;
             }
-            ConcurrencyUtils.waitForCompletion(futures);
         }
+        return output;
+    }
 
-        for (int cs = 1; cs < CS; cs++) {
-            alpha = alpha + Alpha[cs];
+    /**
+     * Summed-area table of <code>input</code>: element (x, y) of the
+     * (Nx + 1) x (Ny + 1) table, at x * (Ny + 1) + y, is the sum of the
+     * pixels before x and y.
+     */
+    final static private double[] integralImage(double[][] input) {
+        int Nx = input.length, Ny = input[0].length;
+        double[] sum = new double[(Nx + 1) * (Ny + 1)];
+        for (int x = 0; x < Nx; x++) {
+            double row = 0.0;
+            for (int y = 0; y < Ny; y++) {
+                row = row + input[x][y];
+                sum[(x + 1) * (Ny + 1) + y + 1] = sum[x * (Ny + 1) + y + 1] + row;
+            }
         }
+        return sum;
+    }
 
-        noiseParams[0] = alpha / CS;
-        noiseParams[1] = delta / CS;
-        noiseParams[2] = sigma / CS;
-        noiseParams[3] = beta / CS;
+    /**
+     * Sum of the K1 x K2 block at (x0, y0) of the periodic image of the
+     * integral image <code>sum</code>.
+     */
+    final static private double getBlockSum(double[] sum, int Nx, int Ny, int x0, int y0, int K1, int K2) {
+        int x1 = Math.min(x0 + K1, Nx), y1 = Math.min(y0 + K2, Ny);
+        int wx = x0 + K1 - x1, wy = y0 + K2 - y1;   // parts wrapped around
+        double total = getRectangleSum(sum, Ny, x0, y0, x1, y1);
+        if (wx > 0) {
+            total = total + getRectangleSum(sum, Ny, 0, y0, wx, y1);
+        }
+        if (wy > 0) {
+            total = total + getRectangleSum(sum, Ny, x0, 0, x1, wy);
+        }
+        if (wx > 0 && wy > 0) {
+            total = total + getRectangleSum(sum, Ny, 0, 0, wx, wy);
+        }
+        return total;
+    }
 
-        return noiseParams;
+    final static private double getRectangleSum(double[] sum, int Ny, int x0, int y0, int x1, int y1) {
+        int n = Ny + 1;
+        return sum[x1 * n + y1] - sum[x0 * n + y1] - sum[x1 * n + y0] + sum[x0 * n + y0];
+    }
 
+    /**
+     * Copies the K1 x K2 block at (x0, y0) of the periodic image
+     * <code>input</code> to <code>block</code>, in the order of getBlocks.
+     */
+    final static private void getBlock(double[][] input, int x0, int y0, int K1, int K2, double[] block) {
+        int Nx = input.length, Ny = input[0].length;
+        for (int i = 0; i < K1; i++) {
+            double[] column = input[(x0 + i) % Nx];
+            for (int j = 0; j < K2; j++) {
+                block[i * K2 + j] = column[(y0 + j) % Ny];
+            }
+        }
     }
 
     final static protected double[] wlsFit(double[] x, double[] y, int wtype) {
@@ -1019,6 +1198,7 @@ final public class Operations extends Object {
         double[] xy = new double[N];
         double[] f = new double[N];
         double[] r = new double[N];
+        double[] sorted = new double[N];
         fill(w, 1.0);
         for (int i = 0; i < I; i++) {
             multiply(w, w, w2);
@@ -1048,7 +1228,7 @@ final public class Operations extends Object {
             a0 = params[0];
             b0 = params[1];
             //-------------------------------------------------------
-            d = interqDist(r) + EPS;
+            d = interqDist(r, sorted) + EPS;
             multiply(r, 1.0 / d, r);
             weightFun(r, wtype, w);
         }
@@ -1059,12 +1239,19 @@ final public class Operations extends Object {
     /**
      */
     final static protected double interqDist(double[] input) {
+        return interqDist(input, new double[input.length]);
+    }
+
+    /**
+     * Same, with <code>sorted</code> as work buffer; the two quantiles are
+     * selected rather than the whole input sorted.
+     */
+    final static protected double interqDist(double[] input, double[] sorted) {
         int N = input.length;
-        double[] sorted = new double[N];
         System.arraycopy(input, 0, sorted, 0, N);
-        java.util.Arrays.sort(sorted);
         int m = (int) Math.floor((Math.floor((N + 1.0) / 2.0) + 1.0) / 2.0);
-        double diq = sorted[N - m - 1] - sorted[m - 1];
+        double high = select(sorted, 0, N, N - m - 1);
+        double diq = high - select(sorted, 0, N - m - 1, m - 1);
 
         return diq;
     }
@@ -1091,35 +1278,64 @@ final public class Operations extends Object {
     }
 
     final static protected double robustVarEstimate(double[] array) {
-        subtract(array, getMedian(array), array);
+        return robustVarEstimate(array, new double[array.length]);
+    }
+
+    /**
+     * Same, with <code>sorted</code> as work buffer for the medians.
+     */
+    final static protected double robustVarEstimate(double[] array, double[] sorted) {
+        subtract(array, getMedian(array, sorted), array);
         absolute(array, array);
-        double sig = 1.4826 * getMedian(array);
+        double sig = 1.4826 * getMedian(array, sorted);
 
         return (sig * sig);
     }
 
     final static protected double robustMeanEstimate(double[] x, int wtype) {
+        int N = x.length;
+        return robustMeanEstimate(x, getMean(x), wtype, new double[N], new double[N], new double[N]);
+    }
+
+    /**
+     * Same, starting from the plain <code>mean</code> of x (the first
+     * iterate), with w, r and sorted as work buffers.
+     */
+    final static protected double robustMeanEstimate(double[] x, double mean, int wtype,
+                                                     double[] w, double[] r, double[] sorted) {
         int I = (int) 5e3, N = x.length;
         double e = 0.0, Tol = 1e-3, d = 1.0;
-        double[] w = new double[N];
-        double[] r = new double[N];
-        double m = 0.0, m0 = 1e9, aux = 0.0;
-        fill(w, 1.0);
+        double m = mean, m0 = 1e9, aux = 0.0;
+        // the residuals x - m only shift x: their interquartile distance is
+        // that of x, selected once
+        double diq = interqDist(x, sorted);
+        d = diq + EPS;
+        double scale = 1.0 / d;
         for (int i = 0; i < I; i++) {
-            multiply(w, x, r);
-            m = getSum(r);
-            aux = getSum(w);
-            m = Math.abs(aux) < EPS ? m0 : m / aux;
-            subtract(x, m, r);
-            e = getMean(absolute(r));
+            if (i > 0) {
+                m = 0.0;
+                aux = 0.0;
+                for (int n = 0; n < N; n++) {
+                    m = m + w[n] * x[n];
+                    aux = aux + w[n];
+                }
+                m = Math.abs(aux) < EPS ? m0 : m / aux;
+            }
+            e = 0.0;
+            for (int n = 0; n < N; n++) {
+                r[n] = x[n] - m;
+                e = e + Math.abs(r[n]);
+            }
+            e = e / N;
             //-------------------------------------------------------
             if (Math.abs(m0 - m) < Tol || e < Tol) {
                 break;
             }
             m0 = m;
             //-------------------------------------------------------
-            d = interqDist(r) + EPS;
-            multiply(r, 1.0 / d, r);
+            for (int n = 0; n < N; n++) {
+                r[n] = r[n] * scale;
+            }
             weightFun(r, wtype, w);
         }
 
@@ -0,0 +1,252 @@
+package com.hijizhou.utilities;
+/**
+ * BUFFERARENA: pool of real and complex matrix buffers, reused instead of
+ * allocating the temporaries of each sub-band, Wiener filter or frame anew
+ *
+ * Buffers are taken with real/complex (their contents are then undefined)
+ * or realCopy/complexCopy, and given back with release once no longer used;
+ * a released buffer is handed out again for any matrix with the same
+ * number of elements. Buffers released beyond the pooling limit are left to
+ * the garbage collector, once the pooled buffers of other sizes have been
+ * dropped to make room: an arena reused for frames of a new size does not
+ * keep those of the old one.
+ *
+ * The arena counts the bytes of the buffers in use and pooled. The peak of
+ * both together is kept overall, and the peak of the bytes in use for each
+ * named stage of a run (see beginStage), which shows which step bounds the
+ * memory of a deconvolution. An arena is safe to share between threads, the
+ * stages being meaningful when a single run uses it at a time.
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+import com.cern.colt.matrix.tdcomplex.DComplexMatrix2D;
+import com.cern.colt.matrix.tdcomplex.impl.DenseDComplexMatrix2D;
+import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class BufferArena {
+
+    private final Map<Integer, ArrayDeque<double[]>> free = new HashMap<Integer, ArrayDeque<double[]>>();
+    // buffers handed out, so that foreign or doubly released arrays are ignored
+    private final Map<double[], Boolean> used = new IdentityHashMap<double[], Boolean>();
+    private final Map<String, Long> stagePeaks = new LinkedHashMap<String, Long>();
+    private long maxPooledBytes;
+    private long inUse = 0;
+    private long pooled = 0;
+    private long peak = 0;
+    private long allocations = 0;
+    private long reuses = 0;
+    private String stage = null;
+
+    /**
+     * Arena pooling any number of released buffers.
+     */
+    public BufferArena() {
+        this(Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxPooledBytes bytes of released buffers kept for reuse
+     */
+    public BufferArena(long maxPooledBytes) {
+        this.maxPooledBytes = maxPooledBytes;
+    }
+
+    /**
+     * Arena of one of <code>workers</code> long-lived threads, each pooling
+     * at most its share of a quarter of the maximum heap size.
+     */
+    public static BufferArena forWorker(int workers) {
+        return new BufferArena(Runtime.getRuntime().maxMemory() / (4L * Math.max(1, workers)));
+    }
+
+    /**
+     * rows x columns complex matrix, with undefined contents.
+     */
+    public DenseDComplexMatrix2D complex(int rows, int columns) {
+        double[] elements = take(2 * rows * columns);
+        return new DenseDComplexMatrix2D(rows, columns, elements, 0, 0, 2 * columns, 2, true);
+    }
+
+    /**
+     * Buffer holding a copy of <code>m</code>.
+     */
+    public DenseDComplexMatrix2D complexCopy(DComplexMatrix2D m) {
+        DenseDComplexMatrix2D copy = complex(m.rows(), m.columns());
+        copy.assign(m);
+        return copy;
+    }
+
+    /**
+     * rows x columns real matrix, with undefined contents.
+     */
+    public DenseDoubleMatrix2D real(int rows, int columns) {
+        double[] elements = take(rows * columns);
+        return new DenseDoubleMatrix2D(rows, columns, elements, 0, 0, columns, 1, false);
+    }
+
+    /**
+     * Buffer holding a copy of <code>m</code>.
+     */
+    public DenseDoubleMatrix2D realCopy(DoubleMatrix2D m) {
+        DenseDoubleMatrix2D copy = real(m.rows(), m.columns());
+        copy.assign(m);
+        return copy;
+    }
+
+    /**
+     * Gives back the buffer of <code>m</code>, which must no longer be used.
+     * Matrices not taken from this arena, or already released, are ignored.
+     */
+    public void release(DComplexMatrix2D m) {
+        if (m instanceof DenseDComplexMatrix2D) {
+            give((double[]) ((DenseDComplexMatrix2D) m).elements());
+        }
+    }
+
+    public void release(DoubleMatrix2D m) {
+        if (m instanceof DenseDoubleMatrix2D) {
+            give((double[]) ((DenseDoubleMatrix2D) m).elements());
+        }
+    }
+
+    /**
+     * Drops the pooled buffers.
+     */
+    public synchronized void clear() {
+        free.clear();
+        pooled = 0;
+    }
+
+    /**
+     * Starts a new stage, ending the current one; its peak starts from the
+     * bytes in use now.
+     */
+    public synchronized void beginStage(String name) {
+        stage = name;
+        Long previous = stagePeaks.get(name);
+        stagePeaks.put(name, previous == null ? inUse : Math.max(previous, inUse));
+    }
+
+    /**
+     * Ends the current stage, if any.
+     */
+    public synchronized void endStage() {
+        stage = null;
+    }
+
+    /**
+     * Peak bytes in use during each stage, in the order the stages first
+     * began; a stage run again keeps its largest peak.
+     */
+    public synchronized Map<String, Long> getStagePeaks() {
+        return new LinkedHashMap<String, Long>(stagePeaks);
+    }
+
+    /**
+     * Peak bytes held (in use and pooled) since the arena was created.
+     */
+    public synchronized long getPeakBytes() {
+        return peak;
+    }
+
+    /**
+     * Bytes of the buffers in use.
+     */
+    public synchronized long getBytesInUse() {
+        return inUse;
+    }
+
+    /**
+     * Bytes of the released buffers kept for reuse.
+     */
+    public synchronized long getPooledBytes() {
+        return pooled;
+    }
+
+    /**
+     * One line per stage with its peak in use, then the overall peak held
+     * and the numbers of buffers allocated and reused.
+     */
+    public synchronized String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> entry : stagePeaks.entrySet()) {
+            sb.append(entry.getKey()).append(": ").append(toMB(entry.getValue())).append(" MB\n");
+        }
+        sb.append("held: ").append(toMB(peak)).append(" MB, ").append(allocations)
+                .append(" buffers allocated, ").append(reuses).append(" reused");
+        return sb.toString();
+    }
+
+    private synchronized double[] take(int length) {
+        ArrayDeque<double[]> queue = free.get(length);
+        double[] elements = queue == null ? null : queue.poll();
+        long bytes = 8L * length;
+        if (elements != null) {
+            pooled -= bytes;
+            reuses++;
+        } else {
+            elements = new double[length];
+            allocations++;
+        }
+        used.put(elements, Boolean.TRUE);
+        inUse += bytes;
+        updatePeak();
+        return elements;
+    }
+
+    private synchronized void give(double[] elements) {
+        if (used.remove(elements) == null) {
+            return;
+        }
+        long bytes = 8L * elements.length;
+        inUse -= bytes;
+        if (pooled + bytes > maxPooledBytes && bytes <= maxPooledBytes) {
+            evictOtherThan(elements.length, bytes);
+        }
+        if (pooled + bytes <= maxPooledBytes) {
+            ArrayDeque<double[]> queue = free.get(elements.length);
+            if (queue == null) {
+                queue = new ArrayDeque<double[]>();
+                free.put(elements.length, queue);
+            }
+            queue.push(elements);
+            pooled += bytes;
+        }
+    }
+
+    /**
+     * Drops pooled buffers of lengths other than <code>length</code> until
+     * <code>bytes</code> more fit.
+     */
+    private void evictOtherThan(int length, long bytes) {
+        Iterator<Map.Entry<Integer, ArrayDeque<double[]>>> it = free.entrySet().iterator();
+        while (it.hasNext() && pooled + bytes > maxPooledBytes) {
+            Map.Entry<Integer, ArrayDeque<double[]>> entry = it.next();
+            if (entry.getKey() != length) {
+                pooled -= 8L * entry.getKey() * entry.getValue().size();
+                it.remove();
+            }
+        }
+    }
+
+    private void updatePeak() {
+        peak = Math.max(peak, inUse + pooled);
+        if (stage != null && inUse > stagePeaks.get(stage)) {
+            stagePeaks.put(stage, inUse);
+        }
+    }
+
+    private static String toMB(long bytes) {
+        return String.format("%.1f", bytes / (1024.0 * 1024.0));
+    }
+}
@@ -3,6 +3,10 @@ package com.hijizhou.utilities;
 /**
  * FFT_WFILTER: generate the waveletfilter matrix
  *
+ * An instance holds the filters of the last fft_wfilters2D/3D call, so it
+ * must not be shared by threads computing different sub-bands; see
+ * WaveletFilterBank for the precomputed filters of all of them.
+ *
  * @reference
  *       [1] J. Li, F. Luisier and T. Blu, PURE-LET image deconvolution,
  *             IEEE Trans. Image Process., vol. 27, no. 1, pp. 92-105, 2018.
@@ -33,14 +37,14 @@ public class FFT_WFilter {
 		double[] lowaI = new double[M];
 		double[] highaR = new double[M];
 		double[] highaI = new double[M];
-		int ki = 0;
-		for (double i = 0; i < (1 - 1 / M); i += 1.0 / M) {
-			nu[ki] = i;
-			zR[ki] = Math.cos(-2 * Math.PI * i);
-			zI[ki] = Math.sin(-2 * Math.PI * i);
-			ki += 1;
+		// frequencies k/M, k = 0..M-1 (any M, not only powers of two)
+		for (int k = 0; k < M; k++) {
+			double i = (double) k / M;
+			nu[k] = i;
+			zR[k] = Math.cos(-2 * Math.PI * i);
+			zI[k] = Math.sin(-2 * Math.PI * i);
 		}
-		for (int i = 0; i < ki; i++) {
+		for (int i = 0; i < M; i++) {
 			lowaR[i] = polyval(L0_D, zR[i], true);
 			lowaI[i] = polyval(L0_D, zI[i], false);
 			highaR[i] = polyval(HI_D, zR[i], true);
@@ -60,34 +64,28 @@ public class FFT_WFilter {
 		return Fa;
 	}
 
+	/**
+	 * Filters of the sub-band (ori, scale) of an nx x ny image: Dx along the
+	 * first (row) index, Dy along the second (column) index. nx and ny may
+	 * differ and need not be powers of two.
+	 */
 	public void fft_wfilters2D(int nx, int ny, int ori, int scale) {
 
 		double[][] FaX = fft_wavefilters(nx);
 		double[] HaX = FaX[0];
 		double[] GaX = FaX[1];
 		double[][] FaY = fft_wavefilters(ny);
+		double[] HaY = FaY[0];
+		double[] GaY = FaY[1];
 
 		// conjugate
-		double[] HaY = new double[ny * 2];
-		double[] GaY = new double[ny * 2];
-		for (int i = 1; i < ny * 2; i += 2) {
-			HaX[i - 1] = FaX[0][i - 1];
-			HaX[i] = 0 - FaX[0][i];
-			GaX[i - 1] = FaX[1][i - 1];
-			GaX[i] = 0 - FaX[1][i];
-			HaY[i - 1] = FaY[0][i - 1];
-			HaY[i] = 0 - FaY[0][i];
-			GaY[i - 1] = FaY[1][i - 1];
-			GaY[i] = 0 - FaY[1][i];
-		}
+		conj(HaX);
+		conj(GaX);
+		conj(HaY);
+		conj(GaY);
 
-		double[] Dx = new double[nx * 2];
-		double[] Dy = new double[ny * 2];
-
-		for (int i = 0; i < Dx.length; i += 2) {
-			Dx[i] = 1;
-			Dy[i] = 1;
-		}
+		double[] Dx = ones(nx);
+		double[] Dy = ones(ny);
 
 		switch (ori) {
 		case 3: // LL
@@ -144,51 +142,32 @@ public class FFT_WFilter {
 
 	}
 
+	/**
+	 * 3D version of fft_wfilters2D, with Dz along the slices.
+	 */
 	public void fft_wfilters3D(int nx, int ny, int nz, int ori, int scale) {
 
 		double[][] FaX = fft_wavefilters(nx);
 		double[] HaX = FaX[0];
 		double[] GaX = FaX[1];
 		double[][] FaY = fft_wavefilters(ny);
-
-		// conjugate
-		double[] HaY = new double[ny * 2];
-		double[] GaY = new double[ny * 2];
-		for (int i = 1; i < ny * 2; i += 2) {
-			HaX[i - 1] = FaX[0][i - 1];
-			HaX[i] = 0 - FaX[0][i];
-			GaX[i - 1] = FaX[1][i - 1];
-			GaX[i] = 0 - FaX[1][i];
-			HaY[i - 1] = FaY[0][i - 1];
-			HaY[i] = 0 - FaY[0][i];
-			GaY[i - 1] = FaY[1][i - 1];
-			GaY[i] = 0 - FaY[1][i];
-		}
-
+		double[] HaY = FaY[0];
+		double[] GaY = FaY[1];
 		double[][] FaZ = fft_wavefilters(nz);
 		double[] HaZ = FaZ[0];
 		double[] GaZ = FaZ[1];
 
 		//note the conjugate
-		for (int i = 1; i < nz * 2; i += 2) {
-			HaZ[i - 1] = FaZ[0][i - 1];
-			HaZ[i] = 0 - FaZ[0][i];
-			GaZ[i - 1] = FaZ[1][i - 1];
-			GaZ[i] = 0 - FaZ[1][i];
-		}
+		conj(HaX);
+		conj(GaX);
+		conj(HaY);
+		conj(GaY);
+		conj(HaZ);
+		conj(GaZ);
 
-		double[] Dx = new double[nx * 2];
-		double[] Dy = new double[ny * 2];
-		double[] Dz = new double[nz * 2];
-
-		// nx == ny
-		for (int i = 0; i < Dx.length; i += 2) {
-			Dx[i] = 1;
-			Dy[i] = 1;
-		}
-		for (int i = 0; i < Dz.length; i += 2) {
-			Dz[i] = 1;
-		}
+		double[] Dx = ones(nx);
+		double[] Dy = ones(ny);
+		double[] Dz = ones(nz);
 
 		switch (ori) {
 			case 7: // LLL
@@ -322,28 +301,39 @@ public class FFT_WFilter {
 	}
 
 	public static void lowOper(double[] Dx, double[] HaX) {
-		int nx = Dx.length / 2;
 		// Dx = Dx.*HaX;
-		// for (int i = 0; i < nx * 2; i++) {
-		// Dx[i] = Dx[i] * HaX[i];
-		// }
 		dotProComplex(Dx, HaX);
-		// HaX = [HaX(1:2:end); HaX(1:2:end)]
+		// HaX = HaX(mod(2*k, n))
+		upsample(HaX);
+	}
+
+	/**
+	 * H(z) -> H(z^2) on the DFT grid: H2[k] = H[2k mod n]. For even n this is
+	 * [H(1:2:end); H(1:2:end)]; the modulo also covers odd n.
+	 */
+	private static void upsample(double[] HaX) {
+		int nx = HaX.length / 2;
 		double[] aux = new double[nx * 2];
-		int auxi = 0;
-		for (int t = 0; t < nx * 2; t += 4) {
-			aux[auxi] = HaX[t];
-			aux[auxi + 1] = HaX[t + 1];
-			auxi += 2;
+		for (int k = 0; k < nx; k++) {
+			int t = (2 * k) % nx;
+			aux[2 * k] = HaX[2 * t];
+			aux[2 * k + 1] = HaX[2 * t + 1];
 		}
-		for (int t = 0; t < nx * 2; t += 4) {
-			aux[auxi] = HaX[t];
-			aux[auxi + 1] = HaX[t + 1];
-			auxi += 2;
+		System.arraycopy(aux, 0, HaX, 0, nx * 2);
+	}
+
+	private static void conj(double[] a) {
+		for (int i = 1; i < a.length; i += 2) {
+			a[i] = 0 - a[i];
 		}
-		for (int i = 0; i < nx * 2; i++) {
-			HaX[i] = aux[i];
+	}
+
+	private static double[] ones(int n) {
+		double[] a = new double[n * 2];
+		for (int i = 0; i < a.length; i += 2) {
+			a[i] = 1;
 		}
+		return a;
 	}
 
 	public static void dotProComplex(double[] A, double[] B) {
@@ -356,45 +346,10 @@ public class FFT_WFilter {
 	}
 
 	public static void highOper(double[] Dx, double[] HaX, double[] GaX) {
-		int nx = Dx.length / 2;
 		// Dx = Dx.*HaX;
-		// for (int i = 0; i < nx * 2; i++) {
-		// Dx[i] = Dx[i] * HaX[i];
-		// }
 		dotProComplex(Dx, HaX);
-
-		// HaX = [HaX(1:2:end); HaX(1:2:end)]
-		double[] aux = new double[nx * 2];
-		int auxi = 0;
-		for (int t = 0; t < nx * 2; t += 4) {
-			aux[auxi] = HaX[t];
-			aux[auxi + 1] = HaX[t + 1];
-			auxi += 2;
-		}
-		for (int t = 0; t < nx * 2; t += 4) {
-			aux[auxi] = HaX[t];
-			aux[auxi + 1] = HaX[t + 1];
-			auxi += 2;
-		}
-		for (int i = 0; i < nx * 2; i++) {
-			HaX[i] = aux[i];
-		}
-		// GaX = [GaX(1:2:end); GaX(1:2:end)]
-		double[] aux2 = new double[nx * 2];
-		int auxi2 = 0;
-		for (int t = 0; t < nx * 2; t += 4) {
-			aux2[auxi2] = GaX[t];
-			aux2[auxi2 + 1] = GaX[t + 1];
-			auxi2 += 2;
-		}
-		for (int t = 0; t < nx * 2; t += 4) {
-			aux2[auxi2] = GaX[t];
-			aux2[auxi2 + 1] = GaX[t + 1];
-			auxi2 += 2;
-		}
-		for (int i = 0; i < nx * 2; i++) {
-			GaX[i] = aux2[i];
-		}
+		upsample(HaX);
+		upsample(GaX);
 	}
 
 	public static double[] fliplr(double[] arr) {
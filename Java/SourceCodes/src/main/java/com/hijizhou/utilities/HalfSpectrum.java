@@ -0,0 +1,550 @@
+package com.hijizhou.utilities;
+/**
+ * HALFSPECTRUM: 2D and 3D Fourier transforms of real images that keep only
+ * the nonredundant half of the (Hermitian) spectrum
+ *
+ * The spectrum of a rows x columns real image is stored as a
+ * rows x (columns/2+1) complex matrix; the missing columns are the complex
+ * conjugates of the stored ones, X(k1, k2) = conj(X(-k1, -k2)). Stacks are
+ * handled the same way, slice by slice.
+ *
+ * Every transform has a single precision version with the same layout.
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+
+import com.cern.colt.matrix.tdcomplex.DComplexMatrix1D;
+import com.cern.colt.matrix.tdcomplex.DComplexMatrix2D;
+import com.cern.colt.matrix.tdcomplex.DComplexMatrix3D;
+import com.cern.colt.matrix.tdcomplex.impl.DenseDComplexMatrix2D;
+import com.cern.colt.matrix.tdcomplex.impl.DenseDComplexMatrix3D;
+import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.cern.colt.matrix.tdouble.DoubleMatrix3D;
+import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix3D;
+import com.cern.colt.matrix.tfcomplex.FComplexMatrix1D;
+import com.cern.colt.matrix.tfcomplex.FComplexMatrix2D;
+import com.cern.colt.matrix.tfcomplex.FComplexMatrix3D;
+import com.cern.colt.matrix.tfcomplex.impl.DenseFComplexMatrix2D;
+import com.cern.colt.matrix.tfcomplex.impl.DenseFComplexMatrix3D;
+import com.cern.colt.matrix.tfloat.FloatMatrix2D;
+import com.cern.colt.matrix.tfloat.FloatMatrix3D;
+import com.cern.colt.matrix.tfloat.impl.DenseFloatMatrix2D;
+import com.cern.colt.matrix.tfloat.impl.DenseFloatMatrix3D;
+import com.cern.jet.math.tdcomplex.DComplexFunctions;
+import com.cern.jet.math.tfcomplex.FComplexFunctions;
+import com.edu.emory.mathcs.utils.pc.ConcurrencyUtils;
+import com.org.jtransforms.fft.DoubleFFT_1D;
+import com.org.jtransforms.fft.FFTPlanCache;
+import com.org.jtransforms.fft.FloatFFT_1D;
+
+import java.util.concurrent.Future;
+
+public class HalfSpectrum {
+
+    /**
+     * Number of stored columns of the half spectrum of an image with
+     * <code>columns</code> columns.
+     */
+    public static int halfColumns(int columns) {
+        return columns / 2 + 1;
+    }
+
+    /**
+     * Half spectrum of the real matrix <code>x</code>, i.e. the first
+     * columns/2+1 columns of its 2D DFT (not scaled).
+     */
+    public static DenseDComplexMatrix2D fft2(DoubleMatrix2D x) {
+        DenseDComplexMatrix2D X = new DenseDComplexMatrix2D(x.rows(), halfColumns(x.columns()));
+        fft2(x, X);
+        return X;
+    }
+
+    /**
+     * fft2 into <code>X</code>, a rows x columns/2+1 matrix (e.g. a buffer of
+     * a BufferArena) whose contents are overwritten.
+     */
+    public static void fft2(DoubleMatrix2D x, DenseDComplexMatrix2D X) {
+        int rows = x.rows();
+        int columns = x.columns();
+        int half = halfColumns(columns);
+        checkHalf(X, rows, columns);
+        double[] a = x instanceof DenseDoubleMatrix2D && !x.isView() ? ((DenseDoubleMatrix2D) x).elements()
+                : ((DenseDoubleMatrix2D) new DenseDoubleMatrix2D(rows, columns).assign(x)).elements();
+        double[] b = X.elements();
+
+        forwardRows(a, rows, columns, b);
+        transformColumns(b, 1, rows, half, true);
+    }
+
+    /**
+     * Half spectrum of the real stack <code>x</code>, i.e. the first
+     * columns/2+1 columns of its 3D DFT (not scaled).
+     */
+    public static DenseDComplexMatrix3D fft3(DoubleMatrix3D x) {
+        int slices = x.slices();
+        int rows = x.rows();
+        int columns = x.columns();
+        int half = halfColumns(columns);
+        double[] a = x instanceof DenseDoubleMatrix3D && !x.isView() ? ((DenseDoubleMatrix3D) x).elements()
+                : ((DenseDoubleMatrix3D) new DenseDoubleMatrix3D(slices, rows, columns).assign(x)).elements();
+        DenseDComplexMatrix3D X = new DenseDComplexMatrix3D(slices, rows, half);
+        double[] b = X.elements();
+
+        forwardRows(a, slices * rows, columns, b);
+        transformColumns(b, slices, rows, half, true);
+        transformSlices(b, slices, rows * half, true);
+        return X;
+    }
+
+    /**
+     * Real rows x <code>columns</code> matrix whose half spectrum is
+     * <code>X</code> (inverse DFT, scaled). <code>X</code> must be the half of
+     * a Hermitian spectrum: the missing columns are taken as the conjugates of
+     * the stored ones, and the imaginary parts a Hermitian spectrum cannot
+     * carry are ignored.
+     */
+    public static DenseDoubleMatrix2D ifft2(DComplexMatrix2D X, int columns) {
+        int rows = X.rows();
+        int half = halfColumns(columns);
+        if (X.columns() != half) {
+            throw new IllegalArgumentException("half spectrum of " + columns + " columns must have "
+                    + half + " columns, got " + X.columns());
+        }
+        DenseDoubleMatrix2D x = new DenseDoubleMatrix2D(rows, columns);
+        ifft2InPlace((DenseDComplexMatrix2D) X.copy(), x);
+        return x;
+    }
+
+    /**
+     * ifft2 into <code>x</code>, whose number of columns gives that of the
+     * image; the half spectrum <code>X</code> is used as work space and its
+     * contents are lost. Both may be buffers of a BufferArena.
+     */
+    public static void ifft2InPlace(DenseDComplexMatrix2D X, DenseDoubleMatrix2D x) {
+        int rows = x.rows();
+        int columns = x.columns();
+        checkHalf(X, rows, columns);
+        if (X.isView() || x.isView()) {
+            throw new IllegalArgumentException("the half spectrum and the image must not be views");
+        }
+        double[] b = X.elements();
+
+        transformColumns(b, 1, rows, halfColumns(columns), false);
+        inverseRows(b, rows, columns, x.elements());
+    }
+
+    private static void checkHalf(DComplexMatrix2D X, int rows, int columns) {
+        if (X.rows() != rows || X.columns() != halfColumns(columns)) {
+            throw new IllegalArgumentException("half spectrum of " + rows + " x " + columns + " must be "
+                    + rows + " x " + halfColumns(columns) + ", got " + X.rows() + " x " + X.columns());
+        }
+    }
+
+    /**
+     * Real slices x rows x <code>columns</code> stack whose half spectrum is
+     * <code>X</code> (inverse DFT, scaled); see ifft2.
+     */
+    public static DenseDoubleMatrix3D ifft3(DComplexMatrix3D X, int columns) {
+        int slices = X.slices();
+        int rows = X.rows();
+        int half = halfColumns(columns);
+        if (X.columns() != half) {
+            throw new IllegalArgumentException("half spectrum of " + columns + " columns must have "
+                    + half + " columns, got " + X.columns());
+        }
+        double[] b = ((DenseDComplexMatrix3D) X.copy()).elements();
+        DenseDoubleMatrix3D x = new DenseDoubleMatrix3D(slices, rows, columns);
+
+        transformSlices(b, slices, rows * half, false);
+        transformColumns(b, slices, rows, half, false);
+        inverseRows(b, slices * rows, columns, x.elements());
+        return x;
+    }
+
+    /**
+     * Multiplies by <code>factor</code> the entries of the column-wise
+     * vectorized half spectrum <code>v</code> whose conjugate is not stored
+     * (all columns but the first one and, for an even number of columns, the
+     * last one).
+     *
+     * With <code>factor = sqrt(2)</code>, the inner product of two weighted
+     * half spectra has the same real part as the inner product of the full
+     * spectra.
+     */
+    public static void scaleMirrored(DComplexMatrix1D v, int rows, int columns, double factor) {
+        scaleMirrored(v, 1, rows, columns, factor);
+    }
+
+    /**
+     * Same as above for a vectorized stack (slice after slice, each slice
+     * column-wise).
+     */
+    public static void scaleMirrored(DComplexMatrix1D v, int slices, int rows, int columns, double factor) {
+        int mirrored = (columns - 1) / 2;
+        if (mirrored == 0) {
+            return;
+        }
+        int length = rows * halfColumns(columns);
+        for (int s = 0; s < slices; s++) {
+            v.viewPart(s * length + rows, mirrored * rows).assign(DComplexFunctions.mult(factor));
+        }
+    }
+
+    /**
+     * Single precision version of fft2(DoubleMatrix2D).
+     */
+    public static DenseFComplexMatrix2D fft2(FloatMatrix2D x) {
+        int rows = x.rows();
+        int columns = x.columns();
+        int half = halfColumns(columns);
+        float[] a = x instanceof DenseFloatMatrix2D && !x.isView() ? ((DenseFloatMatrix2D) x).elements()
+                : ((DenseFloatMatrix2D) new DenseFloatMatrix2D(rows, columns).assign(x)).elements();
+        DenseFComplexMatrix2D X = new DenseFComplexMatrix2D(rows, half);
+        float[] b = X.elements();
+
+        forwardRows(a, rows, columns, b);
+        transformColumns(b, 1, rows, half, true);
+        return X;
+    }
+
+    /**
+     * Single precision version of fft3(DoubleMatrix3D).
+     */
+    public static DenseFComplexMatrix3D fft3(FloatMatrix3D x) {
+        int slices = x.slices();
+        int rows = x.rows();
+        int columns = x.columns();
+        int half = halfColumns(columns);
+        float[] a = x instanceof DenseFloatMatrix3D && !x.isView() ? ((DenseFloatMatrix3D) x).elements()
+                : ((DenseFloatMatrix3D) new DenseFloatMatrix3D(slices, rows, columns).assign(x)).elements();
+        DenseFComplexMatrix3D X = new DenseFComplexMatrix3D(slices, rows, half);
+        float[] b = X.elements();
+
+        forwardRows(a, slices * rows, columns, b);
+        transformColumns(b, slices, rows, half, true);
+        transformSlices(b, slices, rows * half, true);
+        return X;
+    }
+
+    /**
+     * Single precision version of ifft2(DComplexMatrix2D, int).
+     */
+    public static DenseFloatMatrix2D ifft2(FComplexMatrix2D X, int columns) {
+        int rows = X.rows();
+        int half = halfColumns(columns);
+        if (X.columns() != half) {
+            throw new IllegalArgumentException("half spectrum of " + columns + " columns must have "
+                    + half + " columns, got " + X.columns());
+        }
+        float[] b = ((DenseFComplexMatrix2D) X.copy()).elements();
+        DenseFloatMatrix2D x = new DenseFloatMatrix2D(rows, columns);
+
+        transformColumns(b, 1, rows, half, false);
+        inverseRows(b, rows, columns, x.elements());
+        return x;
+    }
+
+    /**
+     * Single precision version of ifft3(DComplexMatrix3D, int).
+     */
+    public static DenseFloatMatrix3D ifft3(FComplexMatrix3D X, int columns) {
+        int slices = X.slices();
+        int rows = X.rows();
+        int half = halfColumns(columns);
+        if (X.columns() != half) {
+            throw new IllegalArgumentException("half spectrum of " + columns + " columns must have "
+                    + half + " columns, got " + X.columns());
+        }
+        float[] b = ((DenseFComplexMatrix3D) X.copy()).elements();
+        DenseFloatMatrix3D x = new DenseFloatMatrix3D(slices, rows, columns);
+
+        transformSlices(b, slices, rows * half, false);
+        transformColumns(b, slices, rows, half, false);
+        inverseRows(b, slices * rows, columns, x.elements());
+        return x;
+    }
+
+    public static void scaleMirrored(FComplexMatrix1D v, int rows, int columns, double factor) {
+        scaleMirrored(v, 1, rows, columns, factor);
+    }
+
+    public static void scaleMirrored(FComplexMatrix1D v, int slices, int rows, int columns, double factor) {
+        int mirrored = (columns - 1) / 2;
+        if (mirrored == 0) {
+            return;
+        }
+        int length = rows * halfColumns(columns);
+        for (int s = 0; s < slices; s++) {
+            v.viewPart(s * length + rows, mirrored * rows).assign(FComplexFunctions.mult((float) factor));
+        }
+    }
+
+    /**
+     * Real transforms of the <code>lines</code> rows of <code>a</code>,
+     * unpacked to <code>b</code>.
+     */
+    private static void forwardRows(final double[] a, int lines, final int columns, final double[] b) {
+        // every transform runs exactly one of these
+        Metrics.count("fft", 1);
+        final int half = halfColumns(columns);
+        final DoubleFFT_1D fft = FFTPlanCache.getDoubleFFT_1D(columns);
+        split(lines, new Block() {
+            public void run(int first, int last) {
+                double[] buf = new double[columns];
+                for (int l = first; l < last; l++) {
+                    System.arraycopy(a, l * columns, buf, 0, columns);
+                    fft.realForward(buf);
+                    unpack(buf, columns, b, 2 * l * half);
+                }
+            }
+        });
+    }
+
+    private static void inverseRows(final double[] b, int lines, final int columns, final double[] a) {
+        Metrics.count("fft", 1);
+        final int half = halfColumns(columns);
+        final DoubleFFT_1D fft = FFTPlanCache.getDoubleFFT_1D(columns);
+        split(lines, new Block() {
+            public void run(int first, int last) {
+                for (int l = first; l < last; l++) {
+                    pack(b, 2 * l * half, columns, a, l * columns);
+                    fft.realInverse(a, l * columns, true);
+                }
+            }
+        });
+    }
+
+    /**
+     * Complex transforms along the rows dimension of each slice.
+     */
+    private static void transformColumns(final double[] b, final int slices, final int rows, final int half,
+                                         final boolean forward) {
+        final DoubleFFT_1D fft = FFTPlanCache.getDoubleFFT_1D(rows);
+        split(slices * half, new Block() {
+            public void run(int first, int last) {
+                double[] buf = new double[2 * rows];
+                for (int l = first; l < last; l++) {
+                    int off = 2 * ((l / half) * rows * half + l % half);
+                    transform(fft, b, off, 2 * half, rows, buf, forward);
+                }
+            }
+        });
+    }
+
+    /**
+     * Complex transforms along the slices dimension.
+     */
+    private static void transformSlices(final double[] b, final int slices, final int plane,
+                                        final boolean forward) {
+        final DoubleFFT_1D fft = FFTPlanCache.getDoubleFFT_1D(slices);
+        split(plane, new Block() {
+            public void run(int first, int last) {
+                double[] buf = new double[2 * slices];
+                for (int l = first; l < last; l++) {
+                    transform(fft, b, 2 * l, 2 * plane, slices, buf, forward);
+                }
+            }
+        });
+    }
+
+    private static void transform(DoubleFFT_1D fft, double[] b, int off, int stride, int n, double[] buf,
+                                  boolean forward) {
+        int idx = off;
+        for (int i = 0; i < n; i++) {
+            buf[2 * i] = b[idx];
+            buf[2 * i + 1] = b[idx + 1];
+            idx += stride;
+        }
+        if (forward) {
+            fft.complexForward(buf);
+        } else {
+            fft.complexInverse(buf, true);
+        }
+        idx = off;
+        for (int i = 0; i < n; i++) {
+            b[idx] = buf[2 * i];
+            b[idx + 1] = buf[2 * i + 1];
+            idx += stride;
+        }
+    }
+
+    private static void forwardRows(final float[] a, int lines, final int columns, final float[] b) {
+        Metrics.count("fft", 1);
+        final int half = halfColumns(columns);
+        final FloatFFT_1D fft = FFTPlanCache.getFloatFFT_1D(columns);
+        split(lines, new Block() {
+            public void run(int first, int last) {
+                float[] buf = new float[columns];
+                for (int l = first; l < last; l++) {
+                    System.arraycopy(a, l * columns, buf, 0, columns);
+                    fft.realForward(buf);
+                    unpack(buf, columns, b, 2 * l * half);
+                }
+            }
+        });
+    }
+
+    private static void inverseRows(final float[] b, int lines, final int columns, final float[] a) {
+        Metrics.count("fft", 1);
+        final int half = halfColumns(columns);
+        final FloatFFT_1D fft = FFTPlanCache.getFloatFFT_1D(columns);
+        split(lines, new Block() {
+            public void run(int first, int last) {
+                for (int l = first; l < last; l++) {
+                    pack(b, 2 * l * half, columns, a, l * columns);
+                    fft.realInverse(a, l * columns, true);
+                }
+            }
+        });
+    }
+
+    private static void transformColumns(final float[] b, final int slices, final int rows, final int half,
+                                         final boolean forward) {
+        final FloatFFT_1D fft = FFTPlanCache.getFloatFFT_1D(rows);
+        split(slices * half, new Block() {
+            public void run(int first, int last) {
+                float[] buf = new float[2 * rows];
+                for (int l = first; l < last; l++) {
+                    int off = 2 * ((l / half) * rows * half + l % half);
+                    transform(fft, b, off, 2 * half, rows, buf, forward);
+                }
+            }
+        });
+    }
+
+    private static void transformSlices(final float[] b, final int slices, final int plane,
+                                        final boolean forward) {
+        final FloatFFT_1D fft = FFTPlanCache.getFloatFFT_1D(slices);
+        split(plane, new Block() {
+            public void run(int first, int last) {
+                float[] buf = new float[2 * slices];
+                for (int l = first; l < last; l++) {
+                    transform(fft, b, 2 * l, 2 * plane, slices, buf, forward);
+                }
+            }
+        });
+    }
+
+    private static void transform(FloatFFT_1D fft, float[] b, int off, int stride, int n, float[] buf,
+                                  boolean forward) {
+        int idx = off;
+        for (int i = 0; i < n; i++) {
+            buf[2 * i] = b[idx];
+            buf[2 * i + 1] = b[idx + 1];
+            idx += stride;
+        }
+        if (forward) {
+            fft.complexForward(buf);
+        } else {
+            fft.complexInverse(buf, true);
+        }
+        idx = off;
+        for (int i = 0; i < n; i++) {
+            b[idx] = buf[2 * i];
+            b[idx + 1] = buf[2 * i + 1];
+            idx += stride;
+        }
+    }
+
+    private interface Block {
+        void run(int first, int last);
+    }
+
+    private static void split(int n, final Block block) {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads > 1) && (n >= nthreads)) {
+            Future<?>[] futures = new Future[nthreads];
+            int k = n / nthreads;
+            for (int j = 0; j < nthreads; j++) {
+                final int first = j * k;
+                final int last = (j == nthreads - 1) ? n : first + k;
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        block.run(first, last);
+                    }
+                });
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+        } else {
+            block.run(0, n);
+        }
+    }
+
+    /**
+     * Unpacks the output of DoubleFFT_1D.realForward (n values) into n/2+1
+     * interleaved complex values.
+     */
+    private static void unpack(double[] buf, int n, double[] b, int off) {
+        b[off] = buf[0];
+        b[off + 1] = 0;
+        if (n == 1) {
+            return;
+        }
+        int m = n / 2;
+        if (n % 2 == 0) {
+            System.arraycopy(buf, 2, b, off + 2, n - 2);
+            b[off + n] = buf[1];
+            b[off + n + 1] = 0;
+        } else {
+            System.arraycopy(buf, 2, b, off + 2, n - 3);
+            b[off + 2 * m] = buf[n - 1];
+            b[off + 2 * m + 1] = buf[1];
+        }
+    }
+
+    /**
+     * Inverse of unpack: the layout expected by DoubleFFT_1D.realInverse.
+     */
+    private static void pack(double[] b, int off, int n, double[] buf, int offBuf) {
+        buf[offBuf] = b[off];
+        if (n == 1) {
+            return;
+        }
+        int m = n / 2;
+        if (n % 2 == 0) {
+            System.arraycopy(b, off + 2, buf, offBuf + 2, n - 2);
+            buf[offBuf + 1] = b[off + n];
+        } else {
+            System.arraycopy(b, off + 2, buf, offBuf + 2, n - 3);
+            buf[offBuf + n - 1] = b[off + 2 * m];
+            buf[offBuf + 1] = b[off + 2 * m + 1];
+        }
+    }
+
+    private static void unpack(float[] buf, int n, float[] b, int off) {
+        b[off] = buf[0];
+        b[off + 1] = 0;
+        if (n == 1) {
+            return;
+        }
+        int m = n / 2;
+        if (n % 2 == 0) {
+            System.arraycopy(buf, 2, b, off + 2, n - 2);
+            b[off + n] = buf[1];
+            b[off + n + 1] = 0;
+        } else {
+            System.arraycopy(buf, 2, b, off + 2, n - 3);
+            b[off + 2 * m] = buf[n - 1];
+            b[off + 2 * m + 1] = buf[1];
+        }
+    }
+
+    private static void pack(float[] b, int off, int n, float[] buf, int offBuf) {
+        buf[offBuf] = b[off];
+        if (n == 1) {
+            return;
+        }
+        int m = n / 2;
+        if (n % 2 == 0) {
+            System.arraycopy(b, off + 2, buf, offBuf + 2, n - 2);
+            buf[offBuf + 1] = b[off + n];
+        } else {
+            System.arraycopy(b, off + 2, buf, offBuf + 2, n - 3);
+            buf[offBuf + n - 1] = b[off + 2 * m];
+            buf[offBuf + 1] = b[off + 2 * m + 1];
+        }
+    }
+}
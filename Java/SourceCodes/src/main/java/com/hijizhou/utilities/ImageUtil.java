@@ -21,6 +21,10 @@ import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
 import com.cern.colt.matrix.tdouble.DoubleMatrix3D;
 import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
 import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import com.cern.colt.matrix.tfcomplex.FComplexMatrix2D;
+import com.cern.colt.matrix.tfcomplex.FComplexMatrix3D;
+import com.cern.colt.matrix.tfcomplex.impl.DenseFComplexMatrix2D;
+import com.cern.colt.matrix.tfcomplex.impl.DenseFComplexMatrix3D;
 import com.cern.colt.matrix.tfloat.FloatMatrix2D;
 import com.cern.jet.math.tdouble.DoubleFunctions;
 import com.edu.emory.mathcs.utils.ConcurrencyUtils;
@@ -97,6 +101,30 @@ public class ImageUtil {
 
     }
 
+    public static FComplexMatrix2D double2floatComplexMatrix(DComplexMatrix2D input){
+        DenseFComplexMatrix2D matrix = new DenseFComplexMatrix2D(input.rows(), input.columns());
+        if (input.isView()) {
+            input = input.copy();
+        }
+        toFloat(((DenseDComplexMatrix2D) input).elements(), matrix.elements());
+        return matrix;
+    }
+
+    public static FComplexMatrix3D double2floatComplexMatrix(DComplexMatrix3D input){
+        DenseFComplexMatrix3D matrix = new DenseFComplexMatrix3D(input.slices(), input.rows(), input.columns());
+        if (input.isView()) {
+            input = input.copy();
+        }
+        toFloat(((DenseDComplexMatrix3D) input).elements(), matrix.elements());
+        return matrix;
+    }
+
+    private static void toFloat(double[] a, float[] b) {
+        for (int i = 0; i < a.length; i++) {
+            b[i] = (float) a[i];
+        }
+    }
+
     public static DoubleMatrix2D postfiltering(DoubleMatrix2D input, double sigma2) {
         DDIDstep ddid = new DDIDstep();
 
@@ -0,0 +1,157 @@
+package com.hijizhou.utilities;
+/**
+ * MAPPEDVECTORFILE: vectors of doubles or floats spilled to a temporary
+ * file and read back through memory mappings
+ *
+ * The vectors are written once and then read by ranges of elements, from
+ * any number of threads; with long offsets and mappings of at most 1 GB,
+ * the file is not limited by the 2^31 indexing of Java arrays and buffers.
+ * The operating system pages the vectors in and out, so they do not count
+ * against the heap.
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MappedVectorFile {
+
+    // bytes per mapping, a multiple of 8
+    private static final long CHUNK = 1L << 30;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer[]> vectors = new ArrayList<MappedByteBuffer[]>();
+    private long size = 0;
+
+    /**
+     * @param directory directory of the temporary file, or null for the
+     *                  default temporary directory
+     */
+    public MappedVectorFile(File directory) throws IOException {
+        this.file = File.createTempFile("pureletdeconv", ".basis", directory);
+        this.file.deleteOnExit();
+        try {
+            this.raf = new RandomAccessFile(file, "rw");
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        }
+        this.channel = raf.getChannel();
+    }
+
+    /**
+     * Writes <code>values</code> at the end of the file.
+     *
+     * @return index of the vector
+     */
+    public synchronized int add(double[] values) throws IOException {
+        MappedByteBuffer[] chunks = map(8L * values.length);
+        int elements = (int) (CHUNK / 8);
+        for (int c = 0; c < chunks.length; c++) {
+            int first = c * elements;
+            chunks[c].asDoubleBuffer().put(values, first, Math.min(elements, values.length - first));
+        }
+        vectors.add(chunks);
+        return vectors.size() - 1;
+    }
+
+    /**
+     * Single precision version of add(double[]).
+     */
+    public synchronized int add(float[] values) throws IOException {
+        MappedByteBuffer[] chunks = map(4L * values.length);
+        int elements = (int) (CHUNK / 4);
+        for (int c = 0; c < chunks.length; c++) {
+            int first = c * elements;
+            chunks[c].asFloatBuffer().put(values, first, Math.min(elements, values.length - first));
+        }
+        vectors.add(chunks);
+        return vectors.size() - 1;
+    }
+
+    /**
+     * Copies <code>length</code> elements of vector <code>vector</code>,
+     * from element <code>index</code>, to <code>dst</code> at
+     * <code>offset</code>.
+     */
+    public void get(int vector, long index, double[] dst, int offset, int length) {
+        MappedByteBuffer[] chunks = getChunks(vector);
+        long elements = CHUNK / 8;
+        while (length > 0) {
+            int c = (int) (index / elements);
+            int first = (int) (index % elements);
+            int n = (int) Math.min(length, elements - first);
+            DoubleBuffer buffer = chunks[c].duplicate().order(ByteOrder.nativeOrder()).asDoubleBuffer();
+            buffer.position(first);
+            buffer.get(dst, offset, n);
+            index += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Single precision version of get.
+     */
+    public void get(int vector, long index, float[] dst, int offset, int length) {
+        MappedByteBuffer[] chunks = getChunks(vector);
+        long elements = CHUNK / 4;
+        while (length > 0) {
+            int c = (int) (index / elements);
+            int first = (int) (index % elements);
+            int n = (int) Math.min(length, elements - first);
+            FloatBuffer buffer = chunks[c].duplicate().order(ByteOrder.nativeOrder()).asFloatBuffer();
+            buffer.position(first);
+            buffer.get(dst, offset, n);
+            index += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Closes and deletes the file; the vectors can no longer be read.
+     */
+    public synchronized void close() {
+        vectors.clear();
+        try {
+            channel.close();
+            raf.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        file.delete();
+    }
+
+    private synchronized MappedByteBuffer[] getChunks(int vector) {
+        return vectors.get(vector);
+    }
+
+    /**
+     * Maps <code>bytes</code> more bytes at the end of the file.
+     */
+    private MappedByteBuffer[] map(long bytes) throws IOException {
+        int count = (int) ((bytes + CHUNK - 1) / CHUNK);
+        MappedByteBuffer[] chunks = new MappedByteBuffer[Math.max(1, count)];
+        for (int c = 0; c < chunks.length; c++) {
+            long length = Math.min(CHUNK, bytes - c * CHUNK);
+            chunks[c] = channel.map(FileChannel.MapMode.READ_WRITE, size, length);
+            chunks[c].order(ByteOrder.nativeOrder());
+            size += length;
+        }
+        return chunks;
+    }
+}
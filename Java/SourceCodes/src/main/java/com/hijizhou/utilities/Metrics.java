@@ -0,0 +1,552 @@
+package com.hijizhou.utilities;
+
+/**
+ * METRICS: counters, timers and histograms of deconvolution runs, exported
+ * as JSON or as Java Flight Recorder events
+ *
+ * The stages of a run (prepare, subband, gram, matrix, solve, synthesize)
+ * and each sub-band process (subband.job) are timed by spans: begin returns a
+ * span, whose end records its wall time, and the CPU time and bytes allocated
+ * by its thread, under the name of the span. The spans of the jobs also add to the busy time
+ * of their thread, from which the utilization of the workers follows.
+ * Counters (Fourier transforms, skipped sub-bands, CG iterations, ...) and
+ * histograms of other values complete them.
+ *
+ * A thread may set a current Metrics (see setCurrent), to which the static
+ * count adds, so that low-level routines such as the Fourier transforms are
+ * counted for the run that calls them. A Metrics may be shared by any number
+ * of threads and runs, e.g. all the frames of an engine, whose values then
+ * add up.
+ *
+ * With setFlightRecorder, each span and counter update is also committed as
+ * a JFR event (com.hijizhou.Span, com.hijizhou.Counter), recorded when the
+ * JVM runs a flight recording, e.g. with -XX:StartFlightRecording. The events
+ * are created through jdk.jfr.EventFactory (Java 9 and later); on older JVMs
+ * only the JSON export is available.
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class Metrics {
+
+    private static final ThreadLocal<Metrics> current = new ThreadLocal<Metrics>();
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private final Map<String, long[]> counters = new TreeMap<String, long[]>();
+    private final Map<String, Timer> timers = new TreeMap<String, Timer>();
+    private final Map<String, Histogram> histograms = new TreeMap<String, Histogram>();
+    // per worker thread: jobs, wall and CPU time of the jobs
+    private final Map<String, long[]> workers = new TreeMap<String, long[]>();
+    private volatile boolean flightRecorder = false;
+
+    /**
+     * Distribution of non-negative values in powers of two: bucket k counts
+     * the values v with 2^(k-1) <= v < 2^k (bucket 0 the zeros).
+     */
+    public static class Histogram {
+        private final long[] buckets = new long[65];
+        private long count = 0;
+        private long sum = 0;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+
+        void record(long value) {
+            value = Math.max(0, value);
+            buckets[64 - Long.numberOfLeadingZeros(value)]++;
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMin() {
+            return count == 0 ? 0 : min;
+        }
+
+        public long getMax() {
+            return count == 0 ? 0 : max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Upper bound of the bucket holding the <code>p</code>-th quantile,
+         * 0 < p <= 1.
+         */
+        public long getQuantileBound(double p) {
+            long rank = (long) Math.ceil(p * count);
+            long seen = 0;
+            for (int k = 0; k < buckets.length; k++) {
+                seen += buckets[k];
+                if (seen >= rank && seen > 0) {
+                    return k == 0 ? 0 : Math.min(max, k == 64 ? Long.MAX_VALUE : (1L << k) - 1);
+                }
+            }
+            return getMax();
+        }
+
+        private Histogram copy() {
+            Histogram h = new Histogram();
+            System.arraycopy(buckets, 0, h.buckets, 0, buckets.length);
+            h.count = count;
+            h.sum = sum;
+            h.min = min;
+            h.max = max;
+            return h;
+        }
+
+        private void toJSON(StringBuilder sb) {
+            sb.append("{\"count\": ").append(count).append(", \"sum\": ").append(sum)
+                    .append(", \"min\": ").append(getMin()).append(", \"max\": ").append(getMax())
+                    .append(", \"p50\": ").append(getQuantileBound(0.5))
+                    .append(", \"p90\": ").append(getQuantileBound(0.9))
+                    .append(", \"p99\": ").append(getQuantileBound(0.99)).append(", \"buckets\": {");
+            boolean first = true;
+            for (int k = 0; k < buckets.length; k++) {
+                if (buckets[k] > 0) {
+                    sb.append(first ? "" : ", ").append('"').append(k == 0 ? 0 : 1L << (k - 1)).append("\": ")
+                            .append(buckets[k]);
+                    first = false;
+                }
+            }
+            sb.append("}}");
+        }
+    }
+
+    /**
+     * Spans of a name: their wall times (in ns) and the totals of the CPU
+     * time and bytes allocated by their threads (-1 when the JVM does not
+     * measure them).
+     */
+    public static class Timer {
+        private final Histogram wall;
+        private long cpu = 0;
+        private long allocated = 0;
+
+        private Timer(Histogram wall) {
+            this.wall = wall;
+        }
+
+        public Histogram getWallTime() {
+            return wall;
+        }
+
+        public long getCount() {
+            return wall.getCount();
+        }
+
+        public long getTotalTime() {
+            return wall.getSum();
+        }
+
+        public long getCPUTime() {
+            return cpu;
+        }
+
+        public long getAllocatedBytes() {
+            return allocated;
+        }
+
+        private Timer copy() {
+            Timer t = new Timer(wall.copy());
+            t.cpu = cpu;
+            t.allocated = allocated;
+            return t;
+        }
+    }
+
+    /**
+     * A stage or job being timed, ended by the thread that began it.
+     */
+    public class Span {
+        private final String name;
+        private final boolean job;
+        private final long start;
+        private final long cpuStart;
+        private final long allocatedStart;
+        private final Object event;
+        private boolean ended = false;
+
+        private Span(String name, boolean job) {
+            this.name = name;
+            this.job = job;
+            this.event = flightRecorder ? FlightRecorder.begin(FlightRecorder.SPAN) : null;
+            this.cpuStart = getThreadCPUTime();
+            this.allocatedStart = getThreadAllocatedBytes();
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * Records the span, once; returns its wall time in seconds.
+         */
+        public double end() {
+            long wall = System.nanoTime() - start;
+            if (ended) {
+                return wall / 1.0E9D;
+            }
+            ended = true;
+            long cpu = cpuStart < 0 ? -1 : getThreadCPUTime() - cpuStart;
+            long allocated = allocatedStart < 0 ? -1 : getThreadAllocatedBytes() - allocatedStart;
+            recordSpan(name, job, wall, cpu, allocated);
+            if (event != null) {
+                FlightRecorder.commit(event, name, cpu, allocated);
+            }
+            return wall / 1.0E9D;
+        }
+    }
+
+    /**
+     * Starts timing the stage <code>name</code>.
+     */
+    public Span begin(String name) {
+        return new Span(name, false);
+    }
+
+    /**
+     * Starts timing a job (e.g. a sub-band process) of the kind
+     * <code>name</code>, run by the calling thread.
+     */
+    public Span beginJob(String name) {
+        return new Span(name, true);
+    }
+
+    /**
+     * Adds <code>delta</code> to the counter <code>name</code>.
+     */
+    public void add(String name, long delta) {
+        synchronized (this) {
+            long[] counter = counters.get(name);
+            if (counter == null) {
+                counter = new long[1];
+                counters.put(name, counter);
+            }
+            counter[0] += delta;
+        }
+        if (flightRecorder) {
+            FlightRecorder.commit(FlightRecorder.begin(FlightRecorder.COUNTER), name, delta);
+        }
+    }
+
+    /**
+     * Adds <code>value</code> to the histogram <code>name</code>.
+     */
+    public synchronized void record(String name, long value) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram();
+            histograms.put(name, histogram);
+        }
+        histogram.record(value);
+    }
+
+    public synchronized long getCounter(String name) {
+        long[] counter = counters.get(name);
+        return counter == null ? 0 : counter[0];
+    }
+
+    /**
+     * Copy of the timer of the spans <code>name</code>, null if none ended.
+     */
+    public synchronized Timer getTimer(String name) {
+        Timer timer = timers.get(name);
+        return timer == null ? null : timer.copy();
+    }
+
+    /**
+     * Copy of the histogram <code>name</code>, null if it has no value.
+     */
+    public synchronized Histogram getHistogram(String name) {
+        Histogram histogram = histograms.get(name);
+        return histogram == null ? null : histogram.copy();
+    }
+
+    /**
+     * Fraction of the wall time of its jobs that each worker thread spent
+     * on the CPU.
+     */
+    public synchronized Map<String, Double> getUtilization() {
+        Map<String, Double> utilization = new TreeMap<String, Double>();
+        for (Map.Entry<String, long[]> entry : workers.entrySet()) {
+            long[] w = entry.getValue();
+            utilization.put(entry.getKey(), w[1] == 0 || w[2] < 0 ? Double.NaN : (double) w[2] / w[1]);
+        }
+        return utilization;
+    }
+
+    public synchronized void reset() {
+        counters.clear();
+        timers.clear();
+        histograms.clear();
+        workers.clear();
+    }
+
+    /**
+     * Whether the spans and counters are also committed as JFR events;
+     * ignored when the JVM has no flight recorder API.
+     */
+    public void setFlightRecorder(boolean flightRecorder) {
+        this.flightRecorder = flightRecorder && FlightRecorder.isAvailable();
+    }
+
+    public boolean isFlightRecorder() {
+        return flightRecorder;
+    }
+
+    /**
+     * All the metrics as a JSON object: "counters", "timers" (times in ns),
+     * "histograms" and "workers".
+     */
+    public synchronized String toJSON() {
+        StringBuilder sb = new StringBuilder("{\n  \"counters\": {");
+        boolean first = true;
+        for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+            sb.append(first ? "\n    " : ",\n    ").append(quote(entry.getKey())).append(": ").append(entry.getValue()[0]);
+            first = false;
+        }
+        sb.append(first ? "},\n  \"timers\": {" : "\n  },\n  \"timers\": {");
+        first = true;
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            Timer timer = entry.getValue();
+            sb.append(first ? "\n    " : ",\n    ").append(quote(entry.getKey())).append(": {\"cpu\": ").append(timer.cpu)
+                    .append(", \"allocated\": ").append(timer.allocated).append(", \"wall\": ");
+            timer.wall.toJSON(sb);
+            sb.append('}');
+            first = false;
+        }
+        sb.append(first ? "},\n  \"histograms\": {" : "\n  },\n  \"histograms\": {");
+        first = true;
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            sb.append(first ? "\n    " : ",\n    ").append(quote(entry.getKey())).append(": ");
+            entry.getValue().toJSON(sb);
+            first = false;
+        }
+        sb.append(first ? "},\n  \"workers\": {" : "\n  },\n  \"workers\": {");
+        first = true;
+        for (Map.Entry<String, long[]> entry : workers.entrySet()) {
+            long[] w = entry.getValue();
+            sb.append(first ? "\n    " : ",\n    ").append(quote(entry.getKey())).append(": {\"jobs\": ").append(w[0])
+                    .append(", \"wall\": ").append(w[1]).append(", \"cpu\": ").append(w[2]).append('}');
+            first = false;
+        }
+        sb.append(first ? "}\n}\n" : "\n  }\n}\n");
+        return sb.toString();
+    }
+
+    public void writeJSON(File file) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(toJSON());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Makes <code>metrics</code> (possibly null) the current Metrics of the
+     * calling thread; returns the previous one, to be restored when done.
+     */
+    public static Metrics setCurrent(Metrics metrics) {
+        Metrics previous = current.get();
+        if (metrics == null) {
+            current.remove();
+        } else {
+            current.set(metrics);
+        }
+        return previous;
+    }
+
+    /**
+     * Current Metrics of the calling thread, or null.
+     */
+    public static Metrics getCurrent() {
+        return current.get();
+    }
+
+    /**
+     * Adds <code>delta</code> to the counter <code>name</code> of the current
+     * Metrics of the calling thread, if any.
+     */
+    public static void count(String name, long delta) {
+        Metrics metrics = current.get();
+        if (metrics != null) {
+            metrics.add(name, delta);
+        }
+    }
+
+    private synchronized void recordSpan(String name, boolean job, long wall, long cpu, long allocated) {
+        Timer timer = timers.get(name);
+        if (timer == null) {
+            timer = new Timer(new Histogram());
+            timers.put(name, timer);
+        }
+        timer.wall.record(wall);
+        timer.cpu = cpu < 0 || timer.cpu < 0 ? -1 : timer.cpu + cpu;
+        timer.allocated = allocated < 0 || timer.allocated < 0 ? -1 : timer.allocated + allocated;
+        if (job) {
+            String thread = Thread.currentThread().getName();
+            long[] w = workers.get(thread);
+            if (w == null) {
+                w = new long[3];
+                workers.put(thread, w);
+            }
+            w[0]++;
+            w[1] += wall;
+            w[2] = cpu < 0 || w[2] < 0 ? -1 : w[2] + cpu;
+        }
+    }
+
+    private static long getThreadCPUTime() {
+        try {
+            return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+        } catch (UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+
+    private static long getThreadAllocatedBytes() {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threads;
+            if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+                return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * JFR events defined at run time through jdk.jfr.EventFactory, so that
+     * the code still runs (without them) on JVMs lacking the API.
+     */
+    private static class FlightRecorder {
+        static final int SPAN = 0;
+        static final int COUNTER = 1;
+
+        private static Object[] factories;
+        private static Method newEvent;
+        private static Method begin;
+        private static Method end;
+        private static Method set;
+        private static Method commit;
+
+        static {
+            try {
+                Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+                Class<?> annotationClass = Class.forName("jdk.jfr.AnnotationElement");
+                Class<?> valueClass = Class.forName("jdk.jfr.ValueDescriptor");
+                Class<?> eventClass = Class.forName("jdk.jfr.Event");
+                Method create = factoryClass.getMethod("create", List.class, List.class);
+                factories = new Object[]{
+                        create.invoke(null, annotations(annotationClass, "com.hijizhou.Span", "Deconvolution span"),
+                                values(valueClass, "name", String.class, "cpuTime", long.class,
+                                        "allocatedBytes", long.class)),
+                        create.invoke(null, annotations(annotationClass, "com.hijizhou.Counter", "Deconvolution counter"),
+                                values(valueClass, "name", String.class, "delta", long.class))};
+                newEvent = factoryClass.getMethod("newEvent");
+                begin = eventClass.getMethod("begin");
+                end = eventClass.getMethod("end");
+                set = eventClass.getMethod("set", int.class, Object.class);
+                commit = eventClass.getMethod("commit");
+            } catch (Exception e) {
+                factories = null;
+            } catch (LinkageError e) {
+                factories = null;
+            }
+        }
+
+        static boolean isAvailable() {
+            return factories != null;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static List<Object> annotations(Class<?> annotationClass, String name, String label) throws Exception {
+            Class<?> nameClass = Class.forName("jdk.jfr.Name");
+            Class<?> labelClass = Class.forName("jdk.jfr.Label");
+            Class<?> categoryClass = Class.forName("jdk.jfr.Category");
+            java.lang.reflect.Constructor<?> c = annotationClass.getConstructor(Class.class, Object.class);
+            List<Object> list = new ArrayList<Object>();
+            list.add(c.newInstance(nameClass, name));
+            list.add(c.newInstance(labelClass, label));
+            list.add(c.newInstance(categoryClass, new String[]{"PURE-LET"}));
+            return list;
+        }
+
+        private static List<Object> values(Class<?> valueClass, Object... namesAndTypes) throws Exception {
+            java.lang.reflect.Constructor<?> c = valueClass.getConstructor(Class.class, String.class);
+            List<Object> list = new ArrayList<Object>();
+            for (int i = 0; i < namesAndTypes.length; i += 2) {
+                list.add(c.newInstance(namesAndTypes[i + 1], namesAndTypes[i]));
+            }
+            return list;
+        }
+
+        static Object begin(int kind) {
+            try {
+                Object event = newEvent.invoke(factories[kind]);
+                begin.invoke(event);
+                return event;
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        /**
+         * Sets the fields of <code>event</code>, in their order of
+         * declaration, and commits it.
+         */
+        static void commit(Object event, String name, long... values) {
+            if (event == null) {
+                return;
+            }
+            try {
+                end.invoke(event);
+                set.invoke(event, 0, name);
+                for (int i = 0; i < values.length; i++) {
+                    set.invoke(event, i + 1, values[i]);
+                }
+                commit.invoke(event);
+            } catch (Exception e) {
+                // the event is lost, the metrics are still kept
+            }
+        }
+    }
+}
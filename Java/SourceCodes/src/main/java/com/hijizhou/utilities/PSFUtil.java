@@ -21,7 +21,6 @@ import com.cern.colt.matrix.tdouble.DoubleMatrix3D;
 import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
 import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix3D;
 import com.cern.jet.math.tdcomplex.DComplexFunctions;
-import com.cern.jet.math.tdouble.DoubleFunctions;
 import com.edu.emory.mathcs.restoretools.spectral.DoubleCommon3D;
 import ij.ImageStack;
 import org.jblas.ComplexDoubleMatrix;
@@ -80,6 +79,31 @@ public class PSFUtil {
     }
 
 
+    /**
+     * rows x columns PSF with the maximum of <code>psf</code> at (rows/2,
+     * columns/2), cropped or padded with zeros; <code>psf</code> is not
+     * modified.
+     */
+    public static DoubleMatrix2D getCenteredPSF(DoubleMatrix2D psf, int rows, int columns) {
+        double[] maxAndLoc = psf.getMaxLocation();
+        int cr = (int) maxAndLoc[1];
+        int cc = (int) maxAndLoc[2];
+        DoubleMatrix2D centered = new DenseDoubleMatrix2D(rows, columns);
+        for (int r = 0; r < rows; r++) {
+            int sr = cr + r - rows / 2;
+            if (sr < 0 || sr >= psf.rows()) {
+                continue;
+            }
+            for (int c = 0; c < columns; c++) {
+                int sc = cc + c - columns / 2;
+                if (sc >= 0 && sc < psf.columns()) {
+                    centered.setQuick(r, c, psf.getQuick(sr, sc));
+                }
+            }
+        }
+        return centered;
+    }
+
     public static int[] getCenter(DenseDoubleMatrix2D matrixPSF) {
         double[] maxAndLoc = matrixPSF.getMaxLocation();
         int[] psfCenter = new int[]{(int) maxAndLoc[1], (int) maxAndLoc[2]};
@@ -100,212 +124,67 @@ public class PSFUtil {
         return psfCenter;
     }
 
-    public static DoubleMatrix2D getRegularizer(int width, int height) {
-        double[] templX = new double[width];
-        double[] templY = new double[height];
-
-        int xi = 0;
-        for (double ix = -1; ix <= 1; ix += 2.0D / (width - 1)) {
-            templX[xi++] = ix;
-        }
-        templX[width - 1] = 1;
-        xi = 0;
-        for (double iy = -1; iy <= 1; iy += 2.0D / (height - 1)) {
-            templY[xi++] = iy;
-        }
-        templY[height - 1] = 1;
-        // construct regularizer S
-        DoubleMatrix2D S = new DenseDoubleMatrix2D(width, height);
-        DoubleMatrix2D X = new DenseDoubleMatrix2D(width, height);
-        DoubleMatrix2D Y = new DenseDoubleMatrix2D(width, height);
-        for (int sx = 0; sx < height; sx++) {
-            for (int sy = 0; sy < width; sy++) {
-                X.setQuick(sx, sy, templX[sy]);
-                Y.setQuick(sy, sx, templY[sy]);
-            }
-        }
-        for (int sx = 0; sx < height; sx++) {
-            for (int sy = 0; sy < width; sy++) {
-                double tmpSx = X.getQuick(sx, sy);
-                double tmpSy = Y.getQuick(sx, sy);
-
-                S.setQuick(sx, sy, tmpSx * tmpSx + tmpSy * tmpSy);
-            }
-        }
-        double maxS = S.getQuick(0, 0);
-        for (int sx = 0; sx < height; sx++) {
-            for (int sy = 0; sy < width; sy++) {
-                double tmpS = S.getQuick(sx, sy);
-                if (tmpS > maxS) {
-                    maxS = tmpS;
-                }
-            }
-        }
-
-        S.assign(DoubleFunctions.mult(-1));
-        S.assign(DoubleFunctions.plus(maxS));
-
-        // padding and duplication
-        if (((width % 2) == 0) && ((height % 2) == 0)) {
-            DoubleMatrix2D auxS1 = S.viewPart(0, 0,
-                    height / 2 + 1, width / 2 + 1);
-            DoubleMatrix2D auxS2 = auxS1.copy();
-            DoubleMatrix2D auxS3 = auxS1.copy();
-            DoubleMatrix2D auxS4 = auxS1.copy();
-            for (int hindex = 0; hindex < height / 2 + 1; hindex++) {
-                for (int windex = 0; windex < width / 2 + 1; windex++) {
-                    auxS2.setQuick(hindex, width / 2 - windex,
-                            auxS1.getQuick(windex, hindex));
-                    auxS3.setQuick(height / 2 - hindex, windex,
-                            auxS1.getQuick(windex, hindex));
-                    auxS4.setQuick(height / 2 - hindex, width / 2 - windex,
-                            auxS1.getQuick(windex, hindex));
-                }
+    /**
+     * Regularization filter S of a rows x columns image: S = 2 - x^2 - y^2 on
+     * a [-1, 1] grid folded periodically, so that S is zero at the origin and
+     * even (S(k) = S(-k)) for any size.
+     */
+    public static DoubleMatrix2D getRegularizer(int rows, int columns) {
+        double[] templX = getFoldedTemplate(columns);
+        double[] templY = getFoldedTemplate(rows);
+
+        DenseDoubleMatrix2D S = new DenseDoubleMatrix2D(rows, columns);
+        double[] elements = S.elements();
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                elements[r * columns + c] = 2 - (templX[c] * templX[c] + templY[r] * templY[r]);
             }
-
-            S.viewPart(0, width / 2, height / 2 + 1,
-                    width / 2).assign(
-                    auxS2.viewPart(0, 0, height / 2 + 1, width / 2));
-            S.viewPart(height / 2, 0, height / 2,
-                    width / 2 + 1).assign(
-                    auxS3.viewPart(0, 0, height / 2, width / 2 + 1));
-            S.viewPart(height / 2, width / 2,
-                    height / 2, width / 2).assign(
-                    auxS4.viewPart(0, 0, height / 2, width / 2));
-
         }
         return S;
     }
 
-    public static DoubleMatrix3D getRegularizer(int width, int height, int slice) {
-        double[] templX = new double[width];
-        double[] templY = new double[height];
-        double[] templZ = new double[slice];
-
-        int xi = 0;
-        for (double ix = -1; ix <= 1; ix += 2.0D / (width - 1)) {
-            templX[xi++] = ix;
-        }
-        templX[width - 1] = 1;
-
-        xi = 0;
-        for (double iy = -1; iy <= 1; iy += 2.0D / (height - 1)) {
-            templY[xi++] = iy;
-        }
-        templY[height - 1] = 1;
-
-        xi = 0;
-        for (double iz = -1; iz <= 1; iz += 2.0D / (slice - 1)) {
-            templZ[xi++] = iz;
-        }
-        templZ[slice - 1] = 1;
-        // construct regularizer S
-        DoubleMatrix3D S = new DenseDoubleMatrix3D(slice, width, height);
-        DoubleMatrix3D X = new DenseDoubleMatrix3D(slice, width, height);
-        DoubleMatrix3D Y = new DenseDoubleMatrix3D(slice, width, height);
-        DoubleMatrix3D Z = new DenseDoubleMatrix3D(slice, width, height);
-        for (int sz = 0; sz < slice; sz++) {
-            for (int sx = 0; sx < height; sx++) {
-                for (int sy = 0; sy < width; sy++) {
-                    X.setQuick(sz, sx, sy, templX[sy]);
-                    Y.setQuick(sz, sy, sx, templY[sy]);
-                    Z.setQuick(sz, sy, sx, templZ[sz]);
+    /**
+     * 3D version of getRegularizer: S = 3 - x^2 - y^2 - z^2, returned as a
+     * slices x rows x columns stack.
+     */
+    public static DoubleMatrix3D getRegularizer(int rows, int columns, int slices) {
+        double[] templX = getFoldedTemplate(columns);
+        double[] templY = getFoldedTemplate(rows);
+        double[] templZ = getFoldedTemplate(slices);
+
+        DenseDoubleMatrix3D S = new DenseDoubleMatrix3D(slices, rows, columns);
+        double[] elements = S.elements();
+        int idx = 0;
+        for (int s = 0; s < slices; s++) {
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < columns; c++) {
+                    elements[idx++] = 3 - (templX[c] * templX[c] + templY[r] * templY[r] + templZ[s] * templZ[s]);
                 }
             }
         }
+        return S;
+    }
 
-        for (int sz = 0; sz < slice; sz++) {
-            for (int sx = 0; sx < height; sx++) {
-                for (int sy = 0; sy < width; sy++) {
-                    double tmpSx = X.getQuick(sz, sx, sy);
-                    double tmpSy = Y.getQuick(sz, sx, sy);
-                    double tmpSz = Z.getQuick(sz, sx, sy);
-
-                    S.setQuick(sz, sx, sy, tmpSx * tmpSx + tmpSy * tmpSy + tmpSz * tmpSz);
-                }
-            }
+    /**
+     * n points from -1 to 1 (as linspace), indexed by the periodic distance
+     * min(k, n-k) to the origin.
+     */
+    private static double[] getFoldedTemplate(int n) {
+        double[] templ = new double[n];
+        if (n == 1) {
+            templ[0] = -1;
+            return templ;
         }
-        double maxS = S.getQuick(0, 0, 0);
-        for (int sz = 0; sz < slice; sz++) {
-            for (int sx = 0; sx < height; sx++) {
-                for (int sy = 0; sy < width; sy++) {
-                    double tmpS = S.getQuick(sz, sx, sy);
-                    if (tmpS > maxS) {
-                        maxS = tmpS;
-                    }
-                }
-            }
+        double[] line = new double[n];
+        int xi = 0;
+        for (double ix = -1; ix <= 1 && xi < n; ix += 2.0D / (n - 1)) {
+            line[xi++] = ix;
         }
-
-        S.assign(DoubleFunctions.mult(-1));
-        S.assign(DoubleFunctions.plus(maxS));
-
-        // padding and duplication
-        if (((width % 2) == 0) && ((height % 2) == 0) && ((slice % 2) == 0)) {
-            DoubleMatrix3D auxS1 = S.viewPart(0, 0, 0,
-                    slice / 2 + 1, height / 2 + 1, width / 2 + 1);
-            DoubleMatrix3D auxS2 = auxS1.copy();
-            DoubleMatrix3D auxS3 = auxS1.copy();
-            DoubleMatrix3D auxS4 = auxS1.copy();
-            DoubleMatrix3D auxS5 = auxS1.copy();
-            DoubleMatrix3D auxS6 = auxS1.copy();
-            DoubleMatrix3D auxS7 = auxS1.copy();
-            DoubleMatrix3D auxS8 = auxS1.copy();
-            for (int sindex = 0; sindex < slice / 2 + 1; sindex++) {
-                for (int hindex = 0; hindex < height / 2 + 1; hindex++) {
-                    for (int windex = 0; windex < width / 2 + 1; windex++) {
-                        double aux = auxS1.getQuick(sindex, windex, hindex);
-                        auxS2.setQuick(sindex, hindex, width / 2 - windex,
-                                aux);
-                        auxS3.setQuick(sindex, height / 2 - hindex, windex,
-                                aux);
-                        auxS4.setQuick(sindex, height / 2 - hindex, width / 2 - windex,
-                                aux);
-
-                        auxS5.setQuick(slice / 2 - sindex, hindex, windex,
-                                aux);
-                        auxS6.setQuick(slice / 2 - sindex, height / 2 - hindex, windex,
-                                aux);
-                        auxS7.setQuick(slice / 2 - sindex, hindex, width / 2 - windex,
-                                aux);
-                        auxS8.setQuick(slice / 2 - sindex, height / 2 - hindex, width / 2 - windex,
-                                aux);
-
-                    }
-                }
-            }
-
-
-            S.viewPart(0, 0, width / 2, slice / 2 + 1, height / 2 + 1,
-                    width / 2).assign(
-                    auxS2.viewPart(0, 0, 0, slice / 2 + 1, height / 2 + 1, width / 2));
-
-            S.viewPart(0, height / 2, 0, slice / 2 + 1, height / 2,
-                    width / 2 + 1).assign(
-                    auxS3.viewPart(0, 0, 0, slice / 2 + 1, height / 2, width / 2 + 1));
-
-            S.viewPart(0, height / 2, width / 2, slice / 2 + 1, height / 2,
-                    width / 2).assign(
-                    auxS4.viewPart(0, 0, 0, slice / 2 + 1, height / 2, width / 2));
-
-            S.viewPart(slice / 2, 0, 0, slice / 2, height / 2 + 1,
-                    width / 2 + 1).assign(
-                    auxS5.viewPart(0, 0, 0, slice / 2, height / 2 + 1, width / 2 + 1));
-
-            S.viewPart(slice / 2, height / 2, 0, slice / 2, height / 2,
-                    width / 2 + 1).assign(
-                    auxS6.viewPart(0, 0, 0, slice / 2, height / 2, width / 2 + 1));
-
-            S.viewPart(slice / 2, 0, width/2, slice / 2, height / 2+1,
-                    width / 2).assign(
-                    auxS7.viewPart(0, 0, 0, slice / 2, height / 2+1, width / 2));
-
-            S.viewPart(slice / 2, height / 2, width / 2, slice / 2, height / 2,
-                    width / 2).assign(
-                    auxS8.viewPart(0, 0, 0, slice / 2, height / 2, width / 2));
+        line[n - 1] = 1;
+        for (int k = 0; k < n; k++) {
+            templ[k] = line[Math.min(k, n - k)];
         }
-
-        return S;
+        return templ;
     }
 
     public static DComplexMatrix2D getRecMatrix2D(DComplexMatrix2D decMatrix, int level){
@@ -359,6 +238,31 @@ public class PSFUtil {
 
     }
 
+    /**
+     * Nonredundant half of getDecMatrix2D: the filters are the DFTs of real
+     * filters, so only the first height/2+1 columns are built (see
+     * HalfSpectrum).
+     */
+    public static DComplexMatrix2D getDecMatrix2DHalf(FFT_WFilter wf) {
+        double[] Dx = wf.getDx();
+        double[] Dy = wf.getDy();
+        int width = Dx.length / 2;
+        int half = HalfSpectrum.halfColumns(Dy.length / 2);
+
+        DenseDComplexMatrix2D decMatrix = new DenseDComplexMatrix2D(width, half);
+        double[] elements = decMatrix.elements();
+        for (int i = 0; i < width; i++) {
+            double xr = Dx[2 * i];
+            double xi = Dx[2 * i + 1];
+            for (int j = 0; j < half; j++) {
+                int idx = 2 * (i * half + j);
+                elements[idx] = xr * Dy[2 * j] - xi * Dy[2 * j + 1];
+                elements[idx + 1] = xi * Dy[2 * j] + xr * Dy[2 * j + 1];
+            }
+        }
+        return decMatrix;
+    }
+
     public static ComplexDoubleMatrix getDecMatrix2DNew(FFT_WFilter wf) {
 
         DComplexMatrix2D decMatrix_colt = getDecMatrix2D(wf);
@@ -412,6 +316,34 @@ public class PSFUtil {
         return decMatrix;
     }
 
+    /**
+     * Nonredundant half of getDecMatrix3D: only the first ny/2+1 columns are
+     * built (see HalfSpectrum).
+     */
+    public static DComplexMatrix3D getDecMatrix3DHalf(FFT_WFilter wf) {
+        double[] Dz = wf.getDz();
+        int nz = Dz.length / 2;
+
+        DenseDComplexMatrix2D slice = (DenseDComplexMatrix2D) getDecMatrix2DHalf(wf);
+        double[] sliceElements = slice.elements();
+        int sliceSize = sliceElements.length;
+
+        DenseDComplexMatrix3D decMatrix = new DenseDComplexMatrix3D(nz, slice.rows(), slice.columns());
+        double[] elements = decMatrix.elements();
+        for (int k = 0; k < nz; k++) {
+            double zr = Dz[2 * k];
+            double zi = Dz[2 * k + 1];
+            int off = k * sliceSize;
+            for (int idx = 0; idx < sliceSize; idx += 2) {
+                double xyr = sliceElements[idx];
+                double xyi = sliceElements[idx + 1];
+                elements[off + idx] = xyr * zr - xyi * zi;
+                elements[off + idx + 1] = xyi * zr + xyr * zi;
+            }
+        }
+        return decMatrix;
+    }
+
     public static DComplexMatrix3D getDecMatrix3D_2(FFT_WFilter wf) {
         double[] Dx = wf.getDx();
         double[] Dy = wf.getDy();
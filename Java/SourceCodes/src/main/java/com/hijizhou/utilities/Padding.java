@@ -0,0 +1,133 @@
+package com.hijizhou.utilities;
+/**
+ * PADDING: extension of an image to a size the FFTs handle efficiently
+ *
+ * Each dimension is extended by a border on both sides and then to the next
+ * 2-3-5 smooth size (a product of powers of 2, 3 and 5), for which the mixed
+ * radix transforms of JTransforms are fastest, so a frame is only padded as
+ * much as the border and the FFTs need. The image is centred and the added
+ * rows and columns are filled either by mirroring the image at its edges
+ * (half-sample symmetric) or by repeating it periodically, which keeps the
+ * wrap-around of the FFTs away from the image; with NONE the image is left
+ * as it is. SMOOTH adds no border and only extends the image, by mirroring,
+ * to the next smooth size, so that the FFTs are fast at the cost of at most a
+ * few rows and columns.
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+
+import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+
+public class Padding {
+
+    public enum Mode {
+        NONE, MIRROR, PERIODIC, SMOOTH
+    }
+
+    /**
+     * Smallest 2-3-5 smooth number larger than or equal to <code>n</code>.
+     */
+    public static int nextSmoothSize(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("size must be positive: " + n);
+        }
+        int m = n;
+        while (!isSmooth(m)) {
+            m++;
+        }
+        return m;
+    }
+
+    public static boolean isSmooth(int n) {
+        for (int p : new int[]{2, 3, 5}) {
+            while (n % p == 0) {
+                n /= p;
+            }
+        }
+        return n == 1;
+    }
+
+    /**
+     * Size of the padded image, {rows, columns}.
+     *
+     * @param border minimum number of pixels added on each side, ignored
+     *               with NONE and SMOOTH
+     */
+    public static int[] getPaddedSize(int rows, int columns, Mode mode, int border) {
+        if (mode == Mode.NONE) {
+            return new int[]{rows, columns};
+        }
+        if (mode == Mode.SMOOTH) {
+            return new int[]{nextSmoothSize(rows), nextSmoothSize(columns)};
+        }
+        return new int[]{nextSmoothSize(rows + 2 * border), nextSmoothSize(columns + 2 * border)};
+    }
+
+    /**
+     * Pads <code>image</code> to the size given by getPaddedSize. The image
+     * itself is returned when no padding is needed.
+     */
+    public static DoubleMatrix2D pad(DoubleMatrix2D image, Mode mode, int border) {
+        int rows = image.rows();
+        int columns = image.columns();
+        int[] size = getPaddedSize(rows, columns, mode, border);
+        if (size[0] == rows && size[1] == columns) {
+            return image;
+        }
+        int[] r = getIndices(rows, size[0], mode);
+        int[] c = getIndices(columns, size[1], mode);
+        DoubleMatrix2D padded = new DenseDoubleMatrix2D(size[0], size[1]);
+        for (int i = 0; i < size[0]; i++) {
+            for (int j = 0; j < size[1]; j++) {
+                padded.setQuick(i, j, image.getQuick(r[i], c[j]));
+            }
+        }
+        return padded;
+    }
+
+    /**
+     * Central rows x columns part of a padded image.
+     */
+    public static DoubleMatrix2D crop(DoubleMatrix2D image, int rows, int columns) {
+        if (image.rows() == rows && image.columns() == columns) {
+            return image;
+        }
+        return image.viewPart(getOffset(rows, image.rows()), getOffset(columns, image.columns()),
+                rows, columns).copy();
+    }
+
+    private static int getOffset(int n, int size) {
+        return (size - n) / 2;
+    }
+
+    /**
+     * Index in [0, n) of position <code>k</code> of the half-sample
+     * symmetric extension of a signal of length <code>n</code>.
+     */
+    public static int reflect(int k, int n) {
+        int m = k % (2 * n);
+        if (m < 0) {
+            m += 2 * n;
+        }
+        return m < n ? m : 2 * n - 1 - m;
+    }
+
+    /**
+     * Source index of each of the <code>size</code> padded positions.
+     */
+    private static int[] getIndices(int n, int size, Mode mode) {
+        int[] index = new int[size];
+        int offset = getOffset(n, size);
+        for (int k = 0; k < size; k++) {
+            if (mode == Mode.PERIODIC) {
+                index[k] = ((k - offset) % n + n) % n;
+            } else {
+                index[k] = reflect(k - offset, n);
+            }
+        }
+        return index;
+    }
+}
@@ -0,0 +1,33 @@
+package com.hijizhou.utilities;
+
+/**
+ * PROGRESSLISTENER: receives the status messages and the log of a
+ * deconvolution, without tying it to the ImageJ user interface
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+public interface ProgressListener {
+
+    /**
+     * Discards everything.
+     */
+    ProgressListener SILENT = new ProgressListener() {
+        public void setMessage(String message) {
+        }
+
+        public void log(String message) {
+        }
+    };
+
+    /**
+     * Short status message (current step).
+     */
+    void setMessage(String message);
+
+    /**
+     * Detailed log line (timings, parameters).
+     */
+    void log(String message);
+}
@@ -98,8 +98,6 @@ public class Simulation {
 //        gaussian(input, noisePar[1]);
 //        DComplexMatrix3D YY = ((DenseDoubleMatrix3D) input).getFft3();
 //
-        System.out.println(H.getQuick(30,21,10)[0]);
-
         poisson(input, noisePar[0]);
         gaussian(input, noisePar[1]);
 
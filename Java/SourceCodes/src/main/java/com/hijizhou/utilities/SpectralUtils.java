@@ -7,6 +7,7 @@ import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
 import com.edu.emory.mathcs.utils.pc.ConcurrencyUtils;
 import com.org.jtransforms.fft.DoubleFFT_1D;
 import com.org.jtransforms.fft.DoubleFFT_2D;
+import com.org.jtransforms.fft.FFTPlanCache;
 import org.jblas.ComplexDoubleMatrix;
 import org.jblas.DoubleMatrix;
 
@@ -28,23 +29,23 @@ public class SpectralUtils {
     }
 
     public static void fft1D_inplace(ComplexDoubleMatrix vector, final int fftLength) {
-        DoubleFFT_1D fft = new DoubleFFT_1D(fftLength);
+        DoubleFFT_1D fft = FFTPlanCache.getDoubleFFT_1D(fftLength);
         fft.complexForward(vector.data);
     }
 
     public static void invfft1D_inplace(ComplexDoubleMatrix vector, final int fftLength) {
-        DoubleFFT_1D fft = new DoubleFFT_1D(fftLength);
+        DoubleFFT_1D fft = FFTPlanCache.getDoubleFFT_1D(fftLength);
         fft.complexInverse(vector.data, true);
     }
 
     public static ComplexDoubleMatrix fft1D(ComplexDoubleMatrix vector, final int fftLength) {
-        DoubleFFT_1D fft = new DoubleFFT_1D(fftLength);
+        DoubleFFT_1D fft = FFTPlanCache.getDoubleFFT_1D(fftLength);
         fft.complexForward(vector.data);
         return vector;
     }
 
     public static ComplexDoubleMatrix invfft1D(ComplexDoubleMatrix vector, final int fftLength) {
-        DoubleFFT_1D fft = new DoubleFFT_1D(fftLength);
+        DoubleFFT_1D fft = FFTPlanCache.getDoubleFFT_1D(fftLength);
         fft.complexInverse(vector.data, true);
         return vector;
     }
@@ -102,7 +103,7 @@ public class SpectralUtils {
     }
 
     public static void fft2D_inplace(ComplexDoubleMatrix A) {
-        DoubleFFT_2D fft2d = new DoubleFFT_2D(A.rows, A.columns);
+        DoubleFFT_2D fft2d = FFTPlanCache.getDoubleFFT_2D(A.rows, A.columns);
 //        fft2d.complexForward(A.data);
         ComplexDoubleMatrix aTemp = A.transpose();
         fft2d.complexForward(aTemp.data);
@@ -133,12 +134,10 @@ public class SpectralUtils {
 
         ComplexDoubleMatrix aTemp = A.transpose();
 
-        DoubleFFT_2D fft2 = new DoubleFFT_2D(rows, columns);
+        DoubleFFT_2D fft2 = FFTPlanCache.getDoubleFFT_2D(rows, columns);
 
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
         if (fft2 == null) {
-            fft2 = new DoubleFFT_2D(rows, columns);
+            fft2 = FFTPlanCache.getDoubleFFT_2D(rows, columns);
         }
 
          final  double[] elementsA = aTemp.data;
@@ -169,20 +168,19 @@ public class SpectralUtils {
             }
         }
         fft2.realForwardFull(elementsC);
-        ConcurrencyUtils.setNumberOfThreads(oldNthreads);
 
         A.data = elementsC;
     }
 
     public static void fft2D_inplace(DoubleMatrix A) {
-        DoubleFFT_2D fft2d = new DoubleFFT_2D(A.rows, A.columns);
+        DoubleFFT_2D fft2d = FFTPlanCache.getDoubleFFT_2D(A.rows, A.columns);
         fft2d.realForwardFull(A.data);
     }
 
 
 
     public static void invfft2D_inplace(ComplexDoubleMatrix A) {
-        DoubleFFT_2D fft2d = new DoubleFFT_2D(A.rows, A.columns);
+        DoubleFFT_2D fft2d = FFTPlanCache.getDoubleFFT_2D(A.rows, A.columns);
 //        fft2d.complexInverse(A.data, true);
         ComplexDoubleMatrix aTemp = A.transpose();
         fft2d.complexInverse(aTemp.data, true);
@@ -190,9 +188,7 @@ public class SpectralUtils {
     }
 
     public static void invfft2D_inplace2(ComplexDoubleMatrix A) {
-        int oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-        DoubleFFT_2D fft2 = new DoubleFFT_2D(A.rows, A.columns);
-        ConcurrencyUtils.setNumberOfThreads(ConcurrencyUtils.nextPow2(oldNthreads));
+        DoubleFFT_2D fft2 = FFTPlanCache.getDoubleFFT_2D(A.rows, A.columns);
         fft2.complexInverse(A.data, true);
     }
 
@@ -0,0 +1,67 @@
+package com.hijizhou.utilities;
+
+/**
+ * THREADUTIL: thread budget of the FFT and matrix routines used by the
+ * sub-band processes
+ *
+ * @reference
+ *       [1] J. Li, F. Luisier and T. Blu, PURE-LET image deconvolution,
+ *             IEEE Trans. Image Process., vol. 27, no. 1, pp. 92-105, 2018.
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+
+import com.edu.emory.mathcs.utils.ConcurrencyUtils;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+public class ThreadUtil {
+
+    /**
+     * Number of threads each of <code>tasks</code> concurrently running
+     * tasks may use so that, together, they do not exceed the global number
+     * of threads.
+     */
+    public static int getThreadsPerTask(int tasks) {
+        return Math.max(1, ConcurrencyUtils.getNumberOfThreads() / Math.max(1, tasks));
+    }
+
+    /**
+     * Limits colt matrix operations and JTransforms FFTs started from the
+     * calling thread to <code>n</code> threads, without touching the global
+     * settings seen by other threads. The three ConcurrencyUtils (colt,
+     * parallel colt and JLargeArrays) share this one per-thread value.
+     */
+    public static void setLocalNumberOfThreads(int n) {
+        ConcurrencyUtils.setLocalNumberOfThreads(n);
+    }
+
+    public static void clearLocalNumberOfThreads() {
+        ConcurrencyUtils.clearLocalNumberOfThreads();
+    }
+
+    /**
+     * Failure of a task waited for, to be thrown by the caller: the cause of
+     * an ExecutionException as is when unchecked, a CancellationException
+     * when interrupted (the interrupt status being set again).
+     */
+    public static RuntimeException unchecked(Exception e) {
+        if (e instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+            CancellationException cancelled = new CancellationException("interrupted");
+            cancelled.initCause(e);
+            return cancelled;
+        }
+        Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new IllegalStateException(cause);
+    }
+}
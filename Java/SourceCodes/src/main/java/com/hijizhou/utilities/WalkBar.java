@@ -1,5 +1,7 @@
 package com.hijizhou.utilities;
 
+import ij.IJ;
+
 import javax.swing.*;
 import javax.swing.text.DefaultCaret;
 import java.awt.*;
@@ -8,7 +10,7 @@ import java.awt.event.ActionListener;
 
 public class WalkBar
   extends JToolBar
-  implements ActionListener
+  implements ActionListener, ProgressListener
 {
   private JProgressBar progress = new JProgressBar();
   private JButton bnHelp = new JButton("Help");
@@ -162,6 +164,11 @@ public class WalkBar
     SwingUtilities.invokeLater(new SetMessage(this.progress, msg));
   }
   
+  public void log(String msg)
+  {
+    IJ.log(msg);
+  }
+  
   public void progress(String msg, double value)
   {
     progress(msg, (int)Math.round(value));
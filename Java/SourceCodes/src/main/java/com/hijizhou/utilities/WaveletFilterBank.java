@@ -0,0 +1,199 @@
+package com.hijizhou.utilities;
+/**
+ * WAVELETFILTERBANK: the wavelet filters of all the sub-bands of an image or
+ * volume size and a number of levels, computed once
+ *
+ * The separable filters (see FFT_WFilter) of every scale and orientation are
+ * evaluated when the bank is built and never change, so a bank can be shared
+ * by any number of threads. The 2D decomposition and reconstruction spectra
+ * are kept as half spectra (see HalfSpectrum) once first asked for; the 3D
+ * ones, too large to keep for all the sub-bands, are built from the
+ * separable filters on each call. Orientation 3 (2D) or 7 (3D) is the
+ * low-pass band, the other ones are the high-pass sub-bands, as in
+ * FFT_WFilter.
+ *
+ * Banks are cached by size and number of levels, the least recently used
+ * ones being dropped, so that successive runs on images of the same size
+ * reuse them. The returned matrices must not be modified.
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+import com.cern.colt.matrix.tdcomplex.DComplexMatrix2D;
+import com.cern.colt.matrix.tdcomplex.DComplexMatrix3D;
+import com.cern.colt.matrix.tfcomplex.FComplexMatrix2D;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class WaveletFilterBank {
+
+    // banks kept, e.g. the image and tile sizes of a few runs
+    private static final int BANKS = 8;
+
+    private static final Map<List<Integer>, WaveletFilterBank> banks =
+            new LinkedHashMap<List<Integer>, WaveletFilterBank>(BANKS, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<List<Integer>, WaveletFilterBank> eldest) {
+                    return size() > BANKS;
+                }
+            };
+
+    private final int nx;
+    private final int ny;
+    private final int nz;
+    private final int levels;
+    private final int orientations;
+    // filters[j][o] of scale j + 1, evaluated once and never filtered again
+    private final FFT_WFilter[][] filters;
+    private final DComplexMatrix2D[][] decomposition;
+    private final FComplexMatrix2D[][] decompositionF;
+    private final DComplexMatrix2D[][] reconstruction;
+
+    private WaveletFilterBank(int nx, int ny, int nz, int levels) {
+        this.nx = nx;
+        this.ny = ny;
+        this.nz = nz;
+        this.levels = levels;
+        this.orientations = nz == 0 ? 3 : 7;
+        this.filters = new FFT_WFilter[levels][orientations + 1];
+        for (int j = 0; j < levels; j++) {
+            for (int o = 0; o <= orientations; o++) {
+                filters[j][o] = new FFT_WFilter();
+                if (nz == 0) {
+                    filters[j][o].fft_wfilters2D(nx, ny, o, j + 1);
+                } else {
+                    filters[j][o].fft_wfilters3D(nx, ny, nz, o, j + 1);
+                }
+            }
+        }
+        this.decomposition = new DComplexMatrix2D[levels][orientations + 1];
+        this.decompositionF = new FComplexMatrix2D[levels][orientations + 1];
+        this.reconstruction = new DComplexMatrix2D[levels][orientations + 1];
+    }
+
+    /**
+     * Bank of the nx x ny images (nx rows, ny columns).
+     */
+    public static WaveletFilterBank get2D(int nx, int ny, int levels) {
+        return get(nx, ny, 0, levels);
+    }
+
+    /**
+     * Bank of the nz x nx x ny volumes (nz slices of nx rows, ny columns).
+     */
+    public static WaveletFilterBank get3D(int nx, int ny, int nz, int levels) {
+        if (nz < 1) {
+            throw new IllegalArgumentException("nz must be positive: " + nz);
+        }
+        return get(nx, ny, nz, levels);
+    }
+
+    private static WaveletFilterBank get(int nx, int ny, int nz, int levels) {
+        List<Integer> key = Arrays.asList(nx, ny, nz, levels);
+        synchronized (banks) {
+            WaveletFilterBank bank = banks.get(key);
+            if (bank == null) {
+                bank = new WaveletFilterBank(nx, ny, nz, levels);
+                banks.put(key, bank);
+            }
+            return bank;
+        }
+    }
+
+    public int getNx() {
+        return nx;
+    }
+
+    public int getNy() {
+        return ny;
+    }
+
+    /**
+     * Number of slices, 0 for a 2D bank.
+     */
+    public int getNz() {
+        return nz;
+    }
+
+    public int getLevels() {
+        return levels;
+    }
+
+    /**
+     * Number of high-pass orientations per scale, 3 in 2D and 7 in 3D; it
+     * is also the orientation of the low-pass band.
+     */
+    public int getOrientations() {
+        return orientations;
+    }
+
+    /**
+     * Half spectrum of the 2D decomposition filter of orientation
+     * <code>oIndex</code> at scale <code>jIndex + 1</code>.
+     */
+    public synchronized DComplexMatrix2D getDecomposition2D(int jIndex, int oIndex) {
+        check2D();
+        if (decomposition[jIndex][oIndex] == null) {
+            decomposition[jIndex][oIndex] = PSFUtil.getDecMatrix2DHalf(filters[jIndex][oIndex]);
+        }
+        return decomposition[jIndex][oIndex];
+    }
+
+    /**
+     * getDecomposition2D in single precision.
+     */
+    public synchronized FComplexMatrix2D getDecomposition2DFloat(int jIndex, int oIndex) {
+        if (decompositionF[jIndex][oIndex] == null) {
+            decompositionF[jIndex][oIndex] =
+                    ImageUtil.double2floatComplexMatrix(getDecomposition2D(jIndex, oIndex));
+        }
+        return decompositionF[jIndex][oIndex];
+    }
+
+    /**
+     * Half spectrum of the 2D reconstruction filter of orientation
+     * <code>oIndex</code> at scale <code>jIndex + 1</code>, the conjugate of
+     * the decomposition filter divided by 4^(jIndex + 1).
+     */
+    public synchronized DComplexMatrix2D getReconstruction2D(int jIndex, int oIndex) {
+        if (reconstruction[jIndex][oIndex] == null) {
+            reconstruction[jIndex][oIndex] = PSFUtil.getRecMatrix2D(getDecomposition2D(jIndex, oIndex), jIndex + 1);
+        }
+        return reconstruction[jIndex][oIndex];
+    }
+
+    /**
+     * Full spectrum of the 2D decomposition filter, a new matrix.
+     */
+    public DComplexMatrix2D getDecomposition2DFull(int jIndex, int oIndex) {
+        check2D();
+        return PSFUtil.getDecMatrix2D(filters[jIndex][oIndex]);
+    }
+
+    /**
+     * Half spectrum of the 3D decomposition filter of orientation
+     * <code>oIndex</code> at scale <code>jIndex + 1</code>, a new matrix.
+     */
+    public DComplexMatrix3D getDecomposition3D(int jIndex, int oIndex) {
+        if (nz == 0) {
+            throw new IllegalStateException("not a 3D filter bank");
+        }
+        return PSFUtil.getDecMatrix3DHalf(filters[jIndex][oIndex]);
+    }
+
+    /**
+     * Half spectrum of the 3D reconstruction filter, a new matrix.
+     */
+    public DComplexMatrix3D getReconstruction3D(int jIndex, int oIndex) {
+        return PSFUtil.getRecMatrix3D(getDecomposition3D(jIndex, oIndex), jIndex + 1);
+    }
+
+    private void check2D() {
+        if (nz != 0) {
+            throw new IllegalStateException("not a 2D filter bank");
+        }
+    }
+}
@@ -89,11 +89,11 @@ public class DoubleFFT_2D
             isPowerOfTwo = true;
         }
         CommonUtils.setUseLargeArrays(2 * rows * columns > LargeArray.getMaxSizeOf32bitArray());
-        fftRows = new DoubleFFT_1D(rows);
+        fftRows = FFTPlanCache.getDoubleFFT_1D(rows);
         if (rows == columns) {
             fftColumns = fftRows;
         } else {
-            fftColumns = new DoubleFFT_1D(columns);
+            fftColumns = FFTPlanCache.getDoubleFFT_1D(columns);
         }
     }
 
@@ -108,18 +108,18 @@ public class DoubleFFT_3D
             isPowerOfTwo = true;
         }
         CommonUtils.setUseLargeArrays(2 * slices * rows * columns > LargeArray.getMaxSizeOf32bitArray());
-        fftSlices = new DoubleFFT_1D(slices);
+        fftSlices = FFTPlanCache.getDoubleFFT_1D(slices);
         if (slices == rows) {
             fftRows = fftSlices;
         } else {
-            fftRows = new DoubleFFT_1D(rows);
+            fftRows = FFTPlanCache.getDoubleFFT_1D(rows);
         }
         if (slices == columns) {
             fftColumns = fftSlices;
         } else if (rows == columns) {
             fftColumns = fftRows;
         } else {
-            fftColumns = new DoubleFFT_1D(columns);
+            fftColumns = FFTPlanCache.getDoubleFFT_1D(columns);
         }
     }
 
@@ -0,0 +1,336 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * JTransforms
+ * Copyright (c) 2007 onward, Piotr Wendykier
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package com.org.jtransforms.fft;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import com.org.jtransforms.utils.CommonUtils;
+
+/**
+ * Process-wide cache of FFT plans keyed by transform size. Building a 1D plan
+ * (twiddle factors, bit-reversal and Bluestein tables) is expensive, while the
+ * plan itself is read-only after construction and can be shared between
+ * threads. The cache keeps at most <code>getMaxPlans()</code> plans and evicts
+ * the least recently used one when full.
+ * <p>
+ * Multidimensional plans change their own dimensions while a transform is
+ * running, so they cannot be shared. They are created on each request instead,
+ * on top of the cached 1D plans, which makes them cheap to build.
+ */
+public class FFTPlanCache
+{
+
+    private static final int DOUBLE_1D = 0;
+
+    private static final int FLOAT_1D = 1;
+
+    private static int maxPlans = 32;
+
+    private static final AtomicLong hits = new AtomicLong();
+
+    private static final AtomicLong misses = new AtomicLong();
+
+    private static final AtomicLong evictions = new AtomicLong();
+
+    private static final LinkedHashMap<Key, Slot> plans = new LinkedHashMap<Key, Slot>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Slot> eldest)
+        {
+            if (size() > maxPlans) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private static final class Key
+    {
+
+        private final int kind;
+
+        private final long n;
+
+        private final boolean useLargeArrays;
+
+        Key(int kind, long n, boolean useLargeArrays)
+        {
+            this.kind = kind;
+            this.n = n;
+            this.useLargeArrays = useLargeArrays;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return kind == k.kind && n == k.n && useLargeArrays == k.useLargeArrays;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int h = kind;
+            h = 31 * h + (int) (n ^ (n >>> 32));
+            h = 31 * h + (useLargeArrays ? 1 : 0);
+            return h;
+        }
+    }
+
+    private static final class Slot
+    {
+
+        private Object plan;
+    }
+
+    private FFTPlanCache()
+    {
+    }
+
+    /**
+     * Returns a shared DoubleFFT_1D plan of size <code>n</code>.
+     *
+     * @param n size of data
+     *
+     * @return shared plan
+     */
+    public static DoubleFFT_1D getDoubleFFT_1D(long n)
+    {
+        // plans depend on the large-array mode active when they are built
+        return (DoubleFFT_1D) get(new Key(DOUBLE_1D, n, CommonUtils.isUseLargeArrays()));
+    }
+
+    /**
+     * Returns a DoubleFFT_2D plan of size <code>rows</code> by
+     * <code>columns</code> built from shared 1D plans. The returned plan must
+     * not be used by several threads at once.
+     *
+     * @param rows    number of rows
+     * @param columns number of columns
+     *
+     * @return plan
+     */
+    public static DoubleFFT_2D getDoubleFFT_2D(long rows, long columns)
+    {
+        return new DoubleFFT_2D(rows, columns);
+    }
+
+    /**
+     * Returns a DoubleFFT_3D plan of size <code>slices</code> by
+     * <code>rows</code> by <code>columns</code> built from shared 1D plans. The
+     * returned plan must not be used by several threads at once.
+     *
+     * @param slices  number of slices
+     * @param rows    number of rows
+     * @param columns number of columns
+     *
+     * @return plan
+     */
+    public static DoubleFFT_3D getDoubleFFT_3D(long slices, long rows, long columns)
+    {
+        return new DoubleFFT_3D(slices, rows, columns);
+    }
+
+    /**
+     * Returns a shared FloatFFT_1D plan of size <code>n</code>.
+     *
+     * @param n size of data
+     *
+     * @return shared plan
+     */
+    public static FloatFFT_1D getFloatFFT_1D(long n)
+    {
+        return (FloatFFT_1D) get(new Key(FLOAT_1D, n, CommonUtils.isUseLargeArrays()));
+    }
+
+    /**
+     * Returns a FloatFFT_2D plan of size <code>rows</code> by
+     * <code>columns</code> built from shared 1D plans. The returned plan must
+     * not be used by several threads at once.
+     *
+     * @param rows    number of rows
+     * @param columns number of columns
+     *
+     * @return plan
+     */
+    public static FloatFFT_2D getFloatFFT_2D(long rows, long columns)
+    {
+        return new FloatFFT_2D(rows, columns);
+    }
+
+    /**
+     * Returns a FloatFFT_3D plan of size <code>slices</code> by
+     * <code>rows</code> by <code>columns</code> built from shared 1D plans. The
+     * returned plan must not be used by several threads at once.
+     *
+     * @param slices  number of slices
+     * @param rows    number of rows
+     * @param columns number of columns
+     *
+     * @return plan
+     */
+    public static FloatFFT_3D getFloatFFT_3D(long slices, long rows, long columns)
+    {
+        return new FloatFFT_3D(slices, rows, columns);
+    }
+
+    private static Object get(Key key)
+    {
+        Slot slot;
+        synchronized (plans) {
+            slot = plans.get(key);
+            if (slot == null) {
+                slot = new Slot();
+                plans.put(key, slot);
+            }
+        }
+        // threads asking for the same size wait here instead of building their own plan
+        synchronized (slot) {
+            if (slot.plan == null) {
+                misses.incrementAndGet();
+                slot.plan = build(key);
+            } else {
+                hits.incrementAndGet();
+            }
+            return slot.plan;
+        }
+    }
+
+    private static Object build(Key key)
+    {
+        switch (key.kind) {
+            case DOUBLE_1D:
+                return new DoubleFFT_1D(key.n);
+            case FLOAT_1D:
+                return new FloatFFT_1D(key.n);
+            default:
+                throw new IllegalArgumentException("unknown plan type " + key.kind);
+        }
+    }
+
+    /**
+     * Returns the maximal number of cached plans.
+     *
+     * @return the maximal number of cached plans
+     */
+    public static int getMaxPlans()
+    {
+        return maxPlans;
+    }
+
+    /**
+     * Sets the maximal number of cached plans. Least recently used plans are
+     * evicted when the cache shrinks below its current size.
+     *
+     * @param n the maximal number of cached plans
+     */
+    public static void setMaxPlans(int n)
+    {
+        if (n < 1) {
+            throw new IllegalArgumentException("n must be greater than 0");
+        }
+        synchronized (plans) {
+            maxPlans = n;
+            Iterator<Key> it = plans.keySet().iterator();
+            while (plans.size() > maxPlans && it.hasNext()) {
+                it.next();
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of plans currently held by the cache.
+     *
+     * @return the number of cached plans
+     */
+    public static int size()
+    {
+        synchronized (plans) {
+            return plans.size();
+        }
+    }
+
+    /**
+     * Returns the number of requests served from the cache.
+     *
+     * @return the number of cache hits
+     */
+    public static long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of requests that had to build a new plan.
+     *
+     * @return the number of cache misses
+     */
+    public static long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of plans evicted from the cache.
+     *
+     * @return the number of evictions
+     */
+    public static long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * Resets the hit, miss and eviction counters.
+     */
+    public static void resetStatistics()
+    {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+    /**
+     * Removes all plans from the cache.
+     */
+    public static void clear()
+    {
+        synchronized (plans) {
+            plans.clear();
+        }
+    }
+}
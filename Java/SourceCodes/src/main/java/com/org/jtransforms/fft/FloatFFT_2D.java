@@ -87,11 +87,11 @@ public class FloatFFT_2D
             isPowerOfTwo = true;
         }
         CommonUtils.setUseLargeArrays(2 * rows * columns > LargeArray.getMaxSizeOf32bitArray());
-        fftRows = new FloatFFT_1D(rows);
+        fftRows = FFTPlanCache.getFloatFFT_1D(rows);
         if (rows == columns) {
             fftColumns = fftRows;
         } else {
-            fftColumns = new FloatFFT_1D(columns);
+            fftColumns = FFTPlanCache.getFloatFFT_1D(columns);
         }
     }
 
@@ -108,18 +108,18 @@ public class FloatFFT_3D
             isPowerOfTwo = true;
         }
         CommonUtils.setUseLargeArrays(2 * slices * rows * columns > LargeArray.getMaxSizeOf32bitArray());
-        fftSlices = new FloatFFT_1D(slices);
+        fftSlices = FFTPlanCache.getFloatFFT_1D(slices);
         if (slices == rows) {
             fftRows = fftSlices;
         } else {
-            fftRows = new FloatFFT_1D(rows);
+            fftRows = FFTPlanCache.getFloatFFT_1D(rows);
         }
         if (slices == columns) {
             fftColumns = fftSlices;
         } else if (rows == columns) {
             fftColumns = fftRows;
         } else {
-            fftColumns = new FloatFFT_1D(columns);
+            fftColumns = FFTPlanCache.getFloatFFT_1D(columns);
         }
     }
 
@@ -122,13 +122,36 @@ public class ConcurrencyUtils
     }
 
     /**
-     * Returns the current number of threads.
+     * Returns the current number of threads. A value set with
+     * {@link #setLocalNumberOfThreads(int)} on the calling thread takes
+     * precedence over the global one.
      * <p>
      * @return the current number of threads.
      */
     public static int getNumberOfThreads()
     {
-        return ConcurrencyUtils.nthreads;
+        int n = com.edu.emory.mathcs.utils.pc.ConcurrencyUtils.getLocalNumberOfThreads();
+        return n > 0 ? n : ConcurrencyUtils.nthreads;
+    }
+
+    /**
+     * Sets the number of threads used by computations started from the
+     * calling thread only. The global number of threads is left unchanged.
+     * <p>
+     * @param n new value of threads for the calling thread
+     */
+    public static void setLocalNumberOfThreads(int n)
+    {
+        com.edu.emory.mathcs.utils.pc.ConcurrencyUtils.setLocalNumberOfThreads(n);
+    }
+
+    /**
+     * Removes the number of threads set with
+     * {@link #setLocalNumberOfThreads(int)} from the calling thread.
+     */
+    public static void clearLocalNumberOfThreads()
+    {
+        com.edu.emory.mathcs.utils.pc.ConcurrencyUtils.clearLocalNumberOfThreads();
     }
 
     /**
@@ -155,6 +178,9 @@ public class ConcurrencyUtils
         if (ConcurrencyUtils.threadPool.isShutdown() || ConcurrencyUtils.threadPool.isTerminated()) {
             ConcurrencyUtils.threadPool = DEFAULT_THREAD_POOL;
         }
+        if (com.edu.emory.mathcs.utils.pc.ConcurrencyUtils.getLocalNumberOfThreads() > 0) {
+            return ConcurrencyUtils.threadPool.submit(serial(task));
+        }
         return ConcurrencyUtils.threadPool.submit(task);
     }
 
@@ -170,9 +196,50 @@ public class ConcurrencyUtils
         if (ConcurrencyUtils.threadPool.isShutdown() || ConcurrencyUtils.threadPool.isTerminated()) {
             ConcurrencyUtils.threadPool = DEFAULT_THREAD_POOL;
         }
+        if (com.edu.emory.mathcs.utils.pc.ConcurrencyUtils.getLocalNumberOfThreads() > 0) {
+            return ConcurrencyUtils.threadPool.submit(serial(task));
+        }
         return ConcurrencyUtils.threadPool.submit(task);
     }
 
+    /*
+     * Tasks submitted under a local number of threads are already a share of
+     * that budget, so anything they start themselves runs sequentially.
+     */
+    private static <T> Callable<T> serial(final Callable<T> task)
+    {
+        return new Callable<T>()
+        {
+            @Override
+            public T call() throws Exception
+            {
+                com.edu.emory.mathcs.utils.pc.ConcurrencyUtils.setLocalNumberOfThreads(1);
+                try {
+                    return task.call();
+                } finally {
+                    com.edu.emory.mathcs.utils.pc.ConcurrencyUtils.clearLocalNumberOfThreads();
+                }
+            }
+        };
+    }
+
+    private static Runnable serial(final Runnable task)
+    {
+        return new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                com.edu.emory.mathcs.utils.pc.ConcurrencyUtils.setLocalNumberOfThreads(1);
+                try {
+                    task.run();
+                } finally {
+                    com.edu.emory.mathcs.utils.pc.ConcurrencyUtils.clearLocalNumberOfThreads();
+                }
+            }
+        };
+    }
+
     /**
      * Waits for all threads to complete computation.
      * <p>
@@ -0,0 +1,74 @@
+package com.hijizhou.cores.deconvolution;
+
+import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.hijizhou.utilities.PSFUtil;
+import com.hijizhou.utilities.Padding;
+import com.hijizhou.utilities.ProgressListener;
+import com.hijizhou.utilities.TestImages;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * DeconvolutionEngine with the default parameters: the single Wiener
+ * regularization parameter the dialog has always used.
+ */
+public class DeconvolutionEngineTest {
+
+    private static final int SIZE = 64;
+    private static final double[] NOISE = TestImages.NOISE;
+
+    @Test
+    public void defaultWienerParameters() {
+        DoubleMatrix2D psf = PSFUtil.getGaussPSF(SIZE, SIZE, Math.sqrt(3.0));
+        DoubleMatrix2D input = TestImages.getInput(TestImages.getPattern(SIZE, SIZE, 0), Math.sqrt(3.0));
+
+        DeconvolutionParameters params = new DeconvolutionParameters();
+        params.setNoiseParameters(NOISE[0], NOISE[1]);
+        params.setPSF(psf);
+        params.setPadding(Padding.Mode.NONE, 0);
+        assertArrayEquals(new double[]{1e-4}, params.getWienerParameters(), 0.0);
+        DeconvolutionEngine engine = new DeconvolutionEngine(params, 1, 0);
+        DoubleMatrix2D output;
+        try {
+            output = engine.deconvolve(input);
+        } finally {
+            engine.shutdown();
+        }
+
+        MW_PURE_LET2D mw = new MW_PURE_LET2D(input, psf, NOISE, ProgressListener.SILENT, false);
+        mw.setWienerParameters(new double[]{1e-4});
+        assertEquals(24, mw.getNumberOfBasisFunctions());
+        mw.doDeconvolution();
+        assertEquals(24, mw.getCoefficients().size());
+        assertArrayEquals((double[]) mw.getOutputMatrix().elements(), (double[]) output.elements(), 1e-9);
+    }
+
+    @Test
+    public void tiledPSFOfItsSupport() {
+        int n = 160;
+        double sigma = 3.0 / 2.355;
+        DoubleMatrix2D input = TestImages.getInput(TestImages.getPattern(n, n, 0), sigma);
+
+        DeconvolutionParameters params = new DeconvolutionParameters();
+        params.setNoiseParameters(NOISE[0], NOISE[1]);
+        params.setPadding(Padding.Mode.NONE, 0);
+        params.setTileSize(64);
+        DeconvolutionEngine engine = new DeconvolutionEngine(params, 1, 0);
+        DoubleMatrix2D output;
+        try {
+            output = engine.deconvolve(input);
+        } finally {
+            engine.shutdown();
+        }
+
+        // the Gaussian PSF of the whole frame
+        MW_PURE_LET2DTiled tiled = new MW_PURE_LET2DTiled(input, PSFUtil.getGaussPSF(n, n, sigma), NOISE,
+                ProgressListener.SILENT, false);
+        tiled.setTileSize(64);
+        tiled.setWienerParameters(params.getWienerParameters());
+        tiled.doDeconvolution();
+        assertArrayEquals((double[]) tiled.getOutputMatrix().elements(), (double[]) output.elements(), 1e-6);
+    }
+}
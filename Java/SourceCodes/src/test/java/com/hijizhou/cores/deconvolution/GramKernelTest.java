@@ -0,0 +1,82 @@
+package com.hijizhou.cores.deconvolution;
+
+import com.cern.colt.matrix.tdcomplex.DComplexMatrix1D;
+import com.cern.colt.matrix.tdcomplex.impl.DenseDComplexMatrix1D;
+import com.cern.colt.matrix.tdouble.DoubleMatrix1D;
+import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+import com.hijizhou.utilities.ThreadUtil;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * GramKernel against the direct sums, and the same results for one thread
+ * and several sharing its pool.
+ */
+public class GramKernelTest {
+
+    @Test
+    public void sameAsDirectSums() {
+        Random random = new Random(3);
+        int k = 20;
+        int n = 5000;
+        DComplexMatrix1D[] columns = new DComplexMatrix1D[k];
+        for (int i = 0; i < k; i++) {
+            columns[i] = randomVector(n, random);
+        }
+        DComplexMatrix1D y = randomVector(n, random);
+        DoubleMatrix1D coeff = new DenseDoubleMatrix1D(k);
+        for (int i = 0; i < k; i++) {
+            coeff.setQuick(i, random.nextGaussian());
+        }
+
+        double[][] results = new double[2][];
+        int[] threads = {1, 4};
+        for (int t = 0; t < threads.length; t++) {
+            ThreadUtil.setLocalNumberOfThreads(threads[t]);
+            try {
+                DoubleMatrix2D gram = GramKernel.getGram(columns, 0.5);
+                DoubleMatrix1D products = GramKernel.getProducts(columns, y, 0.5);
+                DComplexMatrix1D combination = new DenseDComplexMatrix1D(n);
+                GramKernel.addCombination(columns, coeff, combination);
+                for (int i = 0; i < k; i++) {
+                    for (int j = 0; j < k; j++) {
+                        assertEquals(0.5 * realDot(columns[i], columns[j]), gram.getQuick(i, j), 1e-9);
+                    }
+                    assertEquals(0.5 * realDot(columns[i], y), products.getQuick(i), 1e-9);
+                }
+                for (int idx = 0; idx < n; idx++) {
+                    double re = 0;
+                    for (int i = 0; i < k; i++) {
+                        re += coeff.getQuick(i) * columns[i].getQuick(idx)[0];
+                    }
+                    assertEquals(re, combination.getQuick(idx)[0], 1e-9);
+                }
+                results[t] = gram.vectorize().toArray();
+            } finally {
+                ThreadUtil.clearLocalNumberOfThreads();
+            }
+        }
+        assertArrayEquals(results[0], results[1], 0.0);
+    }
+
+    private static DComplexMatrix1D randomVector(int n, Random random) {
+        DComplexMatrix1D v = new DenseDComplexMatrix1D(n);
+        for (int idx = 0; idx < n; idx++) {
+            v.setQuick(idx, random.nextGaussian(), random.nextGaussian());
+        }
+        return v;
+    }
+
+    private static double realDot(DComplexMatrix1D a, DComplexMatrix1D b) {
+        double sum = 0;
+        for (int idx = 0; idx < a.size(); idx++) {
+            sum += a.getQuick(idx)[0] * b.getQuick(idx)[0] + a.getQuick(idx)[1] * b.getQuick(idx)[1];
+        }
+        return sum;
+    }
+}
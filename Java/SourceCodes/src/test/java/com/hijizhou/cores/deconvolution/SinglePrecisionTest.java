@@ -0,0 +1,75 @@
+package com.hijizhou.cores.deconvolution;
+
+import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.cern.colt.matrix.tdouble.DoubleMatrix3D;
+import com.hijizhou.utilities.Evaluation;
+import com.hijizhou.utilities.PSFUtil;
+import com.hijizhou.utilities.ProgressListener;
+import com.hijizhou.utilities.TestImages;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The sub-band processes in single precision (LETProcess2DFloat,
+ * LETProcess3DFloat) against the double precision ones, on the same blurred
+ * and noisy images.
+ */
+public class SinglePrecisionTest {
+
+    @Test
+    public void deconvolution2D() {
+        DoubleMatrix2D original = TestImages.getPattern(96, 96, 0);
+        DoubleMatrix2D input = TestImages.getInput(original, Math.sqrt(3.0));
+
+        DoubleMatrix2D outputD = deconvolve(input, false);
+        DoubleMatrix2D outputF = deconvolve(input, true);
+
+        assertTrue(relativeError(outputF.elements(), outputD.elements()) < 1e-5);
+        assertEquals(Evaluation.psnr(outputD, original), Evaluation.psnr(outputF, original), 1e-3);
+    }
+
+    @Test
+    public void deconvolution3D() {
+        DoubleMatrix3D original = TestImages.getPattern3D(16, 32, 32);
+        DoubleMatrix3D input = TestImages.getInput(original, Math.sqrt(2.0));
+
+        DoubleMatrix3D outputD = deconvolve(input, false);
+        DoubleMatrix3D outputF = deconvolve(input, true);
+
+        assertTrue(relativeError(outputF.elements(), outputD.elements()) < 1e-5);
+        assertEquals(Evaluation.psnr(outputD, original), Evaluation.psnr(outputF, original), 1e-3);
+    }
+
+    private static DoubleMatrix2D deconvolve(DoubleMatrix2D input, boolean singlePrecision) {
+        int n = input.rows();
+        MW_PURE_LET2D mw = new MW_PURE_LET2D(input, PSFUtil.getGaussPSF(n, n, Math.sqrt(3.0)), TestImages.NOISE,
+                ProgressListener.SILENT, false, singlePrecision);
+        mw.doDeconvolution();
+        return mw.getOutputMatrix();
+    }
+
+    private static DoubleMatrix3D deconvolve(DoubleMatrix3D input, boolean singlePrecision) {
+        MW_PURE_LET3D mw = new MW_PURE_LET3D(input,
+                PSFUtil.getGaussPSF(input.rows(), input.columns(), input.slices(), Math.sqrt(2.0)), TestImages.NOISE,
+                singlePrecision);
+        mw.doDeconvolution();
+        return mw.getOutputMatrix();
+    }
+
+    /**
+     * ||x - ref|| / ||ref||
+     */
+    private static double relativeError(Object x, Object ref) {
+        double[] a = (double[]) x;
+        double[] b = (double[]) ref;
+        double diff = 0;
+        double norm = 0;
+        for (int i = 0; i < b.length; i++) {
+            diff += (a[i] - b[i]) * (a[i] - b[i]);
+            norm += b[i] * b[i];
+        }
+        return Math.sqrt(diff / norm);
+    }
+}
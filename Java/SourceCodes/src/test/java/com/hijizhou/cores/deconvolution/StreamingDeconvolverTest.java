@@ -0,0 +1,165 @@
+package com.hijizhou.cores.deconvolution;
+
+import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import com.hijizhou.utilities.PSFUtil;
+import com.hijizhou.utilities.TestImages;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The frame pipeline of StreamingDeconvolver.process: frames reach the sink
+ * in order, a slow sink stops the reading of the source, and a frame that
+ * fails ends the stream.
+ */
+public class StreamingDeconvolverTest {
+
+    private static final int SIZE = 64;
+
+    @Test
+    public void framesInOrder() throws Exception {
+        List<DoubleMatrix2D> frames = getFrames(12);
+        StreamingDeconvolver deconvolver = getDeconvolver();
+        final List<Integer> indices = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<DoubleMatrix2D> outputs = Collections.synchronizedList(new ArrayList<DoubleMatrix2D>());
+
+        int count = deconvolver.process(frames.iterator(), new StreamingDeconvolver.FrameSink() {
+            public void write(int index, DoubleMatrix2D frame) {
+                indices.add(index);
+                outputs.add(frame);
+            }
+        }, 3, 2);
+
+        assertEquals(frames.size(), count);
+        for (int k = 0; k < frames.size(); k++) {
+            assertEquals(k, (int) indices.get(k));
+            // the k-th frame written is the deconvolution of the k-th read
+            assertArrayEquals((double[]) deconvolver.deconvolve(frames.get(k)).elements(),
+                    (double[]) outputs.get(k).elements(), 1e-9);
+        }
+    }
+
+    @Test
+    public void slowSinkStopsReading() throws Exception {
+        final int workers = 2;
+        final int depth = 1;
+        // frames the pipeline may hold while the sink is stuck: the one being
+        // written and those completed before it, the output queue, one per
+        // worker, the input queue and the one the reader waits to queue
+        int bound = workers + (depth + workers) + workers + depth + 1;
+        final List<DoubleMatrix2D> frames = getFrames(2 * bound + 4);
+
+        AtomicInteger read = new AtomicInteger();
+        final Iterator<DoubleMatrix2D> source = countingSource(frames, read);
+        final CountDownLatch release = new CountDownLatch(1);
+        final StreamingDeconvolver.FrameSink sink = new StreamingDeconvolver.FrameSink() {
+            public void write(int index, DoubleMatrix2D frame) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        final StreamingDeconvolver deconvolver = getDeconvolver();
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> count = caller.submit(new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    return deconvolver.process(source, sink, workers, depth);
+                }
+            });
+
+            // wait for the reading to stall
+            int last = -1;
+            for (int k = 0; k < 100 && read.get() != last; k++) {
+                last = read.get();
+                Thread.sleep(300);
+            }
+            assertTrue("read " + read.get() + " frames, at most " + bound + " expected", read.get() <= bound);
+            assertTrue(read.get() < frames.size());
+
+            release.countDown();
+            assertEquals(frames.size(), (int) count.get(60, TimeUnit.SECONDS));
+            assertEquals(frames.size(), read.get());
+        } finally {
+            release.countDown();
+            caller.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failureEndsStream() throws Exception {
+        List<DoubleMatrix2D> frames = getFrames(40);
+        // a frame of the wrong size cannot be deconvolved with the spectra
+        frames.set(1, new DenseDoubleMatrix2D(SIZE / 2, SIZE / 2));
+        AtomicInteger read = new AtomicInteger();
+        final AtomicInteger written = new AtomicInteger();
+        try {
+            getDeconvolver().process(countingSource(frames, read), new StreamingDeconvolver.FrameSink() {
+                public void write(int index, DoubleMatrix2D frame) {
+                    written.incrementAndGet();
+                }
+            }, 2, 1);
+            fail("the stream did not fail");
+        } catch (IllegalStateException e) {
+            assertEquals("deconvolution of frame 1 failed", e.getMessage());
+        }
+        assertTrue(written.get() <= 1);
+        assertTrue("read " + read.get() + " frames", read.get() < frames.size());
+    }
+
+    /**
+     * Source of <code>frames</code> counting those read.
+     */
+    private static Iterator<DoubleMatrix2D> countingSource(final List<DoubleMatrix2D> frames,
+                                                           final AtomicInteger read) {
+        return new Iterator<DoubleMatrix2D>() {
+            public boolean hasNext() {
+                return read.get() < frames.size();
+            }
+
+            public DoubleMatrix2D next() {
+                return frames.get(read.getAndIncrement());
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static StreamingDeconvolver getDeconvolver() {
+        StreamingDeconvolver deconvolver = new StreamingDeconvolver(PSFUtil.getGaussPSF(SIZE, SIZE, Math.sqrt(3.0)),
+                TestImages.NOISE);
+        deconvolver.setMeanIntensity(100);
+        return deconvolver;
+    }
+
+    /**
+     * Blurred and noisy frames of a pattern moving from one frame to the next.
+     */
+    private static List<DoubleMatrix2D> getFrames(int count) {
+        List<DoubleMatrix2D> frames = new ArrayList<DoubleMatrix2D>();
+        for (int k = 0; k < count; k++) {
+            frames.add(TestImages.getInput(TestImages.getPattern(SIZE, SIZE, k), Math.sqrt(3.0)));
+        }
+        return frames;
+    }
+}
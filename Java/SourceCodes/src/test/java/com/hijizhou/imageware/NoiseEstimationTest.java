@@ -0,0 +1,127 @@
+package com.hijizhou.imageware;
+
+import com.hijizhou.utilities.ThreadUtil;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Operations.estimateNoiseParams on synthetic Poisson-Gaussian stacks: the
+ * same estimate whatever the number of threads, and the same as with the
+ * block statistics computed directly on each shifted slice.
+ */
+public class NoiseEstimationTest {
+
+    private static final double ALPHA = 2.0;
+    private static final double SIGMA = 5.0;
+
+    @Test
+    public void sameForAnyNumberOfThreads() {
+        ImageWare input = noisyStack(150, 130, 3);
+        double[] reference = estimate(input, 12, 1, 1);
+        assertEquals(4, reference.length);
+        assertTrue(reference[0] > 0);
+        for (int nthreads = 2; nthreads <= 5; nthreads++) {
+            assertArrayEquals(reference, estimate(input, 12, 1, nthreads), 0.0);
+        }
+        assertArrayEquals(reference, estimate(input, 12, 1, 1), 0.0);
+
+        double[] stack = estimate(input, 12, 3, 1);
+        assertArrayEquals(stack, estimate(input, 12, 3, 4), 0.0);
+    }
+
+    @Test
+    public void blockStatisticsAsDirectComputation() {
+        ImageWare input = noisyStack(150, 130, 1);
+        int CS = 6;
+        double[] expected = directEstimate(input, CS);
+        double[] actual = estimate(input, CS, 1, 1);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(expected[i], actual[i], 1e-9 * Math.abs(expected[i]));
+        }
+    }
+
+    /**
+     * The estimate of the first slice as computed before the per-slice
+     * tables: each trial takes the shifted slice, the blocks of its pixels
+     * and of its Laplacian residual (convolveFIR2), and their robust means
+     * and variances.
+     */
+    private static double[] directEstimate(ImageWare input, int CS) {
+        int[] size = input.getSize();
+        int Nx = (int) (Math.ceil(size[0] / 16.0) * 16);
+        int Ny = (int) (Math.ceil(size[1] / 16.0) * 16);
+        ImageWare slice = Builder.create(size[0], size[1], 1, ImageWare.DOUBLE);
+        input.getXY(0, 0, 0, slice);
+        ImageWare extended = Operations.symextend2D(slice, Nx, Ny);
+
+        int[] It = Operations.numOfDyadicIters(Nx, Ny);
+        int K1 = (int) Math.pow(2.0, It[0] - 1), K2 = (int) Math.pow(2.0, It[1] - 1);
+        int Nblk = Nx * Ny / (K1 * K2);
+        int I = (int) Math.round(0.05 * Nblk);
+        double[] noiseParams = new double[4];
+        for (int cs = 0; cs < CS; cs++) {
+            Random rand = new Random(cs);
+            int offsetX = cs == 0 ? 0 : (int) Math.floor(rand.nextDouble() * size[0]);
+            int offsetY = cs == 0 ? 0 : (int) Math.floor(rand.nextDouble() * size[1]);
+            double[][] array = new double[Nx][Ny];
+            extended.getBlockXY(offsetX, offsetY, 0, array, ImageWare.PERIODIC);
+            double[] mean = new double[Nblk];
+            double[] var = new double[Nblk];
+            Operations.computeBlkMean(array, mean, K1, K2, 0);
+            Operations.computeBlkVar(Builder.create(array, ImageWare.DOUBLE), var, K1, K2);
+
+            int[] index = Operations.createIndex(Nblk);
+            double[] sortedMean = mean.clone();
+            Operations.quickSort(sortedMean, index);
+            double[] rmean = new double[Nblk];
+            double[] rvar = new double[Nblk];
+            Operations.putIndexedValues(mean, rmean, index, Nblk);
+            Operations.putIndexedValues(var, rvar, index, Nblk);
+            double[] alphaBeta = Operations.wlsFit(rmean, rvar, 0);
+            double delta = Operations.computeMode(Operations.restrictArray(rmean, 0, I));
+
+            noiseParams[0] += alphaBeta[0];
+            noiseParams[1] += delta;
+            noiseParams[2] += Math.sqrt(Math.max(alphaBeta[1], 0));
+            noiseParams[3] += alphaBeta[1];
+        }
+        for (int i = 0; i < 4; i++) {
+            noiseParams[i] = noiseParams[i] / CS;
+        }
+        return noiseParams;
+    }
+
+    private static double[] estimate(ImageWare input, int CS, int frames, int nthreads) {
+        ThreadUtil.setLocalNumberOfThreads(nthreads);
+        try {
+            return Operations.estimateNoiseParams(input, CS, frames);
+        } finally {
+            ThreadUtil.clearLocalNumberOfThreads();
+        }
+    }
+
+    /**
+     * Smooth ramps and steps, with the noise of variance
+     * ALPHA * mean + SIGMA^2 (Gaussian approximation of the Poisson part).
+     */
+    private static ImageWare noisyStack(int nx, int ny, int nz) {
+        Random random = new Random(7);
+        ImageWare image = Builder.create(nx, ny, nz, ImageWare.DOUBLE);
+        for (int z = 0; z < nz; z++) {
+            for (int x = 0; x < nx; x++) {
+                for (int y = 0; y < ny; y++) {
+                    double mean = 20 + 80 * (1 + Math.sin(x / 11.0 + z) * Math.cos(y / 13.0))
+                            + ((x / 32 + y / 32) % 2 == 0 ? 100 : 0);
+                    double noisy = mean + Math.sqrt(ALPHA * mean + SIGMA * SIGMA) * random.nextGaussian();
+                    image.putPixel(x, y, z, noisy);
+                }
+            }
+        }
+        return image;
+    }
+}
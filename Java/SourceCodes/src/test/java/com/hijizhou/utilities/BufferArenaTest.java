@@ -0,0 +1,43 @@
+package com.hijizhou.utilities;
+
+import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * The pooling limit of BufferArena: buffers of the size in use are reused,
+ * and those of other sizes are dropped to make room for them.
+ */
+public class BufferArenaTest {
+
+    @Test
+    public void reusesWithinLimit() {
+        BufferArena arena = new BufferArena(8L * 64 * 64);
+        DoubleMatrix2D m = arena.real(64, 64);
+        arena.release(m);
+        assertEquals(8L * 64 * 64, arena.getPooledBytes());
+        assertSame(m.elements(), arena.real(64, 64).elements());
+        assertEquals(0, arena.getPooledBytes());
+    }
+
+    @Test
+    public void newSizeEvictsOldOnes() {
+        BufferArena arena = new BufferArena(8L * 64 * 64);
+        DoubleMatrix2D a = arena.real(32, 32);
+        DoubleMatrix2D b = arena.real(32, 32);
+        arena.release(a);
+        arena.release(b);
+        assertEquals(2 * 8L * 32 * 32, arena.getPooledBytes());
+
+        DoubleMatrix2D c = arena.real(64, 64);
+        arena.release(c);
+        assertEquals(8L * 64 * 64, arena.getPooledBytes());
+        assertSame(c.elements(), arena.real(64, 64).elements());
+
+        // larger than the limit: never pooled
+        arena.release(arena.real(128, 128));
+        assertEquals(0, arena.getPooledBytes());
+    }
+}
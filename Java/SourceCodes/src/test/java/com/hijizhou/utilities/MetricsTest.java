@@ -0,0 +1,87 @@
+package com.hijizhou.utilities;
+
+import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.hijizhou.cores.deconvolution.MW_PURE_LET2D;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The names spans, counters and histograms are recorded under, by hand and
+ * by a small 2D deconvolution.
+ */
+public class MetricsTest {
+
+    @Test
+    public void spansCountersAndHistograms() {
+        Metrics metrics = new Metrics();
+        metrics.begin("stage").end();
+        Metrics.Span span = metrics.begin("stage");
+        span.end();
+        span.end();
+        metrics.beginJob("job").end();
+        metrics.add("counter", 2);
+        metrics.add("counter", 3);
+        metrics.record("histogram", 4);
+        metrics.record("histogram", 8);
+
+        assertEquals(2, metrics.getTimer("stage").getCount());
+        assertEquals(1, metrics.getTimer("job").getCount());
+        assertNull(metrics.getTimer("other"));
+        assertEquals(5, metrics.getCounter("counter"));
+        assertEquals(0, metrics.getCounter("other"));
+        assertEquals(2, metrics.getHistogram("histogram").getCount());
+        assertEquals(12, metrics.getHistogram("histogram").getSum());
+        assertEquals(4, metrics.getHistogram("histogram").getMin());
+        assertEquals(8, metrics.getHistogram("histogram").getMax());
+        assertNull(metrics.getHistogram("other"));
+        assertEquals(1, metrics.getUtilization().size());
+
+        String json = metrics.toJSON();
+        assertTrue(json.contains("\"counter\": 5"));
+        assertTrue(json.contains("\"stage\": {"));
+        assertTrue(json.contains("\"job\": {"));
+        assertTrue(json.contains("\"histogram\": {"));
+    }
+
+    @Test
+    public void currentMetrics() {
+        Metrics metrics = new Metrics();
+        Metrics.count("counter", 1);
+        Metrics previous = Metrics.setCurrent(metrics);
+        try {
+            Metrics.count("counter", 1);
+            assertTrue(Metrics.getCurrent() == metrics);
+        } finally {
+            Metrics.setCurrent(previous);
+        }
+        Metrics.count("counter", 1);
+        assertEquals(1, metrics.getCounter("counter"));
+    }
+
+    @Test
+    public void deconvolutionNames() {
+        DoubleMatrix2D input = TestImages.getInput(TestImages.getPattern(64, 64, 0), Math.sqrt(3.0));
+
+        Metrics metrics = new Metrics();
+        MW_PURE_LET2D mw = new MW_PURE_LET2D(input, PSFUtil.getGaussPSF(64, 64, Math.sqrt(3.0)), TestImages.NOISE,
+                ProgressListener.SILENT, false, false);
+        mw.setMetrics(metrics);
+        mw.doDeconvolution();
+
+        String[] stages = {"prepare", "subband", "matrix", "solve", "synthesize"};
+        for (String stage : stages) {
+            assertNotNull(stage, metrics.getTimer(stage));
+            assertEquals(stage, 1, metrics.getTimer(stage).getCount());
+        }
+        long processes = mw.getNumberOfBasisFunctions() / 2;
+        assertEquals(processes, metrics.getTimer("subband.job").getCount());
+        assertEquals(processes, metrics.getCounter("subbands.kept") + metrics.getCounter("subbands.skipped"));
+        assertTrue(metrics.getCounter("fft") > 0);
+        assertNotNull(metrics.getHistogram("subband.concurrency"));
+        assertNotNull(metrics.getHistogram("subband.threads"));
+    }
+}
@@ -0,0 +1,66 @@
+package com.hijizhou.utilities;
+
+import com.cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.cern.colt.matrix.tdouble.DoubleMatrix3D;
+import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import com.cern.colt.matrix.tdouble.impl.DenseDoubleMatrix3D;
+
+/**
+ * Synthetic images shared by the tests: a smooth pattern on a checkerboard,
+ * blurred by a Gaussian PSF and corrupted by Poisson noise (NOISE).
+ */
+public final class TestImages {
+
+    /**
+     * Poisson gain 1, no Gaussian noise.
+     */
+    public static final double[] NOISE = {1.0, 0};
+
+    private TestImages() {
+    }
+
+    /**
+     * rows x columns pattern, moved down by <code>shift</code> rows (e.g.
+     * the frame number of a movie).
+     */
+    public static DoubleMatrix2D getPattern(int rows, int columns, int shift) {
+        DoubleMatrix2D original = new DenseDoubleMatrix2D(rows, columns);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                original.setQuick(i, j, 50 + 40 * Math.sin((i + shift) / 7.0) * Math.cos(j / 5.0)
+                        + (((i + shift) / 16 + j / 16) % 2 == 0 ? 60 : 0));
+            }
+        }
+        return original;
+    }
+
+    /**
+     * slices x rows x columns pattern, on a finer checkerboard.
+     */
+    public static DoubleMatrix3D getPattern3D(int slices, int rows, int columns) {
+        DoubleMatrix3D original = new DenseDoubleMatrix3D(slices, rows, columns);
+        for (int k = 0; k < slices; k++) {
+            for (int i = 0; i < rows; i++) {
+                for (int j = 0; j < columns; j++) {
+                    original.setQuick(k, i, j, 50 + 40 * Math.sin(i / 7.0) * Math.cos(j / 5.0) * Math.cos(k / 3.0)
+                            + ((i / 8 + j / 8 + k / 4) % 2 == 0 ? 60 : 0));
+                }
+            }
+        }
+        return original;
+    }
+
+    /**
+     * <code>original</code> blurred by the Gaussian PSF of standard deviation
+     * <code>sigma</code>, with noise.
+     */
+    public static DoubleMatrix2D getInput(DoubleMatrix2D original, double sigma) {
+        return Simulation.getInput(original, PSFUtil.getGaussPSF(original.rows(), original.columns(), sigma),
+                NOISE);
+    }
+
+    public static DoubleMatrix3D getInput(DoubleMatrix3D original, double sigma) {
+        return Simulation.getInput(original,
+                PSFUtil.getGaussPSF(original.rows(), original.columns(), original.slices(), sigma), NOISE);
+    }
+}
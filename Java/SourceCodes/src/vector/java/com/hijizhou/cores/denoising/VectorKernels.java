@@ -0,0 +1,115 @@
+package com.hijizhou.cores.denoising;
+/**
+ * VECTORKERNELS: the bilateral weights and the Fourier shrinkage of the DDID
+ * step written with the Vector API (jdk.incubator.vector)
+ *
+ * Compiled by the vector profile only, for Java 17 and later, and loaded by
+ * DDIDstep when asked to (setVector); the JVM must be started with
+ * --add-modules jdk.incubator.vector. The patch rows are taken by whole
+ * vectors, the rest of each row and of the spectrum by scalar loops. The
+ * range kernel is evaluated with the vector exponential rather than read
+ * from the table of the scalar loops, and the sums are accumulated lane by
+ * lane, so the results differ from the scalar ones by rounding (and the
+ * 2e-6 of the table).
+ *
+ * @author	Jizhou Li
+ *			The Chinese University of Hong Kong
+ *
+ */
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+final class VectorKernels implements PatchKernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    public void weights(double[] xp, double[] yp, int stride, int row, int col, int n, double[] h,
+                        double invRange, double[] g, double[] y, double[] k, double[] sums) {
+        double center = xp[(row + n / 2) * stride + col + n / 2];
+        DoubleVector vk = DoubleVector.zero(SPECIES);
+        DoubleVector vgk = vk;
+        DoubleVector vyk = vk;
+        DoubleVector vkk = vk;
+        double sk = 0;
+        double sgk = 0;
+        double syk = 0;
+        double skk = 0;
+        int bound = SPECIES.loopBound(n);
+        for (int a = 0; a < n; a++) {
+            int p = (row + a) * stride + col;
+            int m = a * n;
+            int b = 0;
+            for (; b < bound; b += SPECIES.length()) {
+                DoubleVector gv = DoubleVector.fromArray(SPECIES, xp, p + b);
+                DoubleVector yv = DoubleVector.fromArray(SPECIES, yp, p + b);
+                DoubleVector d = gv.sub(center);
+                DoubleVector t = d.mul(d).mul(invRange);
+                DoubleVector kv = t.neg().lanewise(VectorOperators.EXP)
+                        .mul(DoubleVector.fromArray(SPECIES, h, m + b))
+                        .blend(0, t.compare(VectorOperators.GE, DDIDstep.RANGE_MAX));
+                gv.intoArray(g, m + b);
+                yv.intoArray(y, m + b);
+                kv.intoArray(k, m + b);
+                vk = vk.add(kv);
+                vgk = vgk.add(gv.mul(kv));
+                vyk = vyk.add(yv.mul(kv));
+                vkk = vkk.add(kv.mul(kv));
+            }
+            // the rest of the row, with the table of the scalar loops
+            for (; b < n; b++) {
+                double gv = xp[p + b];
+                double yv = yp[p + b];
+                double d = gv - center;
+                double kv = DDIDstep.rangeKernel(d * d * invRange) * h[m + b];
+                g[m + b] = gv;
+                y[m + b] = yv;
+                k[m + b] = kv;
+                sk += kv;
+                sgk += gv * kv;
+                syk += yv * kv;
+                skk += kv * kv;
+            }
+        }
+        sums[0] = sk + vk.reduceLanes(VectorOperators.ADD);
+        sums[1] = sgk + vgk.reduceLanes(VectorOperators.ADD);
+        sums[2] = syk + vyk.reduceLanes(VectorOperators.ADD);
+        sums[3] = skk + vkk.reduceLanes(VectorOperators.ADD);
+    }
+
+    public double shrink(double[] gRe, double[] gIm, double[] yRe, double[] multiplicity, double v) {
+        DoubleVector vsum = DoubleVector.zero(SPECIES);
+        double epsilon2 = DDIDstep.EPSILON_IM * DDIDstep.EPSILON_IM;
+        int bound = SPECIES.loopBound(gRe.length);
+        int m = 0;
+        for (; m < bound; m += SPECIES.length()) {
+            DoubleVector re = DoubleVector.fromArray(SPECIES, gRe, m);
+            DoubleVector im = DoubleVector.fromArray(SPECIES, gIm, m);
+            // K = exp(v / (|G|^2 + epsilon)), real part
+            re = re.mul(re).add(im.mul(im)).add(DDIDstep.EPSILON_RE);
+            DoubleVector q = re.mul(re).add(epsilon2);
+            DoubleVector e = re.mul(v).div(q);
+            VectorMask<Double> kept = e.compare(VectorOperators.GT, DDIDstep.EXP_MIN);
+            if (!kept.anyTrue()) {
+                continue;
+            }
+            DoubleVector cos = DoubleVector.broadcast(SPECIES, v * DDIDstep.EPSILON_IM).div(q)
+                    .lanewise(VectorOperators.COS);
+            DoubleVector term = DoubleVector.fromArray(SPECIES, yRe, m)
+                    .mul(DoubleVector.fromArray(SPECIES, multiplicity, m))
+                    .mul(e.lanewise(VectorOperators.EXP)).mul(cos);
+            vsum = vsum.add(term, kept);
+        }
+        double sum = vsum.reduceLanes(VectorOperators.ADD);
+        for (; m < gRe.length; m++) {
+            double re = gRe[m] * gRe[m] + gIm[m] * gIm[m] + DDIDstep.EPSILON_RE;
+            double q = re * re + epsilon2;
+            double e = v * re / q;
+            if (e > DDIDstep.EXP_MIN) {
+                sum += multiplicity[m] * yRe[m] * Math.exp(e) * Math.cos(v * DDIDstep.EPSILON_IM / q);
+            }
+        }
+        return sum;
+    }
+}